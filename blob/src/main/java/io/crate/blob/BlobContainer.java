@@ -21,9 +21,12 @@
 
 package io.crate.blob;
 
+import com.google.common.util.concurrent.MoreExecutors;
 import io.crate.blob.exceptions.DigestNotFoundException;
 import io.crate.common.Hex;
+import org.apache.lucene.util.IOUtils;
 import org.elasticsearch.ElasticsearchIllegalStateException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.FileSystemUtils;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
@@ -32,6 +35,10 @@ import java.io.*;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BlobContainer {
 
@@ -43,6 +50,9 @@ public class BlobContainer {
 
     private final File[] subDirs = new File[256];
 
+    private static final String STATS_CHECKPOINT = "blob_stats.ckp";
+    private static final int STATS_CHECKPOINT_VERSION = 1;
+
     static {
         for (int i = 0; i < 256; i++) {
             SUB_DIRS[i] = String.format("%02x", i & 0xFFFFF);
@@ -54,14 +64,69 @@ public class BlobContainer {
     private final File tmpDirectory;
     private final File varDirectory;
 
+    /**
+     * blob count and size are maintained incrementally on commit and delete.
+     * Blobs of a sub-folder are only accounted once that sub-folder has been counted,
+     * which is the case for all sub-folders if the counters were loaded from the checkpoint,
+     * otherwise the background rebuild raises {@link #countedPrefixes} folder by folder.
+     * The same applies to the {@link BlobDigestIndex} and {@link #indexedPrefixes}.
+     * Every change to a sub-folder is done while holding its lock, so the rebuild and
+     * concurrent commits or deletes never count a blob twice.
+     */
+    private final Object[] prefixLocks = new Object[256];
+    private final AtomicLong blobsCount = new AtomicLong();
+    private final AtomicLong blobsSize = new AtomicLong();
+    private final AtomicBoolean rebuildStarted = new AtomicBoolean();
+    private volatile int countedPrefixes = 0;
+
+    /**
+     * the digest index is set to null once it fails, so it must be read into a local variable once
+     * and checked for null before it is used
+     */
+    @Nullable
+    private volatile BlobDigestIndex digestIndex;
+    private volatile int indexedPrefixes = 0;
+    private final Executor compactionExecutor;
+    private final AtomicBoolean compacting = new AtomicBoolean();
+
+    @Nullable
+    private final BlobReadCache readCache;
+
     public BlobContainer(File baseDirectory) {
+        this(baseDirectory, MoreExecutors.sameThreadExecutor(), null);
+    }
+
+    /**
+     * @param compactionExecutor executor the digest index is compacted on
+     * @param readCache          cache deleted blobs are removed from
+     */
+    public BlobContainer(File baseDirectory, Executor compactionExecutor, @Nullable BlobReadCache readCache) {
         this.baseDirectory = baseDirectory;
+        this.compactionExecutor = compactionExecutor;
+        this.readCache = readCache;
         this.tmpDirectory = new File(baseDirectory, "tmp");
         this.varDirectory = new File(baseDirectory, "var");
         FileSystemUtils.mkdirs(this.varDirectory);
         FileSystemUtils.mkdirs(this.tmpDirectory);
 
         createSubDirectories(this.varDirectory);
+        for (int i = 0; i < prefixLocks.length; i++) {
+            prefixLocks[i] = new Object();
+        }
+        if (readStatsCheckpoint()) {
+            countedPrefixes = SUB_DIRS.length;
+        }
+        try {
+            digestIndex = BlobDigestIndex.open(baseDirectory);
+            if (digestIndex.isClean()) {
+                indexedPrefixes = SUB_DIRS.length;
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.warn("could not open digest index in {}, blobs will be listed from disk", e, baseDirectory);
+            digestIndex = null;
+            indexedPrefixes = 0;
+        }
+        rebuildStarted.set(statsComplete() && (digestIndex == null || indexedPrefixes == SUB_DIRS.length));
     }
 
     /**
@@ -160,6 +225,350 @@ public class BlobContainer {
         return new File(getVarDirectory(), digest.substring(0, 2) + File.separator + digest);
     }
 
+    private static int prefixIndex(String digest) {
+        return Integer.parseInt(digest.substring(0, 2), 16);
+    }
+
+    /**
+     * move a completely written file into the blob directory, replacing an existing blob
+     * with the same digest.
+     *
+     * @return false if the file couldn't be moved
+     */
+    public boolean moveToBlob(File source, String digest) {
+        int index = prefixIndex(digest);
+        File target = getFile(digest);
+        synchronized (prefixLocks[index]) {
+            boolean existed = target.exists();
+            long existingLength = target.length();
+            if (!source.renameTo(target)) {
+                return false;
+            }
+            long length = target.length();
+            if (index < countedPrefixes) {
+                if (!existed) {
+                    blobsCount.incrementAndGet();
+                }
+                blobsSize.addAndGet(length - existingLength);
+            }
+            BlobDigestIndex digests = digestIndex;
+            if (digests != null && index < indexedPrefixes) {
+                try {
+                    digests.put(Hex.decodeHex(digest), length, target.lastModified());
+                } catch (IOException e) {
+                    disableDigestIndex(digests, e);
+                }
+            }
+        }
+        compactDigestIndexIfNeeded();
+        return true;
+    }
+
+    /**
+     * @return true if the blob existed and has been deleted
+     */
+    public boolean deleteBlob(String digest) {
+        int index = prefixIndex(digest);
+        File file = getFile(digest);
+        synchronized (prefixLocks[index]) {
+            long length = file.length();
+            if (!file.delete()) {
+                return false;
+            }
+            if (readCache != null) {
+                readCache.invalidate(file);
+            }
+            if (index < countedPrefixes) {
+                blobsCount.decrementAndGet();
+                blobsSize.addAndGet(-length);
+            }
+            BlobDigestIndex digests = digestIndex;
+            if (digests != null && index < indexedPrefixes) {
+                try {
+                    digests.remove(Hex.decodeHex(digest));
+                } catch (IOException e) {
+                    disableDigestIndex(digests, e);
+                }
+            }
+        }
+        compactDigestIndexIfNeeded();
+        return true;
+    }
+
+    public long blobsCount() {
+        return blobsCount.get();
+    }
+
+    public long blobsSize() {
+        return blobsSize.get();
+    }
+
+    /**
+     * @return false while the counters are still being rebuilt and only cover a part of the blobs
+     */
+    public boolean statsComplete() {
+        return countedPrefixes == SUB_DIRS.length;
+    }
+
+    /**
+     * rebuild the counters and the digest index by walking all sub-folders, unless they have been
+     * loaded or a rebuild has been started already.
+     */
+    public void rebuildIfNeeded(Executor executor) {
+        if (!rebuildStarted.compareAndSet(false, true)) {
+            return;
+        }
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                rebuild();
+            }
+        });
+    }
+
+    void rebuild() {
+        logger.debug("rebuilding blob stats and digest index of {}", baseDirectory);
+        for (int i = Math.min(countedPrefixes, indexedPrefixes); i < subDirs.length; i++) {
+            synchronized (prefixLocks[i]) {
+                boolean count = i >= countedPrefixes;
+                BlobDigestIndex index = i >= indexedPrefixes ? digestIndex : null;
+                File[] files = subDirs[i].listFiles();
+                if (files != null) {
+                    for (File file : files) {
+                        // files with a .X suffix are incomplete leftovers from a recovery
+                        if (file.getName().contains(".")) {
+                            continue;
+                        }
+                        long length = file.length();
+                        if (count) {
+                            blobsCount.incrementAndGet();
+                            blobsSize.addAndGet(length);
+                        }
+                        if (index != null) {
+                            try {
+                                index.put(Hex.decodeHex(file.getName()), length, file.lastModified());
+                            } catch (IOException e) {
+                                disableDigestIndex(index, e);
+                                index = null;
+                            }
+                        }
+                    }
+                }
+                if (count) {
+                    countedPrefixes = i + 1;
+                }
+                if (index != null) {
+                    synchronized (this) {
+                        // the index might have been disabled by a concurrent commit or delete
+                        if (digestIndex == index) {
+                            indexedPrefixes = i + 1;
+                        }
+                    }
+                }
+            }
+            compactDigestIndexIfNeeded();
+        }
+    }
+
+    /**
+     * compact the digest index on the compaction executor if it has a lot of changes,
+     * so commits and deletes don't wait for the new snapshot to be written
+     */
+    private void compactDigestIndexIfNeeded() {
+        final BlobDigestIndex index = digestIndex;
+        if (index == null || !index.needsCompaction() || !compacting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            compactionExecutor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        if (digestIndex == index) {
+                            index.compact();
+                        }
+                    } catch (IOException e) {
+                        disableDigestIndex(index, e);
+                    } finally {
+                        compacting.set(false);
+                    }
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            logger.debug("could not schedule compaction of the digest index of {}", e, baseDirectory);
+            compacting.set(false);
+        }
+    }
+
+    /**
+     * stop maintaining the digest index after it failed to persist a change,
+     * digests are listed from disk from now on.
+     */
+    private synchronized void disableDigestIndex(BlobDigestIndex index, IOException e) {
+        if (digestIndex != index) {
+            // already disabled
+            return;
+        }
+        logger.warn("digest index of {} failed, blobs will be listed from disk", e, baseDirectory);
+        indexedPrefixes = 0;
+        digestIndex = null;
+        IOUtils.closeWhileHandlingException(index);
+    }
+
+    public interface BlobVisitor {
+
+        public boolean visit(String digest, long lastModified) throws IOException;
+
+    }
+
+    /**
+     * visit all blobs, reading them from the digest index for the sub-folders it covers
+     */
+    public void visitBlobs(BlobVisitor visitor) throws IOException {
+        for (int i = 0; i < subDirs.length; i++) {
+            List<BlobDigestIndex.Entry> entries = null;
+            synchronized (prefixLocks[i]) {
+                BlobDigestIndex digests = digestIndex;
+                if (digests != null && i < indexedPrefixes) {
+                    entries = digests.entries(i);
+                }
+            }
+            if (entries != null) {
+                for (BlobDigestIndex.Entry entry : entries) {
+                    if (!visitor.visit(Hex.encodeHexString(entry.digest()), entry.lastModified())) {
+                        return;
+                    }
+                }
+            } else {
+                File[] files = subDirs[i].listFiles();
+                if (files == null) {
+                    continue;
+                }
+                for (File file : files) {
+                    if (!file.getName().contains(".") && !visitor.visit(file.getName(), file.lastModified())) {
+                        return;
+                    }
+                }
+            }
+        }
+    }
+
+    /**
+     * get all digests in a subfolder, from the digest index if it covers the subfolder,
+     * otherwise see {@link #cleanAndReturnDigests(byte)}
+     */
+    public byte[][] digests(byte prefix) {
+        int index = prefix & 0xFF;
+        List<BlobDigestIndex.Entry> entries = null;
+        synchronized (prefixLocks[index]) {
+            BlobDigestIndex digests = digestIndex;
+            if (digests != null && index < indexedPrefixes) {
+                entries = digests.entries(index);
+            }
+        }
+        if (entries == null) {
+            return cleanAndReturnDigests(prefix);
+        }
+        byte[][] digests = new byte[entries.size()][];
+        for (int i = 0; i < digests.length; i++) {
+            digests[i] = entries.get(i).digest();
+        }
+        return digests;
+    }
+
+    /**
+     * @return a hash over all digests in a subfolder, see {@link BlobDigestIndex#prefixHash(int)},
+     * or null if the subfolder isn't covered by the digest index
+     */
+    @Nullable
+    public byte[] digestsHash(byte prefix) {
+        int index = prefix & 0xFF;
+        synchronized (prefixLocks[index]) {
+            BlobDigestIndex digests = digestIndex;
+            if (digests != null && index < indexedPrefixes) {
+                return digests.prefixHash(index);
+            }
+            return null;
+        }
+    }
+
+    /**
+     * persist the counters and the digest index, must only be called once no more blobs are written.
+     */
+    public void close() {
+        writeStatsCheckpoint();
+        BlobDigestIndex index;
+        synchronized (this) {
+            // pending compactions skip the index once it is unset
+            index = digestIndex;
+            digestIndex = null;
+        }
+        if (index == null) {
+            return;
+        }
+        try {
+            if (indexedPrefixes == SUB_DIRS.length) {
+                index.closeClean();
+            } else {
+                index.close();
+            }
+        } catch (IOException e) {
+            logger.warn("could not close digest index of {}", e, baseDirectory);
+        }
+    }
+
+    /**
+     * persist the counters so that they can be loaded on the next start instead of
+     * walking all blobs. Must only be called once no more blobs are written.
+     */
+    public void writeStatsCheckpoint() {
+        if (!statsComplete()) {
+            return;
+        }
+        File tmpFile = new File(baseDirectory, STATS_CHECKPOINT + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new FileOutputStream(tmpFile))) {
+            out.writeInt(STATS_CHECKPOINT_VERSION);
+            out.writeLong(blobsCount.get());
+            out.writeLong(blobsSize.get());
+        } catch (IOException e) {
+            logger.warn("could not write blob stats checkpoint to {}", e, tmpFile);
+            tmpFile.delete();
+            return;
+        }
+        if (!tmpFile.renameTo(new File(baseDirectory, STATS_CHECKPOINT))) {
+            logger.warn("could not write blob stats checkpoint to {}", baseDirectory);
+            tmpFile.delete();
+        }
+    }
+
+    /**
+     * load the counters from the checkpoint. The checkpoint is deleted afterwards, so that
+     * after an unclean shutdown the counters are rebuilt instead of using outdated values.
+     */
+    private boolean readStatsCheckpoint() {
+        File file = new File(baseDirectory, STATS_CHECKPOINT);
+        if (!file.exists()) {
+            return false;
+        }
+        boolean loaded = false;
+        try (DataInputStream in = new DataInputStream(new FileInputStream(file))) {
+            if (in.readInt() == STATS_CHECKPOINT_VERSION) {
+                blobsCount.set(in.readLong());
+                blobsSize.set(in.readLong());
+                loaded = true;
+            }
+        } catch (IOException e) {
+            logger.warn("could not read blob stats checkpoint {}", e, file);
+        }
+        if (!file.delete()) {
+            logger.warn("could not delete blob stats checkpoint {}, rebuilding stats", file);
+            blobsCount.set(0);
+            blobsSize.set(0);
+            return false;
+        }
+        return loaded;
+    }
+
     public DigestBlob createBlob(String digest, UUID transferId) {
         // TODO: check if exists already
         return new DigestBlob(this, digest, transferId);
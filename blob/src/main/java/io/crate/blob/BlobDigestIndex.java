@@ -0,0 +1,488 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob;
+
+import com.google.common.primitives.UnsignedBytes;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+/**
+ * on-disk index of the digests, sizes and modification times of the blobs of a {@link BlobContainer}
+ *
+ * The index consists of a memory-mapped snapshot holding the entries sorted by digest and an
+ * append-only log of the changes since the snapshot was written, which are also kept in memory.
+ * Once the log grows too large it is merged into a new snapshot, see {@link #compact()}.
+ *
+ * The index is only valid if it has been closed cleanly, otherwise it is opened empty and has to be
+ * rebuilt from the blob directories.
+ *
+ * Changes and reads of the entries of a prefix must be synchronized by the caller.
+ */
+public class BlobDigestIndex implements Closeable {
+
+    private static final ESLogger logger = Loggers.getLogger(BlobDigestIndex.class);
+
+    public static final int DIGEST_LENGTH = 20;
+
+    private static final int VERSION = 1;
+    private static final String SNAPSHOT = "digests.snp";
+    private static final String LOG = "digests.log";
+    private static final String COMPACTING_LOG = "digests.log.old";
+    private static final String CLEAN = "digests.clean";
+
+    private static final int RECORD_LENGTH = DIGEST_LENGTH + 8 + 8;
+    private static final int SNAPSHOT_HEADER_LENGTH = 4 + 256 * 4;
+    private static final int LOG_RECORD_LENGTH = 1 + RECORD_LENGTH;
+    private static final byte LOG_PUT = 1;
+    private static final byte LOG_REMOVE = 2;
+    private static final int MIN_ENTRIES_TO_COMPACT = 10000;
+
+    /**
+     * the snapshot is mapped in chunks of this many records, a single mapping is limited to 2gb
+     */
+    static int RECORDS_PER_CHUNK = Integer.MAX_VALUE / RECORD_LENGTH;
+
+    private static final Comparator<byte[]> DIGEST_COMPARATOR = UnsignedBytes.lexicographicalComparator();
+
+    public static class Entry {
+
+        private final byte[] digest;
+        private final long size;
+        private final long lastModified;
+
+        Entry(byte[] digest, long size, long lastModified) {
+            this.digest = digest;
+            this.size = size;
+            this.lastModified = lastModified;
+        }
+
+        public byte[] digest() {
+            return digest;
+        }
+
+        public long size() {
+            return size;
+        }
+
+        public long lastModified() {
+            return lastModified;
+        }
+
+        boolean removed() {
+            return size < 0;
+        }
+    }
+
+    /**
+     * the memory-mapped entries of a snapshot file
+     */
+    private static class Snapshot {
+
+        private static final Snapshot EMPTY = new Snapshot(new MappedByteBuffer[0], new long[257]);
+
+        private final MappedByteBuffer[] chunks;
+        private final long[] offsets;
+
+        private Snapshot(MappedByteBuffer[] chunks, long[] offsets) {
+            this.chunks = chunks;
+            this.offsets = offsets;
+        }
+
+        private long size() {
+            return offsets[256];
+        }
+
+        private Entry entry(long pos) {
+            MappedByteBuffer chunk = chunks[(int) (pos / RECORDS_PER_CHUNK)];
+            int offset = (int) (pos % RECORDS_PER_CHUNK) * RECORD_LENGTH;
+            byte[] digest = new byte[DIGEST_LENGTH];
+            for (int i = 0; i < DIGEST_LENGTH; i++) {
+                digest[i] = chunk.get(offset + i);
+            }
+            return new Entry(digest, chunk.getLong(offset + DIGEST_LENGTH), chunk.getLong(offset + DIGEST_LENGTH + 8));
+        }
+    }
+
+    private final File directory;
+    private final boolean clean;
+
+    /**
+     * changes of the log and the in-memory entries hold the read lock,
+     * switching the log or the snapshot holds the write lock
+     */
+    private final ReadWriteLock snapshotLock = new ReentrantReadWriteLock();
+    /**
+     * held while compacting, so only one compaction runs and the index isn't closed during a compaction
+     */
+    private final Object compactionLock = new Object();
+    private List<TreeMap<byte[], Entry>> changes = newChanges();
+    /**
+     * the changes which are merged into a new snapshot by a running compaction, null if none is running
+     */
+    @Nullable
+    private List<TreeMap<byte[], Entry>> compactingChanges;
+    private final byte[][] prefixHashes = new byte[256][];
+    private volatile int numChanges = 0;
+
+    private Snapshot snapshot = Snapshot.EMPTY;
+    private FileChannel log;
+
+    private BlobDigestIndex(File directory, boolean clean) {
+        this.directory = directory;
+        this.clean = clean;
+    }
+
+    private static List<TreeMap<byte[], Entry>> newChanges() {
+        List<TreeMap<byte[], Entry>> changes = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+            changes.add(new TreeMap<byte[], Entry>(DIGEST_COMPARATOR));
+        }
+        return changes;
+    }
+
+    /**
+     * open the index in the given directory. If it hasn't been closed cleanly it is opened empty,
+     * see {@link #isClean()}.
+     */
+    public static BlobDigestIndex open(File directory) throws IOException {
+        File cleanMarker = new File(directory, CLEAN);
+        boolean clean = cleanMarker.exists();
+        BlobDigestIndex index = new BlobDigestIndex(directory, clean);
+        if (clean) {
+            index.snapshot = loadSnapshot(new File(directory, SNAPSHOT));
+            // the changes of an interrupted compaction may or may not be part of the snapshot
+            index.replayLog(new File(directory, COMPACTING_LOG));
+            index.replayLog(new File(directory, LOG));
+        } else {
+            deleteIfExists(new File(directory, SNAPSHOT));
+            deleteIfExists(new File(directory, COMPACTING_LOG));
+            deleteIfExists(new File(directory, LOG));
+        }
+        index.log = new FileOutputStream(new File(directory, LOG), true).getChannel();
+        // until closed cleanly again the log might miss changes
+        if (clean && !cleanMarker.delete()) {
+            index.close();
+            throw new IOException("could not delete " + cleanMarker);
+        }
+        return index;
+    }
+
+    /**
+     * @return false if the index has been opened empty because it hasn't been closed cleanly before
+     */
+    public boolean isClean() {
+        return clean;
+    }
+
+    public void put(byte[] digest, long size, long lastModified) throws IOException {
+        change(LOG_PUT, new Entry(digest, size, lastModified));
+    }
+
+    public void remove(byte[] digest) throws IOException {
+        change(LOG_REMOVE, new Entry(digest, -1, -1));
+    }
+
+    private void change(byte op, Entry entry) throws IOException {
+        snapshotLock.readLock().lock();
+        try {
+            ByteBuffer record = ByteBuffer.allocate(LOG_RECORD_LENGTH);
+            record.put(op);
+            writeEntry(record, entry);
+            record.flip();
+            synchronized (this) {
+                while (record.hasRemaining()) {
+                    log.write(record);
+                }
+                numChanges++;
+            }
+            int prefix = entry.digest[0] & 0xFF;
+            changes.get(prefix).put(entry.digest, entry);
+            prefixHashes[prefix] = null;
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * @return the entries of the prefix sorted by digest
+     */
+    public List<Entry> entries(int prefix) {
+        snapshotLock.readLock().lock();
+        try {
+            SortedMap<byte[], Entry> prefixChanges = changes.get(prefix);
+            if (compactingChanges != null && !compactingChanges.get(prefix).isEmpty()) {
+                TreeMap<byte[], Entry> merged = new TreeMap<>(compactingChanges.get(prefix));
+                merged.putAll(prefixChanges);
+                prefixChanges = merged;
+            }
+            return entries(snapshot, prefix, prefixChanges);
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+    }
+
+    /**
+     * merge the entries of a prefix of the snapshot with the changes of that prefix
+     */
+    private static List<Entry> entries(Snapshot snapshot, int prefix, SortedMap<byte[], Entry> prefixChanges) {
+        Iterator<Entry> changed = prefixChanges.values().iterator();
+        long snapshotPos = snapshot.offsets[prefix];
+        long snapshotEnd = snapshot.offsets[prefix + 1];
+        List<Entry> entries = new ArrayList<>((int) Math.min(Integer.MAX_VALUE - 8,
+                snapshotEnd - snapshotPos + prefixChanges.size()));
+
+        Entry snapshotEntry = snapshotPos < snapshotEnd ? snapshot.entry(snapshotPos++) : null;
+        Entry changedEntry = changed.hasNext() ? changed.next() : null;
+        while (snapshotEntry != null || changedEntry != null) {
+            int cmp;
+            if (snapshotEntry == null) {
+                cmp = 1;
+            } else if (changedEntry == null) {
+                cmp = -1;
+            } else {
+                cmp = DIGEST_COMPARATOR.compare(snapshotEntry.digest, changedEntry.digest);
+            }
+            if (cmp < 0) {
+                entries.add(snapshotEntry);
+            } else if (!changedEntry.removed()) {
+                entries.add(changedEntry);
+            }
+            if (cmp <= 0) {
+                snapshotEntry = snapshotPos < snapshotEnd ? snapshot.entry(snapshotPos++) : null;
+            }
+            if (cmp >= 0) {
+                changedEntry = changed.hasNext() ? changed.next() : null;
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * @return a SHA-1 hash over the sorted digests of the prefix, equal on two nodes if both
+     * contain the same blobs of this prefix
+     */
+    public byte[] prefixHash(int prefix) {
+        byte[] hash = prefixHashes[prefix];
+        if (hash == null) {
+            MessageDigest md = sha1();
+            for (Entry entry : entries(prefix)) {
+                md.update(entry.digest);
+            }
+            hash = md.digest();
+            prefixHashes[prefix] = hash;
+        }
+        return hash;
+    }
+
+    /**
+     * @return true if there are a lot of changes which should be merged into a new snapshot
+     */
+    public boolean needsCompaction() {
+        long snapshotSize;
+        snapshotLock.readLock().lock();
+        try {
+            snapshotSize = snapshot.size();
+        } finally {
+            snapshotLock.readLock().unlock();
+        }
+        return numChanges > Math.max(MIN_ENTRIES_TO_COMPACT, snapshotSize / 4);
+    }
+
+    /**
+     * merge the changes into a new snapshot.
+     *
+     * The write lock is only held to switch to a new log and to switch to the new snapshot,
+     * changes and reads can continue while the new snapshot is written.
+     * If compacting fails the index must not be used anymore.
+     */
+    void compact() throws IOException {
+        synchronized (compactionLock) {
+            Snapshot mergedSnapshot;
+            List<TreeMap<byte[], Entry>> mergedChanges;
+            snapshotLock.writeLock().lock();
+            try {
+                log.force(false);
+                log.close();
+                File compactingLog = new File(directory, COMPACTING_LOG);
+                deleteIfExists(compactingLog);
+                if (!new File(directory, LOG).renameTo(compactingLog)) {
+                    throw new IOException("could not rename " + new File(directory, LOG));
+                }
+                log = new FileOutputStream(new File(directory, LOG), true).getChannel();
+                mergedSnapshot = snapshot;
+                mergedChanges = changes;
+                compactingChanges = changes;
+                changes = newChanges();
+                synchronized (this) {
+                    numChanges = 0;
+                }
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+
+            File tmpFile = new File(directory, SNAPSHOT + ".tmp");
+            writeSnapshot(tmpFile, mergedSnapshot, mergedChanges);
+            if (!tmpFile.renameTo(new File(directory, SNAPSHOT))) {
+                throw new IOException("could not rename " + tmpFile);
+            }
+            Snapshot newSnapshot = loadSnapshot(new File(directory, SNAPSHOT));
+
+            snapshotLock.writeLock().lock();
+            try {
+                snapshot = newSnapshot;
+                compactingChanges = null;
+            } finally {
+                snapshotLock.writeLock().unlock();
+            }
+            deleteIfExists(new File(directory, COMPACTING_LOG));
+        }
+    }
+
+    private static void writeSnapshot(File file,
+                                      Snapshot snapshot,
+                                      List<TreeMap<byte[], Entry>> changes) throws IOException {
+        List<List<Entry>> entries = new ArrayList<>(256);
+        for (int i = 0; i < 256; i++) {
+            entries.add(entries(snapshot, i, changes.get(i)));
+        }
+        try (DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(file)))) {
+            out.writeInt(VERSION);
+            for (List<Entry> prefixEntries : entries) {
+                out.writeInt(prefixEntries.size());
+            }
+            for (List<Entry> prefixEntries : entries) {
+                for (Entry entry : prefixEntries) {
+                    out.write(entry.digest);
+                    out.writeLong(entry.size);
+                    out.writeLong(entry.lastModified);
+                }
+            }
+        }
+    }
+
+    /**
+     * close the index and mark it as clean, so that it is used when opened again
+     */
+    public void closeClean() throws IOException {
+        synchronized (compactionLock) {
+            log.force(true);
+            close();
+            if (!new File(directory, CLEAN).createNewFile()) {
+                logger.warn("digest index in {} already marked as clean", directory);
+            }
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (compactionLock) {
+            IOUtils.close(log);
+        }
+    }
+
+    private static Snapshot loadSnapshot(File file) throws IOException {
+        if (!file.exists()) {
+            return Snapshot.EMPTY;
+        }
+        try (FileChannel channel = new FileInputStream(file).getChannel()) {
+            ByteBuffer header = ByteBuffer.allocate(SNAPSHOT_HEADER_LENGTH);
+            while (header.hasRemaining()) {
+                if (channel.read(header, header.position()) < 0) {
+                    throw new IOException("corrupted digest index " + file);
+                }
+            }
+            if (header.getInt(0) != VERSION) {
+                throw new IOException("unsupported digest index version in " + file);
+            }
+            long[] offsets = new long[257];
+            for (int i = 0; i < 256; i++) {
+                offsets[i + 1] = offsets[i] + header.getInt(4 + i * 4);
+            }
+            long numEntries = offsets[256];
+            if (channel.size() != SNAPSHOT_HEADER_LENGTH + numEntries * RECORD_LENGTH) {
+                throw new IOException("corrupted digest index " + file);
+            }
+            MappedByteBuffer[] chunks = new MappedByteBuffer[(int) ((numEntries + RECORDS_PER_CHUNK - 1) / RECORDS_PER_CHUNK)];
+            for (int i = 0; i < chunks.length; i++) {
+                long firstEntry = (long) i * RECORDS_PER_CHUNK;
+                long chunkEntries = Math.min(RECORDS_PER_CHUNK, numEntries - firstEntry);
+                chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY,
+                        SNAPSHOT_HEADER_LENGTH + firstEntry * RECORD_LENGTH, chunkEntries * RECORD_LENGTH);
+            }
+            return new Snapshot(chunks, offsets);
+        }
+    }
+
+    private void replayLog(File file) throws IOException {
+        if (!file.exists()) {
+            return;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            long numRecords = file.length() / LOG_RECORD_LENGTH;
+            for (long i = 0; i < numRecords; i++) {
+                byte op = in.readByte();
+                byte[] digest = new byte[DIGEST_LENGTH];
+                in.readFully(digest);
+                Entry entry = new Entry(digest, in.readLong(), in.readLong());
+                if (op != LOG_PUT && op != LOG_REMOVE) {
+                    throw new IOException("corrupted digest index log " + file);
+                }
+                changes.get(digest[0] & 0xFF).put(digest, entry);
+                numChanges++;
+            }
+        }
+    }
+
+    private static void writeEntry(ByteBuffer buffer, Entry entry) {
+        buffer.put(entry.digest);
+        buffer.putLong(entry.size);
+        buffer.putLong(entry.lastModified);
+    }
+
+    private static void deleteIfExists(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("could not delete " + file);
+        }
+    }
+
+    private static MessageDigest sha1() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -0,0 +1,291 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.blob;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import org.apache.lucene.util.IOUtils;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.component.AbstractComponent;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * caches for reading blobs over http
+ *
+ * Blobs are immutable, so file channels of blobs can be kept open and reused
+ * and the content of small blobs can be kept in memory.
+ * Deleted blobs and the blobs of closed shards are removed from the caches, see {@link #invalidate(File)}
+ * and {@link #invalidateDirectory(File)}. A blob deleted otherwise is removed on the next read.
+ */
+@Singleton
+public class BlobReadCache extends AbstractComponent {
+
+    public static final String OPEN_FILES_SETTING = "blobs.read_cache.open_files";
+    public static final String SMALL_BLOBS_SIZE_SETTING = "blobs.read_cache.small_blobs.size";
+    public static final String SMALL_BLOBS_MAX_BLOB_SIZE_SETTING = "blobs.read_cache.small_blobs.max_blob_size";
+
+    public static final int DEFAULT_OPEN_FILES = 256;
+    public static final ByteSizeValue DEFAULT_SMALL_BLOBS_SIZE = new ByteSizeValue(0);
+    public static final ByteSizeValue DEFAULT_SMALL_BLOBS_MAX_BLOB_SIZE = ByteSizeValue.parseBytesSizeValue("64kb");
+
+    /**
+     * a file channel that is shared by the cache and the readers of the blob,
+     * it is closed once it has been evicted and all readers released it.
+     */
+    public static class OpenFile {
+
+        private final FileChannel channel;
+        private final AtomicInteger refCount = new AtomicInteger(1);
+
+        OpenFile(FileChannel channel) {
+            this.channel = channel;
+        }
+
+        public FileChannel channel() {
+            return channel;
+        }
+
+        private boolean tryRetain() {
+            while (true) {
+                int count = refCount.get();
+                if (count == 0) {
+                    return false;
+                }
+                if (refCount.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        public void release() {
+            if (refCount.decrementAndGet() == 0) {
+                IOUtils.closeWhileHandlingException(channel);
+            }
+        }
+    }
+
+    @Nullable
+    private final Cache<File, OpenFile> openFiles;
+    @Nullable
+    private final Cache<File, byte[]> smallBlobs;
+    private final long maxSmallBlobSize;
+
+    private final AtomicLong openFileHits = new AtomicLong();
+    private final AtomicLong openFileMisses = new AtomicLong();
+    private final AtomicLong smallBlobHits = new AtomicLong();
+    private final AtomicLong smallBlobMisses = new AtomicLong();
+
+    @Inject
+    public BlobReadCache(Settings settings) {
+        super(settings);
+        int maxOpenFiles = settings.getAsInt(OPEN_FILES_SETTING, DEFAULT_OPEN_FILES);
+        if (maxOpenFiles > 0) {
+            openFiles = CacheBuilder.newBuilder()
+                .maximumSize(maxOpenFiles)
+                .removalListener(new RemovalListener<File, OpenFile>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<File, OpenFile> notification) {
+                        notification.getValue().release();
+                    }
+                })
+                .build();
+        } else {
+            openFiles = null;
+        }
+
+        long smallBlobsSize = settings.getAsBytesSize(SMALL_BLOBS_SIZE_SETTING, DEFAULT_SMALL_BLOBS_SIZE).bytes();
+        maxSmallBlobSize = settings.getAsBytesSize(
+            SMALL_BLOBS_MAX_BLOB_SIZE_SETTING, DEFAULT_SMALL_BLOBS_MAX_BLOB_SIZE).bytes();
+        if (smallBlobsSize > 0 && maxSmallBlobSize > 0) {
+            smallBlobs = CacheBuilder.newBuilder()
+                .maximumWeight(smallBlobsSize)
+                .weigher(new Weigher<File, byte[]>() {
+                    @Override
+                    public int weigh(File key, byte[] value) {
+                        return value.length;
+                    }
+                })
+                .build();
+        } else {
+            smallBlobs = null;
+        }
+    }
+
+    /**
+     * open the blob file for reading, the returned file must be released once it has been read.
+     *
+     * @throws FileNotFoundException if the blob doesn't exist (anymore)
+     */
+    public OpenFile open(File file) throws IOException {
+        ensureExists(file);
+        if (openFiles == null) {
+            return new OpenFile(new RandomAccessFile(file, "r").getChannel());
+        }
+        while (true) {
+            OpenFile openFile = openFiles.getIfPresent(file);
+            if (openFile == null) {
+                openFileMisses.incrementAndGet();
+                OpenFile newFile = new OpenFile(new RandomAccessFile(file, "r").getChannel());
+                openFile = openFiles.asMap().putIfAbsent(file, newFile);
+                if (openFile == null) {
+                    openFile = newFile;
+                } else {
+                    newFile.release();
+                }
+            } else {
+                openFileHits.incrementAndGet();
+            }
+            // the file might have been evicted concurrently, open it again in that case
+            if (openFile.tryRetain()) {
+                return openFile;
+            }
+        }
+    }
+
+    /**
+     * @return the content of the blob if the small blob cache is enabled and the blob is small enough,
+     * otherwise null
+     * @throws FileNotFoundException if the blob doesn't exist (anymore)
+     */
+    @Nullable
+    public byte[] smallBlob(File file) throws IOException {
+        if (smallBlobs == null) {
+            return null;
+        }
+        ensureExists(file);
+        byte[] content = smallBlobs.getIfPresent(file);
+        if (content != null) {
+            smallBlobHits.incrementAndGet();
+            return content;
+        }
+        long length = file.length();
+        if (length > maxSmallBlobSize) {
+            return null;
+        }
+        smallBlobMisses.incrementAndGet();
+        OpenFile openFile = open(file);
+        try {
+            ByteBuffer buffer = ByteBuffer.allocate((int) openFile.channel().size());
+            while (buffer.hasRemaining()) {
+                if (openFile.channel().read(buffer, buffer.position()) < 0) {
+                    break;
+                }
+            }
+            content = buffer.array();
+        } finally {
+            openFile.release();
+        }
+        smallBlobs.put(file, content);
+        return content;
+    }
+
+    private void ensureExists(File file) throws FileNotFoundException {
+        if (!file.exists()) {
+            invalidate(file);
+            throw new FileNotFoundException(file.getPath());
+        }
+    }
+
+    /**
+     * remove a blob from the caches, the file channel is closed once all readers released it
+     */
+    public void invalidate(File file) {
+        if (openFiles != null) {
+            openFiles.invalidate(file);
+        }
+        if (smallBlobs != null) {
+            smallBlobs.invalidate(file);
+        }
+    }
+
+    /**
+     * remove all blobs within the directory from the caches, e.g. once the shard they belong to is closed
+     */
+    public void invalidateDirectory(File directory) {
+        String prefix = directory.getAbsolutePath() + File.separator;
+        if (openFiles != null) {
+            openFiles.invalidateAll(filesWithin(openFiles.asMap().keySet(), prefix));
+        }
+        if (smallBlobs != null) {
+            smallBlobs.invalidateAll(filesWithin(smallBlobs.asMap().keySet(), prefix));
+        }
+    }
+
+    private static List<File> filesWithin(Set<File> files, String prefix) {
+        List<File> within = new ArrayList<>();
+        for (File file : files) {
+            if (file.getAbsolutePath().startsWith(prefix)) {
+                within.add(file);
+            }
+        }
+        return within;
+    }
+
+    public long openFiles() {
+        return openFiles == null ? 0L : openFiles.size();
+    }
+
+    public long openFileHits() {
+        return openFileHits.get();
+    }
+
+    public long openFileMisses() {
+        return openFileMisses.get();
+    }
+
+    public long smallBlobHits() {
+        return smallBlobHits.get();
+    }
+
+    public long smallBlobMisses() {
+        return smallBlobMisses.get();
+    }
+
+    public long smallBlobsSizeInBytes() {
+        if (smallBlobs == null) {
+            return 0L;
+        }
+        long size = 0;
+        for (byte[] content : smallBlobs.asMap().values()) {
+            size += content.length;
+        }
+        return size;
+    }
+}
@@ -22,7 +22,6 @@
 package io.crate.blob;
 
 import org.elasticsearch.action.support.replication.ShardReplicationOperationRequest;
-import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -53,7 +52,7 @@ public abstract class BlobTransferRequest<T extends ShardReplicationOperationReq
         return last;
     }
 
-    public BlobTransferRequest(String index, UUID transferId, BytesArray content, boolean last) {
+    public BlobTransferRequest(String index, UUID transferId, BytesReference content, boolean last) {
         this.index = index;
         this.transferId = transferId;
         this.content = content;
@@ -95,10 +95,28 @@ public class DigestBlob {
         md.update(bbf.slice());
     }
 
+    /**
+     * hash and write the readable bytes of the buffer without copying them,
+     * composite buffers are written with a single gathering write.
+     */
+    private long write(FileChannel channel, ChannelBuffer buffer, boolean updateDigest) throws IOException {
+        ByteBuffer[] byteBuffers = buffer.toByteBuffers();
+        if (updateDigest) {
+            for (ByteBuffer byteBuffer : byteBuffers) {
+                updateDigest(byteBuffer);
+            }
+        }
+        long readableBytes = buffer.readableBytes();
+        long written = 0;
+        while (written < readableBytes) {
+            written += channel.write(byteBuffers);
+        }
+        return written;
+    }
+
     private void addContent(ChannelBuffer buffer, boolean last) throws IOException {
         if (buffer != null) {
             int readableBytes = buffer.readableBytes();
-            ByteBuffer byteBuffer = buffer.toByteBuffer();
             if (file == null) {
                 file = createTmpFile();
             }
@@ -107,15 +125,9 @@ public class DigestBlob {
                 fileChannel = outputStream.getChannel();
             }
 
-            int written = 0;
-            do {
-                if (headLength == 0) {
-                    updateDigest(byteBuffer);
-                }
-                written += fileChannel.write(byteBuffer);
-            } while (written < readableBytes);
+            long written = write(fileChannel, buffer, headLength == 0);
             size += readableBytes;
-            buffer.readerIndex(buffer.readerIndex() + written);
+            buffer.readerIndex(buffer.readerIndex() + (int) written);
             chunks ++;
         }
         if (last) {
@@ -168,9 +180,8 @@ public class DigestBlob {
             IOUtils.closeWhileHandlingException(headFileChannel);
             headFileChannel = null;
         }
-        File newFile = container.getFile(digest);
-        file.renameTo(newFile);
-        return newFile;
+        container.moveToBlob(file, digest);
+        return container.getFile(digest);
     }
 
     public void addContent(BytesReference content, boolean last){
@@ -186,16 +197,11 @@ public class DigestBlob {
             return;
         }
 
-        int written = 0;
         ChannelBuffer channelBuffer = content.toChannelBuffer();
         int readableBytes = channelBuffer.readableBytes();
         assert readableBytes + headSize.get() <= headLength : "Got too many bytes in addToHead()";
 
-        ByteBuffer byteBuffer = channelBuffer.toByteBuffer();
-        while (written < readableBytes) {
-            updateDigest(byteBuffer);
-            written += headFileChannel.write(byteBuffer);
-        }
+        long written = write(headFileChannel, channelBuffer, true);
         headSize.addAndGet(written);
         if (headSize.get() == headLength) {
             headCatchedUpLatch.countDown();
@@ -27,23 +27,31 @@ import io.crate.blob.v2.BlobIndices;
 import io.crate.blob.v2.BlobShard;
 import io.crate.common.Hex;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.StopWatch;
+import org.apache.lucene.store.RateLimiter;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeValue;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.IndexShardClosedException;
 import org.elasticsearch.index.shard.IndexShardState;
 import org.elasticsearch.indices.recovery.*;
 import org.elasticsearch.transport.*;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashSet;
-import java.util.Set;
-import java.util.concurrent.CountDownLatch;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.*;
+import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 public class BlobRecoveryHandler {
@@ -57,6 +65,11 @@ public class BlobRecoveryHandler {
     private final BlobTransferTarget blobTransferTarget;
     private final int GET_HEAD_TIMEOUT;
 
+    private static final int MAX_IN_FLIGHT_CHUNKS = 4;
+    private static final int MAX_BATCH_FILES = 1000;
+    private final AtomicLong transferredFiles = new AtomicLong();
+    private final AtomicLong transferredBytes = new AtomicLong();
+
     public BlobRecoveryHandler(TransportService transportService,
                                RecoverySettings recoverySettings,
                                BlobTransferTarget blobTransferTarget,
@@ -77,12 +90,17 @@ public class BlobRecoveryHandler {
         }
     }
 
+    /**
+     * @return the digests of the prefix on the target or null if the target has the same digests
+     */
+    @Nullable
     private Set<BytesArray> getExistingDigestsFromTarget(byte prefix) {
         BlobStartPrefixResponse response =
             (BlobStartPrefixResponse)transportService.submitRequest(
                 request.targetNode(),
                 BlobRecoveryTarget.Actions.START_PREFIX,
-                new BlobStartPrefixSyncRequest(request.recoveryId(), request.shardId(), prefix),
+                new BlobStartPrefixSyncRequest(request.recoveryId(), request.shardId(), prefix,
+                    blobShard.blobContainer().digestsHash(prefix)),
                 TransportRequestOptions.options(),
                 new FutureTransportResponseHandler<TransportResponse>() {
                     @Override
@@ -92,6 +110,9 @@ public class BlobRecoveryHandler {
                 }
             ).txGet();
 
+        if (response.inSync) {
+            return null;
+        }
         Set<BytesArray> result = new HashSet<BytesArray>();
         for (byte[] digests : response.existingDigests) {
             result.add(new BytesArray(digests));
@@ -144,20 +165,32 @@ public class BlobRecoveryHandler {
 
         blobTransferTarget.stopRecovery();
         stopWatch.stop();
-        logger.debug("[{}][{}] recovery [phase1] to {}: took [{}]",
+        long seconds = Math.max(1, stopWatch.totalTime().seconds());
+        logger.debug("[{}][{}] recovery [phase1] to {}: took [{}], transferred [{}] files with [{}] ([{}]/s)",
             request.shardId().index().name(), request.shardId().id(), request.targetNode().getName(),
-            stopWatch.totalTime());
+            stopWatch.totalTime(), transferredFiles.get(), new ByteSizeValue(transferredBytes.get()),
+            new ByteSizeValue(transferredBytes.get() / seconds));
     }
 
     public void phase2() throws ElasticsearchException {
     }
 
     private void syncVarFiles(AtomicReference<Exception> lastException) throws InterruptedException {
+        long chunkSize = recoverySettings.fileChunkSize().bytes();
+        // bounds the number of transfers that are queued or running at the same time
+        int maxTransfers = recoverySettings.concurrentStreams() * 2;
+        Semaphore transfers = new Semaphore(maxTransfers);
 
         for (byte prefix : BlobContainer.PREFIXES) {
             // byte[1] and byte[1] have different hashCodes
             // so setA.removeAll(setB) wouldn't work with byte[], that's why BytesArray is used here
             Set<BytesArray> remoteDigests = getExistingDigestsFromTarget(prefix);
+            if (remoteDigests == null) {
+                logger.trace("[{}][{}] prefix {} is in sync on {}",
+                    request.shardId().index().name(), request.shardId().id(), prefix,
+                    request.targetNode().getName());
+                continue;
+            }
             Set<BytesArray> localDigests = new HashSet<BytesArray>();
             for (byte[] digest : blobShard.currentDigests(prefix)) {
                 localDigests.add(new BytesArray(digest));
@@ -166,27 +199,78 @@ public class BlobRecoveryHandler {
             Set<BytesArray> localButNotRemoteDigests = new HashSet<BytesArray>(localDigests);
             localButNotRemoteDigests.removeAll(remoteDigests);
 
-            final CountDownLatch latch = new CountDownLatch(localButNotRemoteDigests.size());
+            // small files are sent in batches, larger ones in chunks
+            List<File> batch = new ArrayList<>();
+            long batchSize = 0;
             for (BytesArray digestBytes : localButNotRemoteDigests) {
                 final String digest = Hex.encodeHexString(digestBytes.toBytes());
                 logger.trace("[{}][{}] start to transfer file var/{} to {}",
                     request.shardId().index().name(), request.shardId().id(), digest,
                     request.targetNode().getName());
 
-                recoverySettings.concurrentStreamPool().execute(
-                    new TransferFileRunnable(blobShard.blobContainer().getFile(digest),
-                        lastException, latch)
-                );
+                File file = blobShard.blobContainer().getFile(digest);
+                long length = file.length();
+                if (length > chunkSize) {
+                    submitTransfer(transfers, new TransferFileRunnable(file, chunkSize, lastException));
+                } else {
+                    batch.add(file);
+                    batchSize += length;
+                    if (batchSize >= chunkSize || batch.size() >= MAX_BATCH_FILES) {
+                        submitTransfer(transfers, new TransferBatchRunnable(batch, lastException));
+                        batch = new ArrayList<>();
+                        batchSize = 0;
+                    }
+                }
+            }
+            if (!batch.isEmpty()) {
+                submitTransfer(transfers, new TransferBatchRunnable(batch, lastException));
             }
-            latch.await();
 
             remoteDigests.removeAll(localDigests);
             if (!remoteDigests.isEmpty()) {
                 deleteFilesRequest(remoteDigests.toArray(new BytesArray[remoteDigests.size()]));
             }
+            if (lastException.get() != null) {
+                break;
+            }
+        }
+        // wait for all transfers to finish
+        transfers.acquire(maxTransfers);
+    }
+
+    private void submitTransfer(final Semaphore transfers, final Runnable transfer) throws InterruptedException {
+        transfers.acquire();
+        try {
+            recoverySettings.concurrentStreamPool().execute(new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        transfer.run();
+                    } finally {
+                        transfers.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            transfers.release();
+            throw e;
+        }
+    }
+
+    private void throttle(long bytes) {
+        RateLimiter rateLimiter = recoverySettings.rateLimiter();
+        if (rateLimiter != null) {
+            long throttleTimeInNanos = rateLimiter.pause(bytes);
+            shard.recoveryStats().addThrottleTime(throttleTimeInNanos);
         }
     }
 
+    private String relativePath(File file) {
+        String baseDir = blobShard.blobContainer().getBaseDirectory().getAbsolutePath();
+        String filePath = file.getAbsolutePath();
+        return filePath.substring(baseDir.length(), filePath.length());
+    }
+
     private void deleteFilesRequest(BytesArray[] digests) {
         transportService.submitRequest(
             request.targetNode(),
@@ -215,107 +299,162 @@ public class BlobRecoveryHandler {
         ).txGet();
     }
 
-    private class TransferFileRunnable implements Runnable {
+    /**
+     * sends a batch of small files within one request
+     */
+    private class TransferBatchRunnable implements Runnable {
+        private final List<File> files;
         private final AtomicReference<Exception> lastException;
-        private final String baseDir;
-        private final File file;
-        private final CountDownLatch latch;
 
-        public TransferFileRunnable(File filePath, AtomicReference<Exception> lastException,
-                                    CountDownLatch latch) {
-            this.file = filePath;
+        public TransferBatchRunnable(List<File> files, AtomicReference<Exception> lastException) {
+            this.files = files;
             this.lastException = lastException;
-            this.latch = latch;
-            this.baseDir = blobShard.blobContainer().getBaseDirectory().getAbsolutePath();
         }
 
         @Override
         public void run() {
-
             try {
-                final int BUFFER_SIZE = 4 * 4096;
+                List<String> paths = new ArrayList<>(files.size());
+                List<BytesReference> contents = new ArrayList<>(files.size());
+                long size = 0;
+                for (File file : files) {
+                    byte[] content = Files.readAllBytes(file.toPath());
+                    if (content.length == 0) {
+                        logger.warn("[{}][{}] empty file: {}",
+                            request.shardId().index().name(), request.shardId().id(), file.getName());
+                    }
+                    paths.add(relativePath(file));
+                    contents.add(new BytesArray(content));
+                    size += content.length;
+                }
+                if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
+                    throw new IndexShardClosedException(shard.shardId());
+                }
+                throttle(size);
+                logger.trace("[{}][{}] send BlobRecoveryTransferBatchRequest to {} with {} files and size {}",
+                    request.shardId().index().name(), request.shardId().id(),
+                    request.targetNode().getName(), files.size(), size);
+                transportService.submitRequest(
+                    request.targetNode(),
+                    BlobRecoveryTarget.Actions.TRANSFER_BATCH,
+                    new BlobRecoveryTransferBatchRequest(request.recoveryId(), paths, contents),
+                    TransportRequestOptions.options(),
+                    EmptyTransportResponseHandler.INSTANCE_SAME
+                ).txGet();
+                transferredFiles.addAndGet(files.size());
+                transferredBytes.addAndGet(size);
+            } catch (Exception ex) {
+                logger.error("exception while file transfer", ex);
+                lastException.set(ex);
+            }
+        }
+    }
+
+    /**
+     * sends a file in chunks which are read into a reused buffer,
+     * several chunks are in flight at the same time
+     */
+    private class TransferFileRunnable implements Runnable {
+        private final AtomicReference<Exception> lastException;
+        private final File file;
+        private final long chunkSize;
 
-                long fileSize = file.length();
+        public TransferFileRunnable(File file, long chunkSize, AtomicReference<Exception> lastException) {
+            this.file = file;
+            this.chunkSize = chunkSize;
+            this.lastException = lastException;
+        }
 
-                if (fileSize == 0) {
-                    logger.warn("[{}][{}] empty file: {}",
-                        request.shardId().index().name(), request.shardId().id(), file.getName());
+        /**
+         * reads {@code length} bytes at {@code position} into the buffer.
+         * The returned reference is only valid until the next read, requests are serialized when they are submitted.
+         */
+        private BytesReference read(FileChannel channel, byte[] buffer, long position, int length) throws IOException {
+            ByteBuffer byteBuffer = ByteBuffer.wrap(buffer, 0, length);
+            while (byteBuffer.hasRemaining()) {
+                if (channel.read(byteBuffer, position + byteBuffer.position()) < 0) {
+                    throw new EOFException(String.format(Locale.ENGLISH,
+                        "unexpected end of file %s at position %d", file, position + byteBuffer.position()));
                 }
+            }
+            return new BytesArray(buffer, 0, length);
+        }
 
-                try (FileInputStream fileStream = new FileInputStream(file)) {
-                    String filePath = file.getAbsolutePath();
-                    String relPath = filePath.substring(baseDir.length(), filePath.length());
-                    byte[] buf = new byte[BUFFER_SIZE];
-                    int bytesRead = fileStream.read(buf, 0, BUFFER_SIZE);
-                    long bytesReadTotal = 0;
-                    BytesArray content = new BytesArray(buf, 0, bytesRead);
-                    BlobRecoveryStartTransferRequest startTransferRequest =
-                        new BlobRecoveryStartTransferRequest(request.recoveryId(), relPath, content,
-                            fileSize
-                        );
-
-                    if (bytesRead > 0) {
-                        bytesReadTotal += bytesRead;
-
-                        logger.trace("[{}][{}] send BlobRecoveryStartTransferRequest to {} for file {} with size {}",
-                            request.shardId().index().name(), request.shardId().id(),
-                            request.targetNode().getName(),
-                            relPath,
-                            fileSize
-                        );
-                        transportService.submitRequest(
-                            request.targetNode(),
-                            BlobRecoveryTarget.Actions.START_TRANSFER,
-                            startTransferRequest,
-                            TransportRequestOptions.options(),
-                            EmptyTransportResponseHandler.INSTANCE_SAME
-                        ).txGet();
-
-                        boolean isLast = false;
-                        boolean sentChunks = false;
-                        while ((bytesRead = fileStream.read(buf, 0, BUFFER_SIZE)) > 0) {
-
-                            sentChunks = true;
-                            bytesReadTotal += bytesRead;
-
-                            if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
-                                throw new IndexShardClosedException(shard.shardId());
-                            }
-                            if (bytesReadTotal == fileSize) {
-                                isLast = true;
-                            }
-                            content = new BytesArray(buf, 0, bytesRead);
-
-                            transportService.submitRequest(request.targetNode(),
-                                BlobRecoveryTarget.Actions.TRANSFER_CHUNK,
-                                new BlobRecoveryChunkRequest(request.recoveryId(),
-                                    startTransferRequest.transferId(), content, isLast),
-                                TransportRequestOptions.options(),
-                                EmptyTransportResponseHandler.INSTANCE_SAME
-                            ).txGet();
-                        }
-
-                        if (!isLast && sentChunks) {
-                            logger.error("Sending isLast because it wasn't sent before for {}", relPath);
-                            transportService.submitRequest(request.targetNode(),
-                                BlobRecoveryTarget.Actions.TRANSFER_CHUNK,
-                                new BlobRecoveryChunkRequest(request.recoveryId(),
-                                    startTransferRequest.transferId(), BytesArray.EMPTY, true),
-                                TransportRequestOptions.options(),
-                                EmptyTransportResponseHandler.INSTANCE_SAME
-                            ).txGet();
-                        }
-                    }
+        /**
+         * waits for the responses of the chunks which are still in flight so that a failed transfer
+         * doesn't return while the target still receives chunks of it
+         */
+        private void awaitInFlight(Deque<TransportFuture<TransportResponse.Empty>> inFlight) {
+            TransportFuture<TransportResponse.Empty> future;
+            while ((future = inFlight.poll()) != null) {
+                try {
+                    future.txGet();
+                } catch (Exception e) {
+                    logger.trace("chunk of file {} in flight failed", e, file);
+                }
+            }
+        }
 
-                    logger.trace("[{}][{}] completed to transfer file {} to {}",
-                        request.shardId().index().name(), request.shardId().id(), file.getName(),
-                        request.targetNode().getName());
+        @Override
+        public void run() {
+            Deque<TransportFuture<TransportResponse.Empty>> inFlight = new ArrayDeque<>(MAX_IN_FLIGHT_CHUNKS);
+            try (FileChannel channel = new FileInputStream(file).getChannel()) {
+                long fileSize = channel.size();
+                String relPath = relativePath(file);
+
+                byte[] buffer = new byte[(int) Math.min(chunkSize, fileSize)];
+                BytesReference content = read(channel, buffer, 0, buffer.length);
+                BlobRecoveryStartTransferRequest startTransferRequest =
+                    new BlobRecoveryStartTransferRequest(request.recoveryId(), relPath, content, fileSize);
+                throttle(content.length());
+
+                logger.trace("[{}][{}] send BlobRecoveryStartTransferRequest to {} for file {} with size {}",
+                    request.shardId().index().name(), request.shardId().id(),
+                    request.targetNode().getName(),
+                    relPath,
+                    fileSize
+                );
+                transportService.submitRequest(
+                    request.targetNode(),
+                    BlobRecoveryTarget.Actions.START_TRANSFER,
+                    startTransferRequest,
+                    TransportRequestOptions.options(),
+                    EmptyTransportResponseHandler.INSTANCE_SAME
+                ).txGet();
+
+                int length;
+                for (long position = content.length(); position < fileSize; position += length) {
+                    if (shard.state() == IndexShardState.CLOSED) { // check if the shard got closed on us
+                        throw new IndexShardClosedException(shard.shardId());
+                    }
+                    length = (int) Math.min(buffer.length, fileSize - position);
+                    BytesReference chunk = read(channel, buffer, position, length);
+                    throttle(length);
+                    if (inFlight.size() >= MAX_IN_FLIGHT_CHUNKS) {
+                        inFlight.poll().txGet();
+                    }
+                    inFlight.add(transportService.submitRequest(request.targetNode(),
+                        BlobRecoveryTarget.Actions.TRANSFER_CHUNK,
+                        new BlobRecoveryChunkRequest(request.recoveryId(),
+                            startTransferRequest.transferId(), position, chunk),
+                        TransportRequestOptions.options(),
+                        EmptyTransportResponseHandler.INSTANCE_SAME
+                    ));
                 }
-            } catch (IOException ex) {
+                TransportFuture<TransportResponse.Empty> future;
+                while ((future = inFlight.poll()) != null) {
+                    future.txGet();
+                }
+                transferredFiles.incrementAndGet();
+                transferredBytes.addAndGet(fileSize);
+
+                logger.trace("[{}][{}] completed to transfer file {} to {}",
+                    request.shardId().index().name(), request.shardId().id(), file.getName(),
+                    request.targetNode().getName());
+            } catch (Exception ex) {
                 logger.error("exception while file transfer", ex);
                 lastException.set(ex);
-            } finally {
-                latch.countDown();
+                awaitInFlight(inFlight);
             }
         }
     }
@@ -21,20 +21,22 @@
 
 package io.crate.blob.v2;
 
-import com.google.common.base.Throwables;
 import io.crate.blob.BlobContainer;
 import io.crate.blob.BlobEnvironment;
+import io.crate.blob.BlobReadCache;
 import io.crate.blob.stats.BlobStats;
 import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.index.settings.IndexSettings;
 import org.elasticsearch.index.shard.AbstractIndexShardComponent;
 import org.elasticsearch.index.shard.IndexShard;
 import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesLifecycle;
+import org.elasticsearch.threadpool.ThreadPool;
 
 import java.io.File;
-import java.io.IOException;
 
 public class BlobShard extends AbstractIndexShardComponent {
 
@@ -44,20 +46,37 @@ public class BlobShard extends AbstractIndexShardComponent {
     @Inject
     protected BlobShard(ShardId shardId, @IndexSettings Settings indexSettings,
                         BlobEnvironment blobEnvironment,
-                        IndexShard indexShard) {
+                        IndexShard indexShard,
+                        final IndicesLifecycle indicesLifecycle,
+                        ThreadPool threadPool,
+                        final BlobReadCache readCache) {
         super(shardId, indexSettings);
         this.indexShard = indexShard;
         File blobDir = blobDir(blobEnvironment);
         logger.info("creating BlobContainer at {}", blobDir);
-        this.blobContainer = new BlobContainer(blobDir);
+        this.blobContainer = new BlobContainer(blobDir, threadPool.generic(), readCache);
+        blobContainer.rebuildIfNeeded(threadPool.generic());
+
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void beforeIndexShardClosed(ShardId closedShardId, @Nullable IndexShard indexShard,
+                                               @IndexSettings Settings indexSettings) {
+                if (shardId().equals(closedShardId)) {
+                    indicesLifecycle.removeListener(this);
+                    blobContainer.close();
+                    // the shard might be removed or relocated, so its blobs must not be served from the cache anymore
+                    readCache.invalidateDirectory(blobContainer.getBaseDirectory());
+                }
+            }
+        });
     }
 
     public byte[][] currentDigests(byte prefix) {
-        return blobContainer.cleanAndReturnDigests(prefix);
+        return blobContainer.digests(prefix);
     }
 
     public boolean delete(String digest) {
-        return blobContainer.getFile(digest).delete();
+        return blobContainer.deleteBlob(digest);
     }
 
     public BlobContainer blobContainer() {
@@ -68,24 +87,18 @@ public class BlobShard extends AbstractIndexShardComponent {
         return indexShard.routingEntry();
     }
 
+    /**
+     * the blob count and size are served from counters that are maintained on commit and delete.
+     * If they couldn't be loaded from the checkpoint of a clean shutdown they are rebuilt in the
+     * background and cover only a part of the blobs until the rebuild has finished.
+     */
     public BlobStats blobStats() {
         final BlobStats stats = new BlobStats();
 
         stats.location(blobContainer().getBaseDirectory().getAbsolutePath());
         stats.availableSpace(blobContainer().getBaseDirectory().getFreeSpace());
-        try {
-            blobContainer().walkFiles(null, new BlobContainer.FileVisitor() {
-                @Override
-                public boolean visit(File file) {
-                    stats.totalUsage(stats.totalUsage() + file.length());
-                    stats.count(stats.count() + 1);
-                    return true;
-                }
-            });
-        } catch (IOException e) {
-            logger.error("error getting blob stats", e);
-            Throwables.propagate(e);
-        }
+        stats.count(blobContainer.blobsCount());
+        stats.totalUsage(blobContainer.blobsSize());
         return stats;
     }
 
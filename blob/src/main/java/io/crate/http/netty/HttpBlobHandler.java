@@ -21,6 +21,7 @@
 
 package io.crate.http.netty;
 
+import io.crate.blob.BlobReadCache;
 import io.crate.blob.BlobService;
 import io.crate.blob.DigestBlob;
 import io.crate.blob.RemoteDigestBlob;
@@ -40,8 +41,8 @@ import org.jboss.netty.channel.*;
 import org.jboss.netty.handler.codec.http.*;
 import org.jboss.netty.util.CharsetUtil;
 
+import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.nio.channels.ClosedChannelException;
@@ -51,6 +52,7 @@ import java.util.regex.Pattern;
 import static org.jboss.netty.channel.Channels.succeededFuture;
 import static org.jboss.netty.channel.Channels.write;
 import static org.jboss.netty.handler.codec.http.HttpHeaders.Names.*;
+import static org.jboss.netty.handler.codec.http.HttpResponseStatus.NOT_MODIFIED;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.OK;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.PARTIAL_CONTENT;
 import static org.jboss.netty.handler.codec.http.HttpResponseStatus.TOO_MANY_REQUESTS;
@@ -69,15 +71,17 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
 
     private final BlobService blobService;
     private final BlobIndices blobIndices;
+    private final BlobReadCache readCache;
     private HttpMessage currentMessage;
     private ChannelHandlerContext ctx;
     private static final Pattern contentRangePattern = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
 
     private RemoteDigestBlob digestBlob;
 
-    public HttpBlobHandler(BlobService blobService, BlobIndices blobIndices) {
+    public HttpBlobHandler(BlobService blobService, BlobIndices blobIndices, BlobReadCache readCache) {
         this.blobService = blobService;
         this.blobIndices = blobIndices;
+        this.readCache = readCache;
     }
 
 
@@ -257,9 +261,13 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
             simpleResponse(HttpResponseStatus.NOT_FOUND, null);
             return;
         }
+        if (notModified(request, digest)) {
+            notModifiedResponse(request, digest);
+            return;
+        }
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
         HttpHeaders.setContentLength(response, length);
-        setDefaultGetHeaders(response);
+        setDefaultGetHeaders(response, digest);
         ChannelFuture cf = ctx.getChannel().write(response);
         if (!HttpHeaders.isKeepAlive(request)) {
             cf.addListener(ChannelFutureListener.CLOSE);
@@ -267,6 +275,13 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
     }
 
     private void get(HttpRequest request, String index, final String digest) throws IOException {
+        if (notModified(request, digest)) {
+            if (!localBlobShard(index, digest).blobContainer().getFile(digest).exists()) {
+                throw new DigestNotFoundException(digest);
+            }
+            notModifiedResponse(request, digest);
+            return;
+        }
         String range = request.headers().get(RANGE);
         if (range != null) {
             partialContentResponse(range, request, index, digest);
@@ -279,6 +294,48 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         return blobIndices.localBlobShard(index, digest);
     }
 
+    /**
+     * blobs are immutable, so a client which already has a blob with the requested digest
+     * doesn't need its content again
+     */
+    private static boolean notModified(HttpRequest request, String digest) {
+        String ifNoneMatch = request.headers().get(IF_NONE_MATCH);
+        if (ifNoneMatch == null) {
+            return false;
+        }
+        for (String tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.startsWith("W/")) {
+                tag = tag.substring(2);
+            }
+            if (tag.equals("*") || tag.equals(etag(digest)) || tag.equals(digest)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void notModifiedResponse(HttpRequest request, String digest) {
+        HttpResponse response = new DefaultHttpResponse(HTTP_1_1, NOT_MODIFIED);
+        setDefaultGetHeaders(response, digest);
+        ChannelFuture cf = ctx.getChannel().write(response);
+        if (!HttpHeaders.isKeepAlive(request)) {
+            cf.addListener(ChannelFutureListener.CLOSE);
+        }
+    }
+
+    private static String etag(String digest) {
+        return "\"" + digest + "\"";
+    }
+
+    private BlobReadCache.OpenFile openFile(BlobShard blobShard, String digest) throws IOException {
+        try {
+            return readCache.open(blobShard.blobContainer().getFile(digest));
+        } catch (FileNotFoundException e) {
+            throw new DigestNotFoundException(digest);
+        }
+    }
+
     private void partialContentResponse(String range, HttpRequest request, String index, final String digest)
         throws  IOException
     {
@@ -291,34 +348,41 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
         }
         BlobShard blobShard = localBlobShard(index, digest);
 
-        final RandomAccessFile raf = blobShard.blobContainer().getRandomAccessFile(digest);
+        final BlobReadCache.OpenFile openFile = openFile(blobShard, digest);
+        final long length;
+        try {
+            length = openFile.channel().size();
+        } catch (IOException e) {
+            openFile.release();
+            throw e;
+        }
         long start;
         long end;
         try {
             start = Long.parseLong(matcher.group(1));
-            if (start > raf.length()) {
+            if (start > length) {
                 logger.warn("416 Requested Range not satisfiable");
                 simpleResponse(HttpResponseStatus.REQUESTED_RANGE_NOT_SATISFIABLE, null);
-                raf.close();
+                openFile.release();
                 return;
             }
-            end = raf.length() - 1 ;
+            end = length - 1 ;
             if (!matcher.group(2).equals("")) {
                 end = Long.parseLong(matcher.group(2));
             }
         } catch (NumberFormatException ex) {
             logger.error("Couldn't parse Range Header", ex);
             start = 0;
-            end = raf.length();
+            end = length;
         }
 
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, PARTIAL_CONTENT);
         HttpHeaders.setContentLength(response, end - start + 1);
-        response.headers().set(CONTENT_RANGE, "bytes " + start + "-" + end + "/" + raf.length());
-        setDefaultGetHeaders(response);
+        response.headers().set(CONTENT_RANGE, "bytes " + start + "-" + end + "/" + length);
+        setDefaultGetHeaders(response, digest);
 
         ctx.getChannel().write(response);
-        ChannelFuture writeFuture = transferFile(digest, raf, start, end - start + 1);
+        ChannelFuture writeFuture = transferFile(digest, openFile, start, end - start + 1);
         if (!HttpHeaders.isKeepAlive(request)) {
             writeFuture.addListener(ChannelFutureListener.CLOSE);
         }
@@ -326,22 +390,44 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
 
     private void fullContentResponse(HttpRequest request, String index, final String digest) throws  IOException {
         BlobShard blobShard = localBlobShard(index, digest);
-        final RandomAccessFile raf = blobShard.blobContainer().getRandomAccessFile(digest);
+        byte[] content;
+        try {
+            content = readCache.smallBlob(blobShard.blobContainer().getFile(digest));
+        } catch (FileNotFoundException e) {
+            throw new DigestNotFoundException(digest);
+        }
         HttpResponse response = new DefaultHttpResponse(HTTP_1_1, OK);
-        HttpHeaders.setContentLength(response, raf.length());
-        setDefaultGetHeaders(response);
-        logger.trace("HttpResponse: {}", response);
-        ctx.getChannel().write(response);
-        ChannelFuture writeFuture = transferFile(digest, raf, 0, raf.length());
+        setDefaultGetHeaders(response, digest);
+        ChannelFuture writeFuture;
+        if (content != null) {
+            HttpHeaders.setContentLength(response, content.length);
+            response.setContent(ChannelBuffers.wrappedBuffer(content));
+            logger.trace("HttpResponse: {}", response);
+            writeFuture = ctx.getChannel().write(response);
+        } else {
+            final BlobReadCache.OpenFile openFile = openFile(blobShard, digest);
+            long length;
+            try {
+                length = openFile.channel().size();
+            } catch (IOException e) {
+                openFile.release();
+                throw e;
+            }
+            HttpHeaders.setContentLength(response, length);
+            logger.trace("HttpResponse: {}", response);
+            ctx.getChannel().write(response);
+            writeFuture = transferFile(digest, openFile, 0, length);
+        }
         if (!HttpHeaders.isKeepAlive(request)) {
             writeFuture.addListener(ChannelFutureListener.CLOSE);
         }
     }
 
-    private ChannelFuture transferFile(final String digest, RandomAccessFile raf, long position, long count)
-        throws IOException
+    private ChannelFuture transferFile(final String digest, final BlobReadCache.OpenFile openFile,
+                                       long position, long count)
     {
-        final FileRegion region = new DefaultFileRegion(raf.getChannel(), position, count);
+        // the channel is shared with other requests, it is closed by the read cache
+        final FileRegion region = new DefaultFileRegion(openFile.channel(), position, count, false);
         ChannelFuture writeFuture = ctx.getChannel().write(region);
         writeFuture.addListener(new ChannelFutureProgressListener() {
             @Override
@@ -351,15 +437,16 @@ public class HttpBlobHandler extends SimpleChannelUpstreamHandler implements
 
             @Override
             public void operationComplete(ChannelFuture future) throws Exception {
-                region.releaseExternalResources();
+                openFile.release();
                 logger.trace("file transfer completed");
             }
         });
         return writeFuture;
     }
 
-    private void setDefaultGetHeaders(HttpResponse response) {
+    private void setDefaultGetHeaders(HttpResponse response, String digest) {
         response.headers().set(ACCEPT_RANGES, "bytes");
+        response.headers().set(ETAG, etag(digest));
         response.headers().set(EXPIRES, EXPIRES_VALUE);
         response.headers().set(CACHE_CONTROL, CACHE_CONTROL_VALUE);
     }
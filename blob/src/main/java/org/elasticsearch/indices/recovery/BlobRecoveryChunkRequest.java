@@ -21,7 +21,6 @@
 
 package org.elasticsearch.indices.recovery;
 
-import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -31,18 +30,22 @@ import java.io.IOException;
 public class BlobRecoveryChunkRequest extends BlobRecoveryRequest {
 
     private long transferId;
+    private long position;
     private BytesReference content;
-    private boolean isLast;
 
     public BlobRecoveryChunkRequest() {
 
     }
 
-    public BlobRecoveryChunkRequest(long requestId, long transferId, BytesArray content, boolean isLast) {
+    /**
+     * chunks of a transfer may arrive in any order, the transfer is complete once
+     * all bytes up to the size sent with the {@link BlobRecoveryStartTransferRequest} have been received
+     */
+    public BlobRecoveryChunkRequest(long requestId, long transferId, long position, BytesReference content) {
         super(requestId);
         this.transferId = transferId;
+        this.position = position;
         this.content = content;
-        this.isLast = isLast;
     }
 
     public BytesReference content() {
@@ -53,23 +56,23 @@ public class BlobRecoveryChunkRequest extends BlobRecoveryRequest {
         return transferId;
     }
 
-    public boolean isLast() {
-        return isLast;
+    public long position() {
+        return position;
     }
 
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         transferId = in.readVLong();
+        position = in.readVLong();
         content = in.readBytesReference();
-        isLast = in.readBoolean();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeVLong(transferId);
+        out.writeVLong(position);
         out.writeBytesReference(content);
-        out.writeBoolean(isLast);
     }
 }
@@ -21,7 +21,6 @@
 
 package org.elasticsearch.indices.recovery;
 
-import org.elasticsearch.common.bytes.BytesArray;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
@@ -31,7 +30,7 @@ import java.util.concurrent.atomic.AtomicLong;
 
 public class BlobRecoveryStartTransferRequest extends BlobRecoveryRequest {
 
-    private static final AtomicLong transferIdGenerator = new AtomicLong();
+    static final AtomicLong transferIdGenerator = new AtomicLong();
     private String path;
     private BytesReference content;
     private long size;
@@ -40,7 +39,7 @@ public class BlobRecoveryStartTransferRequest extends BlobRecoveryRequest {
     public BlobRecoveryStartTransferRequest() {
     }
 
-    public BlobRecoveryStartTransferRequest(long recoveryId, String path, BytesArray content, long size) {
+    public BlobRecoveryStartTransferRequest(long recoveryId, String path, BytesReference content, long size) {
         super(recoveryId);
         this.path = path;
         this.content = content;
@@ -54,6 +54,13 @@ public class BlobRecoveryStatus {
         return indexRecoveryStatus.shardId();
     }
 
+    /**
+     * file details and recovered bytes of the transferred blobs are reported here
+     */
+    public RecoveryState.Index recoveryIndexState() {
+        return indexRecoveryStatus.state().getIndex();
+    }
+
     public ConcurrentMapLong<BlobRecoveryTransferStatus> onGoingTransfers() {
         return onGoingTransfers;
     }
@@ -21,10 +21,12 @@
 
 package org.elasticsearch.indices.recovery;
 
+import io.crate.blob.BlobContainer;
 import io.crate.blob.BlobWriteException;
 import io.crate.blob.exceptions.IllegalBlobRecoveryStateException;
 import io.crate.blob.v2.BlobShard;
 import io.crate.common.Hex;
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.component.AbstractComponent;
 import org.elasticsearch.common.inject.Inject;
@@ -40,6 +42,10 @@ import org.elasticsearch.transport.*;
 
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
 
 
 public class BlobRecoveryTarget extends AbstractComponent {
@@ -83,6 +89,7 @@ public class BlobRecoveryTarget extends AbstractComponent {
         public static final String START_PREFIX = "crate/blob/shard/recovery/start_prefix";
         public static final String TRANSFER_CHUNK = "crate/blob/shard/recovery/transfer_chunk";
         public static final String START_TRANSFER = "crate/blob/shard/recovery/start_transfer";
+        public static final String TRANSFER_BATCH = "crate/blob/shard/recovery/transfer_batch";
     }
 
     @Inject
@@ -96,6 +103,7 @@ public class BlobRecoveryTarget extends AbstractComponent {
         transportService.registerHandler(Actions.START_PREFIX, new StartPrefixSyncRequestHandler());
         transportService.registerHandler(Actions.TRANSFER_CHUNK, new TransferChunkRequestHandler());
         transportService.registerHandler(Actions.START_TRANSFER, new StartTransferRequestHandler());
+        transportService.registerHandler(Actions.TRANSFER_BATCH, new TransferBatchRequestHandler());
         transportService.registerHandler(Actions.DELETE_FILE, new DeleteFileRequestHandler());
         transportService.registerHandler(Actions.FINALIZE_RECOVERY, new FinalizeRecoveryRequestHandler());
     }
@@ -167,16 +175,12 @@ public class BlobRecoveryTarget extends AbstractComponent {
                 throw new IndexShardClosedException(onGoingRecovery.shardId());
             }
 
-            BytesReference content = request.content();
-            if (!content.hasArray()) {
-                content = content.toBytesArray();
-            }
-            transferStatus.outputStream().write(
-                content.array(), content.arrayOffset(), content.length()
-            );
+            boolean complete = transferStatus.write(request.content(), request.position());
+            onGoingRecovery.recoveryIndexState().addRecoveredBytesToFile(
+                transferStatus.targetPath(), request.content().length());
 
-            if (request.isLast()) {
-                transferStatus.outputStream().close();
+            if (complete) {
+                transferStatus.channel().close();
                 File source = new File(shard.blobContainer().getBaseDirectory(),
                     transferStatus.sourcePath()
                 );
@@ -189,7 +193,7 @@ public class BlobRecoveryTarget extends AbstractComponent {
                     // this might happen on bad timing while recovering/relocating.
                     // noop
                 } else {
-                    if (!source.renameTo(target)) {
+                    if (!shard.blobContainer().moveToBlob(source, target.getName())) {
                         throw new BlobWriteException(target.getName(), target.length(), null);
                     }
                 }
@@ -221,7 +225,15 @@ public class BlobRecoveryTarget extends AbstractComponent {
                 throw new IndexShardClosedException(status.shardId());
             }
             BlobStartPrefixResponse response = new BlobStartPrefixResponse();
-            response.existingDigests = status.blobShard.currentDigests(request.prefix());
+            BlobContainer blobContainer = status.blobShard.blobContainer();
+            byte[] sourceHash = request.digestsHash();
+            if (sourceHash != null && Arrays.equals(sourceHash, blobContainer.digestsHash(request.prefix()))) {
+                response.inSync = true;
+                response.existingDigests = new byte[0][];
+            } else {
+                // list the directory to also clean up leftovers of interrupted recoveries
+                response.existingDigests = blobContainer.cleanAndReturnDigests(request.prefix());
+            }
             channel.sendResponse(response);
         }
     }
@@ -249,31 +261,18 @@ public class BlobRecoveryTarget extends AbstractComponent {
 
             BlobShard shard = status.blobShard;
             String tmpPath = request.path() + "." + request.transferId();
-            FileOutputStream outputStream = new FileOutputStream(
-                new File(shard.blobContainer().getBaseDirectory(), tmpPath)
-            );
-
-            BytesReference content = request.content();
-            if (!content.hasArray()) {
-                content = content.toBytesArray();
-            }
-            outputStream.write(content.array(), content.arrayOffset(), content.length());
+            status.recoveryIndexState().addFileDetail(request.path(), request.size(), false);
 
             if (request.size() == request.content().length()) {  // start request contains the whole file.
-                outputStream.close();
-                File source = new File(shard.blobContainer().getBaseDirectory(), tmpPath);
-                File target = new File(shard.blobContainer().getBaseDirectory(), request.path());
-                if (!target.exists()) {
-                    if (!source.renameTo(target)) {
-                        throw new IllegalBlobRecoveryStateException(
-                            "couldn't rename file to " + request.path()
-                        );
-                    }
-                }
+                writeFile(shard, status, tmpPath, request.path(), request.content());
             } else {
-                BlobRecoveryTransferStatus transferStatus= new BlobRecoveryTransferStatus(
-                    request.transferId(), outputStream, tmpPath, request.path()
+                FileChannel fileChannel = new RandomAccessFile(
+                    new File(shard.blobContainer().getBaseDirectory(), tmpPath), "rw").getChannel();
+                BlobRecoveryTransferStatus transferStatus = new BlobRecoveryTransferStatus(
+                    request.transferId(), fileChannel, tmpPath, request.path(), request.size()
                 );
+                transferStatus.write(request.content(), 0);
+                status.recoveryIndexState().addRecoveredBytesToFile(request.path(), request.content().length());
                 status.onGoingTransfers().put(request.transferId(), transferStatus);
             }
 
@@ -281,6 +280,57 @@ public class BlobRecoveryTarget extends AbstractComponent {
         }
     }
 
+    private class TransferBatchRequestHandler extends BaseHandler<BlobRecoveryTransferBatchRequest> {
+
+        @Override
+        public BlobRecoveryTransferBatchRequest newInstance() {
+            return new BlobRecoveryTransferBatchRequest();
+        }
+
+        @Override
+        public void messageReceived(BlobRecoveryTransferBatchRequest request, TransportChannel channel) throws Exception {
+            BlobRecoveryStatus status = onGoingRecoveries.get(request.recoveryId());
+            logger.debug("received BlobRecoveryTransferBatchRequest with {} files", request.paths().size());
+            if (status == null) {
+                throw new IllegalBlobRecoveryStateException("Could not retrieve onGoingRecoveryStatus");
+            }
+            if (status.canceled()) {
+                throw new IndexShardClosedException(status.shardId());
+            }
+
+            // the batch is reported as one file, reporting every small blob would bloat the recovery state
+            String batchName = "batch." + request.transferId();
+            status.recoveryIndexState().addFileDetail(batchName, request.size(), false);
+            for (int i = 0; i < request.paths().size(); i++) {
+                String path = request.paths().get(i);
+                writeFile(status.blobShard, null, path + "." + request.transferId(), path, request.contents().get(i));
+            }
+            status.recoveryIndexState().addRecoveredBytesToFile(batchName, request.size());
+
+            channel.sendResponse(TransportResponse.Empty.INSTANCE);
+        }
+    }
+
+    /**
+     * write a complete file and move it into the blob directory unless it exists already
+     */
+    private void writeFile(BlobShard shard, @Nullable BlobRecoveryStatus status,
+                           String tmpPath, String path, BytesReference content) throws IOException {
+        File source = new File(shard.blobContainer().getBaseDirectory(), tmpPath);
+        try (FileOutputStream outputStream = new FileOutputStream(source)) {
+            content.writeTo(outputStream);
+        }
+        if (status != null) {
+            status.recoveryIndexState().addRecoveredBytesToFile(path, content.length());
+        }
+        File target = new File(shard.blobContainer().getBaseDirectory(), path);
+        if (target.exists()) {
+            source.delete();
+        } else if (!shard.blobContainer().moveToBlob(source, target.getName())) {
+            throw new IllegalBlobRecoveryStateException("couldn't rename file to " + path);
+        }
+    }
+
     private class DeleteFileRequestHandler extends BaseHandler<BlobRecoveryDeleteRequest> {
         @Override
         public BlobRecoveryDeleteRequest newInstance() {
@@ -313,7 +363,7 @@ public class BlobRecoveryTarget extends AbstractComponent {
             BlobRecoveryStatus status = onGoingRecoveries.get(request.recoveryId);
 
             for (BlobRecoveryTransferStatus transferStatus : status.onGoingTransfers().values()) {
-                if (transferStatus.outputStream().getChannel().isOpen()) {
+                if (transferStatus.channel().isOpen()) {
                     throw new IllegalBlobRecoveryStateException(
                         "File channel was left open for "
                     );
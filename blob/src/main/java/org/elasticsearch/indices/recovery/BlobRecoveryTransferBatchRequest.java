@@ -0,0 +1,96 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * transfers a batch of small files in one request
+ */
+public class BlobRecoveryTransferBatchRequest extends BlobRecoveryRequest {
+
+    private long transferId;
+    private List<String> paths;
+    private List<BytesReference> contents;
+
+    public BlobRecoveryTransferBatchRequest() {
+    }
+
+    public BlobRecoveryTransferBatchRequest(long recoveryId, List<String> paths, List<BytesReference> contents) {
+        super(recoveryId);
+        assert paths.size() == contents.size() : "each path requires a content";
+        this.paths = paths;
+        this.contents = contents;
+        this.transferId = BlobRecoveryStartTransferRequest.transferIdGenerator.incrementAndGet();
+    }
+
+    public long transferId() {
+        return transferId;
+    }
+
+    public List<String> paths() {
+        return paths;
+    }
+
+    public List<BytesReference> contents() {
+        return contents;
+    }
+
+    public long size() {
+        long size = 0;
+        for (BytesReference content : contents) {
+            size += content.length();
+        }
+        return size;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        transferId = in.readVLong();
+        int numFiles = in.readVInt();
+        paths = new ArrayList<>(numFiles);
+        contents = new ArrayList<>(numFiles);
+        for (int i = 0; i < numFiles; i++) {
+            paths.add(in.readString());
+            contents.add(in.readBytesReference());
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVLong(transferId);
+        out.writeVInt(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            out.writeString(paths.get(i));
+            out.writeBytesReference(contents.get(i));
+        }
+    }
+}
@@ -21,22 +21,43 @@
 
 package org.elasticsearch.indices.recovery;
 
-import java.io.FileOutputStream;
-import java.io.RandomAccessFile;
+import org.elasticsearch.common.bytes.BytesReference;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.atomic.AtomicLong;
 
 public class BlobRecoveryTransferStatus {
 
     private final long transferId;
-    private final FileOutputStream outputStream;
+    private final FileChannel channel;
     private final String sourcePath;
     private final String targetPath;
+    private final long size;
+    private final AtomicLong bytesWritten = new AtomicLong();
 
-    public BlobRecoveryTransferStatus(long transferId, FileOutputStream outputStream,
-                                      String sourcePath, String targetPath) {
+    public BlobRecoveryTransferStatus(long transferId, FileChannel channel,
+                                      String sourcePath, String targetPath, long size) {
         this.transferId = transferId;
-        this.outputStream = outputStream;
+        this.channel = channel;
         this.sourcePath = sourcePath;
         this.targetPath = targetPath;
+        this.size = size;
+    }
+
+    /**
+     * write content at the given position, chunks may be written concurrently and in any order.
+     *
+     * @return true if this was the last missing chunk and the file is complete
+     */
+    public boolean write(BytesReference content, long position) throws IOException {
+        ByteBuffer buffer = content.toChannelBuffer().toByteBuffer();
+        long pos = position;
+        while (buffer.hasRemaining()) {
+            pos += channel.write(buffer, pos);
+        }
+        return bytesWritten.addAndGet(content.length()) == size;
     }
 
     public String sourcePath() {
@@ -47,8 +68,8 @@ public class BlobRecoveryTransferStatus {
         return targetPath;
     }
 
-    public FileOutputStream outputStream() {
-        return outputStream;
+    public FileChannel channel() {
+        return channel;
     }
 
     public long transferId() {
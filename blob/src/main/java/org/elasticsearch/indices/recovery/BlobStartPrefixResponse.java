@@ -30,9 +30,16 @@ import java.io.IOException;
 public class BlobStartPrefixResponse extends TransportResponse {
     public byte[][] existingDigests;
 
+    /**
+     * true if the target contains exactly the same digests as the source,
+     * existingDigests is empty in that case
+     */
+    public boolean inSync = false;
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
+        inSync = in.readBoolean();
         int size = in.readInt();
         existingDigests = new byte[size][20];
         for (int i=0; i<size; i++){
@@ -43,6 +50,7 @@ public class BlobStartPrefixResponse extends TransportResponse {
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
+        out.writeBoolean(inSync);
         out.writeInt(existingDigests.length);
         for (byte[] digest: existingDigests){
             out.write(digest);
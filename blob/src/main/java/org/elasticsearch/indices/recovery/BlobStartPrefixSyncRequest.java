@@ -21,6 +21,7 @@
 
 package org.elasticsearch.indices.recovery;
 
+import org.elasticsearch.common.Nullable;
 import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 import org.elasticsearch.index.shard.ShardId;
@@ -31,25 +32,40 @@ public class BlobStartPrefixSyncRequest extends BlobRecoveryRequest {
 
     private byte prefix;
     private ShardId shardId;
+    private byte[] digestsHash;
 
     public BlobStartPrefixSyncRequest() {
     }
 
-    public BlobStartPrefixSyncRequest(long recoveryId, ShardId shardId, byte prefix) {
+    public BlobStartPrefixSyncRequest(long recoveryId, ShardId shardId, byte prefix,
+                                      @Nullable byte[] digestsHash) {
         super(recoveryId);
         this.prefix = prefix;
         this.shardId = shardId;
+        this.digestsHash = digestsHash;
     }
 
     public byte prefix() {
         return prefix;
     }
 
+    /**
+     * hash over the digests of the prefix on the source, null if the source has no digest index for it
+     */
+    @Nullable
+    public byte[] digestsHash() {
+        return digestsHash;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         prefix = in.readByte();
         ShardId.readShardId(in);
+        if (in.readBoolean()) {
+            digestsHash = new byte[in.readVInt()];
+            in.readBytes(digestsHash, 0, digestsHash.length);
+        }
     }
 
     @Override
@@ -57,6 +73,11 @@ public class BlobStartPrefixSyncRequest extends BlobRecoveryRequest {
         super.writeTo(out);
         out.writeByte(prefix);
         shardId.writeTo(out);
+        out.writeBoolean(digestsHash != null);
+        if (digestsHash != null) {
+            out.writeVInt(digestsHash.length);
+            out.writeBytes(digestsHash);
+        }
     }
 
 }
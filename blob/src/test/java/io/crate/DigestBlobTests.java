@@ -25,6 +25,9 @@ import io.crate.blob.BlobContainer;
 import io.crate.blob.DigestBlob;
 import io.crate.test.integration.CrateUnitTest;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.ChannelBufferBytesReference;
+import org.jboss.netty.buffer.ChannelBuffer;
+import org.jboss.netty.buffer.ChannelBuffers;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -167,4 +170,22 @@ public class DigestBlobTests extends CrateUnitTest {
         assertTrue(file.delete());
     }
 
+    @Test
+    public void testAddCompositeContentWithOffsets() throws IOException {
+        BlobContainer container = new BlobContainer(tmpDir.toFile());
+        DigestBlob digestBlob = container.createBlob("417de3231e23dcd6d224ff60918024bc6c59aa58", UUID.randomUUID());
+
+        // buffers with leading bytes that must be skipped and a composite buffer
+        ChannelBuffer head = ChannelBuffers.wrappedBuffer("xxABCDE".getBytes());
+        head.readerIndex(2);
+        digestBlob.addContent(new ChannelBufferBytesReference(head), false);
+        ChannelBuffer tail = ChannelBuffers.wrappedBuffer(
+            ChannelBuffers.wrappedBuffer("FGHIJ".getBytes()),
+            ChannelBuffers.wrappedBuffer("KLMNO".getBytes()));
+        digestBlob.addContent(new ChannelBufferBytesReference(tail), true);
+
+        File file = digestBlob.commit();
+        assertEquals("ABCDEFGHIJKLMNO", new String(Files.readAllBytes(file.toPath()), "UTF-8"));
+        assertTrue(file.delete());
+    }
 }
@@ -24,10 +24,14 @@ package io.crate;
 import io.crate.blob.PutChunkReplicaRequest;
 import io.crate.test.integration.CrateUnitTest;
 import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.io.stream.BytesStreamInput;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.indices.recovery.BlobRecoveryChunkRequest;
+import org.elasticsearch.indices.recovery.BlobRecoveryTransferBatchRequest;
 import org.junit.Test;
 
+import java.util.Arrays;
 import java.util.UUID;
 
 public class SerializationTests extends CrateUnitTest {
@@ -59,4 +63,42 @@ public class SerializationTests extends CrateUnitTest {
         assertEquals(requestOut.transferId, requestIn.transferId);
         assertEquals(requestOut.index(), requestIn.index());
     }
+
+    @Test
+    public void testBlobRecoveryTransferBatchRequestSerialization() throws Exception {
+        BytesStreamOutput outputStream = new BytesStreamOutput();
+
+        BlobRecoveryTransferBatchRequest requestOut = new BlobRecoveryTransferBatchRequest(
+            1L,
+            Arrays.asList("/var/41/41aa", "/var/42/42bb"),
+            Arrays.<BytesReference>asList(new BytesArray(new byte[]{0x65}), new BytesArray(new byte[]{0x66, 0x67}))
+        );
+        requestOut.writeTo(outputStream);
+        BytesStreamInput inputStream = new BytesStreamInput(outputStream.bytes().copyBytesArray());
+
+        BlobRecoveryTransferBatchRequest requestIn = new BlobRecoveryTransferBatchRequest();
+        requestIn.readFrom(inputStream);
+
+        assertEquals(requestOut.transferId(), requestIn.transferId());
+        assertEquals(requestOut.paths(), requestIn.paths());
+        assertEquals(requestOut.contents(), requestIn.contents());
+        assertEquals(3L, requestIn.size());
+    }
+
+    @Test
+    public void testBlobRecoveryChunkRequestSerialization() throws Exception {
+        BytesStreamOutput outputStream = new BytesStreamOutput();
+
+        BlobRecoveryChunkRequest requestOut = new BlobRecoveryChunkRequest(
+            1L, 2L, 1024L, new BytesArray(new byte[]{0x65, 0x66}));
+        requestOut.writeTo(outputStream);
+        BytesStreamInput inputStream = new BytesStreamInput(outputStream.bytes().copyBytesArray());
+
+        BlobRecoveryChunkRequest requestIn = new BlobRecoveryChunkRequest();
+        requestIn.readFrom(inputStream);
+
+        assertEquals(requestOut.transferId(), requestIn.transferId());
+        assertEquals(requestOut.position(), requestIn.position());
+        assertEquals(requestOut.content(), requestIn.content());
+    }
 }
@@ -0,0 +1,156 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob;
+
+import com.google.common.util.concurrent.MoreExecutors;
+import io.crate.common.Hex;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+public class BlobContainerTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private void addBlob(BlobContainer container, String digest, int length) throws IOException {
+        File tmpFile = new File(container.getTmpDirectory(), digest + ".tmp");
+        try (FileOutputStream out = new FileOutputStream(tmpFile)) {
+            out.write(new byte[length]);
+        }
+        assertThat(container.moveToBlob(tmpFile, digest), is(true));
+    }
+
+    @Test
+    public void testStatsAreMaintainedOnMoveAndDelete() throws Exception {
+        BlobContainer container = new BlobContainer(folder.getRoot());
+        container.rebuildIfNeeded(MoreExecutors.sameThreadExecutor());
+
+        addBlob(container, "417de3231e23dcd6d224ff60918024bc6c59aa58", 10);
+        addBlob(container, "ff7de3231e23dcd6d224ff60918024bc6c59aa58", 5);
+        // replacing an existing blob doesn't count it twice
+        addBlob(container, "ff7de3231e23dcd6d224ff60918024bc6c59aa58", 5);
+        assertThat(container.blobsCount(), is(2L));
+        assertThat(container.blobsSize(), is(15L));
+
+        assertThat(container.deleteBlob("417de3231e23dcd6d224ff60918024bc6c59aa58"), is(true));
+        assertThat(container.deleteBlob("417de3231e23dcd6d224ff60918024bc6c59aa58"), is(false));
+        assertThat(container.blobsCount(), is(1L));
+        assertThat(container.blobsSize(), is(5L));
+    }
+
+    @Test
+    public void testStatsAreLoadedFromCheckpoint() throws Exception {
+        BlobContainer container = new BlobContainer(folder.getRoot());
+        container.rebuildIfNeeded(MoreExecutors.sameThreadExecutor());
+        addBlob(container, "417de3231e23dcd6d224ff60918024bc6c59aa58", 10);
+        container.close();
+
+        // blobs written without the container aren't visible if the checkpoint is used
+        File unaccounted = new File(container.getVarDirectory(), "01/0100000000000000000000000000000000000000");
+        try (FileOutputStream out = new FileOutputStream(unaccounted)) {
+            out.write(new byte[7]);
+        }
+
+        container = new BlobContainer(folder.getRoot());
+        assertThat(container.statsComplete(), is(true));
+        assertThat(container.blobsCount(), is(1L));
+        assertThat(container.blobsSize(), is(10L));
+
+        // the checkpoint is consumed, without a clean close the stats are rebuilt
+        container = new BlobContainer(folder.getRoot());
+        assertThat(container.statsComplete(), is(false));
+        container.rebuildIfNeeded(MoreExecutors.sameThreadExecutor());
+        assertThat(container.statsComplete(), is(true));
+        assertThat(container.blobsCount(), is(2L));
+        assertThat(container.blobsSize(), is(17L));
+    }
+
+    @Test
+    public void testRebuildIgnoresRecoveryLeftovers() throws Exception {
+        BlobContainer container = new BlobContainer(folder.getRoot());
+        File leftover = new File(container.getVarDirectory(), "41/417de3231e23dcd6d224ff60918024bc6c59aa58.1");
+        try (FileOutputStream out = new FileOutputStream(leftover)) {
+            out.write(new byte[3]);
+        }
+        container.rebuildIfNeeded(MoreExecutors.sameThreadExecutor());
+        assertThat(container.blobsCount(), is(0L));
+        assertThat(container.blobsSize(), is(0L));
+    }
+
+    @Test
+    public void testDigestsAreListedFromIndex() throws Exception {
+        BlobContainer container = new BlobContainer(folder.getRoot());
+        container.rebuildIfNeeded(MoreExecutors.sameThreadExecutor());
+        assertThat(container.digestsHash((byte) 0x41), notNullValue());
+        byte[] emptyHash = container.digestsHash((byte) 0x41);
+
+        addBlob(container, "417de3231e23dcd6d224ff60918024bc6c59aa58", 10);
+        addBlob(container, "41000000000000000000000000000000000000ff", 10);
+        assertThat(container.digestsHash((byte) 0x41), not(emptyHash));
+        container.close();
+
+        // blobs written without the container aren't visible if the index is used
+        File unaccounted = new File(container.getVarDirectory(), "41/4100000000000000000000000000000000000000");
+        try (FileOutputStream out = new FileOutputStream(unaccounted)) {
+            out.write(new byte[7]);
+        }
+
+        container = new BlobContainer(folder.getRoot());
+        byte[][] digests = container.digests((byte) 0x41);
+        assertThat(digests.length, is(2));
+        assertThat(Hex.encodeHexString(digests[0]), is("41000000000000000000000000000000000000ff"));
+        assertThat(Hex.encodeHexString(digests[1]), is("417de3231e23dcd6d224ff60918024bc6c59aa58"));
+
+        final List<String> visited = new ArrayList<>();
+        container.visitBlobs(new BlobContainer.BlobVisitor() {
+            @Override
+            public boolean visit(String digest, long lastModified) throws IOException {
+                visited.add(digest);
+                return true;
+            }
+        });
+        assertThat(visited, contains("41000000000000000000000000000000000000ff",
+            "417de3231e23dcd6d224ff60918024bc6c59aa58"));
+    }
+
+    @Test
+    public void testDigestsAreListedFromDiskWithoutIndex() throws Exception {
+        BlobContainer container = new BlobContainer(folder.getRoot());
+        File blob = new File(container.getVarDirectory(), "41/4100000000000000000000000000000000000000");
+        try (FileOutputStream out = new FileOutputStream(blob)) {
+            out.write(new byte[7]);
+        }
+        assertThat(container.digestsHash((byte) 0x41), nullValue());
+        assertThat(container.digests((byte) 0x41).length, is(1));
+    }
+}
@@ -0,0 +1,134 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob;
+
+import io.crate.common.Hex;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+
+public class BlobDigestIndexTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static final String A = "41000000000000000000000000000000000000aa";
+    private static final String B = "41000000000000000000000000000000000000bb";
+    private static final String C = "41000000000000000000000000000000000000cc";
+
+    private static List<String> digests(BlobDigestIndex index, int prefix) {
+        List<String> digests = new ArrayList<>();
+        for (BlobDigestIndex.Entry entry : index.entries(prefix)) {
+            digests.add(Hex.encodeHexString(entry.digest()));
+        }
+        return digests;
+    }
+
+    @Test
+    public void testEntriesMergeSnapshotAndChanges() throws Exception {
+        BlobDigestIndex index = BlobDigestIndex.open(folder.getRoot());
+        assertThat(index.isClean(), is(false));
+        index.put(Hex.decodeHex(A), 1, 10);
+        index.put(Hex.decodeHex(C), 3, 30);
+        index.compact();
+
+        index.put(Hex.decodeHex(B), 2, 20);
+        index.remove(Hex.decodeHex(A));
+        assertThat(digests(index, 0x41), contains(B, C));
+        assertThat(index.entries(0x42).size(), is(0));
+
+        BlobDigestIndex.Entry entry = index.entries(0x41).get(1);
+        assertThat(entry.size(), is(3L));
+        assertThat(entry.lastModified(), is(30L));
+        index.close();
+    }
+
+    @Test
+    public void testReopenAfterCleanClose() throws Exception {
+        BlobDigestIndex index = BlobDigestIndex.open(folder.getRoot());
+        index.put(Hex.decodeHex(A), 1, 10);
+        index.compact();
+        index.put(Hex.decodeHex(B), 2, 20);
+        index.remove(Hex.decodeHex(A));
+        byte[] hash = index.prefixHash(0x41);
+        index.closeClean();
+
+        index = BlobDigestIndex.open(folder.getRoot());
+        assertThat(index.isClean(), is(true));
+        assertThat(digests(index, 0x41), contains(B));
+        assertThat(index.prefixHash(0x41), is(hash));
+        index.close();
+
+        // not closed cleanly, the index is empty and must be rebuilt
+        index = BlobDigestIndex.open(folder.getRoot());
+        assertThat(index.isClean(), is(false));
+        assertThat(index.entries(0x41).size(), is(0));
+        index.close();
+    }
+
+    @Test
+    public void testPrefixHashChangesWithDigests() throws Exception {
+        BlobDigestIndex index = BlobDigestIndex.open(folder.getRoot());
+        byte[] emptyHash = index.prefixHash(0x41);
+        index.put(Hex.decodeHex(A), 1, 10);
+        byte[] hash = index.prefixHash(0x41);
+        assertThat(hash, not(emptyHash));
+
+        // size and modification time don't change the hash
+        index.put(Hex.decodeHex(A), 5, 50);
+        assertThat(index.prefixHash(0x41), is(hash));
+        index.remove(Hex.decodeHex(A));
+        assertThat(index.prefixHash(0x41), is(emptyHash));
+        index.close();
+    }
+
+    @Test
+    public void testSnapshotIsMappedInChunks() throws Exception {
+        int recordsPerChunk = BlobDigestIndex.RECORDS_PER_CHUNK;
+        BlobDigestIndex.RECORDS_PER_CHUNK = 2;
+        try {
+            BlobDigestIndex index = BlobDigestIndex.open(folder.getRoot());
+            index.put(Hex.decodeHex(A), 1, 10);
+            index.put(Hex.decodeHex(B), 2, 20);
+            index.put(Hex.decodeHex(C), 3, 30);
+            index.put(Hex.decodeHex("42000000000000000000000000000000000000aa"), 4, 40);
+            index.put(Hex.decodeHex("43000000000000000000000000000000000000aa"), 5, 50);
+            index.compact();
+            index.closeClean();
+
+            index = BlobDigestIndex.open(folder.getRoot());
+            assertThat(digests(index, 0x41), contains(A, B, C));
+            assertThat(index.entries(0x42).get(0).size(), is(4L));
+            assertThat(index.entries(0x43).get(0).lastModified(), is(50L));
+            index.close();
+        } finally {
+            BlobDigestIndex.RECORDS_PER_CHUNK = recordsPerChunk;
+        }
+    }
+}
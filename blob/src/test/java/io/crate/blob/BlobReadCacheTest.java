@@ -0,0 +1,142 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.blob;
+
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import static org.hamcrest.Matchers.*;
+
+public class BlobReadCacheTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File blob(String name, int length) throws IOException {
+        File file = folder.newFile(name);
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(new byte[length]);
+        }
+        return file;
+    }
+
+    @Test
+    public void testOpenFilesAreReused() throws Exception {
+        BlobReadCache cache = new BlobReadCache(ImmutableSettings.builder()
+            .put(BlobReadCache.OPEN_FILES_SETTING, 1).build());
+        File first = blob("first", 10);
+        File second = blob("second", 20);
+
+        BlobReadCache.OpenFile openFile = cache.open(first);
+        assertThat(openFile.channel().size(), is(10L));
+        openFile.release();
+        openFile = cache.open(first);
+        assertThat(cache.openFileHits(), is(1L));
+        assertThat(cache.openFileMisses(), is(1L));
+
+        // evicts the first file, which is still open until it is released
+        BlobReadCache.OpenFile secondFile = cache.open(second);
+        assertThat(cache.openFiles(), is(1L));
+        assertThat(openFile.channel().isOpen(), is(true));
+        openFile.release();
+        assertThat(openFile.channel().isOpen(), is(false));
+        secondFile.release();
+        assertThat(secondFile.channel().isOpen(), is(true));
+    }
+
+    @Test
+    public void testDeletedBlobIsRemoved() throws Exception {
+        BlobReadCache cache = new BlobReadCache(ImmutableSettings.builder()
+            .put(BlobReadCache.SMALL_BLOBS_SIZE_SETTING, "1kb").build());
+        File file = blob("blob", 10);
+        cache.open(file).release();
+        assertThat(cache.smallBlob(file).length, is(10));
+        assertThat(file.delete(), is(true));
+
+        expectedException.expect(FileNotFoundException.class);
+        try {
+            cache.smallBlob(file);
+        } finally {
+            assertThat(cache.openFiles(), is(0L));
+            assertThat(cache.smallBlobsSizeInBytes(), is(0L));
+        }
+    }
+
+    @Test
+    public void testBlobsOfDirectoryAreInvalidated() throws Exception {
+        BlobReadCache cache = new BlobReadCache(ImmutableSettings.builder()
+            .put(BlobReadCache.SMALL_BLOBS_SIZE_SETTING, "1kb").build());
+        File shardDir = folder.newFolder("shard");
+        File blob = blob("shard/blob", 10);
+        File other = blob("other", 20);
+        cache.smallBlob(blob);
+        cache.smallBlob(other);
+        BlobReadCache.OpenFile openFile = cache.open(blob);
+        assertThat(cache.openFiles(), is(2L));
+
+        cache.invalidateDirectory(shardDir);
+        assertThat(cache.openFiles(), is(1L));
+        assertThat(cache.smallBlobsSizeInBytes(), is(20L));
+        // still readable until it is released
+        assertThat(openFile.channel().isOpen(), is(true));
+        openFile.release();
+        assertThat(openFile.channel().isOpen(), is(false));
+
+        cache.invalidate(other);
+        assertThat(cache.openFiles(), is(0L));
+        assertThat(cache.smallBlobsSizeInBytes(), is(0L));
+    }
+
+    @Test
+    public void testSmallBlobs() throws Exception {
+        BlobReadCache cache = new BlobReadCache(ImmutableSettings.builder()
+            .put(BlobReadCache.SMALL_BLOBS_SIZE_SETTING, "1mb")
+            .put(BlobReadCache.SMALL_BLOBS_MAX_BLOB_SIZE_SETTING, "60b").build());
+        File small = blob("small", 50);
+        File other = blob("other", 60);
+        File large = blob("large", 61);
+
+        assertThat(cache.smallBlob(large), nullValue());
+        assertThat(cache.smallBlob(small).length, is(50));
+        assertThat(cache.smallBlob(small).length, is(50));
+        assertThat(cache.smallBlobHits(), is(1L));
+        assertThat(cache.smallBlobMisses(), is(1L));
+
+        assertThat(cache.smallBlob(other).length, is(60));
+        assertThat(cache.smallBlobsSizeInBytes(), is(110L));
+    }
+
+    @Test
+    public void testSmallBlobsDisabledByDefault() throws Exception {
+        BlobReadCache cache = new BlobReadCache(ImmutableSettings.EMPTY);
+        assertThat(cache.smallBlob(blob("small", 10)), nullValue());
+    }
+}
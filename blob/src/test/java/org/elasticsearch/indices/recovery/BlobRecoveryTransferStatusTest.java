@@ -0,0 +1,55 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package org.elasticsearch.indices.recovery;
+
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+
+import static org.hamcrest.Matchers.is;
+
+public class BlobRecoveryTransferStatusTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testChunksWrittenOutOfOrder() throws Exception {
+        File file = folder.newFile();
+        BlobRecoveryTransferStatus status = new BlobRecoveryTransferStatus(
+            1L, new RandomAccessFile(file, "rw").getChannel(), "tmp", "target", 6L);
+
+        assertThat(status.write(new BytesArray("cd"), 2), is(false));
+        assertThat(status.write(new BytesArray("ef"), 4), is(false));
+        assertThat(status.write(new BytesArray("ab"), 0), is(true));
+        status.channel().close();
+
+        assertThat(new String(Files.readAllBytes(file.toPath()), "UTF-8"), is("abcdef"));
+    }
+}
@@ -21,8 +21,11 @@
 
 package io.crate.client;
 
+import io.crate.action.sql.SQLBaseRequest;
 import io.crate.action.sql.SQLBulkRequest;
 import io.crate.action.sql.SQLBulkResponse;
+import io.crate.action.sql.SQLPrepareRequest;
+import io.crate.action.sql.SQLPrepareResponse;
 import io.crate.action.sql.SQLRequest;
 import io.crate.action.sql.SQLResponse;
 import org.elasticsearch.ElasticsearchException;
@@ -143,6 +146,20 @@ public class CrateClient {
         internalClient.bulkSql(bulkRequest, listener);
     }
 
+    /**
+     * Prepare a statement on the server.
+     *
+     * The handle of the response is used to execute the statement with
+     * {@link SQLBaseRequest#preparedStatement(String)}, the statement doesn't need to be sent again.
+     */
+    public ActionFuture<SQLPrepareResponse> prepare(String stmt) {
+        return internalClient.prepare(new SQLPrepareRequest(stmt));
+    }
+
+    public void prepare(String stmt, ActionListener<SQLPrepareResponse> listener) {
+        internalClient.prepare(new SQLPrepareRequest(stmt), listener);
+    }
+
     public Settings settings() {
         return settings;
     }
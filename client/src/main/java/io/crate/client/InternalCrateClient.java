@@ -21,9 +21,13 @@
 
 package io.crate.client;
 
+import com.google.common.base.Strings;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.google.common.collect.ImmutableMap;
 import io.crate.action.sql.*;
 import org.elasticsearch.ElasticsearchException;
+import org.elasticsearch.ExceptionsHelper;
 import org.elasticsearch.action.*;
 import org.elasticsearch.action.support.PlainActionFuture;
 import org.elasticsearch.client.ElasticsearchClient;
@@ -37,9 +41,22 @@ import org.elasticsearch.transport.TransportService;
 
 public class InternalCrateClient {
 
+    /**
+     * maximum number of prepared statements which are remembered to register them on other nodes,
+     * requests with handles of evicted statements fail if they are sent to a node which doesn't know them
+     */
+    private static final int MAX_PREPARED_STATEMENTS = 1000;
+
     private final ImmutableMap<Action, TransportActionNodeProxy> actions;
     private final TransportClientNodesService nodesService;
 
+    /**
+     * the statements which have been prepared by this client, by handle
+     */
+    private final Cache<String, String> preparedStatements = CacheBuilder.newBuilder()
+            .maximumSize(MAX_PREPARED_STATEMENTS)
+            .build();
+
     @Inject
     public InternalCrateClient(Settings settings,
                                TransportService transportService,
@@ -51,16 +68,28 @@ public class InternalCrateClient {
         actionsBuilder.put(SQLAction.INSTANCE,
                            new TransportActionNodeProxy<>(settings, SQLAction.INSTANCE, transportService))
                       .put(SQLBulkAction.INSTANCE,
-                           new TransportActionNodeProxy<>(settings, SQLBulkAction.INSTANCE, transportService));
+                           new TransportActionNodeProxy<>(settings, SQLBulkAction.INSTANCE, transportService))
+                      .put(SQLPrepareAction.INSTANCE,
+                           new TransportActionNodeProxy<>(settings, SQLPrepareAction.INSTANCE, transportService));
         this.actions = actionsBuilder.immutableMap();
     }
 
     public ActionFuture<SQLResponse> sql(final SQLRequest request) {
-        return execute(SQLAction.INSTANCE, request);
+        PlainActionFuture<SQLResponse> actionFuture = PlainActionFuture.newFuture();
+        sql(request, actionFuture);
+        return actionFuture;
     }
 
     public ActionFuture<SQLBulkResponse> bulkSql(final SQLBulkRequest bulkRequest) {
-        return execute(SQLBulkAction.INSTANCE, bulkRequest);
+        PlainActionFuture<SQLBulkResponse> actionFuture = PlainActionFuture.newFuture();
+        bulkSql(bulkRequest, actionFuture);
+        return actionFuture;
+    }
+
+    public ActionFuture<SQLPrepareResponse> prepare(final SQLPrepareRequest request) {
+        PlainActionFuture<SQLPrepareResponse> actionFuture = PlainActionFuture.newFuture();
+        prepare(request, actionFuture);
+        return actionFuture;
     }
 
     protected <Request extends ActionRequest, Response extends ActionResponse,
@@ -72,11 +101,75 @@ public class InternalCrateClient {
     }
 
     public void sql(final SQLRequest request, final ActionListener<SQLResponse> listener) {
-        execute(SQLAction.INSTANCE, request, listener);
+        execute(SQLAction.INSTANCE, request, retryWithStatement(SQLAction.INSTANCE, request, listener));
     }
 
     public void bulkSql(final SQLBulkRequest bulkRequest, final ActionListener<SQLBulkResponse> listener) {
-        execute(SQLBulkAction.INSTANCE, bulkRequest, listener);
+        execute(SQLBulkAction.INSTANCE, bulkRequest, retryWithStatement(SQLBulkAction.INSTANCE, bulkRequest, listener));
+    }
+
+    public void prepare(final SQLPrepareRequest request, final ActionListener<SQLPrepareResponse> listener) {
+        execute(SQLPrepareAction.INSTANCE, request, new ActionListener<SQLPrepareResponse>() {
+            @Override
+            public void onResponse(SQLPrepareResponse response) {
+                preparedStatements.put(response.handle(), request.stmt());
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                listener.onFailure(e);
+            }
+        });
+    }
+
+    /**
+     * Prepared statements are only known by the nodes they have been prepared on or executed with.
+     * If a request is sent to another node it is sent again along with the statement,
+     * which registers the statement on that node.
+     */
+    private <Request extends SQLBaseRequest, Response extends SQLBaseResponse,
+            RequestBuilder extends ActionRequestBuilder<Request, Response, RequestBuilder, Client>,
+            Client extends ElasticsearchClient> ActionListener<Response> retryWithStatement(
+            final Action<Request, Response, RequestBuilder, Client> action,
+            final Request request,
+            final ActionListener<Response> listener) {
+        if (request.preparedStatement() == null || !Strings.isNullOrEmpty(request.stmt())) {
+            return listener;
+        }
+        return new ActionListener<Response>() {
+            @Override
+            public void onResponse(Response response) {
+                listener.onResponse(response);
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                Throwable cause = ExceptionsHelper.unwrapCause(e);
+                String stmt = preparedStatements.getIfPresent(request.preparedStatement());
+                if (stmt != null && cause instanceof SQLActionException
+                    && ((SQLActionException) cause).errorCode() == SQLPrepareAction.UNKNOWN_PREPARED_STATEMENT_ERROR_CODE) {
+                    execute(action, withStatement(request, stmt), listener);
+                } else {
+                    listener.onFailure(e);
+                }
+            }
+        };
+    }
+
+    /**
+     * @return a copy of the request with the statement set, the request of the caller is left untouched
+     */
+    @SuppressWarnings("unchecked")
+    private static <Request extends SQLBaseRequest> Request withStatement(Request request, String stmt) {
+        SQLBaseRequest copy;
+        if (request instanceof SQLBulkRequest) {
+            copy = new SQLBulkRequest((SQLBulkRequest) request);
+        } else {
+            copy = new SQLRequest((SQLRequest) request);
+        }
+        copy.stmt(stmt);
+        return (Request) copy;
     }
 
     protected <Request extends ActionRequest, Response extends ActionResponse,
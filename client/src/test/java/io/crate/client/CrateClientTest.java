@@ -181,6 +181,26 @@ public class CrateClientTest extends ElasticsearchIntegrationTest {
         assertThat(settings.get("node.name"), startsWith("crate-client-"));
     }
 
+    @Test
+    public void testPreparedStatement() throws Exception {
+        client().prepareIndex("test", "default", "1")
+            .setRefresh(true)
+            .setSource("{}")
+            .execute()
+            .actionGet();
+        ensureGreen();
+
+        SQLPrepareResponse prepareResponse = client.prepare("select \"_id\" from test where \"_id\" = ?").actionGet();
+        assertThat(prepareResponse.handle(), notNullValue());
+
+        SQLRequest request = new SQLRequest(null, new Object[]{"1"});
+        request.preparedStatement(prepareResponse.handle());
+        SQLResponse r = client.sql(request).actionGet();
+
+        assertEquals(1, r.rows().length);
+        assertEquals("1", r.rows()[0][0]);
+    }
+
     @Test
     public void testBulkSql() throws Exception {
         client.sql("create table test (a string, b int) with (number_of_replicas=0)").actionGet();
@@ -147,7 +147,7 @@ public class ContextPreparer {
         @Override
         public Void visitMergeNode(final MergeNode node, final PreparerContext context) {
             RamAccountingContext ramAccountingContext = RamAccountingContext.forExecutionNode(circuitBreaker, node);
-            ResultProvider downstream = resultProviderFactory.createDownstream(node, node.jobId());
+            ResultProvider downstream = resultProviderFactory.createDownstream(node, node.jobId(), ramAccountingContext);
             Tuple<PageDownstream, FlatProjectorChain> pageDownstreamProjectorChain =
                     pageDownstreamFactory.createMergeNodePageDownstream(
                             node,
@@ -174,7 +174,7 @@ public class ContextPreparer {
         @Override
         public Void visitCollectNode(final CollectNode node, final PreparerContext context) {
             RamAccountingContext ramAccountingContext = RamAccountingContext.forExecutionNode(circuitBreaker, node);
-            ResultProvider downstream = collectOperation.createDownstream(node);
+            ResultProvider downstream = collectOperation.createDownstream(node, ramAccountingContext);
 
             if (ExecutionNodes.hasDirectResponseDownstream(node.downstreamNodes())) {
                 context.directResultFuture = downstream.result();
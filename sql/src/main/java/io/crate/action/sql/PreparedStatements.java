@@ -0,0 +1,115 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.base.Charsets;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.hash.HashFunction;
+import com.google.common.hash.Hashing;
+import io.crate.exceptions.PreparedStatementUnknownException;
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Statement;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+
+/**
+ * Statements which have been prepared on this node.
+ *
+ * A prepared statement is referenced by a handle which is derived from the statement text,
+ * so the same statement gets the same handle on every node. This allows a client to register a
+ * statement on a node which doesn't know the handle yet by sending the statement text along
+ * with the handle once.
+ *
+ * Only the parsed statement is kept; the analysis binds the parameters and is done per execution.
+ */
+public class PreparedStatements {
+
+    public static final String SIZE_SETTING = "sql.prepared_statements.size";
+    public static final int DEFAULT_SIZE = 1000;
+
+    private static final HashFunction HASH_FUNCTION = Hashing.murmur3_128();
+
+    private final Cache<String, PreparedStatement> statements;
+
+    @Inject
+    public PreparedStatements(Settings settings) {
+        statements = CacheBuilder.newBuilder()
+                .maximumSize(settings.getAsInt(SIZE_SETTING, DEFAULT_SIZE))
+                .build();
+    }
+
+    /**
+     * @return the handle of a statement
+     */
+    public static String handle(String stmt) {
+        return HASH_FUNCTION.hashString(stmt, Charsets.UTF_8).toString();
+    }
+
+    /**
+     * parse the statement and register it
+     *
+     * @return the handle of the statement
+     */
+    public String prepare(String stmt) {
+        String handle = handle(stmt);
+        if (statements.getIfPresent(handle) == null) {
+            statements.put(handle, new PreparedStatement(stmt, SqlParser.createStatement(stmt)));
+        }
+        return handle;
+    }
+
+    /**
+     * @throws PreparedStatementUnknownException if no statement has been prepared with the handle
+     *                                           or if it has been evicted
+     */
+    public PreparedStatement get(String handle) throws PreparedStatementUnknownException {
+        PreparedStatement preparedStatement = statements.getIfPresent(handle);
+        if (preparedStatement == null) {
+            throw new PreparedStatementUnknownException(handle);
+        }
+        return preparedStatement;
+    }
+
+    public long size() {
+        return statements.size();
+    }
+
+    public static class PreparedStatement {
+
+        private final String stmt;
+        private final Statement statement;
+
+        private PreparedStatement(String stmt, Statement statement) {
+            this.stmt = stmt;
+            this.statement = statement;
+        }
+
+        public String stmt() {
+            return stmt;
+        }
+
+        public Statement statement() {
+            return statement;
+        }
+    }
+}
@@ -51,6 +51,7 @@ import java.io.IOException;
 public abstract class SQLBaseRequest extends ActionRequest<SQLBaseRequest> {
 
     private static final String SCHEMA_HEADER_KEY = "_s";
+    private static final String PREPARED_STATEMENT_HEADER_KEY = "_p";
 
     protected String stmt;
     protected long creationTime;
@@ -65,6 +66,16 @@ public abstract class SQLBaseRequest extends ActionRequest<SQLBaseRequest> {
         this.creationTime = System.currentTimeMillis();
     }
 
+    /**
+     * copies the statement, the options and the headers of another request
+     */
+    protected SQLBaseRequest(SQLBaseRequest request) {
+        super(request);
+        this.stmt = request.stmt;
+        this.creationTime = request.creationTime;
+        this.includeTypesOnResponse = request.includeTypesOnResponse;
+    }
+
     /**
      * SQL statement as string.
      */
@@ -118,9 +129,30 @@ public abstract class SQLBaseRequest extends ActionRequest<SQLBaseRequest> {
         return getHeader(SCHEMA_HEADER_KEY);
     }
 
+    /**
+     * execute a statement which has been prepared with a {@link SQLPrepareRequest}.
+     *
+     * The statement doesn't have to be set in that case. If it is set anyway a node which
+     * doesn't know the handle yet registers the statement before it is executed.
+     *
+     * @param handle the handle of the {@link SQLPrepareResponse}
+     */
+    public SQLBaseRequest preparedStatement(String handle) {
+        putHeader(PREPARED_STATEMENT_HEADER_KEY, handle);
+        return this;
+    }
+
+    /**
+     * @return the handle of the prepared statement or null if the statement hasn't been prepared
+     */
+    @Nullable
+    public String preparedStatement() {
+        return getHeader(PREPARED_STATEMENT_HEADER_KEY);
+    }
+
     @Override
     public ActionRequestValidationException validate() {
-        if (stmt == null) {
+        if (stmt == null && preparedStatement() == null) {
             ActionRequestValidationException e =  new ActionRequestValidationException();
             e.addValidationError("Attribute 'stmt' must not be null");
             return e;
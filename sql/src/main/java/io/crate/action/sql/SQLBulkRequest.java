@@ -46,6 +46,14 @@ public class SQLBulkRequest extends SQLBaseRequest {
         bulkArgs(bulkArgs);
     }
 
+    /**
+     * creates a copy of the request which can be changed without affecting the original one
+     */
+    public SQLBulkRequest(SQLBulkRequest request) {
+        super(request);
+        bulkArgs = request.bulkArgs;
+    }
+
     public Object[][] bulkArgs() {
         return bulkArgs;
     }
@@ -81,7 +89,7 @@ public class SQLBulkRequest extends SQLBaseRequest {
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
 
-        out.writeString(stmt);
+        out.writeString(stmt == null ? "" : stmt);
         out.writeVLong(creationTime);
         out.writeBoolean(includeTypesOnResponse);
 
@@ -40,6 +40,10 @@ public class SQLBulkRequestBuilder extends ActionRequestBuilder<SQLBulkRequest,
         request.stmt(stmt);
     }
 
+    public void preparedStatement(String handle) {
+        request.preparedStatement(handle);
+    }
+
     public void bulkArgs(Object[][] bulkArgs) {
         request.bulkArgs(bulkArgs);
     }
@@ -0,0 +1,85 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.base.MoreObjects;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+
+import java.io.IOException;
+
+/**
+ * Request to prepare a statement.
+ *
+ * The statement is parsed and kept on the node. The handle of the response can be used to
+ * execute the statement with {@link SQLBaseRequest#preparedStatement(String)} without sending
+ * and parsing it again.
+ */
+public class SQLPrepareRequest extends ActionRequest<SQLPrepareRequest> {
+
+    private String stmt;
+
+    public SQLPrepareRequest() {} // used for serialization
+
+    public SQLPrepareRequest(String stmt) {
+        this.stmt = stmt;
+    }
+
+    public String stmt() {
+        return stmt;
+    }
+
+    public SQLPrepareRequest stmt(String stmt) {
+        this.stmt = stmt;
+        return this;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        if (stmt == null) {
+            ActionRequestValidationException e =  new ActionRequestValidationException();
+            e.addValidationError("Attribute 'stmt' must not be null");
+            return e;
+        }
+        return null;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        stmt = in.readString();
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeString(stmt);
+    }
+
+    @Override
+    public String toString() {
+        return MoreObjects.toStringHelper(this)
+                .add("stmt", stmt).toString();
+    }
+}
@@ -49,6 +49,14 @@ public class SQLRequest extends SQLBaseRequest {
         args(args);
     }
 
+    /**
+     * creates a copy of the request which can be changed without affecting the original one
+     */
+    public SQLRequest(SQLRequest request) {
+        super(request);
+        args = request.args;
+    }
+
     /**
      * @return the arguments of the request that have been set using
      * {@link #SQLRequest(String, Object[])} or {@link #args(Object[])}
@@ -91,7 +99,7 @@ public class SQLRequest extends SQLBaseRequest {
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
 
-        out.writeString(stmt);
+        out.writeString(stmt == null ? "" : stmt);
         out.writeVInt(args.length);
         for (int i = 0; i < args.length; i++) {
             out.writeGenericValue(args[i]);
@@ -43,6 +43,10 @@ public class SQLRequestBuilder extends ActionRequestBuilder<SQLRequest, SQLRespo
         request.stmt(stmt);
     }
 
+    public void preparedStatement(String handle) {
+        request.preparedStatement(handle);
+    }
+
     public void args(Object[] args) {
         request.args(args);
     }
@@ -0,0 +1,76 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheLoader;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.LoadingCache;
+import io.crate.sql.parser.SqlParser;
+import io.crate.sql.tree.Statement;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+
+import javax.annotation.Nonnull;
+import java.util.concurrent.ExecutionException;
+
+/**
+ * A node wide cache of parsed statements, shared by all SQL actions.
+ *
+ * Statements are cached by their text. The parse tree doesn't contain any parameter values
+ * and doesn't depend on the cluster state, so entries never become stale and are only evicted
+ * if the cache is full.
+ */
+public class StatementCache {
+
+    public static final String SIZE_SETTING = "sql.statement_cache.size";
+    public static final int DEFAULT_SIZE = 1000;
+
+    private final LoadingCache<String, Statement> cache;
+
+    @Inject
+    public StatementCache(Settings settings) {
+        cache = CacheBuilder.newBuilder()
+                .maximumSize(settings.getAsInt(SIZE_SETTING, DEFAULT_SIZE))
+                .recordStats()
+                .build(
+                        new CacheLoader<String, Statement>() {
+                            @Override
+                            public Statement load(@Nonnull String statement) throws Exception {
+                                return SqlParser.createStatement(statement);
+                            }
+                        }
+                );
+    }
+
+    public Statement get(String statement) throws ExecutionException {
+        return cache.get(statement);
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+}
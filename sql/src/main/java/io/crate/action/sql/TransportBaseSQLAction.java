@@ -21,9 +21,7 @@
 
 package io.crate.action.sql;
 
-import com.google.common.cache.CacheBuilder;
-import com.google.common.cache.CacheLoader;
-import com.google.common.cache.LoadingCache;
+import com.google.common.base.Strings;
 import com.google.common.util.concurrent.FutureCallback;
 import com.google.common.util.concurrent.Futures;
 import com.google.common.util.concurrent.ListenableFuture;
@@ -42,7 +40,6 @@ import io.crate.planner.PlanPrinter;
 import io.crate.planner.Planner;
 import io.crate.planner.symbol.Field;
 import io.crate.sql.parser.ParsingException;
-import io.crate.sql.parser.SqlParser;
 import io.crate.sql.tree.Statement;
 import io.crate.types.DataType;
 import org.elasticsearch.action.ActionListener;
@@ -69,6 +66,7 @@ import java.io.StringWriter;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
 
 import static com.google.common.base.MoreObjects.firstNonNull;
 
@@ -78,23 +76,13 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
     private static final DataType[] EMPTY_TYPES = new DataType[0];
     private static final String[] EMPTY_NAMES = new String[0];
 
-
-    private final LoadingCache<String, Statement> statementCache = CacheBuilder.newBuilder()
-            .maximumSize(100)
-            .build(
-                    new CacheLoader<String, Statement>() {
-                        @Override
-                        public Statement load(@Nonnull String statement) throws Exception {
-                            return SqlParser.createStatement(statement);
-                        }
-                    }
-            );
-
     private final ClusterService clusterService;
     protected final Analyzer analyzer;
     protected final Planner planner;
     private final Provider<Executor> executorProvider;
     private final StatsTables statsTables;
+    private final StatementCache statementCache;
+    private final PreparedStatements preparedStatements;
     private volatile boolean disabled;
 
     public TransportBaseSQLAction(ClusterService clusterService,
@@ -105,6 +93,8 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
                                   Planner planner,
                                   Provider<Executor> executorProvider,
                                   StatsTables statsTables,
+                                  StatementCache statementCache,
+                                  PreparedStatements preparedStatements,
                                   ActionFilters actionFilters) {
         super(settings, actionName, threadPool, actionFilters);
         this.clusterService = clusterService;
@@ -112,6 +102,8 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         this.planner = planner;
         this.executorProvider = executorProvider;
         this.statsTables = statsTables;
+        this.statementCache = statementCache;
+        this.preparedStatements = preparedStatements;
     }
 
     public abstract Analysis getAnalysis(Statement statement, TRequest request);
@@ -182,7 +174,7 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
             return;
         }
         try {
-            Statement statement = statementCache.get(request.stmt());
+            Statement statement = statement(request);
             Analysis analysis = getAnalysis(statement, request);
             processAnalysis(analysis, request, listener);
         } catch (Throwable e) {
@@ -191,6 +183,20 @@ public abstract class TransportBaseSQLAction<TRequest extends SQLBaseRequest, TR
         }
     }
 
+    private Statement statement(TRequest request) throws ExecutionException {
+        String handle = request.preparedStatement();
+        if (handle == null) {
+            return statementCache.get(request.stmt());
+        }
+        if (!Strings.isNullOrEmpty(request.stmt())) {
+            // the client sent the statement along because this node might not know the handle yet
+            handle = preparedStatements.prepare(request.stmt());
+        }
+        PreparedStatements.PreparedStatement preparedStatement = preparedStatements.get(handle);
+        request.stmt(preparedStatement.stmt());
+        return preparedStatement.statement();
+    }
+
     private void sendResponse(ActionListener<TResponse> listener, Throwable throwable) {
         listener.onFailure(throwable);
         statsTables.activeRequestsDec();
@@ -62,9 +62,11 @@ public class TransportSQLAction extends TransportBaseSQLAction<SQLRequest, SQLRe
             Provider<Executor> executor,
             TransportService transportService,
             StatsTables statsTables,
+            StatementCache statementCache,
+            PreparedStatements preparedStatements,
             ActionFilters actionFilters) {
         super(clusterService, settings, SQLAction.NAME, threadPool,
-                analyzer, planner, executor, statsTables, actionFilters);
+                analyzer, planner, executor, statsTables, statementCache, preparedStatements, actionFilters);
         transportService.registerHandler(SQLAction.NAME, new TransportHandler());
     }
 
@@ -57,9 +57,11 @@ public class TransportSQLBulkAction extends TransportBaseSQLAction<SQLBulkReques
                                   Provider<Executor> executor,
                                   TransportService transportService,
                                   StatsTables statsTables,
+                                  StatementCache statementCache,
+                                  PreparedStatements preparedStatements,
                                   ActionFilters actionFilters) {
         super(clusterService, settings, SQLBulkAction.NAME, threadPool, analyzer,
-                planner, executor, statsTables, actionFilters);
+                planner, executor, statsTables, statementCache, preparedStatements, actionFilters);
         transportService.registerHandler(SQLBulkAction.NAME, new TransportHandler());
     }
 
@@ -0,0 +1,90 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import io.crate.executor.transport.ResponseForwarder;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.TransportAction;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.BaseTransportRequestHandler;
+import org.elasticsearch.transport.TransportChannel;
+import org.elasticsearch.transport.TransportService;
+
+/**
+ * Parses a statement and registers it in the {@link PreparedStatements} of this node.
+ */
+public class TransportSQLPrepareAction extends TransportAction<SQLPrepareRequest, SQLPrepareResponse> {
+
+    private final PreparedStatements preparedStatements;
+    private final TransportSQLAction transportSQLAction;
+
+    @Inject
+    public TransportSQLPrepareAction(Settings settings,
+                                     ThreadPool threadPool,
+                                     TransportService transportService,
+                                     PreparedStatements preparedStatements,
+                                     TransportSQLAction transportSQLAction,
+                                     ActionFilters actionFilters) {
+        super(settings, SQLPrepareAction.NAME, threadPool, actionFilters);
+        this.preparedStatements = preparedStatements;
+        this.transportSQLAction = transportSQLAction;
+        transportService.registerHandler(SQLPrepareAction.NAME, new TransportHandler());
+    }
+
+    @Override
+    protected void doExecute(SQLPrepareRequest request, ActionListener<SQLPrepareResponse> listener) {
+        logger.debug("{}", request);
+        String handle;
+        try {
+            handle = preparedStatements.prepare(request.stmt());
+        } catch (Throwable e) {
+            logger.debug("Error preparing SQLRequest", e);
+            listener.onFailure(transportSQLAction.buildSQLActionException(e));
+            return;
+        }
+        listener.onResponse(new SQLPrepareResponse(handle));
+    }
+
+    private class TransportHandler extends BaseTransportRequestHandler<SQLPrepareRequest> {
+
+        @Override
+        public SQLPrepareRequest newInstance() {
+            return new SQLPrepareRequest();
+        }
+
+        @Override
+        public void messageReceived(SQLPrepareRequest request, final TransportChannel channel) throws Exception {
+            // no need for a threaded listener
+            request.listenerThreaded(false);
+            ActionListener<SQLPrepareResponse> listener = ResponseForwarder.forwardTo(channel);
+            execute(request, listener);
+        }
+
+        @Override
+        public String executor() {
+            return ThreadPool.Names.SAME;
+        }
+    }
+}
@@ -27,6 +27,7 @@ package io.crate.action.sql.parser;
 public class SQLXContentSourceContext {
 
     private String stmt;
+    private String handle;
     private Object[] args;
     private Object[][] bulkArgs;
 
@@ -38,6 +39,14 @@ public class SQLXContentSourceContext {
         this.stmt = stmt;
     }
 
+    public String handle() {
+        return handle;
+    }
+
+    public void handle(String handle) {
+        this.handle = handle;
+    }
+
     public Object[] args() {
         return args;
     }
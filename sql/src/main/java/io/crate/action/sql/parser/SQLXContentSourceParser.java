@@ -36,6 +36,12 @@ import org.elasticsearch.common.xcontent.XContentParser;
  *  "stmt": "select * from...."
  * }
  *     </pre>
+ * or, to execute a prepared statement
+ *     <pre>
+ * {
+ *  "handle": "1f2e...."
+ * }
+ *     </pre>
  */
 public class SQLXContentSourceParser {
 
@@ -43,12 +49,14 @@ public class SQLXContentSourceParser {
 
     static final class Fields {
         static final String STMT = "stmt";
+        static final String HANDLE = "handle";
         static final String ARGS = "args";
         static final String BULK_ARGS = "bulk_args";
     }
 
     private static final ImmutableMap<String, SQLParseElement> elementParsers = ImmutableMap.of(
             Fields.STMT, (SQLParseElement) new SQLStmtParseElement(),
+            Fields.HANDLE, (SQLParseElement) new SQLHandleParseElement(),
             Fields.ARGS, (SQLParseElement) new SQLArgsParseElement(),
             Fields.BULK_ARGS, (SQLParseElement) new SQLBulkArgsParseElement()
     );
@@ -58,7 +66,7 @@ public class SQLXContentSourceParser {
     }
 
     private void validate() throws SQLParseSourceException {
-        if (context.stmt() == null) {
+        if (context.stmt() == null && context.handle() == null) {
             throw new SQLParseSourceException(context, "Field [stmt] was not defined");
         }
     }
@@ -26,6 +26,7 @@ import com.google.common.collect.ImmutableMap;
 import io.crate.blob.v2.BlobIndices;
 import io.crate.metadata.settings.CrateTableSettings;
 import io.crate.metadata.table.ColumnPolicy;
+import io.crate.operation.collect.ShardResultCache;
 import org.elasticsearch.cluster.metadata.IndexMetaData;
 import org.elasticsearch.cluster.routing.allocation.decider.EnableAllocationDecider;
 import org.elasticsearch.cluster.routing.allocation.decider.ShardsLimitAllocationDecider;
@@ -57,6 +58,7 @@ public class TableParameterInfo {
     public static final String TOTAL_SHARDS_PER_NODE = ShardsLimitAllocationDecider.INDEX_TOTAL_SHARDS_PER_NODE;
     public static final String RECOVERY_INITIAL_SHARDS = LocalGatewayAllocator.INDEX_RECOVERY_INITIAL_SHARDS;
     public static final String WARMER_ENABLED = IndicesWarmer.INDEX_WARMER_ENABLED;
+    public static final String RESULT_CACHE_ENABLED = ShardResultCache.INDEX_RESULT_CACHE_ENABLED;
 
     // all available table mapping keys
     public static final String COLUMN_POLICY = ColumnPolicy.ES_MAPPING_NAME;
@@ -79,6 +81,7 @@ public class TableParameterInfo {
                     .add(TOTAL_SHARDS_PER_NODE)
                     .add(RECOVERY_INITIAL_SHARDS)
                     .add(WARMER_ENABLED)
+                    .add(RESULT_CACHE_ENABLED)
                     .build();
 
     protected static final ImmutableList<String> SUPPORTED_INTERNAL_SETTINGS =
@@ -129,6 +132,7 @@ public class TableParameterInfo {
                 .put(TableParameterInfo.TOTAL_SHARDS_PER_NODE, CrateTableSettings.TOTAL_SHARDS_PER_NODE.extract(settings))
                 .put(TableParameterInfo.RECOVERY_INITIAL_SHARDS, CrateTableSettings.RECOVERY_INITIAL_SHARDS.extract(settings))
                 .put(TableParameterInfo.WARMER_ENABLED, CrateTableSettings.WARMER_ENABLED.extract(settings))
+                .put(TableParameterInfo.RESULT_CACHE_ENABLED, CrateTableSettings.RESULT_CACHE_ENABLED.extract(settings))
                 .put(TableParameterInfo.GATEWAY_LOCAL_SYNC, CrateTableSettings.GATEWAY_LOCAL_SYNC.extractMillis(settings))
                 .build();
     }
@@ -33,11 +33,23 @@ public class RamAccountingContext {
     // Flush every 2mb
     public static long FLUSH_BUFFER_SIZE = 1024 * 1024 * 2;
 
+    /**
+     * the ratio of the breaker limit at which operations write their state to disk, see {@link #shouldSpill()}
+     */
+    public static final double SPILL_LIMIT_RATIO = 0.8;
+
+    /**
+     * the ratio of the breaker limit a context has to use at least before its state is written to disk
+     * because of the memory used by other contexts, see {@link #shouldSpill()}
+     */
+    public static final double MIN_SPILL_RATIO = 0.05;
+
     private final String contextId;
     private final CircuitBreaker breaker;
 
     private final AtomicLong totalBytes = new AtomicLong(0);
     private final AtomicLong flushBuffer = new AtomicLong(0);
+    private final AtomicLong spilledBytes = new AtomicLong(0);
     private volatile boolean closed = false;
     private volatile boolean tripped = false;
 
@@ -97,6 +109,88 @@ public class RamAccountingContext {
         }
     }
 
+    /**
+     * Release bytes which have been added before, e.g. because the data they account for was written to disk.
+     * In contrast to adding negative bytes the breaker is adjusted immediately.
+     */
+    public void releaseBytes(long bytes) {
+        if (closed || bytes == 0) {
+            return;
+        }
+        // bytes which haven't been flushed yet are only removed from the buffer
+        long buffered;
+        long fromBuffer;
+        do {
+            buffered = flushBuffer.get();
+            fromBuffer = Math.min(Math.max(buffered, 0L), bytes);
+        } while (!flushBuffer.compareAndSet(buffered, buffered - fromBuffer));
+        long flushed = bytes - fromBuffer;
+        if (flushed != 0) {
+            breaker.addWithoutBreaking(-flushed);
+            totalBytes.addAndGet(-flushed);
+        }
+    }
+
+    /**
+     * Returns true if the bytes used by the breaker, including the bytes of this context which
+     * haven't been flushed yet, reach the given ratio of its limit.
+     * Always false if the breaker has no limit.
+     */
+    public boolean exceedsLimit(double ratio) {
+        long limit = breaker.getLimit();
+        if (limit <= 0) {
+            return false;
+        }
+        return breaker.getUsed() + flushBuffer.get() >= limit * ratio;
+    }
+
+    /**
+     * Returns true if the bytes of this context, including the bytes which haven't been flushed yet,
+     * reach the given ratio of the breaker limit. Other contexts using the same breaker are not considered.
+     * Always false if the breaker has no limit.
+     */
+    public boolean ownBytesExceedLimit(double ratio) {
+        long limit = breaker.getLimit();
+        if (limit <= 0) {
+            return false;
+        }
+        return totalBytes.get() + flushBuffer.get() >= limit * ratio;
+    }
+
+    /**
+     * Returns true if an operation which is able to write its state to disk should do so to free the
+     * bytes of this context. That is the case if they reach {@link #SPILL_LIMIT_RATIO} of the breaker limit,
+     * or if the breaker is close to its limit because of other contexts and this context uses at least
+     * {@link #MIN_SPILL_RATIO} of the limit, so a small state isn't written over and over again.
+     */
+    public boolean shouldSpill() {
+        return ownBytesExceedLimit(SPILL_LIMIT_RATIO)
+               || (exceedsLimit(SPILL_LIMIT_RATIO) && ownBytesExceedLimit(MIN_SPILL_RATIO));
+    }
+
+    /**
+     * Creates a context which adds its bytes to this context but also counts them on its own,
+     * so an operation can release the memory it used before this context is closed.
+     * Closing this context also accounts for the bytes of the child context.
+     */
+    public RamAccountingContext newChildContext() {
+        return new ChildContext(this);
+    }
+
+    /**
+     * Add bytes which were written to disk because the memory limit was about to be reached
+     */
+    public void addSpilledBytes(long bytes) {
+        spilledBytes.addAndGet(bytes);
+    }
+
+    /**
+     * @return the number of bytes which were written to disk
+     */
+    public long spilledBytes() {
+        return spilledBytes.get();
+    }
+
     /**
      * @return the total number of bytes that have been aggregated
      */
@@ -155,4 +249,67 @@ public class RamAccountingContext {
     public static long roundUp(long n) {
         return roundUp(n, 8);
     }
+
+    private static class ChildContext extends RamAccountingContext {
+
+        private final RamAccountingContext parent;
+        private final AtomicLong bytes = new AtomicLong(0);
+
+        private ChildContext(RamAccountingContext parent) {
+            super(parent.contextId, parent.breaker);
+            this.parent = parent;
+        }
+
+        @Override
+        public void addBytes(long bytes) throws CircuitBreakingException {
+            // count the bytes even if the breaker trips, the parent has added them as well
+            this.bytes.addAndGet(bytes);
+            parent.addBytes(bytes);
+        }
+
+        @Override
+        public void releaseBytes(long bytes) {
+            this.bytes.addAndGet(-bytes);
+            parent.releaseBytes(bytes);
+        }
+
+        @Override
+        public boolean exceedsLimit(double ratio) {
+            return parent.exceedsLimit(ratio);
+        }
+
+        @Override
+        public boolean ownBytesExceedLimit(double ratio) {
+            long limit = parent.limit();
+            if (limit <= 0) {
+                return false;
+            }
+            return bytes.get() >= limit * ratio;
+        }
+
+        @Override
+        public void addSpilledBytes(long bytes) {
+            parent.addSpilledBytes(bytes);
+        }
+
+        @Override
+        public long spilledBytes() {
+            return parent.spilledBytes();
+        }
+
+        @Override
+        public long totalBytes() {
+            return bytes.get();
+        }
+
+        @Override
+        public void close() {
+            // the bytes are released by the parent
+        }
+
+        @Override
+        public boolean trippedBreaker() {
+            return parent.trippedBreaker();
+        }
+    }
 }
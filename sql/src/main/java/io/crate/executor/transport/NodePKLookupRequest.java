@@ -0,0 +1,109 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import io.crate.planner.symbol.Reference;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.transport.TransportRequest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Primary key lookups of all shards of one node.
+ */
+public class NodePKLookupRequest extends TransportRequest {
+
+    private List<Reference> references;
+    private Map<ShardId, List<String>> ids;
+
+    public NodePKLookupRequest() {
+    }
+
+    /**
+     * @param references the columns which are read for every document found
+     */
+    public NodePKLookupRequest(List<Reference> references) {
+        this.references = references;
+        this.ids = new HashMap<>();
+    }
+
+    public void add(ShardId shardId, String id) {
+        List<String> shardIds = ids.get(shardId);
+        if (shardIds == null) {
+            shardIds = new ArrayList<>();
+            ids.put(shardId, shardIds);
+        }
+        shardIds.add(id);
+    }
+
+    public List<Reference> references() {
+        return references;
+    }
+
+    public Map<ShardId, List<String>> ids() {
+        return ids;
+    }
+
+    @Override
+    public void readFrom(StreamInput in) throws IOException {
+        super.readFrom(in);
+        int numReferences = in.readVInt();
+        references = new ArrayList<>(numReferences);
+        for (int i = 0; i < numReferences; i++) {
+            references.add(Reference.fromStream(in));
+        }
+        int numShards = in.readVInt();
+        ids = new HashMap<>(numShards);
+        for (int i = 0; i < numShards; i++) {
+            ShardId shardId = ShardId.readShardId(in);
+            int numIds = in.readVInt();
+            List<String> shardIds = new ArrayList<>(numIds);
+            for (int j = 0; j < numIds; j++) {
+                shardIds.add(in.readString());
+            }
+            ids.put(shardId, shardIds);
+        }
+    }
+
+    @Override
+    public void writeTo(StreamOutput out) throws IOException {
+        super.writeTo(out);
+        out.writeVInt(references.size());
+        for (Reference reference : references) {
+            Reference.toStream(reference, out);
+        }
+        out.writeVInt(ids.size());
+        for (Map.Entry<ShardId, List<String>> entry : ids.entrySet()) {
+            entry.getKey().writeTo(out);
+            out.writeVInt(entry.getValue().size());
+            for (String id : entry.getValue()) {
+                out.writeString(id);
+            }
+        }
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import io.crate.planner.symbol.Reference;
+import org.elasticsearch.action.ActionRequest;
+import org.elasticsearch.action.ActionRequestValidationException;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Lookup of documents by their primary key, which is split into one {@link NodePKLookupRequest}
+ * per node by the {@link TransportPKLookupAction}.
+ *
+ * This request is only executed on the node which handles the statement and is never serialized.
+ */
+public class PKLookupRequest extends ActionRequest<PKLookupRequest> {
+
+    private final List<Reference> references;
+    private final List<Item> items = new ArrayList<>();
+
+    /**
+     * @param references the columns which are read for every document found
+     */
+    public PKLookupRequest(List<Reference> references) {
+        this.references = references;
+    }
+
+    public void add(String index, String id, @Nullable String routing) {
+        items.add(new Item(index, id, routing));
+    }
+
+    public List<Reference> references() {
+        return references;
+    }
+
+    public List<Item> items() {
+        return items;
+    }
+
+    @Override
+    public ActionRequestValidationException validate() {
+        return null;
+    }
+
+    public static class Item {
+
+        private final String index;
+        private final String id;
+        private final String routing;
+
+        private Item(String index, String id, @Nullable String routing) {
+            this.index = index;
+            this.id = id;
+            this.routing = routing;
+        }
+
+        public String index() {
+            return index;
+        }
+
+        public String id() {
+            return id;
+        }
+
+        @Nullable
+        public String routing() {
+            return routing;
+        }
+    }
+}
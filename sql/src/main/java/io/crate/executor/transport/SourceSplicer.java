@@ -0,0 +1,146 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.base.Splitter;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
+
+import java.io.IOException;
+import java.util.*;
+
+/**
+ * Applies changes to a source without converting the whole source into a map.
+ *
+ * The source is parsed as a stream of tokens. Fields which aren't changed are copied
+ * token by token, only objects which contain a changed path are descended into.
+ */
+public class SourceSplicer {
+
+    private static final Splitter PATH_SPLITTER = Splitter.on('.');
+
+    /**
+     * Overwrite given values on the source. If the value is a map,
+     * it will not be merged but overwritten. The keys of the changes map represent a path of
+     * the source tree, separated by dots.
+     * If the path doesn't exist, a new tree will be inserted.
+     *
+     * @return the changed source, in the content type of the given source
+     */
+    public static BytesReference splice(BytesReference source, Map<String, Object> changes) throws IOException {
+        Node root = new Node();
+        for (Map.Entry<String, Object> entry : changes.entrySet()) {
+            root.add(PATH_SPLITTER.split(entry.getKey()).iterator(), entry.getValue());
+        }
+        try (XContentParser parser = XContentHelper.createParser(source)) {
+            XContentBuilder builder = XContentFactory.contentBuilder(parser.contentType());
+            XContentParser.Token token = parser.nextToken();
+            if (token != XContentParser.Token.START_OBJECT) {
+                throw new IllegalArgumentException("The source must be an object");
+            }
+            spliceObject(parser, builder, root);
+            return builder.bytes();
+        }
+    }
+
+    /**
+     * copy the object the parser is positioned on and apply the changes of the node
+     */
+    private static void spliceObject(XContentParser parser, XContentBuilder builder, Node node) throws IOException {
+        builder.startObject();
+        Set<String> written = new HashSet<>();
+        XContentParser.Token token;
+        while ((token = parser.nextToken()) != XContentParser.Token.END_OBJECT) {
+            assert token == XContentParser.Token.FIELD_NAME : "expected a field name";
+            String name = parser.currentName();
+            if (node.values.containsKey(name)) {
+                parser.nextToken();
+                parser.skipChildren();
+                builder.field(name, node.values.get(name));
+                written.add(name);
+            } else if (node.children.containsKey(name)) {
+                token = parser.nextToken();
+                builder.field(name);
+                if (token == XContentParser.Token.START_OBJECT) {
+                    spliceObject(parser, builder, node.children.get(name));
+                } else if (token == XContentParser.Token.VALUE_NULL) {
+                    writeNode(builder, node.children.get(name));
+                } else {
+                    throw new IllegalArgumentException(String.format(Locale.ENGLISH,
+                            "Object expected for field [%s] but got %s", name, token));
+                }
+                written.add(name);
+            } else {
+                builder.copyCurrentStructure(parser);
+            }
+        }
+        writeMissing(builder, node, written);
+        builder.endObject();
+    }
+
+    private static void writeNode(XContentBuilder builder, Node node) throws IOException {
+        builder.startObject();
+        writeMissing(builder, node, Collections.<String>emptySet());
+        builder.endObject();
+    }
+
+    private static void writeMissing(XContentBuilder builder, Node node, Set<String> written) throws IOException {
+        for (Map.Entry<String, Object> entry : node.values.entrySet()) {
+            if (!written.contains(entry.getKey())) {
+                builder.field(entry.getKey(), entry.getValue());
+            }
+        }
+        for (Map.Entry<String, Node> entry : node.children.entrySet()) {
+            if (!written.contains(entry.getKey())) {
+                builder.field(entry.getKey());
+                writeNode(builder, entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * the changes of an object, either new values of its fields or changes of the objects it contains
+     */
+    private static class Node {
+
+        private final Map<String, Object> values = new HashMap<>();
+        private final Map<String, Node> children = new HashMap<>();
+
+        private void add(Iterator<String> path, Object value) {
+            String name = path.next();
+            if (!path.hasNext()) {
+                values.put(name, value);
+                children.remove(name);
+            } else if (!values.containsKey(name)) {
+                Node child = children.get(name);
+                if (child == null) {
+                    child = new Node();
+                    children.put(name, child);
+                }
+                child.add(path, value);
+            }
+        }
+    }
+}
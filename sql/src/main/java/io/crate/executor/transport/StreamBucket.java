@@ -40,25 +40,42 @@ import java.io.IOException;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Iterator;
+import java.util.NoSuchElementException;
 
+/**
+ * A bucket which keeps its rows serialized.
+ *
+ * The values are stored column-wise, each column is length prefixed.
+ * The values of a column are only decoded once a row of the bucket is asked for a value of that column,
+ * so columns which are never read are not decoded at all. If the bucket is read from a netty transport
+ * the columns are slices of the transport buffer and are not copied.
+ */
 public class StreamBucket implements Bucket, Streamable {
 
+    private static final BytesReference[] NO_COLUMNS = new BytesReference[0];
+
     private Streamer<?>[] streamers;
     private int size = -1;
-    private BytesReference bytes;
+    private BytesReference[] columns = NO_COLUMNS;
 
     public static class Builder {
 
-
-        private static final int INITIAL_PAGE_SIZE = 1024;
+        private static final int INITIAL_COLUMN_SIZE = 256;
         private int size = 0;
         private final Streamer<?>[] streamers;
-        private BytesStreamOutput out;
+        private BytesStreamOutput[] columns;
 
         public Builder(Streamer<?>[] streamers) {
             assert validStreamers(streamers) : "streamers must not be null and they shouldn't be of undefinedType";
             this.streamers = streamers;
-            out = new BytesStreamOutput(INITIAL_PAGE_SIZE);
+            initColumns();
+        }
+
+        private void initColumns() {
+            columns = new BytesStreamOutput[streamers.length];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = new BytesStreamOutput(INITIAL_COLUMN_SIZE);
+            }
         }
 
         public void add(Row row) throws IOException {
@@ -66,7 +83,7 @@ public class StreamBucket implements Bucket, Streamable {
 
             size++;
             for (int i = 0; i < row.size(); i++) {
-                streamers[i].writeValueTo(out, row.get(i));
+                streamers[i].writeValueTo(columns[i], row.get(i));
             }
         }
 
@@ -74,22 +91,39 @@ public class StreamBucket implements Bucket, Streamable {
             return size;
         }
 
+        /**
+         * @return the number of bytes the rows added so far take up when serialized
+         */
+        public int sizeInBytes() {
+            int bytes = 0;
+            for (BytesStreamOutput column : columns) {
+                bytes += column.size();
+            }
+            return bytes;
+        }
+
         public void writeToStream(StreamOutput output) throws IOException {
             output.writeVInt(size);
             if (size > 0) {
-                output.writeBytesReference(out.bytes());
+                output.writeVInt(columns.length);
+                for (BytesStreamOutput column : columns) {
+                    output.writeBytesReference(column.bytes());
+                }
             }
         }
 
         public StreamBucket build() throws IOException {
             StreamBucket sb = new StreamBucket(streamers);
             sb.size = size;
-            sb.bytes = out.bytes();
+            sb.columns = new BytesReference[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                sb.columns[i] = columns[i].bytes();
+            }
             return sb;
         }
 
         public void reset() {
-            out = new BytesStreamOutput(INITIAL_PAGE_SIZE);
+            initColumns();
             size = 0;
         }
     }
@@ -104,6 +138,19 @@ public class StreamBucket implements Bucket, Streamable {
         return size;
     }
 
+    /**
+     * @return the number of bytes of the serialized rows
+     */
+    public long sizeInBytes() {
+        long bytes = 0;
+        if (size > 0) {
+            for (BytesReference column : columns) {
+                bytes += column.length();
+            }
+        }
+        return bytes;
+    }
+
     public void streamers(Streamer<?>[] streamers) {
         assert validStreamers(streamers) : "streamers must not be null and they shouldn't be of undefinedType";
         this.streamers = streamers;
@@ -133,9 +180,13 @@ public class StreamBucket implements Bucket, Streamable {
 
     private class RowIterator implements Iterator<Row> {
 
-        private final StreamInput input = bytes.streamInput();
+        private final StreamInput[] inputs = new StreamInput[columns.length];
+        private final Object[] current = new Object[columns.length];
+        /**
+         * the number of values which have been decoded per column
+         */
+        private final int[] decoded = new int[columns.length];
         private int pos = 0;
-        private final Object[] current = new Object[streamers.length];
         private final Row row = new Row() {
             @Override
             public int size() {
@@ -144,7 +195,7 @@ public class StreamBucket implements Bucket, Streamable {
 
             @Override
             public Object get(int index) {
-                return current[index];
+                return value(index);
             }
 
             @Override
@@ -154,10 +205,37 @@ public class StreamBucket implements Bucket, Streamable {
 
             @Override
             public String toString() {
-                return Arrays.toString(current);
+                return Arrays.toString(materialize());
             }
         };
 
+        private RowIterator() {
+            assert streamers.length == columns.length : "number of streamers must match the number of columns";
+        }
+
+        /**
+         * decode the value of the current row, skipping the values of previous rows which have not been read
+         */
+        private Object value(int column) {
+            int rowIdx = pos - 1;
+            if (decoded[column] <= rowIdx) {
+                StreamInput input = inputs[column];
+                if (input == null) {
+                    input = columns[column].streamInput();
+                    inputs[column] = input;
+                }
+                try {
+                    while (decoded[column] <= rowIdx) {
+                        current[column] = streamers[column].readValueFrom(input);
+                        decoded[column]++;
+                    }
+                } catch (IOException e) {
+                    Throwables.propagate(e);
+                }
+            }
+            return current[column];
+        }
+
         @Override
         public boolean hasNext() {
             return pos < size;
@@ -165,12 +243,8 @@ public class StreamBucket implements Bucket, Streamable {
 
         @Override
         public Row next() {
-            for (int c = 0; c < streamers.length; c++) {
-                try {
-                    current[c] = streamers[c].readValueFrom(input);
-                } catch (IOException e) {
-                    Throwables.propagate(e);
-                }
+            if (!hasNext()) {
+                throw new NoSuchElementException();
             }
             pos++;
             return row;
@@ -195,7 +269,10 @@ public class StreamBucket implements Bucket, Streamable {
     public void readFrom(StreamInput in) throws IOException {
         size = in.readVInt();
         if (size > 0) {
-            bytes = in.readBytesReference();
+            columns = new BytesReference[in.readVInt()];
+            for (int i = 0; i < columns.length; i++) {
+                columns[i] = in.readBytesReference();
+            }
         }
     }
 
@@ -204,7 +281,10 @@ public class StreamBucket implements Bucket, Streamable {
         assert size > -1;
         out.writeVInt(size);
         if (size > 0) {
-            out.writeBytesReference(bytes);
+            out.writeVInt(columns.length);
+            for (BytesReference column : columns) {
+                out.writeBytesReference(column);
+            }
         }
     }
 }
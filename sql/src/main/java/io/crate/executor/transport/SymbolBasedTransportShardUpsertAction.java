@@ -22,8 +22,6 @@
 package io.crate.executor.transport;
 
 
-import com.google.common.base.Joiner;
-import com.google.common.base.Splitter;
 import io.crate.executor.transport.task.elasticsearch.FieldExtractor;
 import io.crate.executor.transport.task.elasticsearch.FieldExtractorFactory;
 import io.crate.executor.transport.task.elasticsearch.SymbolToFieldExtractor;
@@ -48,16 +46,13 @@ import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.action.shard.ShardStateAction;
 import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.routing.operation.plain.Preference;
-import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
-import org.elasticsearch.common.xcontent.XContentHelper;
-import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
-import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.VersionType;
 import org.elasticsearch.index.engine.DocumentAlreadyExistsException;
 import org.elasticsearch.index.engine.DocumentMissingException;
@@ -76,7 +71,6 @@ import org.elasticsearch.transport.TransportService;
 
 import java.io.IOException;
 import java.util.HashMap;
-import java.util.List;
 import java.util.Map;
 import java.util.concurrent.CancellationException;
 
@@ -157,6 +151,8 @@ public class SymbolBasedTransportShardUpsertAction
         long startTime = System.nanoTime();
         ShardUpsertResponse shardUpsertResponse = new ShardUpsertResponse();
         SymbolBasedShardUpsertRequest request = shardRequest.request;
+        // resolved once and shared by all items of the request
+        IndexShard indexShard = null;
         for (int i = 0; i < request.itemIndices().size(); i++) {
             int location = request.itemIndices().get(i);
             SymbolBasedShardUpsertRequest.Item item = request.items().get(i);
@@ -164,10 +160,14 @@ public class SymbolBasedTransportShardUpsertAction
                 throw new CancellationException();
             }
             try {
+                if (indexShard == null) {
+                    indexShard = indicesService.indexServiceSafe(shardRequest.shardId.getIndex())
+                            .shardSafe(shardRequest.shardId.id());
+                }
                 indexItem(
                         request,
                         item,
-                        shardRequest.shardId,
+                        indexShard,
                         item.insertValues() != null, // try insert first
                         0);
                 shardUpsertResponse.add(location,
@@ -197,7 +197,7 @@ public class SymbolBasedTransportShardUpsertAction
 
     public IndexResponse indexItem(SymbolBasedShardUpsertRequest request,
                           SymbolBasedShardUpsertRequest.Item item,
-                          ShardId shardId,
+                          IndexShard indexShard,
                           boolean tryInsertFirst,
                           int retryCount) throws ElasticsearchException {
 
@@ -211,17 +211,21 @@ public class SymbolBasedTransportShardUpsertAction
                     throw ExceptionsHelper.convertToElastic(e);
                 }
             } else {
-                indexRequest = new IndexRequest(prepareUpdate(request, item, shardId), request);
+                try {
+                    indexRequest = new IndexRequest(prepareUpdate(request, item, indexShard), request);
+                } catch (IOException e) {
+                    throw ExceptionsHelper.convertToElastic(e);
+                }
             }
             return indexAction.execute(indexRequest).actionGet();
         } catch (Throwable t) {
             if (t instanceof VersionConflictEngineException
                     && retryCount < item.retryOnConflict()) {
-                return indexItem(request, item, shardId, false, retryCount + 1);
+                return indexItem(request, item, indexShard, false, retryCount + 1);
             } else if (tryInsertFirst && item.updateAssignments() != null
                     && t instanceof DocumentAlreadyExistsException) {
                 // insert failed, document already exists, try update
-                return indexItem(request, item, shardId, false, 0);
+                return indexItem(request, item, indexShard, false, 0);
             } else {
                 throw t;
             }
@@ -232,13 +236,13 @@ public class SymbolBasedTransportShardUpsertAction
 
     /**
      * Prepares an update request by converting it into an index request.
+     * The changed columns are spliced into the existing source, see {@link SourceSplicer}.
      *
      * TODO: detect a NOOP and return an update response if true
      */
-    @SuppressWarnings("unchecked")
-    public IndexRequest prepareUpdate(SymbolBasedShardUpsertRequest request, SymbolBasedShardUpsertRequest.Item item, ShardId shardId) throws ElasticsearchException {
-        IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
-        IndexShard indexShard = indexService.shardSafe(shardId.id());
+    public IndexRequest prepareUpdate(SymbolBasedShardUpsertRequest request,
+                                      SymbolBasedShardUpsertRequest.Item item,
+                                      IndexShard indexShard) throws ElasticsearchException, IOException {
         final GetResult getResult = indexShard.getService().get(request.type(), item.id(),
                 new String[]{RoutingFieldMapper.NAME, ParentFieldMapper.NAME, TTLFieldMapper.NAME},
                 true, item.version(), VersionType.INTERNAL, FetchSourceContext.FETCH_SOURCE, false);
@@ -252,14 +256,9 @@ public class SymbolBasedTransportShardUpsertAction
             throw new DocumentSourceMissingException(new ShardId(request.index(), request.shardId()), request.type(), item.id());
         }
 
-        Tuple<XContentType, Map<String, Object>> sourceAndContent = XContentHelper.convertToMap(getResult.internalSourceRef(), true);
-        final Map<String, Object> updatedSourceAsMap;
-        final XContentType updateSourceContentType = sourceAndContent.v1();
         String routing = getResult.getFields().containsKey(RoutingFieldMapper.NAME) ? getResult.field(RoutingFieldMapper.NAME).getValue().toString() : null;
         String parent = getResult.getFields().containsKey(ParentFieldMapper.NAME) ? getResult.field(ParentFieldMapper.NAME).getValue().toString() : null;
 
-        updatedSourceAsMap = sourceAndContent.v2();
-
         final SymbolToFieldExtractorContext ctx = new SymbolToFieldExtractorContext(functions, item.updateAssignments().length);
         Map<String, FieldExtractor> extractors = new HashMap<>(item.updateAssignments().length);
         for (int i = 0; i < request.updateColumns().length; i++) {
@@ -275,14 +274,14 @@ public class SymbolBasedTransportShardUpsertAction
             pathsToUpdate.put(entry.getKey(), entry.getValue().extract(getResult));
         }
 
-        updateSourceByPaths(updatedSourceAsMap, pathsToUpdate);
+        BytesReference updatedSource = SourceSplicer.splice(getResult.internalSourceRef(), pathsToUpdate);
 
         final IndexRequest indexRequest = Requests.indexRequest(request.index())
                 .type(request.type())
                 .id(item.id())
                 .routing(routing)
                 .parent(parent)
-                .source(updatedSourceAsMap, updateSourceContentType)
+                .source(updatedSource, false)
                 .version(getResult.getVersion());
         indexRequest.operationThreaded(false);
         return indexRequest;
@@ -309,36 +308,6 @@ public class SymbolBasedTransportShardUpsertAction
         return indexRequest;
     }
 
-    /**
-     * Overwrite given values on the source. If the value is a map,
-     * it will not be merged but overwritten. The keys of the changes map representing a path of
-     * the source map tree.
-     * If the path doesn't exists, a new tree will be inserted.
-     *
-     * TODO: detect NOOP
-     */
-    @SuppressWarnings("unchecked")
-    private void updateSourceByPaths(Map<String, Object> source, Map<String, Object> changes) {
-        for (Map.Entry<String, Object> changesEntry : changes.entrySet()) {
-            if (changesEntry.getKey().contains(".")) {
-                // sub-path detected, dive recursive to the wanted tree element
-                List<String> path = Splitter.on(".").splitToList(changesEntry.getKey());
-                String currentKey = path.get(0);
-                if (!source.containsKey(currentKey)) {
-                    // insert parent tree element
-                    source.put(currentKey, new HashMap<String, Object>());
-                }
-                Map<String, Object> subChanges = new HashMap<>();
-                subChanges.put(Joiner.on(".").join(path.subList(1, path.size())),
-                        changesEntry.getValue());
-                updateSourceByPaths((Map<String, Object>) source.get(currentKey), subChanges);
-            } else {
-                // overwrite or insert the field
-                source.put(changesEntry.getKey(), changesEntry.getValue());
-            }
-        }
-    }
-
     @Override
     public void killAllCalled(long timestamp) {
         lastKillAll = timestamp;
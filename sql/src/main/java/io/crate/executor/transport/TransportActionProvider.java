@@ -40,7 +40,6 @@ import org.elasticsearch.action.bulk.TransportShardUpsertActionDelegateImpl;
 import org.elasticsearch.action.delete.TransportDeleteAction;
 import org.elasticsearch.action.deletebyquery.TransportDeleteByQueryAction;
 import org.elasticsearch.action.get.TransportGetAction;
-import org.elasticsearch.action.get.TransportMultiGetAction;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Provider;
 
@@ -59,7 +58,7 @@ public class TransportActionProvider {
     private final Provider<TransportDeleteAction> transportDeleteActionProvider;
 
     private final Provider<TransportGetAction> transportGetActionProvider;
-    private final Provider<TransportMultiGetAction> transportMultiGetActionProvider;
+    private final Provider<TransportPKLookupAction> transportPKLookupActionProvider;
     private final Provider<SymbolBasedTransportShardUpsertAction> symbolBasedTransportShardUpsertActionProvider;
     private final Provider<TransportShardUpsertAction> transportShardUpsertActionProvider;
     private final Provider<TransportPutMappingAction> transportPutMappingActionProvider;
@@ -82,7 +81,7 @@ public class TransportActionProvider {
                                    Provider<TransportDeleteByQueryAction> transportDeleteByQueryActionProvider,
                                    Provider<TransportDeleteAction> transportDeleteActionProvider,
                                    Provider<TransportGetAction> transportGetActionProvider,
-                                   Provider<TransportMultiGetAction> transportMultiGetActionProvider,
+                                   Provider<TransportPKLookupAction> transportPKLookupActionProvider,
                                    Provider<SymbolBasedTransportShardUpsertAction> symbolBasedTransportShardUpsertActionProvider,
                                    Provider<TransportKillAllNodeAction> transportKillAllNodeActionProvider,
                                    Provider<TransportShardUpsertAction> transportShardUpsertActionProvider,
@@ -100,7 +99,7 @@ public class TransportActionProvider {
         this.transportDeleteByQueryActionProvider = transportDeleteByQueryActionProvider;
         this.transportDeleteActionProvider = transportDeleteActionProvider;
         this.transportGetActionProvider = transportGetActionProvider;
-        this.transportMultiGetActionProvider = transportMultiGetActionProvider;
+        this.transportPKLookupActionProvider = transportPKLookupActionProvider;
         this.symbolBasedTransportShardUpsertActionProvider = symbolBasedTransportShardUpsertActionProvider;
         this.transportKillAllNodeActionProvider = transportKillAllNodeActionProvider;
         this.transportShardUpsertActionProvider = transportShardUpsertActionProvider;
@@ -153,8 +152,8 @@ public class TransportActionProvider {
         return transportGetActionProvider.get();
     }
 
-    public TransportMultiGetAction transportMultiGetAction() {
-        return transportMultiGetActionProvider.get();
+    public TransportPKLookupAction transportPKLookupAction() {
+        return transportPKLookupActionProvider.get();
     }
 
     public TransportShardUpsertActionDelegate transportShardUpsertActionDelegate() {
@@ -41,6 +41,7 @@ import io.crate.metadata.ReferenceResolver;
 import io.crate.operation.ImplementationSymbolVisitor;
 import io.crate.operation.PageDownstreamFactory;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.planner.*;
 import io.crate.planner.node.ExecutionNode;
 import io.crate.planner.node.PlanNode;
@@ -100,7 +101,8 @@ public class TransportExecutor implements Executor, TaskExecutor {
                              ClusterService clusterService,
                              CrateCircuitBreakerService breakerService,
                              BulkRetryCoordinatorPool bulkRetryCoordinatorPool,
-                             StreamerVisitor streamerVisitor) {
+                             StreamerVisitor streamerVisitor,
+                             SpillDirectory spillDirectory) {
         this.jobContextService = jobContextService;
         this.contextPreparer = contextPreparer;
         this.transportActionProvider = transportActionProvider;
@@ -122,7 +124,8 @@ public class TransportExecutor implements Executor, TaskExecutor {
                 settings,
                 transportActionProvider,
                 bulkRetryCoordinatorPool,
-                globalImplementationSymbolVisitor);
+                globalImplementationSymbolVisitor,
+                spillDirectory.directory());
     }
 
     @Override
@@ -320,7 +323,7 @@ public class TransportExecutor implements Executor, TaskExecutor {
                     jobId,
                     functions,
                     globalProjectionToProjectionVisitor,
-                    transportActionProvider.transportMultiGetAction(),
+                    transportActionProvider.transportPKLookupAction(),
                     transportActionProvider.transportGetAction(),
                     node,
                     jobContextService));
@@ -39,6 +39,8 @@ public class TransportExecutorModule extends AbstractModule {
         bind(SymbolBasedTransportShardUpsertAction.class).asEagerSingleton();
         bind(TransportShardUpsertAction.class).asEagerSingleton();
         bind(TransportFetchNodeAction.class).asEagerSingleton();
+        bind(TransportNodePKLookupAction.class).asEagerSingleton();
+        bind(TransportPKLookupAction.class).asEagerSingleton();
         bind(TransportCloseContextNodeAction.class).asEagerSingleton();
         bind(TransportKillAllNodeAction.class).asEagerSingleton();
     }
@@ -0,0 +1,224 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import io.crate.Constants;
+import io.crate.Streamer;
+import io.crate.core.collections.RowN;
+import io.crate.metadata.ColumnIdent;
+import io.crate.operation.reference.file.LineContext;
+import io.crate.planner.symbol.Reference;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.lucene.uid.Versions;
+import org.elasticsearch.common.xcontent.support.XContentMapValues;
+import org.elasticsearch.index.VersionType;
+import org.elasticsearch.index.get.GetResult;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesService;
+import org.elasticsearch.search.fetch.source.FetchSourceContext;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.elasticsearch.transport.TransportService;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Looks up documents by their primary key on all shards of a node which are part of the request
+ * and returns the values of the requested references as rows.
+ * Only the values are serialized, the source of the documents never leaves the node.
+ * The requested columns are extracted with a streaming scan of the source, see {@link LineContext}.
+ */
+@Singleton
+public class TransportNodePKLookupAction implements NodeAction<NodePKLookupRequest, NodePKLookupResponse> {
+
+    private static final String TRANSPORT_ACTION = "crate/sql/node/pk_lookup";
+    private static final String EXECUTOR_NAME = ThreadPool.Names.GET;
+
+    private final Transports transports;
+    private final IndicesService indicesService;
+
+    @Inject
+    public TransportNodePKLookupAction(TransportService transportService,
+                                       Transports transports,
+                                       IndicesService indicesService) {
+        this.transports = transports;
+        this.indicesService = indicesService;
+
+        transportService.registerHandler(TRANSPORT_ACTION,
+                new NodeActionRequestHandler<NodePKLookupRequest, NodePKLookupResponse>(this) {
+            @Override
+            public NodePKLookupRequest newInstance() {
+                return new NodePKLookupRequest();
+            }
+        });
+    }
+
+    public void execute(String targetNode,
+                        final NodePKLookupRequest request,
+                        ActionListener<NodePKLookupResponse> listener) {
+        transports.executeLocalOrWithTransport(this, targetNode, request, listener,
+                new DefaultTransportResponseHandler<NodePKLookupResponse>(listener, executorName()) {
+            @Override
+            public NodePKLookupResponse newInstance() {
+                return new NodePKLookupResponse(outputStreamers(request.references()));
+            }
+        });
+    }
+
+    @Override
+    public String actionName() {
+        return TRANSPORT_ACTION;
+    }
+
+    @Override
+    public String executorName() {
+        return EXECUTOR_NAME;
+    }
+
+    @Override
+    public void nodeOperation(NodePKLookupRequest request, ActionListener<NodePKLookupResponse> listener) {
+        List<Reference> references = request.references();
+        Streamer<?>[] streamers = outputStreamers(references);
+        // the source is read unfiltered, filtering it on the shard would parse it completely
+        LineContext source = sourceContext(references);
+        FetchSourceContext fetchSourceContext = new FetchSourceContext(needsSource(references));
+        StreamBucket.Builder builder = new StreamBucket.Builder(streamers);
+        Object[] cells = new Object[streamers.length];
+        RowN row = new RowN(cells);
+        try {
+            for (Map.Entry<ShardId, List<String>> entry : request.ids().entrySet()) {
+                ShardId shardId = entry.getKey();
+                IndexShard indexShard = indicesService.indexServiceSafe(shardId.getIndex()).shardSafe(shardId.id());
+                for (String id : entry.getValue()) {
+                    GetResult result = indexShard.getService().get(Constants.DEFAULT_MAPPING_TYPE, id,
+                            null, true, Versions.MATCH_ANY, VersionType.INTERNAL, fetchSourceContext, false);
+                    if (!result.isExists()) {
+                        continue;
+                    }
+                    cells[0] = new BytesRef(id);
+                    source.rawSource(result.sourceRef() == null ? null : result.sourceRef().toBytes());
+                    for (int i = 0; i < references.size(); i++) {
+                        cells[i + 1] = value(references.get(i), result, source);
+                    }
+                    builder.add(row);
+                }
+            }
+            NodePKLookupResponse response = new NodePKLookupResponse(streamers);
+            response.rows(builder.build());
+            listener.onResponse(response);
+        } catch (Throwable t) {
+            listener.onFailure(t);
+        }
+    }
+
+    private static Object value(Reference reference, GetResult result, LineContext source) {
+        ColumnIdent column = reference.info().ident().columnIdent();
+        Object value;
+        switch (column.fqn()) {
+            case "_version":
+                value = result.getVersion();
+                break;
+            case "_id":
+                value = result.getId();
+                break;
+            case "_raw":
+                value = result.sourceRef().toBytesRef();
+                break;
+            case "_doc":
+                value = source.sourceAsMap();
+                break;
+            default:
+                Object topLevelValue = source.get(new ColumnIdent(column.name()));
+                if (column.isColumn()) {
+                    value = topLevelValue;
+                } else {
+                    value = XContentMapValues.extractValue(column.fqn(),
+                            Collections.<String, Object>singletonMap(column.name(), topLevelValue));
+                }
+        }
+        return reference.valueType().value(value);
+    }
+
+    /**
+     * only the top-level columns of the references are extracted from the source while it is scanned,
+     * nested values are read from them like from the parsed source, so objects within arrays are resolved as well
+     */
+    private static LineContext sourceContext(List<Reference> references) {
+        LineContext source = new LineContext();
+        for (Reference ref : references) {
+            ColumnIdent column = ref.ident().columnIdent();
+            if (!column.isSystemColumn()) {
+                source.registerColumn(new ColumnIdent(column.name()));
+            } else if (column.name().equals("_doc")) {
+                source.needsSourceAsMap();
+            }
+        }
+        return source;
+    }
+
+    private static boolean needsSource(List<Reference> references) {
+        for (Reference ref : references) {
+            ColumnIdent column = ref.ident().columnIdent();
+            if (!column.isSystemColumn() || column.name().equals("_raw") || column.name().equals("_doc")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * the part of the source which is needed to read the given references
+     */
+    public static FetchSourceContext fetchSourceContext(List<Reference> references) {
+        List<String> includes = new ArrayList<>(references.size());
+        for (Reference ref : references) {
+            ColumnIdent column = ref.ident().columnIdent();
+            if (column.isSystemColumn()) {
+                if (column.name().equals("_raw") || column.name().equals("_doc")) {
+                    return new FetchSourceContext(true);
+                }
+            } else {
+                includes.add(column.name());
+            }
+        }
+        if (includes.isEmpty()) {
+            return new FetchSourceContext(false);
+        }
+        return new FetchSourceContext(includes.toArray(new String[includes.size()]));
+    }
+
+    static Streamer<?>[] outputStreamers(List<Reference> references) {
+        Streamer<?>[] streamers = new Streamer<?>[references.size() + 1];
+        streamers[0] = DataTypes.STRING.streamer();
+        for (int i = 0; i < references.size(); i++) {
+            streamers[i + 1] = references.get(i).valueType().streamer();
+        }
+        return streamers;
+    }
+}
@@ -0,0 +1,245 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.Constants;
+import io.crate.core.collections.Bucket;
+import io.crate.planner.symbol.Reference;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.NoShardAvailableActionException;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.TransportAction;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.routing.ShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndexMissingException;
+import org.elasticsearch.threadpool.ThreadPool;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Looks up documents by their primary key.
+ *
+ * The keys are grouped by the node which holds a copy of their shard, a local copy is preferred,
+ * so that every node involved receives exactly one {@link NodePKLookupRequest}.
+ * If the lookup on a node fails, the keys of its shards are looked up again on the next active copy.
+ */
+@Singleton
+public class TransportPKLookupAction extends TransportAction<PKLookupRequest, PKLookupResponse> {
+
+    private static final String ACTION_NAME = "crate/sql/pk_lookup";
+    private static final String PREFERENCE = "_local";
+
+    private final ClusterService clusterService;
+    private final TransportNodePKLookupAction nodePKLookupAction;
+
+    @Inject
+    public TransportPKLookupAction(Settings settings,
+                                   ThreadPool threadPool,
+                                   ActionFilters actionFilters,
+                                   ClusterService clusterService,
+                                   TransportNodePKLookupAction nodePKLookupAction) {
+        super(settings, ACTION_NAME, threadPool, actionFilters);
+        this.clusterService = clusterService;
+        this.nodePKLookupAction = nodePKLookupAction;
+    }
+
+    @Override
+    protected void doExecute(PKLookupRequest request, final ActionListener<PKLookupResponse> listener) {
+        Collection<ShardLookup> shardLookups;
+        try {
+            shardLookups = groupByShard(request, clusterService.state());
+        } catch (Throwable t) {
+            listener.onFailure(t);
+            return;
+        }
+        if (shardLookups.isEmpty()) {
+            listener.onResponse(new PKLookupResponse(ImmutableList.<Bucket>of()));
+            return;
+        }
+        new AsyncAction(request.references(), listener).start(shardLookups);
+    }
+
+    private Collection<ShardLookup> groupByShard(PKLookupRequest request, ClusterState state) {
+        Map<ShardId, ShardLookup> shardLookups = new HashMap<>();
+        for (PKLookupRequest.Item item : request.items()) {
+            ShardIterator shards;
+            try {
+                shards = clusterService.operationRouting().getShards(
+                        state, item.index(), Constants.DEFAULT_MAPPING_TYPE, item.id(), item.routing(), PREFERENCE);
+            } catch (IndexMissingException e) {
+                // a partition which doesn't exist contains no documents
+                continue;
+            }
+            ShardLookup shardLookup = shardLookups.get(shards.shardId());
+            if (shardLookup == null) {
+                shardLookup = new ShardLookup(shards);
+                if (shardLookup.nodeId() == null) {
+                    throw new NoShardAvailableActionException(shards.shardId());
+                }
+                shardLookups.put(shards.shardId(), shardLookup);
+            }
+            shardLookup.ids.add(item.id());
+        }
+        return shardLookups.values();
+    }
+
+    /**
+     * the keys of one shard and the active copies of the shard which are left to look them up
+     */
+    private static class ShardLookup {
+
+        private final ShardId shardId;
+        private final ShardIterator shards;
+        private final List<String> ids = new ArrayList<>();
+        private ShardRouting current;
+
+        private ShardLookup(ShardIterator shards) {
+            this.shardId = shards.shardId();
+            this.shards = shards;
+            nextCopy();
+        }
+
+        /**
+         * @return the node of the current copy or null if there is no active copy left
+         */
+        @Nullable
+        private String nodeId() {
+            return current == null ? null : current.currentNodeId();
+        }
+
+        private void nextCopy() {
+            ShardRouting shard;
+            while ((shard = shards.nextOrNull()) != null) {
+                if (shard.active()) {
+                    current = shard;
+                    return;
+                }
+            }
+            current = null;
+        }
+    }
+
+    private class AsyncAction {
+
+        private final List<Reference> references;
+        private final ActionListener<PKLookupResponse> listener;
+        private final List<Bucket> buckets = Collections.synchronizedList(new ArrayList<Bucket>());
+        private final AtomicInteger pending = new AtomicInteger();
+        private final AtomicReference<Throwable> lastFailure = new AtomicReference<>();
+
+        private AsyncAction(List<Reference> references, ActionListener<PKLookupResponse> listener) {
+            this.references = references;
+            this.listener = listener;
+        }
+
+        /**
+         * send one request to each node of the current copies of the shards
+         */
+        private void start(Collection<ShardLookup> shardLookups) {
+            Map<String, List<ShardLookup>> byNode = new HashMap<>();
+            for (ShardLookup shardLookup : shardLookups) {
+                List<ShardLookup> nodeShards = byNode.get(shardLookup.nodeId());
+                if (nodeShards == null) {
+                    nodeShards = new ArrayList<>();
+                    byNode.put(shardLookup.nodeId(), nodeShards);
+                }
+                nodeShards.add(shardLookup);
+            }
+            pending.addAndGet(byNode.size());
+            for (Map.Entry<String, List<ShardLookup>> entry : byNode.entrySet()) {
+                execute(entry.getKey(), entry.getValue());
+            }
+        }
+
+        private void execute(String nodeId, final List<ShardLookup> shardLookups) {
+            NodePKLookupRequest nodeRequest = new NodePKLookupRequest(references);
+            for (ShardLookup shardLookup : shardLookups) {
+                for (String id : shardLookup.ids) {
+                    nodeRequest.add(shardLookup.shardId, id);
+                }
+            }
+            ActionListener<NodePKLookupResponse> nodeListener = new ActionListener<NodePKLookupResponse>() {
+                @Override
+                public void onResponse(NodePKLookupResponse response) {
+                    buckets.add(response.rows());
+                    countDown();
+                }
+
+                @Override
+                public void onFailure(Throwable e) {
+                    retryOnNextCopies(shardLookups, e);
+                    countDown();
+                }
+            };
+            try {
+                nodePKLookupAction.execute(nodeId, nodeRequest, nodeListener);
+            } catch (Throwable t) {
+                nodeListener.onFailure(t);
+            }
+        }
+
+        private void retryOnNextCopies(List<ShardLookup> shardLookups, Throwable e) {
+            List<ShardLookup> retries = new ArrayList<>(shardLookups.size());
+            for (ShardLookup shardLookup : shardLookups) {
+                shardLookup.nextCopy();
+                if (shardLookup.nodeId() == null) {
+                    logger.debug("primary key lookup on shard {} failed on all copies", e, shardLookup.shardId);
+                    lastFailure.set(e);
+                } else {
+                    logger.trace("primary key lookup on shard {} failed, retrying on node {}",
+                            e, shardLookup.shardId, shardLookup.nodeId());
+                    retries.add(shardLookup);
+                }
+            }
+            if (!retries.isEmpty()) {
+                start(retries);
+            }
+        }
+
+        private void countDown() {
+            if (pending.decrementAndGet() > 0) {
+                return;
+            }
+            Throwable failure = lastFailure.get();
+            if (failure == null) {
+                listener.onResponse(new PKLookupResponse(buckets));
+            } else {
+                listener.onFailure(failure);
+            }
+        }
+    }
+}
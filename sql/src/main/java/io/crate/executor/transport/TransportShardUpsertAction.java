@@ -53,14 +53,12 @@ import org.elasticsearch.cluster.ClusterState;
 import org.elasticsearch.cluster.action.shard.ShardStateAction;
 import org.elasticsearch.cluster.routing.ShardIterator;
 import org.elasticsearch.cluster.routing.operation.plain.Preference;
-import org.elasticsearch.common.collect.Tuple;
+import org.elasticsearch.common.bytes.BytesReference;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.xcontent.XContentBuilder;
 import org.elasticsearch.common.xcontent.XContentFactory;
-import org.elasticsearch.common.xcontent.XContentHelper;
-import org.elasticsearch.common.xcontent.XContentType;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.VersionType;
@@ -238,7 +236,11 @@ public class TransportShardUpsertAction
                     throw ExceptionsHelper.convertToElastic(e);
                 }
             } else {
-                indexRequest = new IndexRequest(prepareUpdate(request, item, shardId, extractorContextUpdate), request);
+                try {
+                    indexRequest = new IndexRequest(prepareUpdate(request, item, shardId, extractorContextUpdate), request);
+                } catch (IOException e) {
+                    throw ExceptionsHelper.convertToElastic(e);
+                }
             }
             return indexAction.execute(indexRequest).actionGet();
         } catch (Throwable t) {
@@ -259,14 +261,14 @@ public class TransportShardUpsertAction
 
     /**
      * Prepares an update request by converting it into an index request.
+     * The changed columns are spliced into the existing source, see {@link SourceSplicer}.
      *
      * TODO: detect a NOOP and return an update response if true
      */
-    @SuppressWarnings("unchecked")
     public IndexRequest prepareUpdate(ShardUpsertRequest request,
                                       ShardUpsertRequest.Item item,
                                       ShardId shardId,
-                                      SymbolToFieldExtractorContext extractorContextUpdate) throws ElasticsearchException {
+                                      SymbolToFieldExtractorContext extractorContextUpdate) throws ElasticsearchException, IOException {
         IndexService indexService = indicesService.indexServiceSafe(shardId.getIndex());
         IndexShard indexShard = indexService.shardSafe(shardId.id());
         final GetResult getResult = indexShard.getService().get(request.type(), item.id(),
@@ -282,14 +284,9 @@ public class TransportShardUpsertAction
             throw new DocumentSourceMissingException(new ShardId(request.index(), request.shardId()), request.type(), item.id());
         }
 
-        Tuple<XContentType, Map<String, Object>> sourceAndContent = XContentHelper.convertToMap(getResult.internalSourceRef(), true);
-        final Map<String, Object> updatedSourceAsMap;
-        final XContentType updateSourceContentType = sourceAndContent.v1();
         String routing = getResult.getFields().containsKey(RoutingFieldMapper.NAME) ? getResult.field(RoutingFieldMapper.NAME).getValue().toString() : null;
         String parent = getResult.getFields().containsKey(ParentFieldMapper.NAME) ? getResult.field(ParentFieldMapper.NAME).getValue().toString() : null;
 
-        updatedSourceAsMap = sourceAndContent.v2();
-
         // collect inputs
         Set<CollectExpression<?>> collectExpressions = extractorContextUpdate.implContext.collectExpressions();
         for (CollectExpression<?> collectExpression : collectExpressions) {
@@ -302,23 +299,23 @@ public class TransportShardUpsertAction
             extractors.put(entry.getKey(), SYMBOL_TO_FIELD_EXTRACTOR.convert(entry.getValue(), extractorContextUpdate));
         }
 
-        Map<ColumnIdent, Object> mapToUpdate = new HashMap<>(extractors.size());
+        Map<String, Object> pathsToUpdate = new HashMap<>(extractors.size());
         for (Map.Entry<Reference, FieldExtractor> entry : extractors.entrySet()) {
             /**
              * NOTE: mapping isn't applied. So if an Insert was done using the ES Rest Endpoint
              * the data might be returned in the wrong format (date as string instead of long)
              */
-            mapToUpdate.put(entry.getKey().ident().columnIdent(), entry.getValue().extract(getResult));
+            pathsToUpdate.put(entry.getKey().ident().columnIdent().fqn(), entry.getValue().extract(getResult));
         }
 
-        updateSource(updatedSourceAsMap, mapToUpdate);
+        BytesReference updatedSource = SourceSplicer.splice(getResult.internalSourceRef(), pathsToUpdate);
 
         final IndexRequest indexRequest = Requests.indexRequest(request.index())
                 .type(request.type())
                 .id(item.id())
                 .routing(routing)
                 .parent(parent)
-                .source(updatedSourceAsMap, updateSourceContentType)
+                .source(updatedSource, false)
                 .version(getResult.getVersion());
         indexRequest.operationThreaded(false);
         return indexRequest;
@@ -356,50 +353,6 @@ public class TransportShardUpsertAction
         return indexRequest;
     }
 
-    /**
-     * Overwrite given values on the source. If the value is a map,
-     * it will not be merged but overwritten. The keys of the changes map representing a path of
-     * the source map tree.
-     * If the path doesn't exists, a new tree will be inserted.
-     *
-     * TODO: detect NOOP
-     */
-    @SuppressWarnings("unchecked")
-    private void updateSource(Map<String, Object> source, Map<ColumnIdent, Object> changes) {
-        for (Map.Entry<ColumnIdent, Object> changesEntry : changes.entrySet()) {
-            int pathSize = changesEntry.getKey().path().size();
-            if (pathSize > 0) {
-                // get or create parent hierarchy
-
-                // first most top one
-                String currentKey = changesEntry.getKey().name();
-                Map<String, Object> sourceElement = (Map<String, Object>)source.get(currentKey);
-                if (sourceElement == null) {
-                    // insert parent tree element
-                    sourceElement = new HashMap<>();
-                    source.put(currentKey, sourceElement);
-                }
-
-                // second, path elements without last one
-                for (int i = 0; i < changesEntry.getKey().path().size()-1; i++) {
-                    currentKey = changesEntry.getKey().path().get(i);
-                    sourceElement = (Map<String, Object>)sourceElement.get(currentKey);
-                    if (sourceElement == null) {
-                        // insert parent tree element
-                        sourceElement = new HashMap<>();
-                        sourceElement.put(currentKey, new HashMap<String, Object>());
-                    }
-                }
-
-                // finally set value (last path element)
-                sourceElement.put(changesEntry.getKey().path().get(pathSize - 1), changesEntry.getValue());
-            } else {
-                // overwrite or insert the field
-                source.put(changesEntry.getKey().name(), changesEntry.getValue());
-            }
-        }
-    }
-
     @Override
     public void killAllCalled(long timestamp) {
         lastKillAll = timestamp;
@@ -39,6 +39,7 @@ public class DistributedResultRequest extends TransportRequest {
 
     private int executionNodeId;
     private int bucketIdx;
+    private int pageIdx = 0;
 
     private Streamer<?>[] streamers;
     private Bucket rows;
@@ -69,6 +70,17 @@ public class DistributedResultRequest extends TransportRequest {
         return bucketIdx;
     }
 
+    /**
+     * the number of the page within the pages sent by the upstream of this bucket
+     */
+    public int pageIdx() {
+        return pageIdx;
+    }
+
+    public void pageIdx(int pageIdx) {
+        this.pageIdx = pageIdx;
+    }
+
     public void streamers(Streamer<?>[] streamers) {
         if (rows instanceof StreamBucket) {
             assert streamers != null;
@@ -115,6 +127,7 @@ public class DistributedResultRequest extends TransportRequest {
         jobId = new UUID(in.readLong(), in.readLong());
         executionNodeId = in.readVInt();
         bucketIdx = in.readVInt();
+        pageIdx = in.readVInt();
         isLast = in.readBoolean();
 
         boolean failure = in.readBoolean();
@@ -139,6 +152,7 @@ public class DistributedResultRequest extends TransportRequest {
         out.writeLong(jobId.getLeastSignificantBits());
         out.writeVInt(executionNodeId);
         out.writeVInt(bucketIdx);
+        out.writeVInt(pageIdx);
         out.writeBoolean(isLast);
 
         boolean failure = throwable != null;
@@ -30,6 +30,7 @@ import java.io.IOException;
 public class DistributedResultResponse extends TransportResponse {
 
     private boolean needMore = false;
+    private int credits = 1;
 
     public DistributedResultResponse() {
     }
@@ -38,19 +39,33 @@ public class DistributedResultResponse extends TransportResponse {
         this.needMore = needMore;
     }
 
+    public DistributedResultResponse(boolean needMore, int credits) {
+        this.needMore = needMore;
+        this.credits = credits;
+    }
+
     public boolean needMore() {
         return needMore;
     }
 
+    /**
+     * @return the number of requests the upstream may have in flight to the receiver of this response
+     */
+    public int credits() {
+        return credits;
+    }
+
     @Override
     public void readFrom(StreamInput in) throws IOException {
         super.readFrom(in);
         needMore = in.readBoolean();
+        credits = in.readVInt();
     }
 
     @Override
     public void writeTo(StreamOutput out) throws IOException {
         super.writeTo(out);
         out.writeBoolean(needMore);
+        out.writeVInt(credits);
     }
 }
@@ -23,12 +23,14 @@ package io.crate.executor.transport.distributed;
 
 import io.crate.Constants;
 import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Row;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 
+import javax.annotation.Nullable;
 import java.io.IOException;
 import java.util.Collection;
 import java.util.Deque;
@@ -38,13 +40,31 @@ import java.util.concurrent.ConcurrentLinkedDeque;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
 
+/**
+ * Distributes rows to the downstream nodes by the hash of their key columns.
+ *
+ * The rows for each downstream are sent in pages. A page is sent once it either contains
+ * {@link Constants#PAGE_SIZE} rows or {@link #PAGE_SIZE_IN_BYTES} bytes, so wide rows result in smaller pages.
+ * Each downstream grants credits with its responses (see {@link DistributedResultResponse#credits()}),
+ * which is the number of pages that may be in flight to it at the same time.
+ * Pages which can't be sent yet are queued and accounted until they are sent, so the breaker trips
+ * if the downstreams consume the pages slower than they are produced.
+ */
 public class DistributingDownstream extends ResultProviderBase {
 
     private static final ESLogger LOGGER = Loggers.getLogger(DistributingDownstream.class);
 
+    static final int PAGE_SIZE_IN_BYTES = 1024 * 1024;
+
+    /**
+     * a distribution is logged as skewed if a downstream receives this many times the average number of rows
+     */
+    private static final int SKEW_FACTOR = 2;
+
     private final UUID jobId;
     private final TransportDistributedResultAction transportDistributedResultAction;
     private final MultiBucketBuilder bucketBuilder;
+    private final RamAccountingContext ramAccountingContext;
     private Downstream[] downstreams;
     private final AtomicInteger finishedDownstreams = new AtomicInteger(0);
 
@@ -53,16 +73,35 @@ public class DistributingDownstream extends ResultProviderBase {
                                   int bucketIdx,
                                   Collection<String> downstreamNodeIds,
                                   TransportDistributedResultAction transportDistributedResultAction,
-                                  Streamer<?>[] streamers) {
+                                  Streamer<?>[] streamers,
+                                  RamAccountingContext ramAccountingContext) {
+        this(jobId, targetExecutionNodeId, bucketIdx, downstreamNodeIds, transportDistributedResultAction, streamers,
+                1, ramAccountingContext);
+    }
+
+    /**
+     * @param numKeyColumns        the number of leading columns of the rows which are used to choose their downstream
+     * @param ramAccountingContext the context the queued pages are accounted on
+     */
+    public DistributingDownstream(UUID jobId,
+                                  int targetExecutionNodeId,
+                                  int bucketIdx,
+                                  Collection<String> downstreamNodeIds,
+                                  TransportDistributedResultAction transportDistributedResultAction,
+                                  Streamer<?>[] streamers,
+                                  int numKeyColumns,
+                                  RamAccountingContext ramAccountingContext) {
         this.jobId = jobId;
         this.transportDistributedResultAction = transportDistributedResultAction;
+        this.ramAccountingContext = ramAccountingContext;
 
         downstreams = new Downstream[downstreamNodeIds.size()];
-        bucketBuilder = new MultiBucketBuilder(streamers, downstreams.length);
+        bucketBuilder = new MultiBucketBuilder(streamers, downstreams.length, numKeyColumns);
 
         int idx = 0;
         for (String downstreamNodeId : downstreamNodeIds) {
-            downstreams[idx] = new Downstream(downstreamNodeId, jobId, targetExecutionNodeId, bucketIdx, streamers);
+            downstreams[idx] = new Downstream(
+                    downstreamNodeId, jobId, targetExecutionNodeId, bucketIdx, streamers, ramAccountingContext);
             idx++;
         }
     }
@@ -87,24 +126,57 @@ public class DistributingDownstream extends ResultProviderBase {
     }
 
     protected void sendRequestIfNeeded(int downstreamIdx) {
-        int size = bucketBuilder.size(downstreamIdx);
-        if (size >= Constants.PAGE_SIZE || remainingUpstreams.get() <= 0) {
+        if (bucketBuilder.size(downstreamIdx) >= Constants.PAGE_SIZE
+            || bucketBuilder.sizeInBytes(downstreamIdx) >= PAGE_SIZE_IN_BYTES) {
             Downstream downstream = downstreams[downstreamIdx];
-            downstream.bucketQueue.add(bucketBuilder.build(downstreamIdx));
-            sendRequest(downstream);
+            int bytes = bucketBuilder.sizeInBytes(downstreamIdx);
+            downstream.queue(bytes, bucketBuilder.build(downstreamIdx));
+            sendRequests(downstream, false);
         }
     }
 
     protected void onAllUpstreamsFinished() {
         for (int i = 0; i < downstreams.length; i++) {
-            sendRequestIfNeeded(i);
+            Downstream downstream = downstreams[i];
+            synchronized (downstream) {
+                if (bucketBuilder.size(i) > 0) {
+                    int bytes = bucketBuilder.sizeInBytes(i);
+                    downstream.queue(bytes, bucketBuilder.build(i));
+                }
+                downstream.allBucketsQueued = true;
+            }
+            sendRequests(downstream, true);
         }
     }
 
     private void forwardFailures(Throwable throwable) {
         for (Downstream downstream : downstreams) {
-            downstream.request.throwable(throwable);
-            sendRequest(downstream.request, downstream);
+            DistributedResultRequest request;
+            synchronized (downstream) {
+                downstream.lastSent = true;
+                request = downstream.newRequest();
+            }
+            request.throwable(throwable);
+            sendRequest(request, downstream);
+        }
+    }
+
+    /**
+     * send the failure to all downstreams which haven't received their last page yet
+     * and which still want rows, so they don't wait for pages which are never sent
+     */
+    private void forwardFailureToUnfinished(Throwable throwable) {
+        for (Downstream downstream : downstreams) {
+            DistributedResultRequest request;
+            synchronized (downstream) {
+                if (downstream.lastSent || !downstream.wantMore.get()) {
+                    continue;
+                }
+                downstream.lastSent = true;
+                request = downstream.newRequest();
+            }
+            request.throwable(throwable);
+            sendRequest(request, downstream);
         }
     }
 
@@ -112,25 +184,24 @@ public class DistributingDownstream extends ResultProviderBase {
         return finishedDownstreams.get() == downstreams.length;
     }
 
-    private void sendRequest(Downstream downstream) {
-        if (downstream.requestPending.compareAndSet(false, true)) {
-            DistributedResultRequest request = downstream.request;
-            Deque<Bucket> queue = downstream.bucketQueue;
-            int size = queue.size();
-            if (size > 0) {
-                request.rows(queue.poll());
-            } else {
-                request.rows(Bucket.EMPTY);
-            }
-            request.isLast(!(size > 1 || remainingUpstreams.get() > 0));
+    /**
+     * send queued pages to the downstream as long as it has credits left
+     *
+     * @param sendEmptyPage if an empty page should be sent if nothing is queued and no request is in flight.
+     *                      This is required to send the last page or to answer a downstream which wants more rows.
+     */
+    private void sendRequests(Downstream downstream, boolean sendEmptyPage) {
+        DistributedResultRequest request;
+        while ((request = downstream.nextRequest(sendEmptyPage)) != null) {
             sendRequest(request, downstream);
         }
     }
 
     private void sendRequest(final DistributedResultRequest request, final Downstream downstream) {
         if (LOGGER.isTraceEnabled()) {
-            LOGGER.trace("[{}] sending distributing collect request to {}, isLast? {} ...",
+            LOGGER.trace("[{}] sending distributing collect request {} to {}, isLast? {} ...",
                     jobId.toString(),
+                    request.pageIdx(),
                     downstream.node, request.isLast());
         }
         try {
@@ -148,9 +219,30 @@ public class DistributingDownstream extends ResultProviderBase {
     @Override
     public Bucket doFinish() {
         onAllUpstreamsFinished();
+        if (LOGGER.isDebugEnabled()) {
+            logSkew();
+        }
         return null;
     }
 
+    private void logSkew() {
+        long total = 0;
+        long max = 0;
+        int maxIdx = 0;
+        for (int i = 0; i < downstreams.length; i++) {
+            long rows = bucketBuilder.rowCount(i);
+            total += rows;
+            if (rows > max) {
+                max = rows;
+                maxIdx = i;
+            }
+        }
+        if (downstreams.length > 1 && total >= Constants.PAGE_SIZE && max > SKEW_FACTOR * total / downstreams.length) {
+            LOGGER.debug("[{}] skewed distribution, {} of {} rows have been sent to {}",
+                    jobId, max, total, downstreams[maxIdx].node);
+        }
+    }
+
     @Override
     public Throwable doFail(Throwable t) {
         if (t instanceof CancellationException) {
@@ -165,18 +257,95 @@ public class DistributingDownstream extends ResultProviderBase {
     static class Downstream {
 
         final AtomicBoolean wantMore = new AtomicBoolean(true);
-        final AtomicBoolean requestPending = new AtomicBoolean(false);
-        final Deque<Bucket> bucketQueue = new ConcurrentLinkedDeque<>();
-        final DistributedResultRequest request;
+        final Deque<QueuedBucket> bucketQueue = new ConcurrentLinkedDeque<>();
         final String node;
+        private final UUID jobId;
+        private final int targetExecutionNodeId;
+        private final int bucketIdx;
+        private final Streamer<?>[] streamers;
+        private final RamAccountingContext ramAccountingContext;
+
+        private int inFlight = 0;
+        private int credits = 1;
+        private int nextPageIdx = 0;
+        private boolean allBucketsQueued = false;
+        private boolean lastSent = false;
 
         public Downstream(String node,
                           UUID jobId,
                           int targetExecutionNodeId,
                           int bucketIdx,
-                          Streamer<?>[] streamers) {
+                          Streamer<?>[] streamers,
+                          RamAccountingContext ramAccountingContext) {
             this.node = node;
-            this.request = new DistributedResultRequest(jobId, targetExecutionNodeId, bucketIdx, streamers);
+            this.jobId = jobId;
+            this.targetExecutionNodeId = targetExecutionNodeId;
+            this.bucketIdx = bucketIdx;
+            this.streamers = streamers;
+            this.ramAccountingContext = ramAccountingContext;
+        }
+
+        /**
+         * queue a page until it may be sent, its bytes are accounted until then
+         */
+        void queue(long bytes, Bucket rows) {
+            ramAccountingContext.addBytes(bytes);
+            bucketQueue.add(new QueuedBucket(rows, bytes));
+        }
+
+        @Nullable
+        private Bucket poll() {
+            QueuedBucket queued = bucketQueue.poll();
+            if (queued == null) {
+                return null;
+            }
+            ramAccountingContext.releaseBytes(queued.bytes);
+            return queued.rows;
+        }
+
+        /**
+         * drop the queued pages because no more rows are wanted
+         */
+        void clear() {
+            QueuedBucket queued;
+            while ((queued = bucketQueue.poll()) != null) {
+                ramAccountingContext.releaseBytes(queued.bytes);
+            }
+        }
+
+        private DistributedResultRequest newRequest() {
+            DistributedResultRequest request = new DistributedResultRequest(
+                    jobId, targetExecutionNodeId, bucketIdx, streamers);
+            request.pageIdx(nextPageIdx++);
+            return request;
+        }
+
+        /**
+         * @return the next request which may be sent or null if no credits are left or there is nothing to send
+         */
+        synchronized DistributedResultRequest nextRequest(boolean sendEmptyPage) {
+            if (lastSent || !wantMore.get() || inFlight >= credits) {
+                return null;
+            }
+            Bucket rows = poll();
+            if (rows == null) {
+                // the last page may be empty and is sent without waiting for the pages in flight
+                if (!allBucketsQueued && (!sendEmptyPage || inFlight > 0)) {
+                    return null;
+                }
+                rows = Bucket.EMPTY;
+            }
+            DistributedResultRequest request = newRequest();
+            request.rows(rows);
+            lastSent = allBucketsQueued && bucketQueue.isEmpty();
+            request.isLast(lastSent);
+            inFlight++;
+            return request;
+        }
+
+        synchronized void onResponse(int credits) {
+            inFlight--;
+            this.credits = Math.max(1, credits);
         }
     }
 
@@ -190,30 +359,50 @@ public class DistributingDownstream extends ResultProviderBase {
         @Override
         public void onResponse(DistributedResultResponse response) {
             if (LOGGER.isTraceEnabled()) {
-                LOGGER.trace("[{}] successfully sent distributing collect request to {}, needMore? {}",
+                LOGGER.trace("[{}] successfully sent distributing collect request to {}, needMore? {}, credits: {}",
                         jobId,
                         downstream.node,
-                        response.needMore());
+                        response.needMore(),
+                        response.credits());
             }
 
-            downstream.wantMore.set(response.needMore());
             if (!response.needMore()) {
-                finishedDownstreams.incrementAndGet();
-                // clean-up queue because no more rows are wanted
-                downstream.bucketQueue.clear();
+                finishDownstream(downstream);
             } else {
-                // send next request or final empty closing one
-                downstream.requestPending.set(false);
-                sendRequest(downstream);
+                // send next requests or final empty closing one
+                downstream.onResponse(response.credits());
+                sendRequests(downstream, true);
             }
         }
 
         @Override
         public void onFailure(Throwable exp) {
             LOGGER.error("[{}] Exception sending distributing collect request to {}", exp, jobId, downstream.node);
-            downstream.wantMore.set(false);
-            downstream.bucketQueue.clear();
+            // the rows of the failed request are lost, so the execution can't complete on any downstream
+            forwardFailureToUnfinished(exp);
+            for (Downstream d : downstreams) {
+                finishDownstream(d);
+            }
+        }
+    }
+
+    private void finishDownstream(Downstream downstream) {
+        // responses of requests which are in flight concurrently must only finish the downstream once
+        if (downstream.wantMore.compareAndSet(true, false)) {
             finishedDownstreams.incrementAndGet();
         }
+        // clean-up queue because no more rows are wanted
+        downstream.clear();
+    }
+
+    private static class QueuedBucket {
+
+        private final Bucket rows;
+        private final long bytes;
+
+        private QueuedBucket(Bucket rows, long bytes) {
+            this.rows = rows;
+            this.bytes = bytes;
+        }
     }
 }
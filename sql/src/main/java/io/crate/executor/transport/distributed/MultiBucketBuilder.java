@@ -35,13 +35,31 @@ import java.util.ArrayList;
 import java.util.List;
 
 
+/**
+ * Builds a bucket for each downstream. Rows are assigned to the buckets by a hash of their key columns,
+ * which is the same on every node.
+ */
 @SuppressWarnings("SynchronizationOnLocalVariableOrMethodParameter")
 public class MultiBucketBuilder {
 
+    private static final int SEED = 1;
+
     private final List<StreamBucket.Builder> bucketBuilders;
+    private final long[] rowCounts;
+    private final int numKeyColumns;
 
     public MultiBucketBuilder(Streamer<?>[] streamers, int numBuckets) {
+        this(streamers, numBuckets, 1);
+    }
+
+    /**
+     * @param numKeyColumns the number of leading columns of a row which are used to choose its bucket
+     */
+    public MultiBucketBuilder(Streamer<?>[] streamers, int numBuckets, int numKeyColumns) {
+        assert numKeyColumns > 0 : "need at least one key column";
+        this.numKeyColumns = numKeyColumns;
         bucketBuilders = new ArrayList<>(numBuckets);
+        rowCounts = new long[numBuckets];
         for (int i = 0; i < numBuckets; i++) {
             bucketBuilders.add(new StreamBucket.Builder(streamers));
         }
@@ -69,15 +87,32 @@ public class MultiBucketBuilder {
         }
     }
 
+    public int sizeInBytes(int bucketIdx) {
+        StreamBucket.Builder builder = bucketBuilders.get(bucketIdx);
+        synchronized (builder) {
+            return builder.sizeInBytes();
+        }
+    }
+
+    /**
+     * @return the number of rows which have been added to the bucket, including the rows of previous builds
+     */
+    public long rowCount(int bucketIdx) {
+        StreamBucket.Builder builder = bucketBuilders.get(bucketIdx);
+        synchronized (builder) {
+            return rowCounts[bucketIdx];
+        }
+    }
+
     /**
-     * get bucket number by doing modulo hashcode of first row-element
+     * get bucket number by hashing the key columns of the row
      */
     public int getBucket(Row row) {
-        int hash = hashCode(row.get(0));
-        if (hash == Integer.MIN_VALUE) {
-            hash = 0; // Math.abs(Integer.MIN_VALUE) == Integer.MIN_VALUE
+        int hash = SEED;
+        for (int i = 0; i < numKeyColumns; i++) {
+            hash = 31 * hash + hashCode(row.get(i));
         }
-        return Math.abs(hash) % bucketBuilders.size();
+        return (mix(hash) & Integer.MAX_VALUE) % bucketBuilders.size();
     }
 
     private static int hashCode(@Nullable Object value) {
@@ -90,15 +125,46 @@ public class MultiBucketBuilder {
             // which causes the hashCode / routing to be different on each node
             // this breaks the group by redistribution logic - need to use a fixed seed here
             // to be consistent.
-            return StringHelper.murmurhash3_x86_32(((BytesRef) value), 1);
+            return StringHelper.murmurhash3_x86_32(((BytesRef) value), SEED);
+        }
+        if (value instanceof Double || value instanceof Float) {
+            return hashLong(Double.doubleToLongBits(((Number) value).doubleValue()));
+        }
+        if (value instanceof Number) {
+            return hashLong(((Number) value).longValue());
         }
         return value.hashCode();
     }
 
+    /**
+     * the 64 bit finalizer of murmur3, spreads sequential values over all bits
+     */
+    private static int hashLong(long value) {
+        value ^= value >>> 33;
+        value *= 0xff51afd7ed558ccdL;
+        value ^= value >>> 33;
+        value *= 0xc4ceb9fe1a85ec53L;
+        value ^= value >>> 33;
+        return (int) (value ^ (value >>> 32));
+    }
+
+    /**
+     * the 32 bit finalizer of murmur3
+     */
+    private static int mix(int hash) {
+        hash ^= hash >>> 16;
+        hash *= 0x85ebca6b;
+        hash ^= hash >>> 13;
+        hash *= 0xc2b2ae35;
+        hash ^= hash >>> 16;
+        return hash;
+    }
+
     public void setNextRow(int index, Row row) throws IOException {
         StreamBucket.Builder builder = bucketBuilders.get(index);
         synchronized (builder) {
             builder.add(row);
+            rowCounts[index]++;
         }
     }
 
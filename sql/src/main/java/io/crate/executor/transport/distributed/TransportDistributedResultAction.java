@@ -121,11 +121,12 @@ public class TransportDistributedResultAction implements NodeAction<DistributedR
             request.streamers(pageDownstreamContext.streamer());
             pageDownstreamContext.setBucket(
                     request.bucketIdx(),
+                    request.pageIdx(),
                     request.rows(),
                     request.isLast(),
-                    new SendResponsePageResultListener(listener, request));
+                    new SendResponsePageResultListener(listener, request, pageDownstreamContext));
         } else {
-            pageDownstreamContext.failure(request.bucketIdx(), throwable);
+            pageDownstreamContext.failure(request.bucketIdx(), request.pageIdx(), throwable);
             listener.onResponse(new DistributedResultResponse(false));
         }
     }
@@ -144,16 +145,20 @@ public class TransportDistributedResultAction implements NodeAction<DistributedR
     private static class SendResponsePageResultListener implements PageResultListener {
         private final ActionListener<DistributedResultResponse> listener;
         private final DistributedResultRequest request;
+        private final PageDownstreamContext pageDownstreamContext;
 
-        public SendResponsePageResultListener(ActionListener<DistributedResultResponse> listener, DistributedResultRequest request) {
+        public SendResponsePageResultListener(ActionListener<DistributedResultResponse> listener,
+                                              DistributedResultRequest request,
+                                              PageDownstreamContext pageDownstreamContext) {
             this.listener = listener;
             this.request = request;
+            this.pageDownstreamContext = pageDownstreamContext;
         }
 
         @Override
         public void needMore(boolean needMore) {
             LOGGER.trace("sending needMore response, need more? {}", needMore);
-            listener.onResponse(new DistributedResultResponse(needMore));
+            listener.onResponse(new DistributedResultResponse(needMore, pageDownstreamContext.credits()));
         }
 
         @Override
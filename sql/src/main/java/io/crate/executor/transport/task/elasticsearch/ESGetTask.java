@@ -31,9 +31,14 @@ import io.crate.Constants;
 import io.crate.analyze.where.DocKeys;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Buckets;
+import io.crate.core.collections.Row;
 import io.crate.executor.JobTask;
 import io.crate.executor.QueryResult;
 import io.crate.executor.TaskResult;
+import io.crate.executor.transport.PKLookupRequest;
+import io.crate.executor.transport.PKLookupResponse;
+import io.crate.executor.transport.TransportNodePKLookupAction;
+import io.crate.executor.transport.TransportPKLookupAction;
 import io.crate.jobs.ESJobContext;
 import io.crate.jobs.JobContextService;
 import io.crate.jobs.JobExecutionContext;
@@ -55,9 +60,11 @@ import io.crate.planner.symbol.ValueSymbolVisitor;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.ActionListener;
 import org.elasticsearch.action.ActionRequest;
-import org.elasticsearch.action.get.*;
+import org.elasticsearch.action.get.GetRequest;
+import org.elasticsearch.action.get.GetResponse;
+import org.elasticsearch.action.get.TransportGetAction;
 import org.elasticsearch.action.support.TransportAction;
-import org.elasticsearch.common.Strings;
+import org.elasticsearch.common.lucene.BytesRefs;
 import org.elasticsearch.common.xcontent.support.XContentMapValues;
 import org.elasticsearch.search.fetch.source.FetchSourceContext;
 
@@ -67,6 +74,8 @@ public class ESGetTask extends JobTask implements RowUpstream {
 
     private final static SymbolToFieldExtractor<GetResponse> SYMBOL_TO_FIELD_EXTRACTOR =
             new SymbolToFieldExtractor<>(new GetResponseFieldExtractorFactory());
+    private final static SymbolToFieldExtractor<Row> SYMBOL_TO_ROW_EXTRACTOR =
+            new SymbolToFieldExtractor<>(new LookupRowFieldExtractorFactory());
 
     private final List<? extends ListenableFuture<TaskResult>> results;
     private final JobExecutionContext context;
@@ -74,13 +83,13 @@ public class ESGetTask extends JobTask implements RowUpstream {
     public ESGetTask(UUID jobId,
                      Functions functions,
                      ProjectorFactory projectorFactory,
-                     TransportMultiGetAction multiGetAction,
+                     TransportPKLookupAction pkLookupAction,
                      TransportGetAction getAction,
                      ESGetNode node,
                      JobContextService jobContextService) {
         super(jobId);
 
-        assert multiGetAction != null;
+        assert pkLookupAction != null;
         assert getAction != null;
         assert node != null;
         assert node.docKeys().size() > 0;
@@ -88,48 +97,16 @@ public class ESGetTask extends JobTask implements RowUpstream {
 
         int executionNodeId = node.executionNodeId();
 
-        final GetResponseContext ctx = new GetResponseContext(functions, node);
-        List<FieldExtractor<GetResponse>> extractors = new ArrayList<>(node.outputs().size());
-        for (Symbol symbol : node.outputs()) {
-            extractors.add(SYMBOL_TO_FIELD_EXTRACTOR.convert(symbol, ctx));
-        }
-        for (Symbol symbol : node.sortSymbols()) {
-            extractors.add(SYMBOL_TO_FIELD_EXTRACTOR.convert(symbol, ctx));
-        }
-
-        boolean fetchSource = false;
-        List<String> includes = new ArrayList<>(ctx.references().size());
-
-        for (Reference ref : ctx.references()) {
-            if (ref.ident().columnIdent().isSystemColumn()) {
-                if (ref.ident().columnIdent().name().equals("_raw")
-                        || ref.ident().columnIdent().name().equals("_doc")) {
-                    fetchSource = true;
-                    break;
-                }
-            } else {
-                includes.add(ref.ident().columnIdent().name());
-            }
-        }
-
-        final FetchSourceContext fsc;
-
-        if (fetchSource) {
-            fsc = new FetchSourceContext(true);
-        } else if (includes.size() > 0) {
-            fsc = new FetchSourceContext(includes.toArray(new String[includes.size()]));
-        } else {
-            fsc = new FetchSourceContext(false);
-        }
-
         ActionListener listener;
         ActionRequest request;
         TransportAction transportAction;
 
         FlatProjectorChain projectorChain = null;
         if (node.docKeys().size() > 1) {
-            request = prepareMultiGetRequest(node, fsc);
-            transportAction = multiGetAction;
+            LookupRowContext ctx = new LookupRowContext(functions, node);
+            List<FieldExtractor<Row>> extractors = buildExtractors(SYMBOL_TO_ROW_EXTRACTOR, ctx, node);
+            request = preparePKLookupRequest(node, ctx.lookupReferences);
+            transportAction = pkLookupAction;
 
             SettableFuture<TaskResult> result = SettableFuture.create();
             List<SettableFuture<TaskResult>> settableFutures = Collections.singletonList(result);
@@ -138,9 +115,11 @@ public class ESGetTask extends JobTask implements RowUpstream {
 
             projectorChain = getFlatProjectorChain(projectorFactory, node, queryResultRowDownstream);
             RowDownstreamHandle rowDownstreamHandle = projectorChain.firstProjector().registerUpstream(this);
-            listener = new MultiGetResponseListener(extractors, rowDownstreamHandle);
+            listener = new PKLookupResponseListener(extractors, rowDownstreamHandle);
         } else {
-            request = prepareGetRequest(node, fsc);
+            GetResponseContext ctx = new GetResponseContext(functions, node);
+            List<FieldExtractor<GetResponse>> extractors = buildExtractors(SYMBOL_TO_FIELD_EXTRACTOR, ctx, node);
+            request = prepareGetRequest(node, TransportNodePKLookupAction.fetchSourceContext(ctx.references()));
             transportAction = getAction;
             SettableFuture<Bucket> settableFuture = SettableFuture.create();
             listener = new GetResponseListener(settableFuture, extractors);
@@ -176,17 +155,25 @@ public class ESGetTask extends JobTask implements RowUpstream {
         return getRequest;
     }
 
-    private MultiGetRequest prepareMultiGetRequest(ESGetNode node, FetchSourceContext fsc) {
-        MultiGetRequest multiGetRequest = new MultiGetRequest();
+    private PKLookupRequest preparePKLookupRequest(ESGetNode node, List<Reference> references) {
+        PKLookupRequest request = new PKLookupRequest(references);
         for (DocKeys.DocKey key : node.docKeys()) {
-            MultiGetRequest.Item item = new MultiGetRequest.Item(
-                    indexName(node.tableInfo(), key.partitionValues()), Constants.DEFAULT_MAPPING_TYPE, key.id());
-            item.fetchSourceContext(fsc);
-            item.routing(key.routing());
-            multiGetRequest.add(item);
+            request.add(indexName(node.tableInfo(), key.partitionValues()), key.id(), key.routing());
         }
-        multiGetRequest.realtime(true);
-        return multiGetRequest;
+        return request;
+    }
+
+    private static <T> List<FieldExtractor<T>> buildExtractors(SymbolToFieldExtractor<T> symbolToFieldExtractor,
+                                                               SymbolToFieldExtractor.Context ctx,
+                                                               ESGetNode node) {
+        List<FieldExtractor<T>> extractors = new ArrayList<>(node.outputs().size() + node.sortSymbols().size());
+        for (Symbol symbol : node.outputs()) {
+            extractors.add(symbolToFieldExtractor.convert(symbol, ctx));
+        }
+        for (Symbol symbol : node.sortSymbols()) {
+            extractors.add(symbolToFieldExtractor.convert(symbol, ctx));
+        }
+        return extractors;
     }
 
     private FlatProjectorChain getFlatProjectorChain(ProjectorFactory projectorFactory,
@@ -232,30 +219,27 @@ public class ESGetTask extends JobTask implements RowUpstream {
         return inputColumns;
     }
 
-    static class MultiGetResponseListener implements ActionListener<MultiGetResponse> {
+    static class PKLookupResponseListener implements ActionListener<PKLookupResponse> {
 
-        private final List<FieldExtractor<GetResponse>> fieldExtractors;
+        private final List<FieldExtractor<Row>> fieldExtractors;
         private final RowDownstreamHandle downstream;
 
-
-        public MultiGetResponseListener(List<FieldExtractor<GetResponse>> extractors,
+        public PKLookupResponseListener(List<FieldExtractor<Row>> extractors,
                                         RowDownstreamHandle rowDownstreamHandle) {
             downstream = rowDownstreamHandle;
             this.fieldExtractors = extractors;
         }
 
-
         @Override
-        public void onResponse(MultiGetResponse responses) {
-            FieldExtractorRow<GetResponse> row = new FieldExtractorRow<>(fieldExtractors);
+        public void onResponse(PKLookupResponse response) {
+            FieldExtractorRow<Row> row = new FieldExtractorRow<>(fieldExtractors);
             try {
-                for (MultiGetItemResponse response : responses) {
-                    if (response.isFailed() || !response.getResponse().isExists()) {
-                        continue;
-                    }
-                    row.setCurrent(response.getResponse());
-                    if (!downstream.setNextRow(row)) {
-                        return;
+                for (Bucket bucket : response.buckets()) {
+                    for (Row lookupRow : bucket) {
+                        row.setCurrent(lookupRow);
+                        if (!downstream.setNextRow(row)) {
+                            return;
+                        }
                     }
                 }
                 downstream.finish();
@@ -316,8 +300,8 @@ public class ESGetTask extends JobTask implements RowUpstream {
     }
 
     static class GetResponseContext extends SymbolToFieldExtractor.Context {
-        private final HashMap<String, DocKeys.DocKey> ids2Keys;
-        private final ESGetNode node;
+        final HashMap<String, DocKeys.DocKey> ids2Keys;
+        final ESGetNode node;
         private final HashMap<ColumnIdent, Integer> partitionPositions;
 
         public GetResponseContext(Functions functions, ESGetNode node) {
@@ -403,4 +387,57 @@ public class ESGetTask extends JobTask implements RowUpstream {
         }
     }
 
+    /**
+     * Context for the rows of a {@link PKLookupResponse}.
+     * Partition columns are resolved from the keys, all other references are looked up.
+     */
+    static class LookupRowContext extends GetResponseContext {
+
+        private final List<Reference> lookupReferences = new ArrayList<>();
+
+        public LookupRowContext(Functions functions, ESGetNode node) {
+            super(functions, node);
+        }
+
+        /**
+         * @return the position of the reference in the looked up rows
+         */
+        int lookupPosition(Reference reference) {
+            int idx = lookupReferences.indexOf(reference);
+            if (idx < 0) {
+                idx = lookupReferences.size();
+                lookupReferences.add(reference);
+            }
+            // the first column is the _id
+            return idx + 1;
+        }
+    }
+
+    static class LookupRowFieldExtractorFactory implements FieldExtractorFactory<Row, LookupRowContext> {
+
+        @Override
+        public FieldExtractor<Row> build(Reference reference, final LookupRowContext context) {
+            ColumnIdent column = reference.ident().columnIdent();
+            if (context.node.tableInfo().isPartitioned()
+                    && context.node.tableInfo().partitionedBy().contains(column)) {
+                final int pos = context.node.tableInfo().primaryKey().indexOf(column);
+                if (pos >= 0) {
+                    return new FieldExtractor<Row>() {
+                        @Override
+                        public Object extract(Row row) {
+                            DocKeys.DocKey key = context.ids2Keys.get(BytesRefs.toString(row.get(0)));
+                            return ValueSymbolVisitor.VALUE.process(key.values().get(pos));
+                        }
+                    };
+                }
+            }
+            final int idx = context.lookupPosition(reference);
+            return new FieldExtractor<Row>() {
+                @Override
+                public Object extract(Row row) {
+                    return row.get(idx);
+                }
+            };
+        }
+    }
 }
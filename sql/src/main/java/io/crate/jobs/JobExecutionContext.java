@@ -24,6 +24,7 @@ package io.crate.jobs;
 import com.carrotsearch.hppc.IntObjectOpenHashMap;
 import com.carrotsearch.hppc.cursors.IntObjectCursor;
 import io.crate.exceptions.Exceptions;
+import io.crate.operation.collect.JobCollectContext;
 import io.crate.operation.collect.StatsTables;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
@@ -200,6 +201,23 @@ public class JobExecutionContext {
         }
     }
 
+    private static long spilledBytes(Object subContext) {
+        if (subContext instanceof PageDownstreamContext) {
+            return ((PageDownstreamContext) subContext).spilledBytes();
+        }
+        if (subContext instanceof JobCollectContext) {
+            return ((JobCollectContext) subContext).ramAccountingContext().spilledBytes();
+        }
+        return 0L;
+    }
+
+    private static long receivedRows(Object subContext) {
+        if (subContext instanceof PageDownstreamContext) {
+            return ((PageDownstreamContext) subContext).receivedRows();
+        }
+        return 0L;
+    }
+
     private class RemoveContextCallback implements ContextCallback {
 
         private final int executionNodeId;
@@ -221,7 +239,8 @@ public class JobExecutionContext {
                 LOGGER.trace("Closed context {} which was already closed.", executionNodeId);
                 remaining = activeSubContexts.get();
             } else {
-                statsTables.operationFinished(executionNodeId, Exceptions.messageOf(error), bytesUsed);
+                statsTables.operationFinished(executionNodeId, Exceptions.messageOf(error), bytesUsed,
+                        spilledBytes(remove), receivedRows(remove));
                 remaining = activeSubContexts.decrementAndGet();
             }
             if (remaining == 0) {
@@ -21,17 +21,22 @@
 
 package io.crate.jobs;
 
+import com.carrotsearch.hppc.IntObjectOpenHashMap;
+import com.carrotsearch.hppc.cursors.ObjectCursor;
 import com.google.common.util.concurrent.SettableFuture;
 import io.crate.Streamer;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.BucketPage;
+import io.crate.executor.transport.StreamBucket;
 import io.crate.operation.PageConsumeListener;
 import io.crate.operation.PageDownstream;
 import io.crate.operation.PageResultListener;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 
+import javax.annotation.Nullable;
 import java.util.ArrayList;
 import java.util.BitSet;
 import java.util.concurrent.CancellationException;
@@ -41,19 +46,28 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
 
     private static final ESLogger LOGGER = Loggers.getLogger(PageDownstreamContext.class);
 
+    /**
+     * the number of pages an upstream may send in advance, see {@link #credits()}
+     */
+    public static final int MAX_CREDITS = 4;
+    private static final double CREDITS_LIMIT_RATIO = 0.5;
+
     private final Object lock = new Object();
     private String name;
     private final PageDownstream pageDownstream;
     private final Streamer<?>[] streamer;
     private final RamAccountingContext ramAccountingContext;
     private final int numBuckets;
-    private final ArrayList<SettableFuture<Bucket>> bucketFutures;
+    private ArrayList<SettableFuture<Bucket>> bucketFutures;
     private final BitSet allFuturesSet;
     private final BitSet exhausted;
-    private final ArrayList<PageResultListener> listeners = new ArrayList<>();
+    private final int[] nextPageIdx;
+    private final ArrayList<IntObjectOpenHashMap<PendingBucket>> pendingBuckets;
+    private ResultListenerBridgingConsumeListener currentPage;
     private final ArrayList<ContextCallback> callbacks = new ArrayList<>(1);
     private final AtomicBoolean closed = new AtomicBoolean(false);
     private volatile boolean isKilled = false;
+    private volatile long receivedRows = 0;
 
 
     public PageDownstreamContext(String name,
@@ -66,14 +80,19 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
         this.streamer = streamer;
         this.ramAccountingContext = ramAccountingContext;
         this.numBuckets = numBuckets;
-        bucketFutures = new ArrayList<>(numBuckets);
         allFuturesSet = new BitSet(numBuckets);
         exhausted = new BitSet(numBuckets);
+        nextPageIdx = new int[numBuckets];
+        pendingBuckets = new ArrayList<>(numBuckets);
+        for (int i = 0; i < numBuckets; i++) {
+            pendingBuckets.add(new IntObjectOpenHashMap<PendingBucket>());
+        }
         initBucketFutures();
     }
 
     private void initBucketFutures() {
-        bucketFutures.clear();
+        // a new list is required because the pageDownstream may still hold on to the futures of the previous page
+        bucketFutures = new ArrayList<>(numBuckets);
         for (int i = 0; i < numBuckets; i++) {
             bucketFutures.add(SettableFuture.<Bucket>create());
         }
@@ -92,30 +111,64 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
     }
 
     public void setBucket(int bucketIdx, Bucket rows, boolean isLast, PageResultListener pageResultListener) {
-        synchronized (listeners) {
-            listeners.add(pageResultListener);
-        }
         synchronized (lock) {
             LOGGER.trace("setBucket: {}", bucketIdx);
             if (allFuturesSet.get(bucketIdx)) {
+                currentPage.add(pageResultListener);
                 pageDownstream.fail(new IllegalStateException("May not set the same bucket of a page more than once"));
                 return;
             }
+            nextPageIdx[bucketIdx]++;
+            doSetBucket(bucketIdx, rows, isLast, pageResultListener);
+        }
+    }
 
-            if (pageEmpty()) {
-                LOGGER.trace("calling nextPage");
-                pageDownstream.nextPage(new BucketPage(bucketFutures), new ResultListenerBridgingConsumeListener());
+    /**
+     * Like {@link #setBucket(int, Bucket, boolean, PageResultListener)}, but the upstream may send
+     * further pages before the previous ones have been consumed, see {@link #credits()}.
+     * Pages which arrive before the page they belong to has been started are kept until then.
+     *
+     * @param pageIdx the number of the page of the upstream, starting with 0
+     */
+    public void setBucket(int bucketIdx, int pageIdx, Bucket rows, boolean isLast, PageResultListener pageResultListener) {
+        synchronized (lock) {
+            LOGGER.trace("setBucket: {} page: {}", bucketIdx, pageIdx);
+            if (pageIdx < nextPageIdx[bucketIdx]) {
+                pageDownstream.fail(new IllegalStateException("May not set the same bucket of a page more than once"));
+                return;
             }
-            setExhaustedUpstreams();
-
-            if (isLast) {
-                exhausted.set(bucketIdx);
+            if (pageIdx > nextPageIdx[bucketIdx] || allFuturesSet.get(bucketIdx)) {
+                long bytes = rows instanceof StreamBucket ? ((StreamBucket) rows).sizeInBytes() : 0L;
+                try {
+                    ramAccountingContext.addBytes(bytes);
+                } catch (CircuitBreakingException e) {
+                    pageResultListener.needMore(false);
+                    pageDownstream.fail(e);
+                    return;
+                }
+                pendingBuckets.get(bucketIdx).put(pageIdx, new PendingBucket(rows, null, isLast, pageResultListener, bytes));
+                return;
             }
-            bucketFutures.get(bucketIdx).set(rows);
-            allFuturesSet.set(bucketIdx);
+            nextPageIdx[bucketIdx]++;
+            doSetBucket(bucketIdx, rows, isLast, pageResultListener);
+        }
+    }
 
-            clearPageIfFull();
+    private void doSetBucket(int bucketIdx, Bucket rows, boolean isLast, PageResultListener pageResultListener) {
+        startPageIfEmpty();
+        setExhaustedUpstreams();
+        currentPage.add(pageResultListener);
+
+        if (isLast) {
+            exhausted.set(bucketIdx);
         }
+        if (rows != null) {
+            receivedRows += rows.size();
+        }
+        bucketFutures.get(bucketIdx).set(rows);
+        allFuturesSet.set(bucketIdx);
+
+        clearPageIfFull();
     }
 
     public synchronized void failure(int bucketIdx, Throwable throwable) {
@@ -123,31 +176,118 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
         // upstreams still require
         synchronized (lock) {
             LOGGER.trace("failure: bucket: {} {}", bucketIdx, throwable);
-            if (allFuturesSet.get(bucketIdx)) {
-                pageDownstream.fail(new IllegalStateException("May not set the same bucket %d of a page more than once"));
+            nextPageIdx[bucketIdx]++;
+            doFailure(bucketIdx, throwable);
+        }
+    }
+
+    /**
+     * Like {@link #failure(int, Throwable)} for upstreams which use
+     * {@link #setBucket(int, int, Bucket, boolean, PageResultListener)}.
+     * The failure is applied after the pages the upstream has sent before.
+     */
+    public void failure(int bucketIdx, int pageIdx, Throwable throwable) {
+        synchronized (lock) {
+            LOGGER.trace("failure: bucket: {} page: {} {}", bucketIdx, pageIdx, throwable);
+            if (!exhausted.get(bucketIdx) && (pageIdx > nextPageIdx[bucketIdx] || allFuturesSet.get(bucketIdx))) {
+                pendingBuckets.get(bucketIdx).put(pageIdx, new PendingBucket(null, throwable, true, null, 0L));
                 return;
             }
-            if (pageEmpty()) {
-                LOGGER.trace("calling nextPage");
-                pageDownstream.nextPage(new BucketPage(bucketFutures), new ResultListenerBridgingConsumeListener());
-            }
-            setExhaustedUpstreams();
+            nextPageIdx[bucketIdx]++;
+            doFailure(bucketIdx, throwable);
+        }
+    }
 
-            LOGGER.trace("failure: {}", bucketIdx);
-            exhausted.set(bucketIdx);
-            bucketFutures.get(bucketIdx).setException(throwable);
-            allFuturesSet.set(bucketIdx);
-            clearPageIfFull();
+    private void doFailure(int bucketIdx, Throwable throwable) {
+        if (allFuturesSet.get(bucketIdx)) {
+            pageDownstream.fail(new IllegalStateException("May not set the same bucket %d of a page more than once"));
+            return;
+        }
+        startPageIfEmpty();
+        setExhaustedUpstreams();
+
+        LOGGER.trace("failure: {}", bucketIdx);
+        exhausted.set(bucketIdx);
+        bucketFutures.get(bucketIdx).setException(throwable);
+        allFuturesSet.set(bucketIdx);
+        clearPageIfFull();
+    }
+
+    private void startPageIfEmpty() {
+        if (pageEmpty()) {
+            LOGGER.trace("calling nextPage");
+            currentPage = new ResultListenerBridgingConsumeListener();
+            pageDownstream.nextPage(new BucketPage(bucketFutures), currentPage);
         }
     }
 
     private void clearPageIfFull() {
         if (allFuturesSet.cardinality() == numBuckets) {
-            allFuturesSet.clear();
-            initBucketFutures();
+            currentPage.full = true;
+            if (currentPage.consumed) {
+                clearPage();
+            }
         }
     }
 
+    /**
+     * Prepare the next page once the current one is full and has been consumed.
+     * Until then buckets of the next page are kept as pending buckets, because the pageDownstream
+     * must not consume two pages at the same time.
+     */
+    private void clearPage() {
+        allFuturesSet.clear();
+        initBucketFutures();
+        setPendingBuckets();
+    }
+
+    /**
+     * start the next page with the pages which have been sent in advance
+     */
+    private void setPendingBuckets() {
+        for (int i = 0; i < numBuckets; i++) {
+            IntObjectOpenHashMap<PendingBucket> pending = pendingBuckets.get(i);
+            if (pending.isEmpty() || allFuturesSet.get(i)) {
+                continue;
+            }
+            PendingBucket pendingBucket = pending.remove(nextPageIdx[i]);
+            if (pendingBucket != null) {
+                ramAccountingContext.releaseBytes(pendingBucket.bytes);
+                nextPageIdx[i]++;
+                if (pendingBucket.throwable == null) {
+                    doSetBucket(i, pendingBucket.rows, pendingBucket.isLast, pendingBucket.listener);
+                } else {
+                    doFailure(i, pendingBucket.throwable);
+                }
+            }
+        }
+    }
+
+    /**
+     * tell the upstreams of pages which have been sent in advance that no more rows are needed
+     */
+    private void releasePendingBuckets() {
+        synchronized (lock) {
+            for (IntObjectOpenHashMap<PendingBucket> pending : pendingBuckets) {
+                for (ObjectCursor<PendingBucket> cursor : pending.values()) {
+                    ramAccountingContext.releaseBytes(cursor.value.bytes);
+                    if (cursor.value.listener != null) {
+                        cursor.value.listener.needMore(false);
+                    }
+                }
+                pending.clear();
+            }
+        }
+    }
+
+    /**
+     * @return the number of pages an upstream may send before the first of them has been consumed.
+     *         Only one page is granted if this context uses a large part of the breaker limit.
+     */
+    public int credits() {
+        return ramAccountingContext.ownBytesExceedLimit(CREDITS_LIMIT_RATIO) ? 1 : MAX_CREDITS;
+    }
+
     /**
      * need to set the futures of all upstreams that are exhausted as there won't come any more buckets from those upstreams
      */
@@ -167,6 +307,7 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
     public void finish() {
         LOGGER.trace("calling finish on pageDownstream {}", pageDownstream);
         if (!closed.getAndSet(true)) {
+            releasePendingBuckets();
             for (ContextCallback contextCallback : callbacks) {
                 contextCallback.onClose(null, -1L);
             }
@@ -207,6 +348,20 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
         }
     }
 
+    /**
+     * @return the number of bytes the projectors of this context have written to disk
+     */
+    public long spilledBytes() {
+        return ramAccountingContext.spilledBytes();
+    }
+
+    /**
+     * @return the number of rows the upstreams have sent to this context
+     */
+    public long receivedRows() {
+        return receivedRows;
+    }
+
     @Override
     public String name() {
         return name;
@@ -219,9 +374,32 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
 
     private class ResultListenerBridgingConsumeListener implements PageConsumeListener {
 
+        private final ArrayList<PageResultListener> listeners = new ArrayList<>();
+        /**
+         * set once all buckets of the page have been set, guarded by lock
+         */
+        private boolean full = false;
+        /**
+         * set once the pageDownstream has consumed the page, guarded by lock
+         */
+        private boolean consumed = false;
+
+        private void add(PageResultListener listener) {
+            synchronized (listeners) {
+                listeners.add(listener);
+            }
+        }
+
         @Override
         public void needMore() {
-            boolean allExhausted = allExhausted();
+            boolean allExhausted;
+            synchronized (lock) {
+                consumed = true;
+                allExhausted = currentPage == this && allExhausted();
+                if (full && !allExhausted) {
+                    clearPage();
+                }
+            }
             LOGGER.trace("allExhausted: {}", allExhausted);
             synchronized (listeners) {
                 LOGGER.trace("calling needMore on all listeners({})", listeners.size());
@@ -251,4 +429,25 @@ public class PageDownstreamContext implements ExecutionSubContext, ExecutionStat
             }
         }
     }
+
+    private static class PendingBucket {
+
+        private final Bucket rows;
+        private final Throwable throwable;
+        private final boolean isLast;
+        private final PageResultListener listener;
+        private final long bytes;
+
+        private PendingBucket(@Nullable Bucket rows,
+                              @Nullable Throwable throwable,
+                              boolean isLast,
+                              @Nullable PageResultListener listener,
+                              long bytes) {
+            this.rows = rows;
+            this.throwable = throwable;
+            this.isLast = isLast;
+            this.listener = listener;
+            this.bytes = bytes;
+        }
+    }
 }
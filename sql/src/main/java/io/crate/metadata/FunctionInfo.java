@@ -78,6 +78,10 @@ public class FunctionInfo implements Comparable<FunctionInfo>, Streamable {
         return returnType;
     }
 
+    public boolean isDeterministic() {
+        return deterministic;
+    }
+
     @Override
     public boolean equals(Object obj) {
         if (this == obj) {
@@ -82,6 +82,10 @@ public class InformationTableInfo extends AbstractTableInfo {
                 ImmutableList.of("warmer"));
         public static final ColumnIdent TABLE_SETTINGS_WARMER_ENABLED = new ColumnIdent("settings",
                 ImmutableList.of("warmer", "enabled"));
+        public static final ColumnIdent TABLE_SETTINGS_RESULT_CACHE = new ColumnIdent("settings",
+                ImmutableList.of("result_cache"));
+        public static final ColumnIdent TABLE_SETTINGS_RESULT_CACHE_ENABLED = new ColumnIdent("settings",
+                ImmutableList.of("result_cache", "enabled"));
         public static final ColumnIdent TABLE_SETTINGS_GATEWAY = new ColumnIdent("settings",
                 ImmutableList.of("gateway"));
         public static final ColumnIdent TABLE_SETTINGS_GATEWAY_LOCAL = new ColumnIdent("settings",
@@ -90,6 +90,10 @@ public class InformationTablesTableInfo extends InformationTableInfo {
                 Columns.TABLE_SETTINGS_WARMER, DataTypes.OBJECT);
         public static final ReferenceInfo TABLE_SETTINGS_WARMER_ENABLED = info(
                 Columns.TABLE_SETTINGS_WARMER_ENABLED, DataTypes.BOOLEAN);
+        public static final ReferenceInfo TABLE_SETTINGS_RESULT_CACHE = info(
+                Columns.TABLE_SETTINGS_RESULT_CACHE, DataTypes.OBJECT);
+        public static final ReferenceInfo TABLE_SETTINGS_RESULT_CACHE_ENABLED = info(
+                Columns.TABLE_SETTINGS_RESULT_CACHE_ENABLED, DataTypes.BOOLEAN);
 
         public static final ReferenceInfo TABLE_SETTINGS_GATEWAY = info(
                 Columns.TABLE_SETTINGS_GATEWAY, DataTypes.OBJECT);
@@ -137,6 +141,8 @@ public class InformationTablesTableInfo extends InformationTableInfo {
                     put(Columns.TABLE_SETTINGS_RECOVERY_INITIAL_SHARDS, ReferenceInfos.TABLE_SETTINGS_RECOVERY_INITIAL_SHARDS);
                     put(Columns.TABLE_SETTINGS_WARMER, ReferenceInfos.TABLE_SETTINGS_WARMER);
                     put(Columns.TABLE_SETTINGS_WARMER_ENABLED, ReferenceInfos.TABLE_SETTINGS_WARMER_ENABLED);
+                    put(Columns.TABLE_SETTINGS_RESULT_CACHE, ReferenceInfos.TABLE_SETTINGS_RESULT_CACHE);
+                    put(Columns.TABLE_SETTINGS_RESULT_CACHE_ENABLED, ReferenceInfos.TABLE_SETTINGS_RESULT_CACHE_ENABLED);
                     put(Columns.TABLE_SETTINGS_GATEWAY, ReferenceInfos.TABLE_SETTINGS_GATEWAY);
                     put(Columns.TABLE_SETTINGS_GATEWAY_LOCAL, ReferenceInfos.TABLE_SETTINGS_GATEWAY_LOCAL);
                     put(Columns.TABLE_SETTINGS_GATEWAY_LOCAL_SYNC, ReferenceInfos.TABLE_SETTINGS_GATEWAY_LOCAL_SYNC);
@@ -96,6 +96,27 @@ public class SysNodesTableInfo extends SysTableInfo {
         register("thread_pools", IntegerType.INSTANCE, ImmutableList.of("threads"));
         register("thread_pools", IntegerType.INSTANCE, ImmutableList.of("queue"));
 
+        register("statement_cache", DataTypes.OBJECT, null);
+        register("statement_cache", DataTypes.LONG, ImmutableList.of("size"));
+        register("statement_cache", DataTypes.LONG, ImmutableList.of("hits"));
+        register("statement_cache", DataTypes.LONG, ImmutableList.of("misses"));
+        register("statement_cache", DataTypes.LONG, ImmutableList.of("evictions"));
+
+        register("result_cache", DataTypes.OBJECT, null);
+        register("result_cache", DataTypes.LONG, ImmutableList.of("size"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("size_in_bytes"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("hits"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("misses"));
+        register("result_cache", DataTypes.LONG, ImmutableList.of("evictions"));
+
+        register("blob_read_cache", DataTypes.OBJECT, null);
+        register("blob_read_cache", DataTypes.LONG, ImmutableList.of("open_files"));
+        register("blob_read_cache", DataTypes.LONG, ImmutableList.of("open_file_hits"));
+        register("blob_read_cache", DataTypes.LONG, ImmutableList.of("open_file_misses"));
+        register("blob_read_cache", DataTypes.LONG, ImmutableList.of("small_blobs_size_in_bytes"));
+        register("blob_read_cache", DataTypes.LONG, ImmutableList.of("small_blob_hits"));
+        register("blob_read_cache", DataTypes.LONG, ImmutableList.of("small_blob_misses"));
+
         register("network", DataTypes.OBJECT, null);
         register("network", DataTypes.TIMESTAMP, ImmutableList.of("probe_timestamp"));
         register("network", DataTypes.OBJECT, ImmutableList.of("tcp"));
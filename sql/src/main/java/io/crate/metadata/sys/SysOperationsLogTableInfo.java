@@ -42,6 +42,8 @@ public class SysOperationsLogTableInfo extends SysTableInfo {
         public static final String STARTED = "started";
         public static final String ENDED = "ended";
         public static final String USED_BYTES = "used_bytes";
+        public static final String SPILLED_BYTES = "spilled_bytes";
+        public static final String RECEIVED_ROWS = "received_rows";
         public static final String ERROR = "error";
     }
 
@@ -65,6 +67,8 @@ public class SysOperationsLogTableInfo extends SysTableInfo {
         register(ColumnNames.STARTED, DataTypes.TIMESTAMP);
         register(ColumnNames.ENDED, DataTypes.TIMESTAMP);
         register(ColumnNames.USED_BYTES, DataTypes.LONG);
+        register(ColumnNames.SPILLED_BYTES, DataTypes.LONG);
+        register(ColumnNames.RECEIVED_ROWS, DataTypes.LONG);
         register(ColumnNames.ERROR, DataTypes.STRING);
     }
 
@@ -43,6 +43,8 @@ public class SysOperationsTableInfo extends SysTableInfo {
         public final static String NAME = "name";
         public final static String STARTED = "started";
         public final static String USED_BYTES = "used_bytes";
+        public final static String SPILLED_BYTES = "spilled_bytes";
+        public final static String RECEIVED_ROWS = "received_rows";
     }
 
     public static final TableIdent IDENT = new TableIdent(SCHEMA, "operations");
@@ -64,6 +66,8 @@ public class SysOperationsTableInfo extends SysTableInfo {
         register(ColumnNames.NAME, DataTypes.STRING);
         register(ColumnNames.STARTED, DataTypes.TIMESTAMP);
         register(ColumnNames.USED_BYTES, DataTypes.LONG);
+        register(ColumnNames.SPILLED_BYTES, DataTypes.LONG);
+        register(ColumnNames.RECEIVED_ROWS, DataTypes.LONG);
 
         INFOS.put(SysNodesTableInfo.SYS_COL_IDENT, SysNodesTableInfo.tableColumnInfo(IDENT));
     }
@@ -31,6 +31,7 @@ import io.crate.operation.merge.NonSortingBucketMerger;
 import io.crate.operation.merge.SortingBucketMerger;
 import io.crate.operation.projectors.FlatProjectorChain;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.MergeNode;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
@@ -55,7 +56,8 @@ public class PageDownstreamFactory {
                                  TransportActionProvider transportActionProvider,
                                  BulkRetryCoordinatorPool bulkRetryCoordinatorPool,
                                  ReferenceResolver referenceResolver,
-                                 Functions functions) {
+                                 Functions functions,
+                                 SpillDirectory spillDirectory) {
         ImplementationSymbolVisitor implementationSymbolVisitor = new ImplementationSymbolVisitor(
                 referenceResolver,
                 functions,
@@ -67,7 +69,8 @@ public class PageDownstreamFactory {
                 settings,
                 transportActionProvider,
                 bulkRetryCoordinatorPool,
-                implementationSymbolVisitor
+                implementationSymbolVisitor,
+                spillDirectory.directory()
         );
     }
 
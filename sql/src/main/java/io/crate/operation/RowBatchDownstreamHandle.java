@@ -0,0 +1,47 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation;
+
+import io.crate.core.collections.Row;
+
+/**
+ * A downstream which is able to handle a batch of rows with a single call.
+ *
+ * Upstreams producing many rows should check whether the handle they got from
+ * {@link RowDownstream#registerUpstream(RowUpstream)} implements this interface and
+ * pass their rows in batches using {@link #setNextRows(Iterable)}, so that the per row
+ * overhead of the downstream (synchronization, virtual calls) is paid once per batch.
+ */
+public interface RowBatchDownstreamHandle extends RowDownstreamHandle {
+
+    /**
+     * Feed the downstream with the next batch of rows.
+     * The iterator of the batch may return the same row instance on each step, so rows must be
+     * materialized if you want to keep their contents.
+     *
+     * This method must be thread safe.
+     *
+     * @param rows the next batch of rows
+     * @return false if the downstream does not need any more rows, true otherwise.
+     */
+    boolean setNextRows(Iterable<Row> rows);
+}
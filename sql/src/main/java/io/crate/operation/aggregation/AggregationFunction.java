@@ -77,6 +77,18 @@ public abstract class AggregationFunction<TPartial, TFinal> implements FunctionI
 
     public abstract DataType partialType();
 
+    /**
+     * Creates a container for the states of many groups which are kept in primitive arrays instead of
+     * one state object per group, see {@link ColumnarStates}.
+     *
+     * @param ramAccountingContext used to account the memory used for the states.
+     * @return the states or null if this aggregation doesn't support columnar states
+     */
+    @Nullable
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return null;
+    }
+
     @Override
     public Symbol normalizeSymbol(Function symbol) {
         return symbol;
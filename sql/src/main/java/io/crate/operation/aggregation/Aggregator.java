@@ -24,7 +24,9 @@ package io.crate.operation.aggregation;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.operation.Input;
 import io.crate.planner.symbol.Aggregation;
+import io.crate.types.DataType;
 
+import javax.annotation.Nullable;
 import java.util.Locale;
 
 /**
@@ -89,6 +91,43 @@ public class Aggregator {
         return toImpl.finishCollect(state);
     }
 
+    /**
+     * merge two states of the same group, e.g. partial states which have been read from disk
+     */
+    public Object reduce(Object state1, Object state2) {
+        return aggregationFunction.reduce(fromImpl.ramAccountingContext, state1, state2);
+    }
+
+    /**
+     * @return the type of the states, used to stream them
+     */
+    public DataType partialType() {
+        return aggregationFunction.partialType();
+    }
+
+    /**
+     * @return new columnar states or null if the aggregation function doesn't support them
+     */
+    @Nullable
+    public ColumnarStates prepareColumnarStates() {
+        return fromImpl.prepareColumnarStates();
+    }
+
+    public void processRow(ColumnarStates states, int group) {
+        fromImpl.processRow(states, group);
+    }
+
+    public Object finishCollect(ColumnarStates states, int group) {
+        return toImpl.finishCollect(states, group);
+    }
+
+    /**
+     * @return the state of a group in the form of {@link #partialType()}, regardless of the aggregation steps
+     */
+    public Object partialValue(ColumnarStates states, int group) {
+        return states.partialValue(group);
+    }
+
     abstract class FromImpl {
 
         protected final RamAccountingContext ramAccountingContext;
@@ -101,7 +140,13 @@ public class Aggregator {
             return aggregationFunction.newState(ramAccountingContext);
         }
 
+        public ColumnarStates prepareColumnarStates() {
+            return aggregationFunction.newColumnarStates(ramAccountingContext);
+        }
+
         public abstract Object processRow(Object value);
+
+        public abstract void processRow(ColumnarStates states, int group);
     }
 
     class FromIter extends FromImpl {
@@ -115,6 +160,11 @@ public class Aggregator {
         public Object processRow(Object value) {
             return aggregationFunction.iterate(ramAccountingContext, value, inputs);
         }
+
+        @Override
+        public void processRow(ColumnarStates states, int group) {
+            states.iterate(group, inputs);
+        }
     }
 
     class FromPartial extends FromImpl {
@@ -128,6 +178,11 @@ public class Aggregator {
         public Object processRow(Object value) {
             return aggregationFunction.reduce(ramAccountingContext, value, inputs[0].value());
         }
+
+        @Override
+        public void processRow(ColumnarStates states, int group) {
+            states.reduce(group, inputs[0].value());
+        }
     }
 
     static abstract class ToImpl {
@@ -138,6 +193,8 @@ public class Aggregator {
         }
 
         public abstract Object finishCollect(Object state);
+
+        public abstract Object finishCollect(ColumnarStates states, int group);
     }
 
     class ToPartial extends ToImpl {
@@ -150,6 +207,11 @@ public class Aggregator {
         public Object finishCollect(Object state) {
             return state;
         }
+
+        @Override
+        public Object finishCollect(ColumnarStates states, int group) {
+            return states.partialValue(group);
+        }
     }
 
     class ToFinal extends ToImpl {
@@ -163,5 +225,10 @@ public class Aggregator {
             //noinspection unchecked
             return aggregationFunction.terminatePartial(ramAccountingContext, state);
         }
+
+        @Override
+        public Object finishCollect(ColumnarStates states, int group) {
+            return states.finalValue(group);
+        }
     }
 }
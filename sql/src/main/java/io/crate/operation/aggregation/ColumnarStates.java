@@ -0,0 +1,95 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.aggregation;
+
+import io.crate.breaker.RamAccountingContext;
+import io.crate.operation.Input;
+import org.apache.lucene.util.ArrayUtil;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+
+/**
+ * The states of one aggregation for many groups, kept in primitive arrays which are indexed by the group ordinal.
+ *
+ * In contrast to the state objects used by {@link AggregationFunction#iterate(RamAccountingContext, Object, Input...)}
+ * aggregating a row doesn't allocate anything. Partial and final values are only materialized when the groups are
+ * emitted.
+ *
+ * See {@link AggregationFunction#newColumnarStates(RamAccountingContext)}
+ */
+public abstract class ColumnarStates {
+
+    protected final RamAccountingContext ramAccountingContext;
+    private final int bytesPerGroup;
+    private int capacity = 0;
+
+    /**
+     * @param bytesPerGroup the memory used for the state of one group, used for ram accounting
+     */
+    protected ColumnarStates(RamAccountingContext ramAccountingContext, int bytesPerGroup) {
+        this.ramAccountingContext = ramAccountingContext;
+        this.bytesPerGroup = bytesPerGroup;
+    }
+
+    /**
+     * make sure that there are states for the groups 0 to numGroups - 1.
+     * New states are empty, as if they had been created by {@link AggregationFunction#newState(RamAccountingContext)}
+     */
+    public void ensureCapacity(int numGroups) throws CircuitBreakingException {
+        if (numGroups <= capacity) {
+            return;
+        }
+        int newCapacity = ArrayUtil.oversize(numGroups, bytesPerGroup);
+        ramAccountingContext.addBytes((long) (newCapacity - capacity) * bytesPerGroup);
+        resize(newCapacity);
+        capacity = newCapacity;
+    }
+
+    /**
+     * grow the arrays to hold newCapacity states
+     */
+    protected abstract void resize(int newCapacity);
+
+    /**
+     * aggregate the current input values into the state of the given group.
+     * Equivalent to {@link AggregationFunction#iterate(RamAccountingContext, Object, Input...)}
+     */
+    public abstract void iterate(int group, Input... args);
+
+    /**
+     * merge a partial state into the state of the given group.
+     * Equivalent to {@link AggregationFunction#reduce(RamAccountingContext, Object, Object)}
+     *
+     * @param partialState a state as returned by {@link #partialValue(int)}, possibly received from another node
+     */
+    public abstract void reduce(int group, Object partialState);
+
+    /**
+     * @return the state of the given group in the form of the partial type of the aggregation
+     */
+    public abstract Object partialValue(int group);
+
+    /**
+     * @return the final value of the given group.
+     * Equivalent to {@link AggregationFunction#terminatePartial(RamAccountingContext, Object)}
+     */
+    public abstract Object finalValue(int group);
+}
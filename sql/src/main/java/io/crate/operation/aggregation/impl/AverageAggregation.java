@@ -28,6 +28,7 @@ import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.ColumnarStates;
 import io.crate.types.DataType;
 import io.crate.types.DataTypeFactory;
 import io.crate.types.DataTypes;
@@ -36,6 +37,7 @@ import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.io.stream.StreamOutput;
 
 import java.io.IOException;
+import java.util.Arrays;
 
 public class AverageAggregation extends AggregationFunction<AverageAggregation.AverageState, Double> {
 
@@ -202,4 +204,59 @@ public class AverageAggregation extends AggregationFunction<AverageAggregation.A
     public FunctionInfo info() {
         return info;
     }
+
+    @Override
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return new AverageStates(ramAccountingContext);
+    }
+
+    static class AverageStates extends ColumnarStates {
+
+        private double[] sums = new double[0];
+        private long[] counts = new long[0];
+
+        AverageStates(RamAccountingContext ramAccountingContext) {
+            super(ramAccountingContext, 16);
+        }
+
+        @Override
+        protected void resize(int newCapacity) {
+            sums = Arrays.copyOf(sums, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+
+        @Override
+        public void iterate(int group, Input... args) {
+            Number value = (Number) args[0].value();
+            if (value != null) {
+                counts[group]++;
+                sums[group] += value.doubleValue();
+            }
+        }
+
+        @Override
+        public void reduce(int group, Object partialState) {
+            if (partialState != null) {
+                AverageState state = (AverageState) partialState;
+                counts[group] += state.count;
+                sums[group] += state.sum;
+            }
+        }
+
+        @Override
+        public Object partialValue(int group) {
+            AverageState state = new AverageState();
+            state.sum = sums[group];
+            state.count = counts[group];
+            return state;
+        }
+
+        @Override
+        public Object finalValue(int group) {
+            if (counts[group] > 0) {
+                return sums[group] / counts[group];
+            }
+            return null;
+        }
+    }
 }
@@ -29,11 +29,13 @@ import io.crate.metadata.FunctionImplementation;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.ColumnarStates;
 import io.crate.planner.projection.AggregationProjection;
 import io.crate.planner.symbol.*;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.List;
 
@@ -126,4 +128,47 @@ public class CountAggregation extends AggregationFunction<Long, Long> {
     public Long terminatePartial(RamAccountingContext ramAccountingContext, Long state) {
         return state;
     }
+
+    @Override
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return new CountStates(ramAccountingContext, hasArgs);
+    }
+
+    static class CountStates extends ColumnarStates {
+
+        private final boolean hasArgs;
+        private long[] counts = new long[0];
+
+        CountStates(RamAccountingContext ramAccountingContext, boolean hasArgs) {
+            super(ramAccountingContext, 8);
+            this.hasArgs = hasArgs;
+        }
+
+        @Override
+        protected void resize(int newCapacity) {
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+
+        @Override
+        public void iterate(int group, Input... args) {
+            if (!hasArgs || args[0].value() != null) {
+                counts[group]++;
+            }
+        }
+
+        @Override
+        public void reduce(int group, Object partialState) {
+            counts[group] += (Long) partialState;
+        }
+
+        @Override
+        public Object partialValue(int group) {
+            return counts[group];
+        }
+
+        @Override
+        public Object finalValue(int group) {
+            return counts[group];
+        }
+    }
 }
@@ -29,6 +29,7 @@ import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.ColumnarStates;
 import io.crate.types.DataType;
 import io.crate.types.DataTypeFactory;
 import io.crate.types.DataTypes;
@@ -41,6 +42,7 @@ import org.elasticsearch.common.io.stream.Streamable;
 
 import javax.annotation.Nullable;
 import java.io.IOException;
+import java.util.Arrays;
 
 public class GeometricMeanAggregation extends AggregationFunction<GeometricMeanAggregation.GeometricMeanState, Double> {
 
@@ -215,4 +217,59 @@ public class GeometricMeanAggregation extends AggregationFunction<GeometricMeanA
     public FunctionInfo info() {
         return info;
     }
+
+    @Override
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return new GeometricMeanStates(ramAccountingContext);
+    }
+
+    static class GeometricMeanStates extends ColumnarStates {
+
+        private double[] logSums = new double[0];
+        private long[] counts = new long[0];
+
+        GeometricMeanStates(RamAccountingContext ramAccountingContext) {
+            super(ramAccountingContext, 16);
+        }
+
+        @Override
+        protected void resize(int newCapacity) {
+            logSums = Arrays.copyOf(logSums, newCapacity);
+            counts = Arrays.copyOf(counts, newCapacity);
+        }
+
+        @Override
+        public void iterate(int group, Input... args) {
+            Number value = (Number) args[0].value();
+            if (value != null) {
+                logSums[group] += FastMath.log(value.doubleValue());
+                counts[group]++;
+            }
+        }
+
+        @Override
+        public void reduce(int group, Object partialState) {
+            if (partialState != null) {
+                GeometricMeanState state = (GeometricMeanState) partialState;
+                logSums[group] += state.value;
+                counts[group] += state.n;
+            }
+        }
+
+        @Override
+        public Object partialValue(int group) {
+            GeometricMeanState state = new GeometricMeanState();
+            state.value = logSums[group];
+            state.n = counts[group];
+            return state;
+        }
+
+        @Override
+        public Object finalValue(int group) {
+            if (counts[group] > 0) {
+                return FastMath.exp(logSums[group] / counts[group]);
+            }
+            return null;
+        }
+    }
 }
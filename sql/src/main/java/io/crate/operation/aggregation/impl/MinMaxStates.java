@@ -0,0 +1,150 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.aggregation.impl;
+
+import io.crate.breaker.RamAccountingContext;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.ColumnarStates;
+import io.crate.types.*;
+import org.apache.lucene.util.FixedBitSet;
+
+import javax.annotation.Nullable;
+import java.util.Arrays;
+
+/**
+ * Columnar states for {@link MinimumAggregation} and {@link MaximumAggregation} on numeric types.
+ * Integral values are kept in a long array, floating point values in a double array.
+ */
+abstract class MinMaxStates extends ColumnarStates {
+
+    protected final DataType type;
+    protected final boolean max;
+    protected FixedBitSet hasValue = new FixedBitSet(0);
+
+    private MinMaxStates(RamAccountingContext ramAccountingContext, DataType type, boolean max) {
+        super(ramAccountingContext, 9);
+        this.type = type;
+        this.max = max;
+    }
+
+    /**
+     * @return the states or null if columnar states aren't supported for the given type
+     */
+    @Nullable
+    static MinMaxStates create(RamAccountingContext ramAccountingContext, DataType type, boolean max) {
+        switch (type.id()) {
+            case ByteType.ID:
+            case ShortType.ID:
+            case IntegerType.ID:
+            case LongType.ID:
+            case TimestampType.ID:
+                return new LongMinMaxStates(ramAccountingContext, type, max);
+            case FloatType.ID:
+            case DoubleType.ID:
+                return new DoubleMinMaxStates(ramAccountingContext, type, max);
+            default:
+                return null;
+        }
+    }
+
+    @Override
+    protected void resize(int newCapacity) {
+        hasValue = FixedBitSet.ensureCapacity(hasValue, newCapacity);
+    }
+
+    @Override
+    public void iterate(int group, Input... args) {
+        reduce(group, args[0].value());
+    }
+
+    @Override
+    public Object finalValue(int group) {
+        return partialValue(group);
+    }
+
+    private static class LongMinMaxStates extends MinMaxStates {
+
+        private long[] values = new long[0];
+
+        LongMinMaxStates(RamAccountingContext ramAccountingContext, DataType type, boolean max) {
+            super(ramAccountingContext, type, max);
+        }
+
+        @Override
+        protected void resize(int newCapacity) {
+            super.resize(newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        @Override
+        public void reduce(int group, Object partialState) {
+            if (partialState == null) {
+                return;
+            }
+            long value = ((Number) partialState).longValue();
+            if (!hasValue.getAndSet(group) || (max ? value > values[group] : value < values[group])) {
+                values[group] = value;
+            }
+        }
+
+        @Override
+        public Object partialValue(int group) {
+            return hasValue.get(group) ? type.value(values[group]) : null;
+        }
+    }
+
+    private static class DoubleMinMaxStates extends MinMaxStates {
+
+        private double[] values = new double[0];
+
+        DoubleMinMaxStates(RamAccountingContext ramAccountingContext, DataType type, boolean max) {
+            super(ramAccountingContext, type, max);
+        }
+
+        @Override
+        protected void resize(int newCapacity) {
+            super.resize(newCapacity);
+            values = Arrays.copyOf(values, newCapacity);
+        }
+
+        @Override
+        public void reduce(int group, Object partialState) {
+            if (partialState == null) {
+                return;
+            }
+            double value = ((Number) partialState).doubleValue();
+            if (!hasValue.getAndSet(group)) {
+                values[group] = value;
+                return;
+            }
+            int cmp = Double.compare(value, values[group]);
+            if (max ? cmp > 0 : cmp < 0) {
+                values[group] = value;
+            }
+        }
+
+        @Override
+        public Object partialValue(int group) {
+            return hasValue.get(group) ? type.value(values[group]) : null;
+        }
+    }
+}
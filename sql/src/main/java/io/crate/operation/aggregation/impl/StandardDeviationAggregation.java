@@ -28,7 +28,10 @@ import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.ColumnarStates;
+import io.crate.operation.aggregation.statistics.moment.MomentStates;
 import io.crate.operation.aggregation.statistics.moment.StandardDeviation;
+import io.crate.operation.aggregation.statistics.moment.Variance;
 import io.crate.types.DataType;
 import io.crate.types.DataTypeFactory;
 import io.crate.types.DataTypes;
@@ -64,6 +67,10 @@ public class StandardDeviationAggregation extends AggregationFunction<StandardDe
             this.stdDev = new StandardDeviation();
         }
 
+        private StdDevState(StandardDeviation stdDev) {
+            this.stdDev = stdDev;
+        }
+
         private void addValue(double val) {
             this.stdDev.increment(val);
         }
@@ -184,4 +191,19 @@ public class StandardDeviationAggregation extends AggregationFunction<StandardDe
     public FunctionInfo info() {
         return info;
     }
+
+    @Override
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return new MomentStates(ramAccountingContext, true) {
+            @Override
+            protected Variance moment(Object partialState) {
+                return ((StdDevState) partialState).stdDev;
+            }
+
+            @Override
+            protected Object partialState(Variance moment) {
+                return new StdDevState((StandardDeviation) moment);
+            }
+        };
+    }
 }
@@ -27,10 +27,14 @@ import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.ColumnarStates;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
+import org.apache.lucene.util.FixedBitSet;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
 
+import java.util.Arrays;
+
 public class SumAggregation extends AggregationFunction<Double, Double> {
 
     public static final String NAME = "sum";
@@ -85,4 +89,53 @@ public class SumAggregation extends AggregationFunction<Double, Double> {
     public FunctionInfo info() {
         return info;
     }
+
+    @Override
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return new SumStates(ramAccountingContext);
+    }
+
+    static class SumStates extends ColumnarStates {
+
+        private double[] sums = new double[0];
+        // the sum of a group stays null until the first non-null value has been added
+        private FixedBitSet hasValue = new FixedBitSet(0);
+
+        SumStates(RamAccountingContext ramAccountingContext) {
+            super(ramAccountingContext, 9);
+        }
+
+        @Override
+        protected void resize(int newCapacity) {
+            sums = Arrays.copyOf(sums, newCapacity);
+            hasValue = FixedBitSet.ensureCapacity(hasValue, newCapacity);
+        }
+
+        @Override
+        public void iterate(int group, Input... args) {
+            Object value = args[0].value();
+            if (value != null) {
+                sums[group] += ((Number) value).doubleValue();
+                hasValue.set(group);
+            }
+        }
+
+        @Override
+        public void reduce(int group, Object partialState) {
+            if (partialState != null) {
+                sums[group] += ((Number) partialState).doubleValue();
+                hasValue.set(group);
+            }
+        }
+
+        @Override
+        public Object partialValue(int group) {
+            return hasValue.get(group) ? sums[group] : null;
+        }
+
+        @Override
+        public Object finalValue(int group) {
+            return partialValue(group);
+        }
+    }
 }
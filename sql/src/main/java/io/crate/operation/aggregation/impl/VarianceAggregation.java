@@ -28,6 +28,8 @@ import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
+import io.crate.operation.aggregation.ColumnarStates;
+import io.crate.operation.aggregation.statistics.moment.MomentStates;
 import io.crate.operation.aggregation.statistics.moment.Variance;
 import io.crate.types.DataType;
 import io.crate.types.DataTypeFactory;
@@ -64,6 +66,10 @@ public class VarianceAggregation extends AggregationFunction<VarianceAggregation
             this.variance = new Variance();
         }
 
+        private VarianceState(Variance variance) {
+            this.variance = variance;
+        }
+
         private void addValue(double val) {
             variance.increment(val);
         }
@@ -186,4 +192,19 @@ public class VarianceAggregation extends AggregationFunction<VarianceAggregation
     public FunctionInfo info() {
         return info;
     }
+
+    @Override
+    public ColumnarStates newColumnarStates(RamAccountingContext ramAccountingContext) {
+        return new MomentStates(ramAccountingContext, false) {
+            @Override
+            protected Variance moment(Object partialState) {
+                return ((VarianceState) partialState).variance;
+            }
+
+            @Override
+            protected Object partialState(Variance moment) {
+                return new VarianceState(moment);
+            }
+        };
+    }
 }
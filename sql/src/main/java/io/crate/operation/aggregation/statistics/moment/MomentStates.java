@@ -0,0 +1,107 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.aggregation.statistics.moment;
+
+import io.crate.breaker.RamAccountingContext;
+import io.crate.operation.Input;
+import io.crate.operation.aggregation.ColumnarStates;
+import org.apache.commons.math3.util.FastMath;
+
+import java.util.Arrays;
+
+/**
+ * Columnar states for {@link Variance} and {@link StandardDeviation} based aggregations
+ */
+public abstract class MomentStates extends ColumnarStates {
+
+    private final boolean standardDeviation;
+    private double[] sumsOfSqrs = new double[0];
+    private double[] sums = new double[0];
+    private long[] counts = new long[0];
+
+    /**
+     * @param standardDeviation if true the final value is the standard deviation, otherwise the variance
+     */
+    protected MomentStates(RamAccountingContext ramAccountingContext, boolean standardDeviation) {
+        super(ramAccountingContext, 24);
+        this.standardDeviation = standardDeviation;
+    }
+
+    /**
+     * @return the moment of the partial state of an aggregation
+     */
+    protected abstract Variance moment(Object partialState);
+
+    /**
+     * @return a partial state of the aggregation which wraps the given moment
+     */
+    protected abstract Object partialState(Variance moment);
+
+    @Override
+    protected void resize(int newCapacity) {
+        sumsOfSqrs = Arrays.copyOf(sumsOfSqrs, newCapacity);
+        sums = Arrays.copyOf(sums, newCapacity);
+        counts = Arrays.copyOf(counts, newCapacity);
+    }
+
+    @Override
+    public void iterate(int group, Input... args) {
+        Number value = (Number) args[0].value();
+        if (value != null) {
+            double val = value.doubleValue();
+            sumsOfSqrs[group] += (val * val);
+            sums[group] += val;
+            counts[group]++;
+        }
+    }
+
+    @Override
+    public void reduce(int group, Object partialState) {
+        if (partialState == null) {
+            return;
+        }
+        Variance moment = moment(partialState);
+        sumsOfSqrs[group] += moment.sumOfSqrs;
+        sums[group] += moment.sum;
+        counts[group] += moment.count;
+    }
+
+    @Override
+    public Object partialValue(int group) {
+        Variance moment;
+        if (standardDeviation) {
+            moment = new StandardDeviation(sumsOfSqrs[group], sums[group], counts[group]);
+        } else {
+            moment = new Variance(sumsOfSqrs[group], sums[group], counts[group]);
+        }
+        return partialState(moment);
+    }
+
+    @Override
+    public Object finalValue(int group) {
+        double result = Variance.result(sumsOfSqrs[group], sums[group], counts[group]);
+        if (standardDeviation) {
+            result = FastMath.sqrt(result);
+        }
+        return Double.isNaN(result) ? null : result;
+    }
+}
@@ -24,6 +24,15 @@ package io.crate.operation.aggregation.statistics.moment;
 import org.apache.commons.math3.util.FastMath;
 
 public class StandardDeviation extends Variance {
+
+    public StandardDeviation() {
+        super();
+    }
+
+    public StandardDeviation(double sumOfSqrs, double sum, long count) {
+        super(sumOfSqrs, sum, count);
+    }
+
     @Override
     public double result() {
         return FastMath.sqrt(super.result());
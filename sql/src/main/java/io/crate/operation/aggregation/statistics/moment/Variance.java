@@ -39,6 +39,12 @@ public class Variance implements Streamable {
         count = 0;
     }
 
+    public Variance(double sumOfSqrs, double sum, long count) {
+        this.sumOfSqrs = sumOfSqrs;
+        this.sum = sum;
+        this.count = count;
+    }
+
     public void increment(double value) {
         sumOfSqrs += (value * value);
         sum += value;
@@ -46,6 +52,10 @@ public class Variance implements Streamable {
     }
 
     public synchronized double result() {
+        return result(sumOfSqrs, sum, count);
+    }
+
+    static double result(double sumOfSqrs, double sum, long count) {
         if (count == 0) {
             return Double.NaN;
         }
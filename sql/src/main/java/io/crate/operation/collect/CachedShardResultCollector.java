@@ -0,0 +1,62 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.Row;
+import io.crate.operation.RowDownstream;
+import io.crate.operation.RowDownstreamHandle;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Emits the rows of a shard which have been read from the {@link ShardResultCache}
+ * instead of collecting them.
+ */
+public class CachedShardResultCollector implements CrateCollector {
+
+    private final Bucket rows;
+    private final RowDownstreamHandle downstream;
+
+    public CachedShardResultCollector(Bucket rows, RowDownstream downstream) {
+        this.rows = rows;
+        this.downstream = downstream.registerUpstream(this);
+    }
+
+    @Override
+    public void doCollect(JobCollectContext jobCollectContext) {
+        if (jobCollectContext.isKilled()) {
+            downstream.fail(new CancellationException());
+            return;
+        }
+        try {
+            for (Row row : rows) {
+                if (!downstream.setNextRow(row)) {
+                    break;
+                }
+            }
+            downstream.finish();
+        } catch (Throwable t) {
+            downstream.fail(t);
+        }
+    }
+}
@@ -22,6 +22,7 @@
 package io.crate.operation.collect;
 
 import io.crate.jobs.JobContextService;
+import io.crate.operation.projectors.SpillDirectory;
 import org.elasticsearch.common.inject.AbstractModule;
 
 public class CollectOperationModule extends AbstractModule {
@@ -32,6 +33,8 @@ public class CollectOperationModule extends AbstractModule {
 
         bind(StatsTables.class).asEagerSingleton();
         bind(SystemCollectService.class).asEagerSingleton();
+        bind(ShardResultCache.class).asEagerSingleton();
+        bind(SpillDirectory.class).asEagerSingleton();
 
         bind(JobContextService.class).asEagerSingleton();
     }
@@ -67,6 +67,7 @@ public class JobCollectContext implements ExecutionSubContext, RowUpstream, Exec
     private final ArrayList<ContextCallback> contextCallbacks = new ArrayList<>(1);
 
     private volatile boolean isKilled = false;
+    private volatile boolean hasQueryContexts = false;
     private long usedBytesOfQueryPhase = 0L;
 
     private static final ESLogger LOGGER = Loggers.getLogger(JobCollectContext.class);
@@ -100,6 +101,7 @@ public class JobCollectContext implements ExecutionSubContext, RowUpstream, Exec
                         "ExecutionSubContext for %d already added", jobSearchContextId));
             }
         }
+        hasQueryContexts = true;
         int numActive = activeQueryContexts.incrementAndGet();
         LOGGER.trace("adding query subContext {}, now there are {} query subContexts", jobSearchContextId, numActive);
 
@@ -161,6 +163,16 @@ public class JobCollectContext implements ExecutionSubContext, RowUpstream, Exec
         }
     }
 
+    /**
+     * closes this context if no query context has ever been added to it,
+     * otherwise it is closed once all query contexts are closed.
+     */
+    public void closeIfNoQueryContexts() {
+        if (!hasQueryContexts) {
+            close();
+        }
+    }
+
     @Override
     public void kill() {
         isKilled = true;
@@ -22,33 +22,36 @@
 package io.crate.operation.collect;
 
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import io.crate.Constants;
 import io.crate.action.sql.query.CrateSearchContext;
 import io.crate.action.sql.query.LuceneSortGenerator;
 import io.crate.analyze.OrderBy;
 import io.crate.breaker.CrateCircuitBreakerService;
 import io.crate.breaker.RamAccountingContext;
-import io.crate.lucene.QueryBuilderHelper;
+import io.crate.core.collections.Row;
 import io.crate.metadata.Functions;
 import io.crate.operation.*;
 import io.crate.operation.reference.doc.lucene.CollectorContext;
 import io.crate.operation.reference.doc.lucene.LuceneCollectorExpression;
 import io.crate.operation.reference.doc.lucene.LuceneDocLevelReferenceResolver;
 import io.crate.operation.reference.doc.lucene.OrderByCollectorExpression;
+import io.crate.operation.reference.doc.lucene.ScoreCollectorExpression;
 import io.crate.planner.node.dql.CollectNode;
-import io.crate.planner.symbol.Reference;
-import io.crate.planner.symbol.Symbol;
 import org.apache.lucene.index.*;
 import org.apache.lucene.search.*;
-import org.elasticsearch.common.Nullable;
+import org.elasticsearch.common.lucene.MinimumScoreCollector;
 import org.elasticsearch.index.fieldvisitor.FieldsVisitor;
 import org.elasticsearch.index.mapper.internal.SourceFieldMapper;
+import org.elasticsearch.search.internal.SearchContext;
 
 import java.io.IOException;
-import java.util.ArrayList;
-import java.util.HashSet;
-import java.util.List;
+import java.util.*;
 import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 /**
  * collect documents from ES shard, a lucene index
@@ -86,9 +89,30 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         }
     }
 
+    /**
+     * number of documents which are passed to a {@link RowBatchDownstreamHandle} at once
+     */
+    static final int BATCH_SIZE = 1024;
+
+    /**
+     * minimum number of documents of a split if the segments of a shard are collected concurrently
+     */
+    static int MIN_DOCS_PER_SPLIT = 50_000;
+
+    /**
+     * creates the collectors which collect a split of the segments of the shard concurrently.
+     * Each one must use its own expressions and its own shard projector chain,
+     * the node projectors merge the partial results.
+     */
+    public interface SplitCollectorFactory {
+        LuceneDocCollector create() throws Exception;
+    }
+
     private CollectInputSymbolVisitor<LuceneCollectorExpression<?>> inputSymbolVisitor;
 
     private final RowDownstreamHandle downstream;
+    private final RowBatchDownstreamHandle batchDownstream;
+    private final DocBatch docBatch = new DocBatch();
     private final CollectorFieldsVisitor fieldsVisitor;
     private final InputRow inputRow;
     private final List<LuceneCollectorExpression<?>> collectorExpressions;
@@ -107,6 +131,10 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
     private int rowCount = 0;
     private int pageSize;
 
+    private SplitCollectorFactory splitCollectorFactory;
+    private ThreadPoolExecutor splitExecutor;
+    private int maxSplits = 1;
+
     public LuceneDocCollector(List<Input<?>> inputs,
                               List<LuceneCollectorExpression<?>> collectorExpressions,
                               CollectNode collectNode,
@@ -119,11 +147,21 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         this.downstream = downStreamProjector.registerUpstream(this);
         this.inputRow = new InputRow(inputs);
         this.collectorExpressions = collectorExpressions;
+        boolean usesScore = false;
         for (LuceneCollectorExpression expr : collectorExpressions) {
             if ( expr instanceof OrderByCollectorExpression) {
                 orderByCollectorExpressions.add((OrderByCollectorExpression)expr);
+            } else if (expr instanceof ScoreCollectorExpression) {
+                usesScore = true;
             }
         }
+        // documents are only batched for unordered collects,
+        // the score can only be read while the scorer is positioned on the document
+        if (orderBy == null && !usesScore && downstream instanceof RowBatchDownstreamHandle) {
+            this.batchDownstream = (RowBatchDownstreamHandle) downstream;
+        } else {
+            this.batchDownstream = null;
+        }
         this.fieldsVisitor = new CollectorFieldsVisitor(collectorExpressions.size());
         this.searchContext = shardContext.searchContext();
         inputSymbolVisitor = new CollectInputSymbolVisitor<>(functions, new LuceneDocLevelReferenceResolver(null));
@@ -151,13 +189,38 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
                     CrateCircuitBreakerService.breakingExceptionMessage(ramAccountingContext.contextId(),
                             ramAccountingContext.limit()));
         }
-        // validate minimum score
-        if (searchContext.minimumScore() != null
+        // validate minimum score, ordered collects validate it while searching the documents
+        if (orderBy == null && searchContext.minimumScore() != null
                 && scorer.score() < searchContext.minimumScore()) {
             return;
         }
 
         producedRows = true;
+        boolean limitReached = limit != null && rowCount == limit;
+        if (batchDownstream != null) {
+            docBatch.add(doc);
+            if (docBatch.size == BATCH_SIZE || limitReached) {
+                flushBatch();
+            }
+        } else {
+            setNextDocId(doc);
+            boolean wantMore;
+            try {
+                wantMore = downstream.setNextRow(inputRow);
+            } catch (Throwable t) {
+                throw new CollectionAbortedException(t);
+            }
+            if (!wantMore) {
+                throw new CollectionAbortedException();
+            }
+        }
+        if (limitReached) {
+            // no more rows required, we can stop here
+            throw new CollectionAbortedException();
+        }
+    }
+
+    private void setNextDocId(int doc) throws IOException {
         if (visitorEnabled) {
             fieldsVisitor.reset();
             currentReader.document(doc, fieldsVisitor);
@@ -165,20 +228,32 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         for (LuceneCollectorExpression e : collectorExpressions) {
             e.setNextDocId(doc);
         }
+    }
+
+    /**
+     * pass the batched documents to the downstream
+     */
+    private void flushBatch() throws IOException {
+        if (docBatch.size == 0) {
+            return;
+        }
         boolean wantMore;
         try {
-            wantMore = downstream.setNextRow(inputRow);
+            wantMore = batchDownstream.setNextRows(docBatch);
         } catch (Throwable t) {
             throw new CollectionAbortedException(t);
+        } finally {
+            docBatch.size = 0;
         }
-        if (!wantMore || (limit != null && rowCount == limit)) {
-            // no more rows required, we can stop here
+        if (!wantMore) {
             throw new CollectionAbortedException();
         }
     }
 
     @Override
     public void setNextReader(AtomicReaderContext context) throws IOException {
+        // the batched doc ids belong to the previous reader
+        flushBatch();
         this.currentReader = context.reader();
         for (LuceneCollectorExpression expr : collectorExpressions) {
             expr.setNextReader(context);
@@ -199,15 +274,7 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
     @Override
     public void doCollect(JobCollectContext jobCollectContext) {
         this.ramAccountingContext = jobCollectContext.ramAccountingContext();
-        // start collect
-        CollectorContext collectorContext = new CollectorContext()
-                .searchContext(searchContext)
-                .visitor(fieldsVisitor)
-                .jobSearchContextId(shardContext.jobSearchContextId());
-        for (LuceneCollectorExpression<?> collectorExpression : collectorExpressions) {
-            collectorExpression.startCollect(collectorContext);
-        }
-        visitorEnabled = fieldsVisitor.required();
+        startCollect();
         shardContext.acquireContext();
         Query query = searchContext.query();
         if (query == null) {
@@ -217,29 +284,22 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         // do the lucene search
         try {
             if( orderBy != null) {
-                Integer batchSize = limit == null ? pageSize : Math.min(pageSize, limit);
                 Sort sort = LuceneSortGenerator.generateLuceneSort(searchContext, orderBy, inputSymbolVisitor);
-                TopFieldDocs topFieldDocs = searchContext.searcher().search(query, batchSize, sort);
-                int collected = topFieldDocs.scoreDocs.length;
-                ScoreDoc lastCollected = collectTopFields(topFieldDocs);
-                while ((limit == null || collected < limit) && topFieldDocs.scoreDocs.length >= batchSize && lastCollected != null) {
-                    jobCollectContext.interruptIfKilled();
-
-                    batchSize = limit == null ? pageSize : Math.min(pageSize, limit - collected);
-                    Query alreadyCollectedQuery = alreadyCollectedQuery((FieldDoc)lastCollected);
-                    if (alreadyCollectedQuery != null) {
-                        BooleanQuery searchAfterQuery = new BooleanQuery();
-                        searchAfterQuery.add(query, BooleanClause.Occur.MUST);
-                        searchAfterQuery.add(alreadyCollectedQuery, BooleanClause.Occur.MUST_NOT);
-                        topFieldDocs = (TopFieldDocs)searchContext.searcher().searchAfter(lastCollected, searchAfterQuery, batchSize, sort);
-                    } else {
-                        topFieldDocs = (TopFieldDocs)searchContext.searcher().searchAfter(lastCollected, query, batchSize, sort);
-                    }
-                    collected += topFieldDocs.scoreDocs.length;
-                    lastCollected = collectTopFields(topFieldDocs);
+                if (limit != null && limit <= pageSize) {
+                    // a single page, a bounded search doesn't need to keep all matching documents
+                    collectTopFields(searchTopFields(query, sort, limit));
+                } else {
+                    collectPages(jobCollectContext, query, sort);
                 }
             } else {
-                searchContext.searcher().search(query, this);
+                List<List<AtomicReaderContext>> splits = splitLeaves(
+                        searchContext.searcher().getIndexReader().leaves(), numSplits());
+                if (splits.size() > 1) {
+                    collectSplits(query, splits);
+                } else {
+                    searchContext.searcher().search(query, this);
+                }
+                flushBatch();
             }
             downstream.finish();
         } catch (CollectionAbortedException e) {
@@ -260,6 +320,223 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         }
     }
 
+    /**
+     * collect the sorted documents in pages.
+     * The query is evaluated only once, the pages are sorted from the matching documents
+     */
+    private void collectPages(JobCollectContext jobCollectContext, Query query, Sort sort) throws IOException {
+        MatchingDocsCollector matchingDocs = new MatchingDocsCollector(
+                searchContext.searcher().getIndexReader().leaves(),
+                sort.needsScores(),
+                searchContext.minimumScore(),
+                ramAccountingContext);
+        searchContext.searcher().search(query, matchingDocs);
+
+        int maxDocs = limit == null ? Integer.MAX_VALUE : limit;
+        int batchSize = Math.min(pageSize, maxDocs);
+        TopFieldDocs topFieldDocs = matchingDocs.nextPage(sort, batchSize, maxDocs);
+        int collected = topFieldDocs.scoreDocs.length;
+        collectTopFields(topFieldDocs);
+        while (collected < maxDocs && topFieldDocs.scoreDocs.length >= batchSize) {
+            jobCollectContext.interruptIfKilled();
+
+            batchSize = Math.min(pageSize, maxDocs - collected);
+            topFieldDocs = matchingDocs.nextPage(sort, batchSize, maxDocs - collected);
+            collected += topFieldDocs.scoreDocs.length;
+            collectTopFields(topFieldDocs);
+        }
+    }
+
+    private TopFieldDocs searchTopFields(Query query, Sort sort, int size) throws IOException {
+        Float minimumScore = searchContext.minimumScore();
+        if (minimumScore == null) {
+            return searchContext.searcher().search(query, size, sort);
+        }
+        TopFieldCollector collector = TopFieldCollector.create(sort, size, true, sort.needsScores(), false, false);
+        searchContext.searcher().search(query, new MinimumScoreCollector(collector, minimumScore));
+        return (TopFieldDocs) collector.topDocs();
+    }
+
+    private void startCollect() {
+        CollectorContext collectorContext = new CollectorContext()
+                .searchContext(searchContext)
+                .visitor(fieldsVisitor)
+                .jobSearchContextId(shardContext.jobSearchContextId());
+        for (LuceneCollectorExpression<?> collectorExpression : collectorExpressions) {
+            collectorExpression.startCollect(collectorContext);
+        }
+        visitorEnabled = fieldsVisitor.required();
+    }
+
+    /**
+     * enables collecting splits of the segments of the shard concurrently on the given executor
+     * if neither an order nor a limit is given.
+     * The number of splits is bounded by maxSplits and by the idle threads of the executor.
+     */
+    public void splitCollect(SplitCollectorFactory splitCollectorFactory, ThreadPoolExecutor executor, int maxSplits) {
+        this.splitCollectorFactory = splitCollectorFactory;
+        this.splitExecutor = executor;
+        this.maxSplits = maxSplits;
+    }
+
+    private int numSplits() {
+        if (splitCollectorFactory == null || orderBy != null || limit != null) {
+            return 1;
+        }
+        return numSplits(maxSplits,
+                splitExecutor.getMaximumPoolSize() - splitExecutor.getActiveCount(),
+                searchContext.searcher().getIndexReader().leaves().size(),
+                searchContext.searcher().getIndexReader().maxDoc());
+    }
+
+    /**
+     * @param idleThreads number of threads that are able to collect another split,
+     *                    the current thread collects one split itself
+     */
+    static int numSplits(int maxSplits, int idleThreads, int numLeaves, int maxDoc) {
+        int numSplits = Math.min(maxSplits, idleThreads + 1);
+        numSplits = Math.min(numSplits, numLeaves);
+        numSplits = Math.min(numSplits, maxDoc / MIN_DOCS_PER_SPLIT);
+        return Math.max(numSplits, 1);
+    }
+
+    /**
+     * distributes the leaves into numSplits splits with about the same number of documents,
+     * the leaves of every split are in index order.
+     */
+    static List<List<AtomicReaderContext>> splitLeaves(List<AtomicReaderContext> leaves, int numSplits) {
+        if (numSplits <= 1 || leaves.size() <= 1) {
+            return Collections.singletonList(leaves);
+        }
+        List<AtomicReaderContext> bySize = new ArrayList<>(leaves);
+        Collections.sort(bySize, new Comparator<AtomicReaderContext>() {
+            @Override
+            public int compare(AtomicReaderContext o1, AtomicReaderContext o2) {
+                return Integer.compare(o2.reader().maxDoc(), o1.reader().maxDoc());
+            }
+        });
+        numSplits = Math.min(numSplits, leaves.size());
+        List<List<AtomicReaderContext>> splits = new ArrayList<>(numSplits);
+        long[] splitDocs = new long[numSplits];
+        for (int i = 0; i < numSplits; i++) {
+            splits.add(new ArrayList<AtomicReaderContext>());
+        }
+        for (AtomicReaderContext leaf : bySize) {
+            int smallest = 0;
+            for (int i = 1; i < numSplits; i++) {
+                if (splitDocs[i] < splitDocs[smallest]) {
+                    smallest = i;
+                }
+            }
+            splits.get(smallest).add(leaf);
+            splitDocs[smallest] += leaf.reader().maxDoc();
+        }
+        Comparator<AtomicReaderContext> byOrd = new Comparator<AtomicReaderContext>() {
+            @Override
+            public int compare(AtomicReaderContext o1, AtomicReaderContext o2) {
+                return Integer.compare(o1.ord, o2.ord);
+            }
+        };
+        for (List<AtomicReaderContext> split : splits) {
+            Collections.sort(split, byOrd);
+        }
+        return splits;
+    }
+
+    /**
+     * collects the first split on the current thread and the other splits with split collectors on the executor.
+     * Splits which haven't been started by the executor once the first split is done are collected
+     * on the current thread, so the shard context is only released after all splits are done.
+     */
+    private void collectSplits(Query query, List<List<AtomicReaderContext>> splits) throws Exception {
+        Weight weight = searchContext.searcher().createNormalizedWeight(query);
+        List<SplitCollect> splitCollects = new ArrayList<>(splits.size() - 1);
+        try {
+            for (int i = 1; i < splits.size(); i++) {
+                SplitCollect splitCollect = new SplitCollect(splitCollectorFactory.create(), splits.get(i), weight);
+                splitCollects.add(splitCollect);
+                try {
+                    splitExecutor.execute(splitCollect);
+                } catch (RejectedExecutionException e) {
+                    // will be collected by this thread
+                }
+            }
+            searchLeaves(splits.get(0), weight);
+        } finally {
+            for (SplitCollect splitCollect : splitCollects) {
+                splitCollect.runOrAwait();
+            }
+        }
+    }
+
+    private void searchLeaves(List<AtomicReaderContext> leaves, Weight weight) throws IOException {
+        for (AtomicReaderContext leaf : leaves) {
+            BulkScorer scorer = weight.bulkScorer(leaf, !acceptsDocsOutOfOrder(), leaf.reader().getLiveDocs());
+            if (scorer != null) {
+                setNextReader(leaf);
+                scorer.score(this);
+            }
+        }
+    }
+
+    /**
+     * collects the given leaves, the shard context is acquired and released by the collector which created the split
+     */
+    private void collectSplit(List<AtomicReaderContext> leaves, Weight weight) {
+        startCollect();
+        SearchContext.setCurrent(searchContext);
+        try {
+            searchLeaves(leaves, weight);
+            flushBatch();
+            downstream.finish();
+        } catch (CollectionAbortedException e) {
+            if (e.getCause() == null) {
+                downstream.finish();
+            } else {
+                failed = true;
+                downstream.fail(Throwables.getRootCause(e));
+            }
+        } catch (Exception e) {
+            failed = true;
+            downstream.fail(shardContext.isKilled() ? new CancellationException() : e);
+        } finally {
+            SearchContext.removeCurrent();
+        }
+    }
+
+    private class SplitCollect implements Runnable {
+
+        private final LuceneDocCollector collector;
+        private final List<AtomicReaderContext> leaves;
+        private final Weight weight;
+        private final AtomicBoolean started = new AtomicBoolean(false);
+        private final CountDownLatch done = new CountDownLatch(1);
+
+        SplitCollect(LuceneDocCollector collector, List<AtomicReaderContext> leaves, Weight weight) {
+            this.collector = collector;
+            this.leaves = leaves;
+            this.weight = weight;
+            collector.ramAccountingContext = ramAccountingContext;
+        }
+
+        @Override
+        public void run() {
+            if (!started.compareAndSet(false, true)) {
+                return;
+            }
+            try {
+                collector.collectSplit(leaves, weight);
+            } finally {
+                done.countDown();
+            }
+        }
+
+        void runOrAwait() {
+            run();
+            Uninterruptibles.awaitUninterruptibly(done);
+        }
+    }
+
     public CrateSearchContext searchContext() {
         return searchContext;
     }
@@ -276,9 +553,8 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
         this.pageSize = pageSize;
     }
 
-    private ScoreDoc collectTopFields(TopFieldDocs topFieldDocs) throws IOException{
+    private void collectTopFields(TopFieldDocs topFieldDocs) throws IOException{
         IndexReaderContext indexReaderContext = searchContext.searcher().getTopReaderContext();
-        ScoreDoc lastDoc = null;
         if(!indexReaderContext.leaves().isEmpty()) {
             for (ScoreDoc scoreDoc : topFieldDocs.scoreDocs) {
                 int readerIndex = ReaderUtil.subIndex(scoreDoc.doc, searchContext.searcher().getIndexReader().leaves());
@@ -287,32 +563,53 @@ public class LuceneDocCollector extends Collector implements CrateCollector, Row
                 setNextReader(subReaderContext);
                 setNextOrderByValues(scoreDoc);
                 collect(subDoc);
-                lastDoc = scoreDoc;
             }
         }
-        return lastDoc;
     }
 
-    private @Nullable Query alreadyCollectedQuery(FieldDoc lastCollected) {
-       BooleanQuery query = new BooleanQuery();
-       for (int i = 0; i < orderBy.orderBySymbols().size(); i++) {
-            Symbol order = orderBy.orderBySymbols().get(i);
-            Object value = lastCollected.fields[i];
-            // only filter for null values if nulls last
-            if (order instanceof Reference && (value != null || !orderBy.nullsFirst()[i])) {
-                QueryBuilderHelper helper = QueryBuilderHelper.forType(order.valueType());
-                String columnName = ((Reference)order).info().ident().columnIdent().fqn();
-                if (orderBy.reverseFlags()[i]) {
-                    query.add(helper.rangeQuery(columnName, value, null, false, false ), BooleanClause.Occur.MUST);
-                } else {
-                    query.add(helper.rangeQuery(columnName, null, value, false, false ), BooleanClause.Occur.MUST);
-                }
-            }
+    /**
+     * The ids of documents of the current reader which are passed to the downstream as one batch.
+     * The collector expressions are positioned on each document while the batch is iterated,
+     * so the values of a document are only read if the downstream consumes it.
+     */
+    private class DocBatch implements Iterable<Row> {
+
+        private final int[] docs = new int[BATCH_SIZE];
+        private int size = 0;
+
+        void add(int doc) {
+            docs[size++] = doc;
         }
-        if (query.clauses().size() > 0) {
-            return query;
-        } else {
-            return null;
+
+        @Override
+        public Iterator<Row> iterator() {
+            return new Iterator<Row>() {
+
+                private int idx = 0;
+
+                @Override
+                public boolean hasNext() {
+                    return idx < size;
+                }
+
+                @Override
+                public Row next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    try {
+                        setNextDocId(docs[idx++]);
+                    } catch (IOException e) {
+                        throw Throwables.propagate(e);
+                    }
+                    return inputRow;
+                }
+
+                @Override
+                public void remove() {
+                    throw new UnsupportedOperationException("remove is not supported");
+                }
+            };
         }
     }
 }
@@ -27,6 +27,7 @@ import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.Lists;
 import com.google.common.util.concurrent.*;
 import io.crate.analyze.EvaluatingNormalizer;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.exceptions.TableUnknownException;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.executor.transport.TransportActionProvider;
@@ -41,12 +42,14 @@ import io.crate.operation.projectors.FlatProjectorChain;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
 import io.crate.operation.projectors.ResultProvider;
 import io.crate.operation.projectors.ResultProviderFactory;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.operation.reference.file.FileLineReferenceResolver;
 import io.crate.operation.reference.sys.node.NodeSysExpression;
 import io.crate.operation.reference.sys.node.NodeSysReferenceResolver;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
 import io.crate.planner.node.dql.FileUriCollectNode;
+import io.crate.planner.projection.Projection;
 import io.crate.planner.symbol.ValueSymbolVisitor;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
 import org.elasticsearch.cluster.ClusterService;
@@ -56,6 +59,7 @@ import org.elasticsearch.common.inject.Singleton;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.util.concurrent.EsExecutors;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.IndexShardMissingException;
 import org.elasticsearch.indices.IndexMissingException;
@@ -63,6 +67,7 @@ import org.elasticsearch.indices.IndicesService;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.Callable;
 import java.util.concurrent.CancellationException;
@@ -108,6 +113,8 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
     private final BulkRetryCoordinatorPool bulkRetryCoordinatorPool;
     private final TransportActionProvider transportActionProvider;
     private final Settings settings;
+    @Nullable
+    private final File spillDirectory;
 
     @Inject
     public MapSideDataCollectOperation(ClusterService clusterService,
@@ -122,7 +129,8 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
                                        CollectServiceResolver collectServiceResolver,
                                        ResultProviderFactory resultProviderFactory,
                                        InformationSchemaCollectService informationSchemaCollectService,
-                                       UnassignedShardsCollectService unassignedShardsCollectService) {
+                                       UnassignedShardsCollectService unassignedShardsCollectService,
+                                       SpillDirectory spillDirectory) {
         this.resultProviderFactory = resultProviderFactory;
         this.informationSchemaCollectService = informationSchemaCollectService;
         this.unassignedShardsCollectService = unassignedShardsCollectService;
@@ -157,6 +165,7 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
         this.threadPool = threadPool;
         this.bulkRetryCoordinatorPool = bulkRetryCoordinatorPool;
         this.transportActionProvider = transportActionProvider;
+        this.spillDirectory = spillDirectory.directory();
 
         ImplementationSymbolVisitor nodeImplementationSymbolVisitor = new ImplementationSymbolVisitor(
                 referenceResolver,
@@ -169,13 +178,14 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
                 settings,
                 transportActionProvider,
                 bulkRetryCoordinatorPool,
-                nodeImplementationSymbolVisitor
+                nodeImplementationSymbolVisitor,
+                this.spillDirectory
         );
     }
 
 
-    public ResultProvider createDownstream(CollectNode collectNode) {
-        return resultProviderFactory.createDownstream(collectNode, collectNode.jobId());
+    public ResultProvider createDownstream(CollectNode collectNode, RamAccountingContext ramAccountingContext) {
+        return resultProviderFactory.createDownstream(collectNode, collectNode.jobId(), ramAccountingContext);
     }
 
     /**
@@ -211,7 +221,7 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
                 ListenableFuture<List<Void>> results;
 
                 if (collectNode instanceof FileUriCollectNode) {
-                    results = handleWithService(nodeCollectService, collectNode, downstream, jobCollectContext);
+                    results = handleFileCollect((FileUriCollectNode) collectNode, downstream, jobCollectContext);
                 } else if (collectNode.isPartitioned() && collectNode.maxRowGranularity() == RowGranularity.DOC) {
                     // edge case: partitioned table without actual indices
                     // no results
@@ -308,27 +318,81 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
         });
     }
 
+    /**
+     * collect from files with one {@link FileReadingCollector} per processor.
+     * Every collector gets its own projector chain, so the rows of different readers are parsed
+     * and written without waiting for each other, all chains feed the same downstream.
+     */
+    private ListenableFuture<List<Void>> handleFileCollect(FileUriCollectNode collectNode,
+                                                           RowDownstream downstream,
+                                                           JobCollectContext jobCollectContext) {
+        try {
+            EvaluatingNormalizer nodeNormalizer = new EvaluatingNormalizer(functions,
+                    RowGranularity.NODE,
+                    new NodeSysReferenceResolver(nodeSysExpression));
+            FileUriCollectNode localCollectNode = collectNode.normalize(nodeNormalizer);
+            if (localCollectNode.whereClause().noMatch()) {
+                downstream.registerUpstream(this).finish();
+                return IMMEDIATE_LIST;
+            }
+            int readersPerNode = Math.min(poolSize, EsExecutors.boundedNumberOfProcessors(settings));
+            List<CrateCollector> collectors = new ArrayList<>(readersPerNode);
+            for (int i = 0; i < readersPerNode; i++) {
+                RowDownstream localRowDownstream = downstream;
+                if (!localCollectNode.projections().isEmpty()) {
+                    FlatProjectorChain projectorChain = FlatProjectorChain.withAttachedDownstream(
+                            projectorVisitor,
+                            jobCollectContext.ramAccountingContext(),
+                            localCollectNode.projections(),
+                            downstream,
+                            collectNode.jobId()
+                    );
+                    projectorChain.startProjections(jobCollectContext);
+                    localRowDownstream = projectorChain.firstProjector();
+                }
+                collectors.add(fileReadingCollector(localCollectNode, localRowDownstream, readersPerNode, i));
+            }
+            return ThreadPools.runWithAvailableThreads(
+                    executor,
+                    poolSize,
+                    collectors2Callables(collectors, jobCollectContext),
+                    new VoidFunction<List<Void>>());
+        } catch (Throwable t) {
+            LOGGER.error("error during collect", t);
+            downstream.registerUpstream(this).fail(t);
+            return Futures.immediateFailedFuture(t);
+        }
+    }
+
+    private FileReadingCollector fileReadingCollector(FileUriCollectNode collectNode,
+                                                      RowDownstream downstream,
+                                                      int readersPerNode,
+                                                      int localReaderNumber) {
+        FileCollectInputSymbolVisitor.Context context = fileInputSymbolVisitor.extractImplementations(collectNode);
+        String[] readers = collectNode.executionNodes().toArray(
+                new String[collectNode.executionNodes().size()]);
+        Arrays.sort(readers);
+        return new FileReadingCollector(
+                ValueSymbolVisitor.STRING.process(collectNode.targetUri()),
+                context.topLevelInputs(),
+                context.expressions(),
+                downstream,
+                collectNode.fileFormat(),
+                collectNode.compression(),
+                ImmutableMap.<String, FileInputFactory>of(),
+                collectNode.sharedStorage(),
+                readers.length,
+                Arrays.binarySearch(readers, clusterService.state().nodes().localNodeId()),
+                readersPerNode,
+                localReaderNumber,
+                FileReadingCollector.DEFAULT_SPLIT_SIZE
+        );
+    }
+
     private CrateCollector getNodeLevelCollector(CollectNode collectNode,
                                                  RowDownstream downstream) {
         if (collectNode instanceof FileUriCollectNode) {
-            FileCollectInputSymbolVisitor.Context context = fileInputSymbolVisitor.extractImplementations(collectNode);
-            FileUriCollectNode fileUriCollectNode = (FileUriCollectNode) collectNode;
-
-            String[] readers = fileUriCollectNode.executionNodes().toArray(
-                    new String[fileUriCollectNode.executionNodes().size()]);
-            Arrays.sort(readers);
-            return new FileReadingCollector(
-                    ValueSymbolVisitor.STRING.process(fileUriCollectNode.targetUri()),
-                    context.topLevelInputs(),
-                    context.expressions(),
-                    downstream,
-                    fileUriCollectNode.fileFormat(),
-                    fileUriCollectNode.compression(),
-                    ImmutableMap.<String, FileInputFactory>of(),
-                    fileUriCollectNode.sharedStorage(),
-                    readers.length,
-                    Arrays.binarySearch(readers, clusterService.state().nodes().localNodeId())
-            );
+            return fileReadingCollector((FileUriCollectNode) collectNode, downstream, 1, 0);
         } else {
             CollectService service = collectServiceResolver.getService(collectNode.routing());
             if (service != null) {
@@ -396,13 +460,21 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
                 settings,
                 transportActionProvider,
                 bulkRetryCoordinatorPool,
-                implementationSymbolVisitor
+                implementationSymbolVisitor,
+                spillDirectory
         );
 
+        List<Projection> projections = normalizedCollectNode.projections();
+        if (resultCacheEnabled(normalizedCollectNode, localNodeId)) {
+            List<Projection> splitProjections = ShardResultCache.splitShardAggregation(projections);
+            if (splitProjections != null) {
+                projections = splitProjections;
+            }
+        }
         ShardProjectorChain projectorChain = new ShardProjectorChain(
                 collectNode.jobId(),
                 numShards,
-                normalizedCollectNode.projections(),
+                projections,
                 downstream,
                 projectorVisitor,
                 jobCollectContext.ramAccountingContext()
@@ -482,7 +554,9 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
         projectorChain.startProjections(jobCollectContext);
         try {
             LOGGER.trace("starting {} shardCollectors...", numShards);
-            return runCollectThreaded(collectNode, shardCollectors, jobCollectContext);
+            ListenableFuture<List<Void>> results = runCollectThreaded(collectNode, shardCollectors, jobCollectContext);
+            closeWithoutQueryContexts(results, shardCollectors, jobCollectContext);
+            return results;
         } catch (RejectedExecutionException e) {
             // on distributing collects the merge nodes need to be informed about the failure
             // so they can clean up their context
@@ -493,6 +567,53 @@ public class MapSideDataCollectOperation implements CollectOperation, RowUpstrea
 
     }
 
+    /**
+     * checks if the result cache is enabled for any of the indices collected on this node
+     */
+    private boolean resultCacheEnabled(CollectNode collectNode, String localNodeId) {
+        Map<String, List<Integer>> indices = collectNode.routing().locations().get(localNodeId);
+        if (indices == null) {
+            return false;
+        }
+        for (String index : indices.keySet()) {
+            IndexService indexService = indicesService.indexService(index);
+            if (indexService != null && ShardResultCache.isEnabled(indexService.settingsService().getSettings())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Shards whose results are read from the {@link ShardResultCache} don't add a query context,
+     * the context is closed after collecting if no shard did.
+     */
+    private void closeWithoutQueryContexts(ListenableFuture<List<Void>> results,
+                                           List<CrateCollector> shardCollectors,
+                                           final JobCollectContext jobCollectContext) {
+        boolean hasCachedCollectors = false;
+        for (CrateCollector collector : shardCollectors) {
+            if (collector instanceof CachedShardResultCollector) {
+                hasCachedCollectors = true;
+                break;
+            }
+        }
+        if (!hasCachedCollectors) {
+            return;
+        }
+        Futures.addCallback(results, new FutureCallback<List<Void>>() {
+            @Override
+            public void onSuccess(@Nullable List<Void> result) {
+                jobCollectContext.closeIfNoQueryContexts();
+            }
+
+            @Override
+            public void onFailure(Throwable t) {
+                jobCollectContext.closeIfNoQueryContexts();
+            }
+        });
+    }
+
     private ListenableFuture<List<Void>> runCollectThreaded(CollectNode collectNode,
                                                             final List<CrateCollector> shardCollectors,
                                                             final JobCollectContext jobCollectContext) throws RejectedExecutionException {
@@ -0,0 +1,243 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import io.crate.breaker.RamAccountingContext;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.ReaderUtil;
+import org.apache.lucene.search.*;
+import org.apache.lucene.util.FixedBitSet;
+import org.apache.lucene.util.RamUsageEstimator;
+import org.elasticsearch.common.Nullable;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Collects the ids (and if the sort requires them, the scores) of all documents matching a query,
+ * so that they can be returned sorted in pages without evaluating the query again for every page.
+ *
+ * The pages are read from a window of the top documents of those which haven't been returned yet.
+ * The documents of a window are removed from the matching documents when the window is filled,
+ * so the next windows neither need a search-after filter nor look at documents which were already returned.
+ * Every time a window has been read the next one is twice as large, so all matching documents are
+ * scanned only a logarithmic number of times. Windows stop growing once they use a large part of the breaker limit.
+ */
+class MatchingDocsCollector extends Collector {
+
+    private static final double WINDOW_LIMIT_RATIO = 0.25;
+
+    private final List<AtomicReaderContext> leaves;
+    private final RamAccountingContext ramAccountingContext;
+    private final boolean needsScores;
+    private final Float minimumScore;
+    private final FixedBitSet[] docs;
+    private final float[][] scores;
+    private final PageScorer pageScorer = new PageScorer();
+
+    private Scorer scorer;
+    private AtomicReaderContext currentContext;
+    private FixedBitSet currentDocs;
+    private int remainingDocs = 0;
+
+    private ScoreDoc[] window = new ScoreDoc[0];
+    private int windowPos = 0;
+    private int windowSize = 0;
+    private long windowBytes = 0;
+
+    /**
+     * @param leaves the leaves of the top level reader of the searcher the query is executed with
+     * @param needsScores if the scores of the documents must be kept for sorting
+     */
+    MatchingDocsCollector(List<AtomicReaderContext> leaves,
+                          boolean needsScores,
+                          @Nullable Float minimumScore,
+                          RamAccountingContext ramAccountingContext) {
+        this.leaves = leaves;
+        this.needsScores = needsScores;
+        this.minimumScore = minimumScore;
+        this.ramAccountingContext = ramAccountingContext;
+        this.docs = new FixedBitSet[leaves.size()];
+        this.scores = new float[leaves.size()][];
+    }
+
+    @Override
+    public void setScorer(Scorer scorer) throws IOException {
+        this.scorer = scorer;
+    }
+
+    @Override
+    public void collect(int doc) throws IOException {
+        float score = 0f;
+        if (needsScores || minimumScore != null) {
+            score = scorer.score();
+            if (minimumScore != null && score < minimumScore) {
+                return;
+            }
+        }
+        if (currentDocs == null) {
+            int maxDoc = currentContext.reader().maxDoc();
+            currentDocs = new FixedBitSet(maxDoc);
+            ramAccountingContext.addBytes(RamUsageEstimator.sizeOf(currentDocs.getBits()));
+            docs[currentContext.ord] = currentDocs;
+            if (needsScores) {
+                ramAccountingContext.addBytes(RamUsageEstimator.NUM_BYTES_FLOAT * (long) maxDoc);
+                scores[currentContext.ord] = new float[maxDoc];
+            }
+        }
+        currentDocs.set(doc);
+        remainingDocs++;
+        if (needsScores) {
+            scores[currentContext.ord][doc] = score;
+        }
+    }
+
+    @Override
+    public void setNextReader(AtomicReaderContext context) throws IOException {
+        currentContext = context;
+        currentDocs = null;
+    }
+
+    @Override
+    public boolean acceptsDocsOutOfOrder() {
+        return true;
+    }
+
+    /**
+     * @param maxDocs the number of documents which are read at most, including this page.
+     *                Used to bound the size of the window.
+     * @return the top <code>size</code> documents which haven't been returned yet.
+     * If less than <code>size</code> documents are returned, all matching documents have been returned.
+     */
+    public TopFieldDocs nextPage(Sort sort, int size, int maxDocs) throws IOException {
+        ScoreDoc[] page = new ScoreDoc[size];
+        int pageSize = 0;
+        while (pageSize < size) {
+            if (windowPos == window.length) {
+                fillWindow(sort, size, Math.max(size, maxDocs) - pageSize);
+                if (window.length == 0) {
+                    break;
+                }
+            }
+            int numDocs = Math.min(size - pageSize, window.length - windowPos);
+            System.arraycopy(window, windowPos, page, pageSize, numDocs);
+            windowPos += numDocs;
+            pageSize += numDocs;
+        }
+        if (pageSize < size) {
+            page = Arrays.copyOf(page, pageSize);
+        }
+        return new TopFieldDocs(page.length, page, sort.getSort(), Float.NaN);
+    }
+
+    private void fillWindow(Sort sort, int size, int maxDocs) throws IOException {
+        ramAccountingContext.releaseBytes(windowBytes);
+        windowBytes = 0;
+        window = new ScoreDoc[0];
+        windowPos = 0;
+        if (windowSize == 0) {
+            windowSize = size;
+        } else if (!ramAccountingContext.ownBytesExceedLimit(WINDOW_LIMIT_RATIO)) {
+            windowSize = (int) Math.min(Integer.MAX_VALUE, 2L * windowSize);
+        }
+        int numHits = Math.min(Math.min(windowSize, maxDocs), remainingDocs);
+        if (numHits == 0) {
+            return;
+        }
+        // the field values of each document are kept in the window and in a slot of the collector
+        windowBytes = (long) numHits * 2 * bytesPerDoc(sort);
+        ramAccountingContext.addBytes(windowBytes);
+
+        TopFieldCollector collector = TopFieldCollector.create(sort, numHits, true, needsScores, false, true);
+        for (AtomicReaderContext leaf : leaves) {
+            FixedBitSet leafDocs = docs[leaf.ord];
+            if (leafDocs == null) {
+                continue;
+            }
+            collector.setNextReader(leaf);
+            pageScorer.scores = scores[leaf.ord];
+            collector.setScorer(pageScorer);
+            DocIdSetIterator iterator = leafDocs.iterator();
+            for (int doc = iterator.nextDoc(); doc != DocIdSetIterator.NO_MORE_DOCS; doc = iterator.nextDoc()) {
+                pageScorer.doc = doc;
+                collector.collect(doc);
+            }
+        }
+        window = collector.topDocs().scoreDocs;
+        for (ScoreDoc scoreDoc : window) {
+            AtomicReaderContext leaf = leaves.get(ReaderUtil.subIndex(scoreDoc.doc, leaves));
+            docs[leaf.ord].clear(scoreDoc.doc - leaf.docBase);
+        }
+        remainingDocs -= window.length;
+    }
+
+    private static long bytesPerDoc(Sort sort) {
+        // FieldDoc and its array of sort values, each value is estimated as a boxed long
+        return RamUsageEstimator.NUM_BYTES_OBJECT_HEADER + 4 * RamUsageEstimator.NUM_BYTES_INT
+               + RamUsageEstimator.NUM_BYTES_ARRAY_HEADER
+               + sort.getSort().length * (RamUsageEstimator.NUM_BYTES_OBJECT_REF + 24L);
+    }
+
+    /**
+     * Scorer which returns the score kept for the current document while a page is collected
+     */
+    private static class PageScorer extends Scorer {
+
+        private float[] scores;
+        private int doc = -1;
+
+        PageScorer() {
+            super(null);
+        }
+
+        @Override
+        public float score() throws IOException {
+            return scores == null ? 0f : scores[doc];
+        }
+
+        @Override
+        public int freq() throws IOException {
+            return 1;
+        }
+
+        @Override
+        public int docID() {
+            return doc;
+        }
+
+        @Override
+        public int nextDoc() throws IOException {
+            throw new UnsupportedOperationException("PageScorer doesn't iterate documents");
+        }
+
+        @Override
+        public int advance(int target) throws IOException {
+            throw new UnsupportedOperationException("PageScorer doesn't iterate documents");
+        }
+
+        @Override
+        public long cost() {
+            return 1;
+        }
+    }
+}
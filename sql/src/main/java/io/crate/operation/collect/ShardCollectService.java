@@ -28,6 +28,7 @@ import com.google.common.collect.ImmutableMap;
 import io.crate.action.sql.query.CrateSearchContext;
 import io.crate.analyze.EvaluatingNormalizer;
 import io.crate.blob.v2.BlobIndices;
+import io.crate.core.collections.Bucket;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.executor.transport.TransportActionProvider;
 import io.crate.jobs.JobContextService;
@@ -40,13 +41,19 @@ import io.crate.operation.Input;
 import io.crate.operation.RowDownstream;
 import io.crate.operation.collect.blobs.BlobDocCollector;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.operation.reference.DocLevelReferenceResolver;
 import io.crate.operation.reference.doc.blob.BlobReferenceResolver;
 import io.crate.operation.reference.doc.lucene.LuceneDocLevelReferenceResolver;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.projection.AggregationProjection;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Literal;
 import org.apache.lucene.search.Filter;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
@@ -55,6 +62,7 @@ import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.settings.Settings;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.IndexService;
+import org.elasticsearch.index.engine.Engine;
 import org.elasticsearch.index.mapper.MapperService;
 import org.elasticsearch.index.query.ParsedQuery;
 import org.elasticsearch.index.shard.IndexShard;
@@ -65,9 +73,17 @@ import org.elasticsearch.search.SearchShardTarget;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
+import java.util.List;
+import java.util.concurrent.ThreadPoolExecutor;
 
 public class ShardCollectService {
 
+    /**
+     * maximum number of threads the segments of a shard are collected with concurrently
+     */
+    public static final String SEGMENT_PARALLELISM_SETTING = "collect.segment_parallelism";
+    public static final int DEFAULT_SEGMENT_PARALLELISM = 4;
+
     private final CollectInputSymbolVisitor<?> docInputSymbolVisitor;
     private final ThreadPool threadPool;
     private final ClusterService clusterService;
@@ -84,6 +100,8 @@ public class ShardCollectService {
     private final ProjectionToProjectorVisitor projectorVisitor;
     private final boolean isBlobShard;
     private final BlobIndices blobIndices;
+    private final int segmentParallelism;
+    private final ShardResultCache resultCache;
 
     @Inject
     public ShardCollectService(ThreadPool threadPool,
@@ -102,7 +120,9 @@ public class ShardCollectService {
                                ShardReferenceResolver referenceResolver,
                                BlobIndices blobIndices,
                                BlobShardReferenceResolver blobShardReferenceResolver,
-                               MapperService mapperService) {
+                               MapperService mapperService,
+                               ShardResultCache resultCache,
+                               SpillDirectory spillDirectory) {
         this.threadPool = threadPool;
         this.clusterService = clusterService;
         this.luceneQueryBuilder = luceneQueryBuilder;
@@ -114,6 +134,8 @@ public class ShardCollectService {
         this.bigArrays = bigArrays;
         this.functions = functions;
         this.blobIndices = blobIndices;
+        this.resultCache = resultCache;
+        this.segmentParallelism = settings.getAsInt(SEGMENT_PARALLELISM_SETTING, DEFAULT_SEGMENT_PARALLELISM);
         isBlobShard = BlobIndices.isBlobShard(this.shardId);
 
         DocLevelReferenceResolver<? extends Input<?>> resolver = (isBlobShard ? BlobReferenceResolver.INSTANCE : new LuceneDocLevelReferenceResolver(mapperService));
@@ -139,7 +161,8 @@ public class ShardCollectService {
                 bulkRetryCoordinatorPool,
                 shardImplementationSymbolVisitor,
                 shardNormalizer,
-                shardId
+                shardId,
+                spillDirectory.directory()
         );
     }
 
@@ -156,21 +179,23 @@ public class ShardCollectService {
                                        JobCollectContext jobCollectContext,
                                        int jobSearchContextId) throws Exception {
         CollectNode normalizedCollectNode = collectNode.normalize(shardNormalizer);
-        RowDownstream downstream = projectorChain.newShardDownstreamProjector(projectorVisitor);
 
         if (normalizedCollectNode.whereClause().noMatch()) {
-            return new NoopCrateCollector(downstream);
+            return new NoopCrateCollector(projectorChain.newShardDownstreamProjector(projectorVisitor));
         } else {
             RowGranularity granularity = normalizedCollectNode.maxRowGranularity();
             if (granularity == RowGranularity.DOC) {
                 if (isBlobShard) {
-                    return getBlobIndexCollector(normalizedCollectNode, downstream);
+                    return getBlobIndexCollector(normalizedCollectNode,
+                            projectorChain.newShardDownstreamProjector(projectorVisitor));
                 } else {
-                    return getLuceneIndexCollector(normalizedCollectNode, downstream, jobCollectContext, jobSearchContextId);
+                    return getLuceneIndexCollector(normalizedCollectNode, projectorChain,
+                            jobCollectContext, jobSearchContextId);
                 }
             } else if (granularity == RowGranularity.SHARD) {
                 ImplementationSymbolVisitor.Context shardCtx = shardImplementationSymbolVisitor.extractImplementations(normalizedCollectNode);
-                return new SimpleOneRowCollector(shardCtx.topLevelInputs(), shardCtx.collectExpressions(), downstream);
+                return new SimpleOneRowCollector(shardCtx.topLevelInputs(), shardCtx.collectExpressions(),
+                        projectorChain.newShardDownstreamProjector(projectorVisitor));
             }
             throw new UnhandledServerException(String.format("Granularity %s not supported", granularity.name()));
         }
@@ -194,15 +219,38 @@ public class ShardCollectService {
     }
 
     private CrateCollector getLuceneIndexCollector(final CollectNode collectNode,
-                                                   final RowDownstream downstream,
+                                                   final ShardProjectorChain projectorChain,
                                                    final JobCollectContext jobCollectContext,
                                                    final int jobSearchContextId) throws Exception {
+        final IndexShard indexShard = indexService.shardSafe(shardId.id());
+        BytesRef planKey = null;
+        if (ShardResultCache.isEnabled(indexService.settingsService().getSettings())) {
+            planKey = resultCache.planKey(collectNode, projectorChain.shardProjections());
+        }
+        ShardResultRecorder recorder = null;
+        final RowDownstream shardResultDownstream;
+        if (planKey == null) {
+            shardResultDownstream = projectorChain.nodeDownstream();
+        } else {
+            Bucket cachedRows = cachedRows(indexShard, planKey);
+            if (cachedRows != null) {
+                return new CachedShardResultCollector(cachedRows, projectorChain.nodeDownstream());
+            }
+            recorder = new ShardResultRecorder(
+                    resultCache,
+                    shardId,
+                    planKey,
+                    resultCache.streamers(collectNode, projectorChain.shardProjections()),
+                    projectorChain.nodeDownstream());
+            shardResultDownstream = recorder;
+        }
+        final RowDownstream downstream = projectorChain.newShardDownstreamProjector(projectorVisitor, shardResultDownstream);
+
         final CollectInputSymbolVisitor.Context docCtx = docInputSymbolVisitor.extractImplementations(collectNode);
         final SearchShardTarget searchShardTarget = new SearchShardTarget(
                 clusterService.state().nodes().localNodeId(),
                 shardId.getIndex(),
                 shardId.id());
-        final IndexShard indexShard = indexService.shardSafe(shardId.id());
 
         JobQueryShardContext context = new JobQueryShardContext(
                 indexShard,
@@ -238,13 +286,20 @@ public class ShardCollectService {
                             if (minScore != null) {
                                 localContext.minimumScore(minScore);
                             }
-                            return new LuceneDocCollector(
+                            LuceneDocCollector collector = new LuceneDocCollector(
                                     docCtx.topLevelInputs(),
                                     docCtx.docLevelExpressions(),
                                     collectNode,
                                     functions,
                                     downstream,
                                     shardContext);
+                            if (segmentParallelism > 1 && emitsPartialStates(projectorChain.shardProjections())) {
+                                collector.splitCollect(
+                                        splitCollectorFactory(collectNode, projectorChain, shardResultDownstream, shardContext),
+                                        (ThreadPoolExecutor) threadPool.executor(ThreadPool.Names.SEARCH),
+                                        segmentParallelism);
+                            }
+                            return collector;
                         } catch (Throwable t) {
                             if (localContext != null) {
                                 localContext.close();
@@ -256,7 +311,64 @@ public class ShardCollectService {
         );
 
         jobCollectContext.addContext(jobSearchContextId, context);
+        if (recorder != null) {
+            // the rows are cached for the reader the query context actually uses
+            recorder.readerVersion(ShardResultCache.readerVersion(context.engineSearcher()));
+        }
 
         return context.collector();
     }
+
+    /**
+     * the splits of a shard are only merged by the node projections, so the segments of a shard may only be
+     * collected concurrently if the shard projections emit rows or partial aggregation states.
+     * Final groups, filters or limits on shard level would be applied to every split on its own.
+     */
+    static boolean emitsPartialStates(List<Projection> shardProjections) {
+        for (Projection projection : shardProjections) {
+            List<Aggregation> aggregations;
+            if (projection instanceof GroupProjection) {
+                aggregations = ((GroupProjection) projection).values();
+            } else if (projection instanceof AggregationProjection) {
+                aggregations = ((AggregationProjection) projection).aggregations();
+            } else {
+                return false;
+            }
+            for (Aggregation aggregation : aggregations) {
+                if (aggregation.toStep() != Aggregation.Step.PARTIAL) {
+                    return false;
+                }
+            }
+        }
+        return true;
+    }
+
+    @Nullable
+    private Bucket cachedRows(IndexShard indexShard, BytesRef planKey) {
+        Engine.Searcher searcher = indexShard.acquireSearcher("result_cache");
+        try {
+            return resultCache.get(shardId, ShardResultCache.readerVersion(searcher), planKey);
+        } finally {
+            searcher.close();
+        }
+    }
+
+    private LuceneDocCollector.SplitCollectorFactory splitCollectorFactory(final CollectNode collectNode,
+                                                                           final ShardProjectorChain projectorChain,
+                                                                           final RowDownstream shardResultDownstream,
+                                                                           final JobQueryShardContext shardContext) {
+        return new LuceneDocCollector.SplitCollectorFactory() {
+            @Override
+            public LuceneDocCollector create() throws Exception {
+                CollectInputSymbolVisitor.Context splitCtx = docInputSymbolVisitor.extractImplementations(collectNode);
+                return new LuceneDocCollector(
+                        splitCtx.topLevelInputs(),
+                        splitCtx.docLevelExpressions(),
+                        collectNode,
+                        functions,
+                        projectorChain.newStartedShardDownstreamProjector(projectorVisitor, shardResultDownstream),
+                        shardContext);
+            }
+        };
+    }
 }
@@ -87,7 +87,6 @@ public class ShardProjectorChain {
                                RamAccountingContext ramAccountingContext) {
         this.jobId = jobId;
         this.projections = projections;
-        this.executionState = executionState;
         this.ramAccountingContext = ramAccountingContext;
         nodeProjectors = new ArrayList<>();
         int idx = 0;
@@ -136,10 +135,19 @@ public class ShardProjectorChain {
      * @return a new projector connected to the internal chain
      */
     public RowDownstream newShardDownstreamProjector(ProjectorFactory projectorFactory) {
+        return newShardDownstreamProjector(projectorFactory, firstNodeProjector);
+    }
+
+    /**
+     * Like {@linkplain #newShardDownstreamProjector(ProjectorFactory)} but the rows produced by the
+     * shard projectors are passed to the given downstream, which must pass them on to {@linkplain #nodeDownstream()}.
+     */
+    public RowDownstream newShardDownstreamProjector(ProjectorFactory projectorFactory,
+                                                     RowDownstream shardResultDownstream) {
         if (shardProjectionsIndex < 0) {
-            return firstNodeProjector;
+            return shardResultDownstream;
         }
-        RowDownstream previousProjector = firstNodeProjector;
+        RowDownstream previousProjector = shardResultDownstream;
         Projector projector = null;
         for (int i = shardProjectionsIndex; i >= 0; i--) {
             projector = projectorFactory.create(projections.get(i), ramAccountingContext, jobId);
@@ -150,7 +158,55 @@ public class ShardProjectorChain {
         return projector;
     }
 
+    /**
+     * Creates a new shard downstream chain after {@linkplain #startProjections(ExecutionState)} was called
+     * and starts its projectors.
+     * This must only be called while another upstream of the node chain is still running,
+     * e.g. by a collector which splits its shard into parts that are collected concurrently.
+     *
+     * @return a new started projector connected to the internal chain
+     */
+    public RowDownstream newStartedShardDownstreamProjector(ProjectorFactory projectorFactory) {
+        return newStartedShardDownstreamProjector(projectorFactory, firstNodeProjector);
+    }
+
+    /**
+     * Like {@linkplain #newStartedShardDownstreamProjector(ProjectorFactory)} but the rows produced by the
+     * shard projectors are passed to the given downstream.
+     */
+    public synchronized RowDownstream newStartedShardDownstreamProjector(ProjectorFactory projectorFactory,
+                                                                         RowDownstream shardResultDownstream) {
+        assert executionState != null : "startProjections must be called first";
+        if (shardProjectionsIndex < 0) {
+            return shardResultDownstream;
+        }
+        RowDownstream previousProjector = shardResultDownstream;
+        Projector projector = null;
+        for (int i = shardProjectionsIndex; i >= 0; i--) {
+            projector = projectorFactory.create(projections.get(i), ramAccountingContext, jobId);
+            projector.downstream(previousProjector);
+            projector.startProjection(executionState);
+            previousProjector = projector;
+        }
+        return projector;
+    }
+
+    /**
+     * @return the projections which are executed on each shard
+     */
+    public List<Projection> shardProjections() {
+        return projections.subList(0, shardProjectionsIndex + 1);
+    }
+
+    /**
+     * @return the downstream which receives the rows of all shards, after the shard projections have been applied
+     */
+    public RowDownstream nodeDownstream() {
+        return firstNodeProjector;
+    }
+
     public void startProjections(ExecutionState executionState) {
+        this.executionState = executionState;
         for (Projector projector : Lists.reverse(nodeProjectors)) {
             projector.startProjection(executionState);
         }
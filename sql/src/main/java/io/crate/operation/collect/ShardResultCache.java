@@ -0,0 +1,418 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import com.google.common.cache.*;
+import io.crate.Streamer;
+import io.crate.analyze.OrderBy;
+import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.executor.transport.StreamBucket;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.node.StreamerVisitor;
+import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.projection.AggregationProjection;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.symbol.*;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexReader;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.index.engine.Engine;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesLifecycle;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A node wide cache of the rows the shard projections of a collect produce for a shard.
+ *
+ * Entries are keyed by the shard, the version of the index reader the rows were collected from
+ * and the serialized collect phase, so an entry is only used as long as the shard hasn't been changed.
+ * Once a newer reader version of a shard is seen, all entries of older versions are removed.
+ *
+ * The cache is only used for tables which enable it with the {@link #INDEX_RESULT_CACHE_ENABLED} setting.
+ * The memory used by the cached rows is accounted in the query circuit breaker.
+ */
+@Singleton
+public class ShardResultCache {
+
+    public static final String INDEX_RESULT_CACHE_ENABLED = "index.result_cache.enabled";
+    public static final String SIZE_SETTING = "sql.result_cache.size";
+    public static final String DEFAULT_SIZE = "1%";
+
+    /**
+     * the part of the cache a single entry may take up at most
+     */
+    private static final int MAX_ENTRY_RATIO = 16;
+    private static final String BREAKER_LABEL = "result_cache";
+    private static final ESLogger LOGGER = Loggers.getLogger(ShardResultCache.class);
+
+    private final Cache<Key, Entry> cache;
+    private final ConcurrentMap<ShardId, Long> readerVersions = new ConcurrentHashMap<>();
+    private final AtomicLong sizeInBytes = new AtomicLong(0L);
+    private final CircuitBreaker circuitBreaker;
+    private final StreamerVisitor streamerVisitor;
+    private final int maxEntryBytes;
+
+    @Inject
+    public ShardResultCache(Settings settings,
+                            CrateCircuitBreakerService breakerService,
+                            IndicesLifecycle indicesLifecycle,
+                            StreamerVisitor streamerVisitor) {
+        this.circuitBreaker = breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER);
+        this.streamerVisitor = streamerVisitor;
+        long maxBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(
+                settings.get(SIZE_SETTING, DEFAULT_SIZE)).bytes();
+        this.maxEntryBytes = (int) Math.min(Integer.MAX_VALUE, maxBytes / MAX_ENTRY_RATIO);
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<Key, Entry>() {
+                    @Override
+                    public int weigh(Key key, Entry entry) {
+                        return entry.bytes;
+                    }
+                })
+                .removalListener(new RemovalListener<Key, Entry>() {
+                    @Override
+                    public void onRemoval(RemovalNotification<Key, Entry> notification) {
+                        int bytes = notification.getValue().bytes;
+                        sizeInBytes.addAndGet(-bytes);
+                        circuitBreaker.addWithoutBreaking(-bytes);
+                    }
+                })
+                .recordStats()
+                .build();
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void afterIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+                invalidate(shardId);
+            }
+        });
+    }
+
+    public static boolean isEnabled(Settings indexSettings) {
+        return indexSettings.getAsBoolean(INDEX_RESULT_CACHE_ENABLED, false);
+    }
+
+    /**
+     * @return the version of the reader used by the given searcher or -1 if it has none
+     */
+    public static long readerVersion(Engine.Searcher searcher) {
+        IndexReader reader = searcher.reader();
+        if (reader instanceof DirectoryReader) {
+            return ((DirectoryReader) reader).getVersion();
+        }
+        return -1L;
+    }
+
+    /**
+     * Splits the first projection into a projection which aggregates the rows of each shard to partial results
+     * and a projection which merges these partial results on the node, so the results of the shards can be cached.
+     *
+     * @return the split projections or null if the projections don't start with an aggregation executed on the node
+     */
+    @Nullable
+    public static List<Projection> splitShardAggregation(List<Projection> projections) {
+        if (projections.isEmpty()) {
+            return null;
+        }
+        for (Projection projection : projections) {
+            if (projection.requiredGranularity() == RowGranularity.SHARD) {
+                // there are already shard projections whose results can be cached
+                return null;
+            }
+        }
+        Projection first = projections.get(0);
+        Projection shardProjection;
+        Projection nodeProjection;
+        if (first instanceof AggregationProjection) {
+            List<Aggregation> aggregations = ((AggregationProjection) first).aggregations();
+            if (!fromIter(aggregations)) {
+                return null;
+            }
+            AggregationProjection shardAggregation = new AggregationProjection(toPartial(aggregations));
+            shardAggregation.setRequiredGranularity(RowGranularity.SHARD);
+            shardProjection = shardAggregation;
+            nodeProjection = new AggregationProjection(fromPartial(aggregations, 0));
+        } else if (first instanceof GroupProjection) {
+            GroupProjection groupProjection = (GroupProjection) first;
+            if (!fromIter(groupProjection.values())) {
+                return null;
+            }
+            GroupProjection shardGroup = new GroupProjection(groupProjection.keys(), toPartial(groupProjection.values()));
+            shardGroup.setRequiredGranularity(RowGranularity.SHARD);
+            shardProjection = shardGroup;
+
+            List<Symbol> keys = new ArrayList<>(groupProjection.keys().size());
+            for (int i = 0; i < groupProjection.keys().size(); i++) {
+                keys.add(new InputColumn(i, groupProjection.keys().get(i).valueType()));
+            }
+            nodeProjection = new GroupProjection(keys, fromPartial(groupProjection.values(), keys.size()));
+        } else {
+            return null;
+        }
+        List<Projection> splitProjections = new ArrayList<>(projections.size() + 1);
+        splitProjections.add(shardProjection);
+        splitProjections.add(nodeProjection);
+        splitProjections.addAll(projections.subList(1, projections.size()));
+        return splitProjections;
+    }
+
+    private static boolean fromIter(List<Aggregation> aggregations) {
+        for (Aggregation aggregation : aggregations) {
+            if (aggregation.fromStep() != Aggregation.Step.ITER) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<Aggregation> toPartial(List<Aggregation> aggregations) {
+        List<Aggregation> partialAggregations = new ArrayList<>(aggregations.size());
+        for (Aggregation aggregation : aggregations) {
+            partialAggregations.add(new Aggregation(aggregation.functionInfo(), aggregation.inputs(),
+                    Aggregation.Step.ITER, Aggregation.Step.PARTIAL));
+        }
+        return partialAggregations;
+    }
+
+    private static List<Aggregation> fromPartial(List<Aggregation> aggregations, int offset) {
+        List<Aggregation> mergeAggregations = new ArrayList<>(aggregations.size());
+        for (int i = 0; i < aggregations.size(); i++) {
+            Aggregation aggregation = aggregations.get(i);
+            mergeAggregations.add(new Aggregation(aggregation.functionInfo(),
+                    Collections.<Symbol>singletonList(new InputColumn(offset + i, null)),
+                    Aggregation.Step.PARTIAL, aggregation.toStep()));
+        }
+        return mergeAggregations;
+    }
+
+    /**
+     * @param collectNode      the collect node normalized for the shard
+     * @param shardProjections the projections which are executed on the shard
+     * @return the serialized parts of the collect which determine the rows of a shard
+     *         or null if the results of the collect must not be cached
+     */
+    @Nullable
+    public BytesRef planKey(CollectNode collectNode, List<Projection> shardProjections) {
+        if (shardProjections.isEmpty() || collectNode.keepContextForFetcher()) {
+            return null;
+        }
+        for (Symbol symbol : collectNode.toCollect()) {
+            if (Symbols.containsNonDeterministicFunction(symbol)) {
+                return null;
+            }
+        }
+        if (collectNode.whereClause().hasQuery()
+                && Symbols.containsNonDeterministicFunction(collectNode.whereClause().query())) {
+            return null;
+        }
+        for (Projection projection : shardProjections) {
+            for (Symbol symbol : projection.outputs()) {
+                if (Symbols.containsNonDeterministicFunction(symbol)) {
+                    return null;
+                }
+            }
+        }
+        try {
+            BytesStreamOutput out = new BytesStreamOutput();
+            out.writeVInt(collectNode.toCollect().size());
+            for (Symbol symbol : collectNode.toCollect()) {
+                Symbol.toStream(symbol, out);
+            }
+            collectNode.whereClause().writeTo(out);
+            Integer limit = collectNode.limit();
+            out.writeBoolean(limit != null);
+            if (limit != null) {
+                out.writeVInt(limit);
+            }
+            OrderBy orderBy = collectNode.orderBy();
+            out.writeBoolean(orderBy != null);
+            if (orderBy != null) {
+                OrderBy.toStream(orderBy, out);
+            }
+            out.writeVInt(shardProjections.size());
+            for (Projection projection : shardProjections) {
+                Projection.toStream(projection, out);
+            }
+            return out.bytes().toBytesRef();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to serialize collect phase {}, results won't be cached", e, collectNode.name());
+            return null;
+        }
+    }
+
+    /**
+     * @return the streamers of the rows produced by the shard projections of the given collect node
+     */
+    public Streamer<?>[] streamers(CollectNode collectNode, List<Projection> shardProjections) {
+        return streamerVisitor.projectionOutputStreamers(
+                Symbols.extractTypes(collectNode.toCollect()), shardProjections);
+    }
+
+    @Nullable
+    public StreamBucket get(ShardId shardId, long readerVersion, BytesRef planKey) {
+        if (readerVersion < 0 || !isCurrent(shardId, readerVersion)) {
+            return null;
+        }
+        Entry entry = cache.getIfPresent(new Key(shardId, readerVersion, planKey));
+        return entry == null ? null : entry.rows;
+    }
+
+    public void put(ShardId shardId, long readerVersion, BytesRef planKey, StreamBucket rows, int bytes) {
+        if (readerVersion < 0 || bytes > maxEntryBytes || !isCurrent(shardId, readerVersion)) {
+            return;
+        }
+        try {
+            circuitBreaker.addEstimateBytesAndMaybeBreak(bytes, BREAKER_LABEL);
+        } catch (CircuitBreakingException e) {
+            LOGGER.trace("Not caching results of shard {}, the circuit breaker tripped", shardId);
+            return;
+        }
+        sizeInBytes.addAndGet(bytes);
+        cache.put(new Key(shardId, readerVersion, planKey), new Entry(rows, bytes));
+    }
+
+    /**
+     * @return the maximum number of bytes the rows of a single entry may take up
+     */
+    public int maxEntryBytes() {
+        return maxEntryBytes;
+    }
+
+    /**
+     * registers the reader version as the most recent one of the shard if it is newer
+     * and removes the entries of older readers.
+     *
+     * @return false if the reader version is older than the most recent one seen for the shard
+     */
+    private boolean isCurrent(ShardId shardId, long readerVersion) {
+        for (;;) {
+            Long current = readerVersions.get(shardId);
+            if (current == null) {
+                if (readerVersions.putIfAbsent(shardId, readerVersion) == null) {
+                    return true;
+                }
+            } else if (current == readerVersion) {
+                return true;
+            } else if (current > readerVersion) {
+                return false;
+            } else if (readerVersions.replace(shardId, current, readerVersion)) {
+                removeEntries(shardId, readerVersion);
+                return true;
+            }
+        }
+    }
+
+    private void removeEntries(ShardId shardId, long currentReaderVersion) {
+        Iterator<Key> it = cache.asMap().keySet().iterator();
+        while (it.hasNext()) {
+            Key key = it.next();
+            if (key.shardId.equals(shardId) && key.readerVersion != currentReaderVersion) {
+                it.remove();
+            }
+        }
+    }
+
+    public void invalidate(ShardId shardId) {
+        readerVersions.remove(shardId);
+        Iterator<Key> it = cache.asMap().keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().shardId.equals(shardId)) {
+                it.remove();
+            }
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public long sizeInBytes() {
+        return sizeInBytes.get();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    static class Key {
+
+        private final ShardId shardId;
+        private final long readerVersion;
+        private final BytesRef planKey;
+
+        Key(ShardId shardId, long readerVersion, BytesRef planKey) {
+            this.shardId = shardId;
+            this.readerVersion = readerVersion;
+            this.planKey = planKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+
+            Key key = (Key) o;
+            return readerVersion == key.readerVersion
+                    && shardId.equals(key.shardId)
+                    && planKey.equals(key.planKey);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = shardId.hashCode();
+            result = 31 * result + (int) (readerVersion ^ (readerVersion >>> 32));
+            result = 31 * result + planKey.hashCode();
+            return result;
+        }
+    }
+
+    private static class Entry {
+
+        private final StreamBucket rows;
+        private final int bytes;
+
+        private Entry(StreamBucket rows, int bytes) {
+            this.rows = rows;
+            this.bytes = bytes;
+        }
+    }
+}
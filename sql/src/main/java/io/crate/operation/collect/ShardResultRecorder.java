@@ -0,0 +1,147 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import io.crate.Streamer;
+import io.crate.core.collections.Row;
+import io.crate.executor.transport.StreamBucket;
+import io.crate.operation.RowDownstream;
+import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.RowUpstream;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.index.shard.ShardId;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Passes the rows produced by the shard projections of a shard on to the node projections
+ * and puts them into the {@link ShardResultCache} once all of them have been produced.
+ *
+ * Rows are only put into the cache if the downstream consumed all of them,
+ * no upstream failed and they don't exceed the maximum size of a cache entry.
+ */
+class ShardResultRecorder implements RowUpstream, RowDownstream, RowDownstreamHandle {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(ShardResultRecorder.class);
+
+    private final ShardResultCache cache;
+    private final ShardId shardId;
+    private final BytesRef planKey;
+    private final RowDownstreamHandle downstream;
+    private final AtomicInteger remainingUpstreams = new AtomicInteger(0);
+    private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
+    private final Object lock = new Object();
+
+    private StreamBucket.Builder rows;
+    private volatile long readerVersion = -1L;
+
+    ShardResultRecorder(ShardResultCache cache,
+                        ShardId shardId,
+                        BytesRef planKey,
+                        Streamer<?>[] streamers,
+                        RowDownstream downstream) {
+        this.cache = cache;
+        this.shardId = shardId;
+        this.planKey = planKey;
+        this.rows = new StreamBucket.Builder(streamers);
+        this.downstream = downstream.registerUpstream(this);
+    }
+
+    /**
+     * sets the version of the reader the rows are collected from, rows are only cached once it is set
+     */
+    void readerVersion(long readerVersion) {
+        this.readerVersion = readerVersion;
+    }
+
+    @Override
+    public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
+        remainingUpstreams.incrementAndGet();
+        return this;
+    }
+
+    @Override
+    public boolean setNextRow(Row row) {
+        synchronized (lock) {
+            if (rows != null) {
+                try {
+                    rows.add(row);
+                    if (rows.sizeInBytes() > cache.maxEntryBytes()) {
+                        rows = null;
+                    }
+                } catch (IOException e) {
+                    LOGGER.trace("Failed to record row of shard {}", e, shardId);
+                    rows = null;
+                }
+            }
+        }
+        if (downstream.setNextRow(row)) {
+            return true;
+        }
+        stopRecording();
+        return false;
+    }
+
+    private void stopRecording() {
+        synchronized (lock) {
+            rows = null;
+        }
+    }
+
+    @Override
+    public void finish() {
+        if (remainingUpstreams.decrementAndGet() > 0) {
+            return;
+        }
+        Throwable throwable = failure.get();
+        if (throwable != null) {
+            downstream.fail(throwable);
+            return;
+        }
+        StreamBucket.Builder recordedRows;
+        synchronized (lock) {
+            recordedRows = rows;
+            rows = null;
+        }
+        if (recordedRows != null) {
+            try {
+                cache.put(shardId, readerVersion, planKey, recordedRows.build(), recordedRows.sizeInBytes());
+            } catch (IOException e) {
+                LOGGER.trace("Failed to cache rows of shard {}", e, shardId);
+            }
+        }
+        downstream.finish();
+    }
+
+    @Override
+    public void fail(Throwable throwable) {
+        stopRecording();
+        failure.set(throwable);
+        if (remainingUpstreams.decrementAndGet() <= 0) {
+            downstream.fail(throwable);
+        }
+    }
+}
@@ -158,6 +158,24 @@ public class StatsTables {
     }
 
     public void operationFinished(@Nullable Integer operationId, @Nullable String errorMessage, long usedBytes) {
+        operationFinished(operationId, errorMessage, usedBytes, 0L);
+    }
+
+    public void operationFinished(@Nullable Integer operationId,
+                                  @Nullable String errorMessage,
+                                  long usedBytes,
+                                  long spilledBytes) {
+        operationFinished(operationId, errorMessage, usedBytes, spilledBytes, 0L);
+    }
+
+    /**
+     * @param receivedRows the number of rows the operation has received from its upstreams
+     */
+    public void operationFinished(@Nullable Integer operationId,
+                                  @Nullable String errorMessage,
+                                  long usedBytes,
+                                  long spilledBytes,
+                                  long receivedRows) {
         if (operationId == null || !isEnabled()) {
             return;
         }
@@ -168,6 +186,8 @@ public class StatsTables {
             return;
         }
         operationContext.usedBytes = usedBytes;
+        operationContext.spilledBytes = spilledBytes;
+        operationContext.receivedRows = receivedRows;
         BlockingQueue<OperationContextLog> operationContextLogs = operationsLog.get();
         operationContextLogs.offer(new OperationContextLog(operationContext, errorMessage));
     }
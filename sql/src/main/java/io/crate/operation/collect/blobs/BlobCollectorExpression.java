@@ -23,14 +23,14 @@ package io.crate.operation.collect.blobs;
 
 import io.crate.operation.Input;
 
-import java.io.File;
-
 public abstract class BlobCollectorExpression<T> implements Input<T> {
 
-    protected File blob;
+    protected String digest;
+    protected long lastModified;
 
-    public void setNextBlob(File blob) {
-        this.blob = blob;
-    };
+    public void setNextBlob(String digest, long lastModified) {
+        this.digest = digest;
+        this.lastModified = lastModified;
+    }
 
 }
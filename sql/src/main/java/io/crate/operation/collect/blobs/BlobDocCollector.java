@@ -30,7 +30,6 @@ import io.crate.operation.RowDownstreamHandle;
 import io.crate.operation.collect.CrateCollector;
 import io.crate.operation.collect.JobCollectContext;
 
-import java.io.File;
 import java.io.IOException;
 import java.util.List;
 
@@ -58,29 +57,29 @@ public class BlobDocCollector implements CrateCollector {
 
     @Override
     public void doCollect(JobCollectContext jobCollectContext) {
-        BlobContainer.FileVisitor fileVisitor = new FileListingsFileVisitor(jobCollectContext);
+        BlobContainer.BlobVisitor blobVisitor = new CollectingBlobVisitor(jobCollectContext);
         try {
-            blobShard.blobContainer().walkFiles(null, fileVisitor);
+            blobShard.blobContainer().visitBlobs(blobVisitor);
             downstream.finish();
         } catch (Throwable t) {
             downstream.fail(t);
         }
     }
 
-    private class FileListingsFileVisitor implements BlobContainer.FileVisitor {
+    private class CollectingBlobVisitor implements BlobContainer.BlobVisitor {
 
         private final InputRow row = new InputRow(inputs);
         private JobCollectContext jobCollectContext;
 
-        public FileListingsFileVisitor(JobCollectContext jobCollectContext) {
+        public CollectingBlobVisitor(JobCollectContext jobCollectContext) {
             this.jobCollectContext = jobCollectContext;
         }
 
         @Override
-        public boolean visit(File file) throws IOException {
+        public boolean visit(String digest, long lastModified) throws IOException {
             jobCollectContext.interruptIfKilled();
             for (BlobCollectorExpression expression : expressions) {
-                expression.setNextBlob(file);
+                expression.setNextBlob(digest, lastModified);
             }
             if (condition.value()) {
                 return downstream.setNextRow(row);
@@ -23,7 +23,6 @@ package io.crate.operation.collect.files;
 
 import com.google.common.base.MoreObjects;
 import com.google.common.base.Predicate;
-import com.google.common.base.Predicates;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.crate.operation.Input;
@@ -49,15 +48,27 @@ import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 import java.util.zip.GZIPInputStream;
 
+/**
+ * Reads the lines of one or more files.
+ *
+ * Several collectors may read the same files concurrently, on one node or with <code>shared</code> storage
+ * across nodes. Uncompressed files of a {@link SplittableFileInput} are cut into ranges of
+ * {@link #DEFAULT_SPLIT_SIZE} bytes, the files or ranges are distributed among the collectors by a hash of their URI.
+ */
 public class FileReadingCollector implements CrateCollector {
 
     public static final int MAX_SOCKET_TIMEOUT_RETRIES = 5;
+    public static final long DEFAULT_SPLIT_SIZE = 64 * 1024 * 1024;
+
     private final Map<String, FileInputFactory> fileInputFactoryMap;
     private final URI fileUri;
     private final Predicate<URI> globPredicate;
     private final Boolean shared;
     private final int numReaders;
     private final int readerNumber;
+    private final int readersPerNode;
+    private final int localReaderNumber;
+    private final long splitSize;
     private final InputRow row;
     private URI preGlobUri;
     private RowDownstreamHandle downstream;
@@ -86,6 +97,30 @@ public class FileReadingCollector implements CrateCollector {
                                 Boolean shared,
                                 int numReaders,
                                 int readerNumber) {
+        this(fileUri, inputs, collectorExpressions, downstream, format, compression, additionalFileInputFactories,
+                shared, numReaders, readerNumber, 1, 0, DEFAULT_SPLIT_SIZE);
+    }
+
+    /**
+     * @param numReaders        the number of nodes which read the files
+     * @param readerNumber      the number of the node of this collector
+     * @param readersPerNode    the number of collectors which read the files on every node
+     * @param localReaderNumber the number of this collector among the collectors of its node
+     * @param splitSize         the number of bytes uncompressed files are split into
+     */
+    public FileReadingCollector(String fileUri,
+                                List<Input<?>> inputs,
+                                List<LineCollectorExpression<?>> collectorExpressions,
+                                RowDownstream downstream,
+                                FileFormat format,
+                                String compression,
+                                Map<String, FileInputFactory> additionalFileInputFactories,
+                                Boolean shared,
+                                int numReaders,
+                                int readerNumber,
+                                int readersPerNode,
+                                int localReaderNumber,
+                                long splitSize) {
         if (fileUri.startsWith("/")) {
             // using Paths.get().toUri instead of new URI(...) as it also encodes umlauts and other special characters
             this.fileUri = Paths.get(fileUri).toUri();
@@ -124,6 +159,9 @@ public class FileReadingCollector implements CrateCollector {
         this.shared = shared;
         this.numReaders = numReaders;
         this.readerNumber = readerNumber;
+        this.readersPerNode = readersPerNode;
+        this.localReaderNumber = localReaderNumber;
+        this.splitSize = splitSize;
         Matcher hasGlobMatcher = HAS_GLOBS_PATTERN.matcher(this.fileUri.toString());
         if (!hasGlobMatcher.matches()) {
             globPredicate = null;
@@ -163,7 +201,8 @@ public class FileReadingCollector implements CrateCollector {
             }
             return;
         }
-        Predicate<URI> uriPredicate = generateUriPredicate(fileInput);
+        boolean sharedStorage = MoreObjects.firstNonNull(shared, fileInput.sharedStorageDefault());
+        Predicate<URI> uriPredicate = generateUriPredicate();
 
         CollectorContext collectorContext = new CollectorContext();
         for (LineCollectorExpression<?> collectorExpression : collectorExpressions) {
@@ -173,8 +212,22 @@ public class FileReadingCollector implements CrateCollector {
 
         try {
             uris = getUris(fileInput, uriPredicate);
-            for (URI uri : uris) {
-                readLines(jobCollectContext, fileInput, collectorContext, uri, 0, 0);
+            boolean wantMore = true;
+            for (int i = 0; wantMore && i < uris.size(); i++) {
+                URI uri = uris.get(i);
+                long numSplits = numSplits(fileInput, uri);
+                for (long split = 0; wantMore && split < numSplits; split++) {
+                    if (!isAssigned(uri, split, sharedStorage)) {
+                        continue;
+                    }
+                    if (numSplits == 1) {
+                        wantMore = readLines(jobCollectContext, fileInput, collectorContext, uri, 0, 0);
+                    } else {
+                        long start = split * splitSize;
+                        wantMore = readSplit(jobCollectContext, (SplittableFileInput) fileInput, collectorContext, uri,
+                                start, start + splitSize, 0);
+                    }
+                }
             }
             downstream.finish();
         } catch (Throwable e) {
@@ -182,7 +235,10 @@ public class FileReadingCollector implements CrateCollector {
         }
     }
 
-    private void readLines(JobCollectContext jobCollectContext,
+    /**
+     * @return false if the downstream doesn't want any more rows
+     */
+    private boolean readLines(JobCollectContext jobCollectContext,
                            FileInput fileInput,
                            CollectorContext collectorContext,
                            URI uri,
@@ -190,7 +246,7 @@ public class FileReadingCollector implements CrateCollector {
                            int retry) throws IOException {
         InputStream inputStream = fileInput.getStream(uri);
         if (inputStream == null) {
-            return;
+            return true;
         }
 
         String line;
@@ -207,16 +263,83 @@ public class FileReadingCollector implements CrateCollector {
                 }
                 collectorContext.lineContext().rawSource(line.getBytes(StandardCharsets.UTF_8));
                 if (!downstream.setNextRow(row)) {
-                    break;
+                    return false;
                 }
             }
         } catch (SocketTimeoutException e) {
             if (retry > MAX_SOCKET_TIMEOUT_RETRIES) {
                 throw e;
             } else {
-                readLines(jobCollectContext, fileInput, collectorContext, uri, linesRead + 1, retry + 1);
+                return readLines(jobCollectContext, fileInput, collectorContext, uri, linesRead + 1, retry + 1);
             }
         }
+        return true;
+    }
+
+    private long numSplits(FileInput fileInput, URI uri) throws IOException {
+        if (compressed || !(fileInput instanceof SplittableFileInput)) {
+            return 1L;
+        }
+        long size = ((SplittableFileInput) fileInput).size(uri);
+        return Math.max(1L, (size + splitSize - 1) / splitSize);
+    }
+
+    /**
+     * @return true if this collector reads the given split of the file
+     */
+    private boolean isAssigned(URI uri, long split, boolean sharedStorage) {
+        long key = Math.abs((long) uri.hashCode()) + split;
+        if (sharedStorage) {
+            // every node sees all files, so the splits are distributed among the nodes first.
+            // The number of collectors per node depends on the node, so it must not be used for this.
+            if (key % numReaders != readerNumber) {
+                return false;
+            }
+            key /= numReaders;
+        }
+        return key % readersPerNode == localReaderNumber;
+    }
+
+    /**
+     * read the lines which start within the range of a split, see {@link SplitLineReader}
+     */
+    /**
+     * @return false if the downstream doesn't want any more rows
+     */
+    private boolean readSplit(JobCollectContext jobCollectContext,
+                           SplittableFileInput fileInput,
+                           CollectorContext collectorContext,
+                           URI uri,
+                           long start,
+                           long end,
+                           int retry) throws IOException {
+        InputStream inputStream = fileInput.getStream(uri, Math.max(0L, start - 1));
+        if (inputStream == null) {
+            return true;
+        }
+        byte[] line;
+        long nextLineStart = start;
+        try (SplitLineReader reader = new SplitLineReader(inputStream, start, end)) {
+            while ((line = reader.readLine()) != null) {
+                nextLineStart = reader.position();
+                jobCollectContext.interruptIfKilled();
+                if (line.length == 0) { // skip empty lines
+                    continue;
+                }
+                collectorContext.lineContext().rawSource(line);
+                if (!downstream.setNextRow(row)) {
+                    return false;
+                }
+            }
+        } catch (SocketTimeoutException e) {
+            if (retry > MAX_SOCKET_TIMEOUT_RETRIES) {
+                throw e;
+            } else {
+                // continue with the first line which hasn't been read completely
+                return readSplit(jobCollectContext, fileInput, collectorContext, uri, nextLineStart, end, retry + 1);
+            }
+        }
+        return true;
     }
 
     private BufferedReader createReader(InputStream inputStream) throws IOException {
@@ -242,28 +365,15 @@ public class FileReadingCollector implements CrateCollector {
         return uris;
     }
 
-    private Predicate<URI> generateUriPredicate(FileInput fileInput) {
-        Predicate<URI> moduloPredicate;
-        boolean sharedStorage = MoreObjects.firstNonNull(shared, fileInput.sharedStorageDefault());
-        if (sharedStorage) {
-            moduloPredicate = new Predicate<URI>() {
-                @Override
-                public boolean apply(URI input) {
-                    int hash = input.hashCode();
-                    if (hash == Integer.MIN_VALUE) {
-                        hash = 0; // Math.abs(Integer.MIN_VALUE) == Integer.MIN_VALUE
-                    }
-                    return Math.abs(hash) % numReaders == readerNumber;
-                }
-            };
-        } else {
-            moduloPredicate = MATCH_ALL_PREDICATE;
-        }
-
+    /**
+     * the files are only filtered by the glob of the URI, which collector reads a file or one of its splits
+     * is decided by {@link #isAssigned(URI, long, boolean)}
+     */
+    private Predicate<URI> generateUriPredicate() {
         if (globPredicate != null) {
-            return Predicates.and(moduloPredicate, globPredicate);
+            return globPredicate;
         }
-        return moduloPredicate;
+        return MATCH_ALL_PREDICATE;
     }
 
 }
@@ -31,7 +31,7 @@ import java.nio.file.attribute.BasicFileAttributes;
 import java.util.ArrayList;
 import java.util.List;
 
-public class LocalFsFileInput implements FileInput {
+public class LocalFsFileInput implements SplittableFileInput {
 
     @Override
     public List<URI> listUris(final URI fileUri, final Predicate<URI> uriPredicate) throws IOException {
@@ -76,6 +76,24 @@ public class LocalFsFileInput implements FileInput {
         }
     }
 
+    @Override
+    public long size(URI uri) {
+        return new File(uri).length();
+    }
+
+    @Override
+    public InputStream getStream(URI uri, long position) throws IOException {
+        File file = new File(uri);
+        FileInputStream inputStream;
+        try {
+            inputStream = new FileInputStream(file);
+        } catch (FileNotFoundException e) {
+            return null;
+        }
+        inputStream.getChannel().position(position);
+        return inputStream;
+    }
+
     @Override
     public boolean sharedStorageDefault() {
         return false;
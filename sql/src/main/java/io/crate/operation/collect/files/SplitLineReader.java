@@ -0,0 +1,109 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect.files;
+
+import org.apache.lucene.util.ArrayUtil;
+
+import javax.annotation.Nullable;
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads the lines which start within a byte range of a file.
+ *
+ * A line belongs to the range it starts in: the rest of a line which started in the previous range is skipped
+ * and the last line is read to its end even if that is behind the range.
+ * So the ranges of a file can be read independently and every line is read exactly once.
+ */
+class SplitLineReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final InputStream in;
+    private final long end;
+    private long position;
+    private byte[] line = new byte[256];
+
+    /**
+     * @param in    a stream which is positioned at the byte before start, or at 0 if start is 0
+     * @param start the position of the first byte of the range
+     * @param end   the position after the last byte of the range
+     */
+    SplitLineReader(InputStream in, long start, long end) throws IOException {
+        this.in = new BufferedInputStream(in, BUFFER_SIZE);
+        this.end = end;
+        if (start > 0) {
+            position = start - 1;
+            // skip to the beginning of the first line which starts within the range
+            int b;
+            do {
+                b = this.in.read();
+                position++;
+            } while (b != -1 && b != '\n');
+        }
+    }
+
+    /**
+     * @return the next line without its line terminator or null if there are no more lines in the range
+     */
+    @Nullable
+    byte[] readLine() throws IOException {
+        if (position >= end) {
+            return null;
+        }
+        int length = 0;
+        int b;
+        while ((b = in.read()) != -1) {
+            position++;
+            if (b == '\n') {
+                break;
+            }
+            if (length == line.length) {
+                line = ArrayUtil.grow(line, length + 1);
+            }
+            line[length++] = (byte) b;
+        }
+        if (b == -1 && length == 0) {
+            position = end;
+            return null;
+        }
+        if (length > 0 && line[length - 1] == '\r') {
+            length--;
+        }
+        return Arrays.copyOf(line, length);
+    }
+
+    /**
+     * @return the position after the line which has been read last, which is the start of the next line
+     */
+    long position() {
+        return position;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+}
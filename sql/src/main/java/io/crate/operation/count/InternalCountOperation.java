@@ -28,13 +28,19 @@ import io.crate.analyze.WhereClause;
 import io.crate.lucene.LuceneQueryBuilder;
 import io.crate.operation.ThreadPools;
 import io.crate.operation.collect.EngineSearcher;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.search.DocIdSetIterator;
+import org.apache.lucene.search.MatchAllDocsQuery;
+import org.apache.lucene.search.Query;
+import org.apache.lucene.search.Scorer;
+import org.apache.lucene.search.Weight;
+import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.cache.recycler.CacheRecycler;
 import org.elasticsearch.cache.recycler.PageCacheRecycler;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.Strings;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
-import org.elasticsearch.common.lucene.Lucene;
 import org.elasticsearch.common.util.BigArrays;
 import org.elasticsearch.index.IndexService;
 import org.elasticsearch.index.shard.IndexShard;
@@ -68,6 +74,7 @@ public class InternalCountOperation implements CountOperation {
     private final ThreadPoolExecutor executor;
     private final int corePoolSize;
     private final ThreadPool threadPool;
+    private final SegmentCountCache segmentCountCache;
 
     @Inject
     public InternalCountOperation(ClusterService clusterService,
@@ -77,7 +84,8 @@ public class InternalCountOperation implements CountOperation {
                                   LuceneQueryBuilder queryBuilder,
                                   BigArrays bigArrays,
                                   ThreadPool threadPool,
-                                  IndicesService indicesService) {
+                                  IndicesService indicesService,
+                                  SegmentCountCache segmentCountCache) {
         this.clusterService = clusterService;
         this.scriptService = scriptService;
         this.cacheRecycler = cacheRecycler;
@@ -88,6 +96,7 @@ public class InternalCountOperation implements CountOperation {
         executor = (ThreadPoolExecutor) threadPool.executor(ThreadPool.Names.SEARCH);
         corePoolSize = executor.getCorePoolSize();
         this.indicesService = indicesService;
+        this.segmentCountCache = segmentCountCache;
     }
 
     @Override
@@ -141,13 +150,54 @@ public class InternalCountOperation implements CountOperation {
             if (Thread.interrupted()) {
                 throw new InterruptedException();
             }
-            return Lucene.count(context.searcher(), queryCtx.query());
+            return count(context, queryCtx.query(), SegmentCountCache.whereClauseKey(whereClause));
         } finally {
             context.close();
             SearchContext.removeCurrent();
         }
     }
 
+    /**
+     * sums up the counts of all segments, segments which haven't changed since they've been
+     * counted with the same where clause aren't searched again.
+     */
+    private long count(SearchContext context, Query query, @Nullable BytesRef whereClauseKey) throws IOException {
+        Weight weight = null;
+        long count = 0L;
+        for (AtomicReaderContext leaf : context.searcher().getIndexReader().leaves()) {
+            Long leafCount = null;
+            if (whereClauseKey != null) {
+                leafCount = segmentCountCache.get(context.indexShard().shardId(), leaf, whereClauseKey);
+            }
+            if (leafCount == null) {
+                if (weight == null) {
+                    weight = context.searcher().createNormalizedWeight(query);
+                }
+                leafCount = count(leaf, query, weight);
+                if (whereClauseKey != null) {
+                    segmentCountCache.put(context.indexShard().shardId(), leaf, whereClauseKey, leafCount);
+                }
+            }
+            count += leafCount;
+        }
+        return count;
+    }
+
+    private static long count(AtomicReaderContext leaf, Query query, Weight weight) throws IOException {
+        if (query instanceof MatchAllDocsQuery) {
+            return leaf.reader().numDocs();
+        }
+        Scorer scorer = weight.scorer(leaf, leaf.reader().getLiveDocs());
+        if (scorer == null) {
+            return 0L;
+        }
+        long count = 0L;
+        while (scorer.nextDoc() != DocIdSetIterator.NO_MORE_DOCS) {
+            count++;
+        }
+        return count;
+    }
+
     private static class MergePartialCountFunction implements Function<List<Long>, Long> {
         @Nullable
         @Override
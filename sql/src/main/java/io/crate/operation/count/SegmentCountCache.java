@@ -0,0 +1,199 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.count;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.CacheStats;
+import com.google.common.cache.Weigher;
+import io.crate.analyze.WhereClause;
+import io.crate.planner.symbol.Symbols;
+import org.apache.lucene.index.AtomicReader;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.SegmentReader;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.MemorySizeValue;
+import org.elasticsearch.index.shard.IndexShard;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesLifecycle;
+
+import javax.annotation.Nullable;
+import java.io.IOException;
+import java.util.Iterator;
+
+/**
+ * A node wide cache of the number of documents per segment which match a where clause.
+ *
+ * Segments are immutable apart from their deletions, so an entry is keyed by the shard, the name of the segment,
+ * the number of deleted documents of the segment and the serialized where clause.
+ * A count has to be done only for segments which have been added or which got new deletions since
+ * the last count with the same where clause.
+ *
+ * Entries of segments which have been merged away are evicted once the cache is full
+ * or when the shard is closed.
+ */
+@Singleton
+public class SegmentCountCache {
+
+    public static final String SIZE_SETTING = "sql.count_cache.size";
+    public static final String DEFAULT_SIZE = "0.5%";
+
+    /**
+     * rough estimate of the memory an entry takes up in addition to the where clause
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+    private static final ESLogger LOGGER = Loggers.getLogger(SegmentCountCache.class);
+
+    private final Cache<Key, Long> cache;
+
+    @Inject
+    public SegmentCountCache(Settings settings, IndicesLifecycle indicesLifecycle) {
+        long maxBytes = MemorySizeValue.parseBytesSizeValueOrHeapRatio(
+                settings.get(SIZE_SETTING, DEFAULT_SIZE)).bytes();
+        this.cache = CacheBuilder.newBuilder()
+                .maximumWeight(maxBytes)
+                .weigher(new Weigher<Key, Long>() {
+                    @Override
+                    public int weigh(Key key, Long count) {
+                        return key.whereClauseKey.length + ENTRY_OVERHEAD;
+                    }
+                })
+                .recordStats()
+                .build();
+        indicesLifecycle.addListener(new IndicesLifecycle.Listener() {
+            @Override
+            public void afterIndexShardClosed(ShardId shardId, @Nullable IndexShard indexShard, Settings indexSettings) {
+                invalidate(shardId);
+            }
+        });
+    }
+
+    /**
+     * @return the serialized where clause or null if counts for it must not be cached
+     */
+    @Nullable
+    public static BytesRef whereClauseKey(WhereClause whereClause) {
+        if (whereClause.hasQuery() && Symbols.containsNonDeterministicFunction(whereClause.query())) {
+            return null;
+        }
+        try {
+            BytesStreamOutput out = new BytesStreamOutput();
+            whereClause.writeTo(out);
+            return out.bytes().toBytesRef();
+        } catch (IOException e) {
+            LOGGER.debug("Failed to serialize where clause {}, counts won't be cached", e, whereClause);
+            return null;
+        }
+    }
+
+    /**
+     * @return the segment the leaf reads from or null if it isn't a segment of an index,
+     *         counts of such leaves aren't cached
+     */
+    @Nullable
+    private static SegmentReader segmentReader(AtomicReaderContext leaf) {
+        AtomicReader reader = leaf.reader();
+        if (reader instanceof SegmentReader) {
+            return (SegmentReader) reader;
+        }
+        return null;
+    }
+
+    /**
+     * @return the cached count of the leaf or null if the leaf hasn't been counted with the where clause
+     *         since it has been changed
+     */
+    @Nullable
+    public Long get(ShardId shardId, AtomicReaderContext leaf, BytesRef whereClauseKey) {
+        SegmentReader segmentReader = segmentReader(leaf);
+        if (segmentReader == null) {
+            return null;
+        }
+        return cache.getIfPresent(new Key(shardId, segmentReader, whereClauseKey));
+    }
+
+    public void put(ShardId shardId, AtomicReaderContext leaf, BytesRef whereClauseKey, long count) {
+        SegmentReader segmentReader = segmentReader(leaf);
+        if (segmentReader != null) {
+            cache.put(new Key(shardId, segmentReader, whereClauseKey), count);
+        }
+    }
+
+    public void invalidate(ShardId shardId) {
+        Iterator<Key> it = cache.asMap().keySet().iterator();
+        while (it.hasNext()) {
+            if (it.next().shardId.equals(shardId)) {
+                it.remove();
+            }
+        }
+    }
+
+    public long size() {
+        return cache.size();
+    }
+
+    public CacheStats stats() {
+        return cache.stats();
+    }
+
+    static class Key {
+
+        private final ShardId shardId;
+        private final String segmentName;
+        private final int numDeletedDocs;
+        private final BytesRef whereClauseKey;
+
+        Key(ShardId shardId, SegmentReader segmentReader, BytesRef whereClauseKey) {
+            this.shardId = shardId;
+            // deletions of a segment can't be undone, so the number of deleted documents identifies its live docs
+            this.segmentName = segmentReader.getSegmentName();
+            this.numDeletedDocs = segmentReader.numDeletedDocs();
+            this.whereClauseKey = whereClauseKey;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            Key key = (Key) o;
+            return numDeletedDocs == key.numDeletedDocs
+                    && shardId.equals(key.shardId)
+                    && segmentName.equals(key.segmentName)
+                    && whereClauseKey.equals(key.whereClauseKey);
+        }
+
+        @Override
+        public int hashCode() {
+            int result = shardId.hashCode();
+            result = 31 * result + segmentName.hashCode();
+            result = 31 * result + numDeletedDocs;
+            result = 31 * result + whereClauseKey.hashCode();
+            return result;
+        }
+    }
+}
@@ -22,7 +22,6 @@
 package io.crate.operation.merge;
 
 import com.carrotsearch.hppc.IntArrayList;
-import com.carrotsearch.hppc.IntOpenHashSet;
 import com.carrotsearch.hppc.cursors.IntCursor;
 import com.google.common.base.Optional;
 import com.google.common.base.Preconditions;
@@ -56,9 +55,9 @@ public class SortingBucketMerger implements BucketMerger {
     private final Ordering<Row> ordering;
     private final int numBuckets;
     private final AtomicBoolean wantMore;
-    private final IntOpenHashSet exhaustedIterators;
     private final IntArrayList bucketsWithRowEqualToLeast;
-    private final ArrayList<Row> previousRows;
+    private final Row[] currentRows;
+    private final TournamentTree<Row> tournamentTree;
     private final Optional<Executor> executor;
     private Iterator<Row>[] remainingBucketIts = null;
 
@@ -80,9 +79,10 @@ public class SortingBucketMerger implements BucketMerger {
         //noinspection unchecked
         remainingBucketIts = new Iterator[numBuckets];
 
-        previousRows = new ArrayList<>(numBuckets);
         bucketsWithRowEqualToLeast = new IntArrayList(numBuckets);
-        exhaustedIterators = new IntOpenHashSet(numBuckets, 1);
+        currentRows = new Row[numBuckets];
+        // the row orderings are reversed because they're meant to be used by priority queues
+        tournamentTree = new TournamentTree<>(ordering.reverse(), currentRows);
 
         // use noOp as default to avoid null checks
         downstream = NoOpProjector.INSTANCE;
@@ -164,140 +164,86 @@ public class SortingBucketMerger implements BucketMerger {
      *      B       C       A
      *                      B
      *
-     * first iteration across all buckets:
+     * The current row of each bucket is a leaf of a {@link TournamentTree}, its winner is the least row.
+     * The least row and all rows equal to it are emitted and replaced by the next rows of their buckets,
+     * which only requires to replay the matches on the paths of these buckets instead of comparing the current
+     * rows of all buckets:
      *
-     *      leastRow:                   A (from b2)
-     *      equal (or also leastRow):   b3
+     *      least:  A (from b2), equal: A (from b3)
+     *      least:  A (from b3)
+     *      least:  B (from b1), equal: B (from b3)
      *
-     *      these will be emitted
-     *
-     * second iteration:
-     *
-     *    ->B       A       A
-     *      B     ->C     ->A
-     *                      B
-     *
-     *      leastRow:   A (from b3)
-     *      equal: none
-     *
-     * third iteration:
-     *
-     *    ->B       A       A
-     *      B     ->C       A
-     *                    ->B
-     *
-     *      leastRow:   B (from b1)
-     *      equal:      B (from b2)
-     *
-     * fourth iteration:
-     *
-     *      B       A       A
-     *    ->B     ->C       A
-     *                      B
-     *
-     *      leastRow:   B (from b1)
-     *
-     * after the fourth iteration the iterator that had the leastRow (B1) will be exhausted
-     * which causes B2 (Row C) to be put into the remainingIterators which will be used if a new merge call is made
+     * after the third iteration the iterator of B3 is exhausted which causes B1 (Row B) and B2 (Row C)
+     * to be put into the remainingIterators which will be used if a new merge call is made
      */
     private void emitBuckets(ArrayList<Iterator<Row>> bucketIts) {
-        exhaustedIterators.clear();
-        bucketsWithRowEqualToLeast.clear();
-        previousRows.clear();
-
-        for (Iterator<Row> bucketIt : bucketIts) {
-            if (bucketIt.hasNext()) {
-                previousRows.add(bucketIt.next());
-            } else {
-                previousRows.add(null);
-            }
+        for (int i = 0; i < numBuckets; i++) {
+            Iterator<Row> bucketIt = bucketIts.get(i);
+            currentRows[i] = bucketIt.hasNext() ? bucketIt.next() : null;
         }
+        tournamentTree.init();
 
-        int bi = 0;
-        Row leastRow = null;
-        int leastBi = -1;
-        while (exhaustedIterators.size() < numBuckets) {
-            Row row = previousRows.get(bi);
-            if (row == null) {
-                exhaustedIterators.add(bi);
-            }
-
+        while (true) {
+            int leastBi = tournamentTree.winner();
+            Row leastRow = currentRows[leastBi];
             if (leastRow == null) {
-                leastRow = row;
-                leastBi = bi;
-            } else if (row != null) {
-                int compare = ordering.compare(leastRow, row);
-                if (compare < 0) {
-                    leastBi = bi;
-                    leastRow = row;
-                    bucketsWithRowEqualToLeast.clear();
-                } else if (compare == 0) {
-                    bucketsWithRowEqualToLeast.add(bi);
-                }
+                // all buckets are exhausted
+                storeRemainingBucketIts(bucketIts);
+                return;
             }
 
-            if (bi == (numBuckets-1)) {
-                // looked at all buckets..
-                boolean leastBucketItExhausted = false;
+            // emit the least row and the rows of all other buckets which are equal to it,
+            // their buckets are taken out of the tree until all of them are emitted
+            bucketsWithRowEqualToLeast.clear();
+            int bi = leastBi;
+            Row row = leastRow;
+            do {
+                if (!emit(row)) {
+                    Arrays.fill(remainingBucketIts, null);
+                    return;
+                }
+                bucketsWithRowEqualToLeast.add(bi);
+                currentRows[bi] = null;
+                tournamentTree.update(bi);
+                bi = tournamentTree.winner();
+                row = currentRows[bi];
+            } while (row != null && ordering.compare(leastRow, row) == 0);
 
-                if (leastRow == null) {
-                    leastBucketItExhausted = true;
+            boolean bucketItExhausted = false;
+            for (IntCursor equalBucketIdx : bucketsWithRowEqualToLeast) {
+                Iterator<Row> bucketIt = bucketIts.get(equalBucketIdx.value);
+                if (bucketIt.hasNext()) {
+                    currentRows[equalBucketIdx.value] = bucketIt.next();
+                    tournamentTree.update(equalBucketIdx.value);
                 } else {
-                    if (!emit(leastRow)) {
-                        Arrays.fill(remainingBucketIts, null);
-                        return;
-                    }
-
-                    // send for all other buckets that are equal to least
-                    for (IntCursor equalBucketIdx : bucketsWithRowEqualToLeast) {
-
-                        if (!emit(previousRows.get(equalBucketIdx.value))) {
-                            Arrays.fill(remainingBucketIts, null);
-                            return;
-                        }
-
-                        Iterator<Row> equalBucketIt = bucketIts.get(equalBucketIdx.value);
-                        if (equalBucketIt.hasNext()) {
-                            previousRows.set(equalBucketIdx.value, equalBucketIt.next());
-                        } else {
-                            remainingBucketIts[equalBucketIdx.value] = null;
-                            previousRows.set(equalBucketIdx.value, null);
-                            exhaustedIterators.add(bi);
-                        }
-                    }
-                    Iterator<Row> bucketItWithLeastRow = bucketIts.get(leastBi);
-                    if (bucketItWithLeastRow.hasNext()) {
-                        previousRows.set(leastBi, bucketItWithLeastRow.next());
-                    } else {
-                        previousRows.set(leastBi, null);
-                        remainingBucketIts[leastBi] = null;
-                        leastBucketItExhausted = true;
-                    }
-
-
-                    leastRow = null;
-                    bucketsWithRowEqualToLeast.clear();
+                    bucketItExhausted = true;
                 }
-                if (leastBucketItExhausted) {
-                    // need next page to continue...
-                    for (int i = 0; i < numBuckets; i++) {
-                        Iterator<Row> bucketIt = bucketIts.get(i);
-                        Row previousRow = previousRows.get(i);
-                        if (previousRow != null) {
-                            Iterator<Row> iterator = ImmutableList.of(previousRow).iterator();
-                            if (bucketIt.hasNext()) {
-                                iterator = Iterators.concat(iterator, bucketIt);
-                            }
-                            remainingBucketIts[i] = iterator;
-                        } else if (bucketIt.hasNext()) {
-                            remainingBucketIts[i] = bucketIt;
-                        }
-                    }
-                    return;
+            }
+            if (bucketItExhausted) {
+                // need next page to continue...
+                storeRemainingBucketIts(bucketIts);
+                return;
+            }
+        }
+    }
+
+    private void storeRemainingBucketIts(ArrayList<Iterator<Row>> bucketIts) {
+        for (int i = 0; i < numBuckets; i++) {
+            Iterator<Row> bucketIt = bucketIts.get(i);
+            Row currentRow = currentRows[i];
+            if (currentRow != null) {
+                Iterator<Row> iterator = ImmutableList.of(currentRow).iterator();
+                if (bucketIt.hasNext()) {
+                    iterator = Iterators.concat(iterator, bucketIt);
                 }
+                remainingBucketIts[i] = iterator;
+            } else if (bucketIt.hasNext()) {
+                remainingBucketIts[i] = bucketIt;
+            } else {
+                remainingBucketIts[i] = null;
             }
-            bi = (bi+1) % numBuckets;
         }
+        Arrays.fill(currentRows, null);
     }
 
     private void emitSingleBucket(Bucket bucket) {
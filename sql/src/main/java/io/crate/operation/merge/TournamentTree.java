@@ -0,0 +1,99 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.merge;
+
+import java.util.Comparator;
+
+/**
+ * Tournament tree which keeps track of the least of the current values of k sources.
+ *
+ * The sources are the leaves of a binary tree, every inner node stores the source which won the match
+ * between its two children, so the root stores the source with the least value.
+ * If the value of a source changes, only the matches on the path from its leaf to the root
+ * are replayed, so finding the least value again costs log(k) comparisons instead of k.
+ *
+ * A null value means the source is exhausted, it loses against every other value.
+ * Equal values are won by the source with the lower index.
+ */
+class TournamentTree<T> {
+
+    private final Comparator<? super T> comparator;
+    private final T[] values;
+    private final int numSources;
+
+    /**
+     * the leaf of source i is stored at numSources + i, the children of node n are 2n and 2n + 1
+     */
+    private final int[] nodes;
+
+    /**
+     * @param values the current value of each source, changes must be announced with {@link #update(int)}
+     */
+    TournamentTree(Comparator<? super T> comparator, T[] values) {
+        this.comparator = comparator;
+        this.values = values;
+        this.numSources = values.length;
+        this.nodes = new int[numSources * 2];
+        for (int i = 0; i < numSources; i++) {
+            nodes[numSources + i] = i;
+        }
+        init();
+    }
+
+    /**
+     * replay all matches after all values have been changed
+     */
+    void init() {
+        for (int node = numSources - 1; node > 0; node--) {
+            nodes[node] = match(nodes[2 * node], nodes[2 * node + 1]);
+        }
+    }
+
+    /**
+     * @return the index of the source with the least value
+     */
+    int winner() {
+        return numSources == 1 ? 0 : nodes[1];
+    }
+
+    /**
+     * replay the matches of a source after its value changed
+     */
+    void update(int source) {
+        for (int node = (numSources + source) >> 1; node > 0; node >>= 1) {
+            nodes[node] = match(nodes[2 * node], nodes[2 * node + 1]);
+        }
+    }
+
+    private int match(int a, int b) {
+        T valueA = values[a];
+        T valueB = values[b];
+        if (valueA == null) {
+            return valueB == null && a < b ? a : b;
+        }
+        if (valueB == null) {
+            return a;
+        }
+        int compare = comparator.compare(valueA, valueB);
+        return compare < 0 || (compare == 0 && a < b) ? a : b;
+    }
+}
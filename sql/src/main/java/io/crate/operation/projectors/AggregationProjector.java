@@ -29,21 +29,24 @@ import io.crate.core.collections.RowN;
 import io.crate.executor.transport.distributed.ResultProviderBase;
 import io.crate.jobs.ExecutionState;
 import io.crate.operation.AggregationContext;
+import io.crate.operation.RowBatchDownstreamHandle;
 import io.crate.operation.RowDownstream;
 import io.crate.operation.RowUpstream;
 import io.crate.operation.RowDownstreamHandle;
 import io.crate.operation.aggregation.Aggregator;
+import io.crate.operation.aggregation.ColumnarStates;
 import io.crate.operation.collect.CollectExpression;
 
 import java.util.Set;
 
-public class AggregationProjector extends ResultProviderBase implements Projector, RowUpstream {
+public class AggregationProjector extends ResultProviderBase implements Projector, RowUpstream, RowBatchDownstreamHandle {
 
     private final Aggregator[] aggregators;
     private final Set<CollectExpression<?>> collectExpressions;
     private final Object[] cells;
     private final Row row;
     private final Object[] states;
+    private final ColumnarStates[] columnarStates;
     private RowDownstreamHandle downstream;
 
     public AggregationProjector(Set<CollectExpression<?>> collectExpressions,
@@ -52,6 +55,7 @@ public class AggregationProjector extends ResultProviderBase implements Projecto
         cells = new Object[aggregations.length];
         row = new RowN(cells);
         states = new Object[aggregations.length];
+        columnarStates = new ColumnarStates[aggregations.length];
         this.collectExpressions = collectExpressions;
         aggregators = new Aggregator[aggregations.length];
         for (int i = 0; i < aggregators.length; i++) {
@@ -63,7 +67,13 @@ public class AggregationProjector extends ResultProviderBase implements Projecto
             );
             // prepareState creates the aggregationState. In case of the AggregationProjector
             // we only want to have 1 global state not 1 state per node/shard or even document.
-            states[i] = aggregators[i].prepareState();
+            // Columnar states with a single group are preferred because they don't box the state on each row
+            columnarStates[i] = aggregators[i].prepareColumnarStates();
+            if (columnarStates[i] == null) {
+                states[i] = aggregators[i].prepareState();
+            } else {
+                columnarStates[i].ensureCapacity(1);
+            }
         }
     }
 
@@ -82,14 +92,30 @@ public class AggregationProjector extends ResultProviderBase implements Projecto
 
     @Override
     public synchronized boolean setNextRow(Row row) {
+        processRow(row);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean setNextRows(Iterable<Row> rows) {
+        for (Row row : rows) {
+            processRow(row);
+        }
+        return true;
+    }
+
+    private void processRow(Row row) {
         for (CollectExpression<?> collectExpression : collectExpressions) {
             collectExpression.setNextRow(row);
         }
         for (int i = 0; i < aggregators.length; i++) {
             Aggregator aggregator = aggregators[i];
-            states[i] = aggregator.processRow(states[i]);
+            if (columnarStates[i] == null) {
+                states[i] = aggregator.processRow(states[i]);
+            } else {
+                aggregator.processRow(columnarStates[i], 0);
+            }
         }
-        return true;
     }
 
     @Override
@@ -103,7 +129,11 @@ public class AggregationProjector extends ResultProviderBase implements Projecto
     @Override
     public Bucket doFinish() {
         for (int i = 0; i < aggregators.length; i++) {
-            cells[i] = aggregators[i].finishCollect(states[i]);
+            if (columnarStates[i] == null) {
+                cells[i] = aggregators[i].finishCollect(states[i]);
+            } else {
+                cells[i] = aggregators[i].finishCollect(columnarStates[i], 0);
+            }
         }
         if (downstream != null) {
             downstream.setNextRow(row);
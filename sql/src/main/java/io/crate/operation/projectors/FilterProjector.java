@@ -21,21 +21,26 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.base.Predicate;
+import com.google.common.collect.Iterables;
 import io.crate.core.collections.Row;
 import io.crate.jobs.ExecutionState;
-import io.crate.operation.Input;
-import io.crate.operation.RowDownstream;
-import io.crate.operation.RowDownstreamHandle;
-import io.crate.operation.RowUpstream;
+import io.crate.operation.*;
 import io.crate.operation.collect.CollectExpression;
 
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class FilterProjector implements Projector, RowDownstreamHandle {
+public class FilterProjector implements Projector, RowBatchDownstreamHandle {
 
     private final CollectExpression[] collectExpressions;
     private final Input<Boolean> condition;
+    private final Predicate<Row> matches = new Predicate<Row>() {
+        @Override
+        public boolean apply(Row row) {
+            return FilterProjector.this.matches(row);
+        }
+    };
 
     private RowDownstreamHandle downstream;
     private AtomicInteger remainingUpstreams = new AtomicInteger(0);
@@ -53,21 +58,37 @@ public class FilterProjector implements Projector, RowDownstreamHandle {
 
     @Override
     public synchronized boolean setNextRow(Row row) {
-        for (CollectExpression<?> collectExpression : collectExpressions) {
-            collectExpression.setNextRow(row);
+        if (downstream != null && matches(row)) {
+            return downstream.setNextRow(row);
         }
+        return true;
+    }
 
-        Boolean queryResult = condition.value();
-        if (queryResult == null) {
+    @Override
+    public synchronized boolean setNextRows(Iterable<Row> rows) {
+        if (downstream == null) {
             return true;
         }
-
-        if (downstream != null && queryResult) {
-            return downstream.setNextRow(row);
+        if (downstream instanceof RowBatchDownstreamHandle) {
+            // the condition is evaluated lazily while the downstream iterates the batch
+            return ((RowBatchDownstreamHandle) downstream).setNextRows(Iterables.filter(rows, matches));
+        }
+        for (Row row : rows) {
+            if (matches(row) && !downstream.setNextRow(row)) {
+                return false;
+            }
         }
         return true;
     }
 
+    private boolean matches(Row row) {
+        for (CollectExpression<?> collectExpression : collectExpressions) {
+            collectExpression.setNextRow(row);
+        }
+        Boolean queryResult = condition.value();
+        return queryResult != null && queryResult;
+    }
+
     @Override
     public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
         remainingUpstreams.incrementAndGet();
@@ -21,41 +21,63 @@
 
 package io.crate.operation.projectors;
 
+import com.carrotsearch.hppc.IntArrayList;
+import com.carrotsearch.hppc.LongIntOpenHashMap;
+import com.carrotsearch.hppc.cursors.LongIntCursor;
 import com.google.common.base.Predicate;
 import com.google.common.collect.Iterables;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.breaker.SizeEstimator;
 import io.crate.breaker.SizeEstimatorFactory;
+import io.crate.Streamer;
 import io.crate.core.collections.Row;
 import io.crate.core.collections.RowN;
+import io.crate.exceptions.UnhandledServerException;
 import io.crate.jobs.ExecutionState;
 import io.crate.operation.*;
 import io.crate.operation.aggregation.Aggregator;
+import io.crate.operation.aggregation.ColumnarStates;
 import io.crate.operation.collect.CollectExpression;
-import io.crate.types.DataType;
-import io.crate.types.DataTypes;
+import io.crate.types.*;
+import org.apache.lucene.util.ArrayUtil;
+import org.apache.lucene.util.ByteBlockPool;
+import org.apache.lucene.util.BytesRef;
+import org.apache.lucene.util.BytesRefHash;
 import org.elasticsearch.common.breaker.CircuitBreakingException;
+import org.elasticsearch.common.io.stream.StreamInput;
 import org.elasticsearch.common.logging.ESLogger;
 import org.elasticsearch.common.logging.Loggers;
 import org.elasticsearch.common.unit.ByteSizeValue;
 
 import javax.annotation.Nullable;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
 import java.util.concurrent.CancellationException;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class GroupingProjector implements Projector, RowDownstreamHandle {
+public class GroupingProjector implements Projector, RowBatchDownstreamHandle {
+
+    /**
+     * number of new groups after which the used memory is checked again
+     */
+    static final int SPILL_CHECK_INTERVAL = 1024;
 
     private final CollectExpression[] collectExpressions;
 
     private static final ESLogger logger = Loggers.getLogger(GroupingProjector.class);
     private final RamAccountingContext ramAccountingContext;
+    private final List<? extends DataType> keyTypes;
+    private final List<Input<?>> keyInputs;
+    private final Aggregator[] aggregators;
+    @Nullable
+    private final File spillDirectory;
 
     private Grouper grouper;
+    private SpilledGroups spilledGroups;
+    private ExecutionState executionState;
+    private int nextSpillCheck = SPILL_CHECK_INTERVAL;
     private RowDownstreamHandle downstream;
     private AtomicInteger remainingUpstreams = new AtomicInteger(0);
     private final AtomicReference<Throwable> failure = new AtomicReference<>(null);
@@ -65,27 +87,60 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
                              CollectExpression[] collectExpressions,
                              AggregationContext[] aggregations,
                              RamAccountingContext ramAccountingContext) {
+        this(keyTypes, keyInputs, collectExpressions, aggregations, ramAccountingContext, null);
+    }
+
+    /**
+     * @param spillDirectory if not null the groups are written to temporary files in this directory
+     *                       if the memory limit is about to be reached, instead of failing
+     */
+    public GroupingProjector(List<? extends DataType> keyTypes,
+                             List<Input<?>> keyInputs,
+                             CollectExpression[] collectExpressions,
+                             AggregationContext[] aggregations,
+                             RamAccountingContext ramAccountingContext,
+                             @Nullable File spillDirectory) {
         assert keyTypes.size() == keyInputs.size() : "number of key types must match with number of key inputs";
         assert allTypesKnown(keyTypes) : "must have a known type for each key input";
+        this.keyTypes = keyTypes;
+        this.keyInputs = keyInputs;
         this.collectExpressions = collectExpressions;
-        this.ramAccountingContext = ramAccountingContext;
+        this.spillDirectory = spillDirectory;
+        // the memory used by the groups has to be known to release it after they were spilled
+        this.ramAccountingContext = spillDirectory == null ? ramAccountingContext : ramAccountingContext.newChildContext();
 
-        Aggregator[] aggregators = new Aggregator[aggregations.length];
+        aggregators = new Aggregator[aggregations.length];
         for (int i = 0; i < aggregations.length; i++) {
             aggregators[i] = new Aggregator(
-                    ramAccountingContext,
+                    this.ramAccountingContext,
                     aggregations[i].symbol(),
                     aggregations[i].function(),
                     aggregations[i].inputs()
             );
         }
+        grouper = newGrouper();
+    }
+
+    private Grouper newGrouper() {
+        GroupStates groupStates = newGroupStates(aggregators, ramAccountingContext);
 
         // grouper object size overhead
         ramAccountingContext.addBytes(8);
         if (keyInputs.size() == 1) {
-            grouper = new SingleKeyGrouper(keyInputs.get(0), keyTypes.get(0), collectExpressions, aggregators);
+            DataType keyType = keyTypes.get(0);
+            if (isLongEncodable(keyType)) {
+                return new LongKeyGrouper(keyInputs.get(0), keyType, collectExpressions, groupStates);
+            } else if (keyType.id() == StringType.ID || keyType.id() == IpType.ID) {
+                return new BytesRefKeyGrouper(keyInputs.get(0), keyType, collectExpressions, groupStates);
+            } else {
+                return new SingleKeyGrouper(keyInputs.get(0), keyType, collectExpressions, groupStates);
+            }
+        } else if (canPackKeys(keyTypes)) {
+            return new PackedKeysGrouper(keyInputs, keyTypes, collectExpressions, groupStates);
+        } else if (canEncodeKeys(keyTypes)) {
+            return new EncodedKeysGrouper(keyInputs, keyTypes, collectExpressions, groupStates);
         } else {
-            grouper = new ManyKeyGrouper(keyInputs, keyTypes, collectExpressions, aggregators);
+            return new ManyKeyGrouper(keyInputs, keyTypes, collectExpressions, groupStates);
         }
     }
 
@@ -98,6 +153,103 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
         });
     }
 
+    /**
+     * use columnar states if all aggregations support them, otherwise one state object per group and aggregation
+     */
+    private static GroupStates newGroupStates(Aggregator[] aggregators, RamAccountingContext ramAccountingContext) {
+        ColumnarStates[] columnarStates = new ColumnarStates[aggregators.length];
+        for (int i = 0; i < aggregators.length; i++) {
+            columnarStates[i] = aggregators[i].prepareColumnarStates();
+            if (columnarStates[i] == null) {
+                return new ObjectGroupStates(aggregators, ramAccountingContext);
+            }
+        }
+        return new ColumnarGroupStates(aggregators, columnarStates);
+    }
+
+    private static boolean isLongEncodable(DataType keyType) {
+        switch (keyType.id()) {
+            case ByteType.ID:
+            case ShortType.ID:
+            case IntegerType.ID:
+            case LongType.ID:
+            case TimestampType.ID:
+            case FloatType.ID:
+            case DoubleType.ID:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    /**
+     * @return true if the values of all keys fit together into one long, see {@link PackedKeysGrouper}
+     */
+    private static boolean canPackKeys(List<? extends DataType> keyTypes) {
+        int totalBits = 0;
+        for (DataType keyType : keyTypes) {
+            int bits = packedBits(keyType);
+            if (bits < 0) {
+                return false;
+            }
+            totalBits += bits;
+        }
+        return totalBits <= 64;
+    }
+
+    private static int packedBits(DataType keyType) {
+        switch (keyType.id()) {
+            case BooleanType.ID:
+                return 1;
+            case ByteType.ID:
+                return 8;
+            case ShortType.ID:
+                return 16;
+            case IntegerType.ID:
+                return 32;
+            default:
+                return -1;
+        }
+    }
+
+    /**
+     * @return true if the values of all keys can be encoded into a byte sequence, see {@link EncodedKeysGrouper}
+     */
+    private static boolean canEncodeKeys(List<? extends DataType> keyTypes) {
+        for (DataType keyType : keyTypes) {
+            if (encodedWidth(keyType) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return the number of bytes of an encoded key value, -1 for variable length keys
+     *         or 0 if values of the type can't be encoded
+     */
+    private static int encodedWidth(DataType keyType) {
+        switch (keyType.id()) {
+            case BooleanType.ID:
+            case ByteType.ID:
+                return 1;
+            case ShortType.ID:
+                return 2;
+            case IntegerType.ID:
+                return 4;
+            case LongType.ID:
+            case TimestampType.ID:
+            case FloatType.ID:
+            case DoubleType.ID:
+                return 8;
+            case StringType.ID:
+            case IpType.ID:
+                return -1;
+            default:
+                return 0;
+        }
+    }
+
     @Override
     public void downstream(RowDownstream downstream) {
         this.downstream = downstream.registerUpstream(this);
@@ -105,6 +257,7 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
 
     @Override
     public void startProjection(ExecutionState executionState) {
+        this.executionState = executionState;
         for (CollectExpression collectExpression : collectExpressions) {
             collectExpression.startCollect();
         }
@@ -114,7 +267,28 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
     @Override
     public synchronized boolean setNextRow(Row row) {
         try {
-            return grouper.setNextRow(row);
+            boolean wantMore = grouper.setNextRow(row);
+            maybeSpill();
+            return wantMore;
+        } catch (CircuitBreakingException e) {
+            if (downstream != null) {
+                downstream.fail(e);
+                downstream = null;
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public synchronized boolean setNextRows(Iterable<Row> rows) {
+        try {
+            for (Row row : rows) {
+                if (!grouper.setNextRow(row)) {
+                    return false;
+                }
+                maybeSpill();
+            }
+            return true;
         } catch (CircuitBreakingException e) {
             if (downstream != null) {
                 downstream.fail(e);
@@ -124,6 +298,56 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
         }
     }
 
+    /**
+     * spill the groups to disk if they use a large part of the breaker limit
+     * or if the breaker is close to its limit and the groups use a considerable part of it
+     */
+    private void maybeSpill() {
+        if (spillDirectory == null || grouper.numGroups() < nextSpillCheck) {
+            return;
+        }
+        if (ramAccountingContext.shouldSpill()) {
+            spillGroups();
+            grouper = newGrouper();
+            grouper.prepare(executionState);
+            nextSpillCheck = SPILL_CHECK_INTERVAL;
+        } else {
+            nextSpillCheck = grouper.numGroups() + SPILL_CHECK_INTERVAL;
+        }
+    }
+
+    /**
+     * write the groups of the current grouper to disk and release the memory used by them
+     */
+    private void spillGroups() {
+        if (spilledGroups == null) {
+            spilledGroups = new SpilledGroups(spillDirectory, keyTypes.size(), spillStreamers());
+        }
+        long spilledBytes;
+        try {
+            grouper.spill(spilledGroups);
+            spilledBytes = spilledGroups.flush();
+        } catch (IOException e) {
+            throw new UnhandledServerException("Failed to spill groups to disk", e);
+        }
+        ramAccountingContext.addSpilledBytes(spilledBytes);
+        ramAccountingContext.releaseBytes(ramAccountingContext.totalBytes());
+        if (logger.isDebugEnabled()) {
+            logger.debug("spilled {} groups to disk", new ByteSizeValue(spilledBytes));
+        }
+    }
+
+    private Streamer<?>[] spillStreamers() {
+        Streamer<?>[] streamers = new Streamer[keyTypes.size() + aggregators.length];
+        for (int i = 0; i < keyTypes.size(); i++) {
+            streamers[i] = keyTypes.get(i).streamer();
+        }
+        for (int i = 0; i < aggregators.length; i++) {
+            streamers[keyTypes.size() + i] = aggregators[i].partialType().streamer();
+        }
+        return streamers;
+    }
+
     @Override
     public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
         remainingUpstreams.incrementAndGet();
@@ -155,68 +379,169 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
         failure.set(throwable);
     }
 
+    private void cleanUp() {
+        grouper = null;
+        if (spilledGroups != null) {
+            spilledGroups.close();
+            spilledGroups = null;
+        }
+    }
+
+    private interface Grouper {
+        boolean setNextRow(final Row row);
+
+        void finish();
+        void prepare(ExecutionState executionState);
+
+        int numGroups();
+
+        /**
+         * write the key values and the partial aggregation states of all groups
+         */
+        void spill(SpilledGroups spilledGroups) throws IOException;
+    }
+
     /**
-     * transform map entry into pre-allocated object array.
+     * The aggregation states of all groups, addressed by the group ordinal
      */
-    private static void transformToRow(Map.Entry<List<Object>, Object[]> entry,
-                                       Object[] row,
-                                       Aggregator[] aggregators) {
-        int c = 0;
+    private interface GroupStates {
+
+        /**
+         * create the states for a new group and aggregate the current row into them
+         */
+        void newGroup(int group);
+
+        /**
+         * aggregate the current row into the states of an existing group
+         */
+        void iterate(int group);
 
-        for (Object o : entry.getKey()) {
-            row[c] = o;
-            c++;
+        /**
+         * write the values of the aggregations of a group into cells, starting at offset
+         */
+        void finish(int group, Object[] cells, int offset);
+
+        /**
+         * write the partial aggregation states of a group into cells, starting at offset
+         */
+        void partial(int group, Object[] cells, int offset);
+
+        int numAggregations();
+    }
+
+    private static class ObjectGroupStates implements GroupStates {
+
+        private final Aggregator[] aggregators;
+        private final RamAccountingContext ramAccountingContext;
+        private final List<Object[]> states = new ArrayList<>();
+
+        ObjectGroupStates(Aggregator[] aggregators, RamAccountingContext ramAccountingContext) {
+            this.aggregators = aggregators;
+            this.ramAccountingContext = ramAccountingContext;
         }
 
-        Object[] states = entry.getValue();
-        for (int i = 0; i < states.length; i++) {
-            row[c] = aggregators[i].finishCollect(states[i]);
-            c++;
+        @Override
+        public void newGroup(int group) {
+            assert group == states.size() : "groups must be created in order";
+            Object[] groupStates = new Object[aggregators.length];
+            for (int i = 0; i < aggregators.length; i++) {
+                Object state = aggregators[i].prepareState();
+                groupStates[i] = aggregators[i].processRow(state);
+            }
+            // 4 bytes per list entry
+            ramAccountingContext.addBytes(4);
+            states.add(groupStates);
         }
-    }
 
-    private static void singleTransformToRow(Map.Entry<Object, Object[]> entry,
-                                             Object[] row,
-                                             Aggregator[] aggregators) {
-        int c = 0;
-        row[c] = entry.getKey();
-        c++;
-        Object[] states = entry.getValue();
-        for (int i = 0; i < states.length; i++) {
-            row[c] = aggregators[i].finishCollect(states[i]);
-            c++;
+        @Override
+        public void iterate(int group) {
+            Object[] groupStates = states.get(group);
+            for (int i = 0; i < aggregators.length; i++) {
+                groupStates[i] = aggregators[i].processRow(groupStates[i]);
+            }
         }
-    }
 
-    private void cleanUp() {
-        grouper = null;
-    }
+        @Override
+        public void finish(int group, Object[] cells, int offset) {
+            Object[] groupStates = states.get(group);
+            for (int i = 0; i < aggregators.length; i++) {
+                cells[offset + i] = aggregators[i].finishCollect(groupStates[i]);
+            }
+        }
 
-    private interface Grouper {
-        boolean setNextRow(final Row row);
+        @Override
+        public void partial(int group, Object[] cells, int offset) {
+            System.arraycopy(states.get(group), 0, cells, offset, aggregators.length);
+        }
 
-        void finish();
-        void prepare(ExecutionState executionState);
+        @Override
+        public int numAggregations() {
+            return aggregators.length;
+        }
     }
 
-    private class SingleKeyGrouper implements Grouper {
+    private static class ColumnarGroupStates implements GroupStates {
 
-        private final Map<Object, Object[]> result;
         private final Aggregator[] aggregators;
-        private final Input keyInput;
-        private final CollectExpression[] collectExpressions;
-        private final SizeEstimator<Object> sizeEstimator;
+        private final ColumnarStates[] states;
+
+        ColumnarGroupStates(Aggregator[] aggregators, ColumnarStates[] states) {
+            this.aggregators = aggregators;
+            this.states = states;
+        }
+
+        @Override
+        public void newGroup(int group) {
+            for (int i = 0; i < aggregators.length; i++) {
+                states[i].ensureCapacity(group + 1);
+                aggregators[i].processRow(states[i], group);
+            }
+        }
+
+        @Override
+        public void iterate(int group) {
+            for (int i = 0; i < aggregators.length; i++) {
+                aggregators[i].processRow(states[i], group);
+            }
+        }
+
+        @Override
+        public void finish(int group, Object[] cells, int offset) {
+            for (int i = 0; i < aggregators.length; i++) {
+                cells[offset + i] = aggregators[i].finishCollect(states[i], group);
+            }
+        }
+
+        @Override
+        public void partial(int group, Object[] cells, int offset) {
+            for (int i = 0; i < aggregators.length; i++) {
+                cells[offset + i] = aggregators[i].partialValue(states[i], group);
+            }
+        }
+
+        @Override
+        public int numAggregations() {
+            return aggregators.length;
+        }
+    }
+
+    /**
+     * Base class for the groupers which assigns an ordinal to each group and emits the groups.
+     * Implementations only differ in how the group keys are stored and looked up.
+     */
+    private abstract class AbstractGrouper implements Grouper {
+
+        protected final CollectExpression[] collectExpressions;
+        private final GroupStates groupStates;
+        private final int numKeys;
+        private int numGroups = 0;
         private ExecutionState executionState;
+        private SpilledGroups spillTarget;
 
-        public SingleKeyGrouper(Input keyInput,
-                                DataType keyInputType,
-                                CollectExpression[] collectExpressions,
-                                Aggregator[] aggregators) {
+        protected AbstractGrouper(int numKeys, CollectExpression[] collectExpressions, GroupStates groupStates) {
+            this.numKeys = numKeys;
             this.collectExpressions = collectExpressions;
-            this.result = new HashMap<>();
-            this.keyInput = keyInput;
-            this.aggregators = aggregators;
-            sizeEstimator = SizeEstimatorFactory.create(keyInputType);
+            this.groupStates = groupStates;
         }
 
         @Override
@@ -224,29 +549,61 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
             for (CollectExpression collectExpression : collectExpressions) {
                 collectExpression.setNextRow(row);
             }
+            processRow();
+            return true;
+        }
 
-            Object key = keyInput.value();
+        /**
+         * look up the group of the current row (and create it if it is new)
+         */
+        protected abstract void processRow();
 
-            // HashMap.get requires some objects (iterators) and at least 2 integers
-            ramAccountingContext.addBytes(32);
-            Object[] states = result.get(key);
-            ramAccountingContext.addBytes(-32);
-            if (states == null) {
-                states = new Object[aggregators.length];
-                for (int i = 0; i < aggregators.length; i++) {
-                    Object state = aggregators[i].prepareState();
-                    states[i] = aggregators[i].processRow(state);
-                }
-                ramAccountingContext.addBytes(
-                        RamAccountingContext.roundUp(sizeEstimator.estimateSize(key)) + 24); // 24 bytes overhead per entry
-                result.put(key, states);
-            } else {
-                for (int i = 0; i < aggregators.length; i++) {
-                    states[i] = aggregators[i].processRow(states[i]);
+        /**
+         * call {@link #emit(RowN, Object[], int)} for each group until it returns false
+         */
+        protected abstract void emitGroups(RowN row);
+
+        /**
+         * create a new group and aggregate the current row into it
+         *
+         * @return the ordinal of the new group
+         */
+        protected int newGroup() {
+            int group = numGroups++;
+            groupStates.newGroup(group);
+            return group;
+        }
+
+        protected void iterateGroup(int group) {
+            groupStates.iterate(group);
+        }
+
+        /**
+         * transform the key values and aggregation states of a group into a row and pass it to the downstream
+         *
+         * @param keyValues the key values of the group, the array is used as row cells
+         * @return false if the downstream doesn't want any more rows
+         */
+        protected boolean emit(RowN row, Object[] keyValues, int group) {
+            if (executionState.isKilled()) {
+                throw new CancellationException();
+            }
+            if (spillTarget != null) {
+                groupStates.partial(group, keyValues, numKeys);
+                try {
+                    spillTarget.add(keyValues);
+                } catch (IOException e) {
+                    throw new UnhandledServerException("Failed to spill groups to disk", e);
                 }
+                return true;
             }
+            groupStates.finish(group, keyValues, numKeys);
+            row.cells(keyValues);
+            return downstream.setNextRow(row);
+        }
 
-            return true;
+        protected Object[] newCells() {
+            return new Object[numKeys + groupStates.numAggregations()];
         }
 
         @Override
@@ -262,50 +619,311 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
             // TODO: check ram accounting
             // account the multi-dimension `rows` array
             // 1st level
-            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + result.size() * 4));
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + numGroups * 4));
             // 2nd level
             ramAccountingContext.addBytes(RamAccountingContext.roundUp(
-                    (1 + aggregators.length) * 4 + 12));
-            RowN row = new RowN(1 + aggregators.length);
-            for (Map.Entry<Object, Object[]> entry : result.entrySet()) {
-                if (executionState.isKilled()) {
-                    downstream.fail(new CancellationException());
-                    return;
+                    12 + (numKeys + groupStates.numAggregations()) * 4));
+            try {
+                if (spilledGroups != null) {
+                    spillGroups();
+                    emitSpilledGroups(new RowN(numKeys + groupStates.numAggregations()));
+                } else {
+                    emitGroups(new RowN(numKeys + groupStates.numAggregations()));
                 }
+            } catch (CancellationException | UnhandledServerException e) {
+                downstream.fail(e);
+                return;
+            } catch (IOException e) {
+                downstream.fail(new UnhandledServerException("Failed to read spilled groups", e));
+                return;
+            }
+            downstream.finish();
+        }
 
-                Object[] cells = new Object[row.size()];
-                singleTransformToRow(entry, cells, aggregators);
-                row.cells(cells);
-                if (!downstream.setNextRow(row)) {
-                    break;
+        /**
+         * merge the spilled states of each group partition by partition and emit the groups
+         */
+        private void emitSpilledGroups(RowN row) throws IOException {
+            int numAggregations = groupStates.numAggregations();
+            for (int partition = 0; partition < SpilledGroups.NUM_PARTITIONS; partition++) {
+                Map<List<Object>, Object[]> groups = new HashMap<>();
+                try (StreamInput in = spilledGroups.openPartition(partition)) {
+                    if (in == null) {
+                        continue;
+                    }
+                    for (int i = spilledGroups.numGroups(partition); i > 0; i--) {
+                        Object[] cells = spilledGroups.readGroup(in);
+                        List<Object> key = Arrays.asList(cells).subList(0, numKeys);
+                        Object[] group = groups.get(key);
+                        if (group == null) {
+                            // map entry, cells array and key list
+                            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + cells.length * 4) + 24 + 32);
+                            groups.put(key, cells);
+                        } else {
+                            for (int a = 0; a < numAggregations; a++) {
+                                group[numKeys + a] = aggregators[a].reduce(group[numKeys + a], cells[numKeys + a]);
+                            }
+                        }
+                    }
+                }
+                for (Object[] cells : groups.values()) {
+                    if (executionState.isKilled()) {
+                        throw new CancellationException();
+                    }
+                    for (int a = 0; a < numAggregations; a++) {
+                        cells[numKeys + a] = aggregators[a].finishCollect(cells[numKeys + a]);
+                    }
+                    row.cells(cells);
+                    if (!downstream.setNextRow(row)) {
+                        return;
+                    }
                 }
+                ramAccountingContext.releaseBytes(ramAccountingContext.totalBytes());
             }
-            downstream.finish();
         }
 
         @Override
         public void prepare(ExecutionState executionState) {
             this.executionState = executionState;
         }
+
+        @Override
+        public int numGroups() {
+            return numGroups;
+        }
+
+        @Override
+        public void spill(SpilledGroups spilledGroups) throws IOException {
+            spillTarget = spilledGroups;
+            try {
+                emitGroups(new RowN(numKeys + groupStates.numAggregations()));
+            } finally {
+                spillTarget = null;
+            }
+        }
     }
 
-    private class ManyKeyGrouper implements Grouper {
+    private class SingleKeyGrouper extends AbstractGrouper {
 
-        private final Aggregator[] aggregators;
-        private final Map<List<Object>, Object[]> result;
+        private final Map<Object, Integer> result;
+        private final Input keyInput;
+        private final SizeEstimator<Object> sizeEstimator;
+
+        public SingleKeyGrouper(Input keyInput,
+                                DataType keyInputType,
+                                CollectExpression[] collectExpressions,
+                                GroupStates groupStates) {
+            super(1, collectExpressions, groupStates);
+            this.result = new HashMap<>();
+            this.keyInput = keyInput;
+            sizeEstimator = SizeEstimatorFactory.create(keyInputType);
+        }
+
+        @Override
+        protected void processRow() {
+            Object key = keyInput.value();
+
+            // HashMap.get requires some objects (iterators) and at least 2 integers
+            ramAccountingContext.addBytes(32);
+            Integer group = result.get(key);
+            ramAccountingContext.addBytes(-32);
+            if (group == null) {
+                ramAccountingContext.addBytes(
+                        RamAccountingContext.roundUp(sizeEstimator.estimateSize(key)) + 24); // 24 bytes overhead per entry
+                result.put(key, newGroup());
+            } else {
+                iterateGroup(group);
+            }
+        }
+
+        @Override
+        protected void emitGroups(RowN row) {
+            for (Map.Entry<Object, Integer> entry : result.entrySet()) {
+                Object[] cells = newCells();
+                cells[0] = entry.getKey();
+                if (!emit(row, cells, entry.getValue())) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grouper for a single fixed width numeric key.
+     * The key values are stored as primitive longs, floating point values using their bit representation,
+     * so neither the keys nor the map entries need to be boxed.
+     */
+    private class LongKeyGrouper extends AbstractGrouper {
+
+        // 8 bytes key, 4 bytes value and 1 byte allocated flag per slot with load factor 0.75
+        private static final int ENTRY_SIZE = 20;
+
+        private final LongIntOpenHashMap result;
+        private final Input keyInput;
+        private final DataType keyType;
+        private final boolean floatingPoint;
+        private int nullKeyGroup = -1;
+
+        public LongKeyGrouper(Input keyInput,
+                              DataType keyType,
+                              CollectExpression[] collectExpressions,
+                              GroupStates groupStates) {
+            super(1, collectExpressions, groupStates);
+            this.result = new LongIntOpenHashMap();
+            this.keyInput = keyInput;
+            this.keyType = keyType;
+            this.floatingPoint = keyType.id() == DoubleType.ID || keyType.id() == FloatType.ID;
+        }
+
+        @Override
+        protected void processRow() {
+            Object value = keyInput.value();
+            if (value == null) {
+                if (nullKeyGroup < 0) {
+                    ramAccountingContext.addBytes(ENTRY_SIZE);
+                    nullKeyGroup = newGroup();
+                } else {
+                    iterateGroup(nullKeyGroup);
+                }
+                return;
+            }
+            long key;
+            if (floatingPoint) {
+                key = Double.doubleToLongBits(((Number) value).doubleValue());
+            } else {
+                key = ((Number) value).longValue();
+            }
+            if (result.containsKey(key)) {
+                iterateGroup(result.lget());
+            } else {
+                ramAccountingContext.addBytes(ENTRY_SIZE);
+                result.put(key, newGroup());
+            }
+        }
+
+        @Override
+        protected void emitGroups(RowN row) {
+            if (nullKeyGroup >= 0 && !emit(row, newCells(), nullKeyGroup)) {
+                return;
+            }
+            for (LongIntCursor cursor : result) {
+                Object[] cells = newCells();
+                if (floatingPoint) {
+                    cells[0] = keyType.value(Double.longBitsToDouble(cursor.key));
+                } else {
+                    cells[0] = keyType.value(cursor.key);
+                }
+                if (!emit(row, cells, cursor.value)) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Grouper for a single string or ip key.
+     * The key bytes are copied into a {@link BytesRefHash} which assigns an ordinal to each key.
+     * Keys which are too long for the BytesRefHash are kept in a regular map.
+     */
+    private class BytesRefKeyGrouper extends AbstractGrouper {
+
+        // 2 bytes length prefix in the byte pool, id and bytesStart int entries in the hash,
+        // group ordinal
+        private static final int ENTRY_OVERHEAD = 2 + 8 + 4 + 4;
+        // the BytesRefHash stores the length of a key in at most 2 bytes of a single block
+        private static final int MAX_HASHED_KEY_LENGTH = ByteBlockPool.BYTE_BLOCK_SIZE - 2;
+
+        private final BytesRefHash keys;
+        // maps the ordinals of the BytesRefHash to the group ordinals
+        private final IntArrayList groups;
+        private final Map<BytesRef, Integer> longKeys = new HashMap<>();
+        private final Input keyInput;
+        private final DataType keyType;
+        private int nullKeyGroup = -1;
+
+        public BytesRefKeyGrouper(Input keyInput,
+                                  DataType keyType,
+                                  CollectExpression[] collectExpressions,
+                                  GroupStates groupStates) {
+            super(1, collectExpressions, groupStates);
+            this.keys = new BytesRefHash();
+            this.groups = new IntArrayList();
+            this.keyInput = keyInput;
+            this.keyType = keyType;
+        }
+
+        @Override
+        protected void processRow() {
+            Object value = keyInput.value();
+            if (value == null) {
+                if (nullKeyGroup < 0) {
+                    ramAccountingContext.addBytes(ENTRY_OVERHEAD);
+                    nullKeyGroup = newGroup();
+                } else {
+                    iterateGroup(nullKeyGroup);
+                }
+                return;
+            }
+            BytesRef key = value instanceof BytesRef ? (BytesRef) value : (BytesRef) keyType.value(value);
+            if (key.length > MAX_HASHED_KEY_LENGTH) {
+                processLongKey(key);
+                return;
+            }
+            int ord = keys.add(key);
+            if (ord < 0) {
+                iterateGroup(groups.get(-ord - 1));
+            } else {
+                ramAccountingContext.addBytes(RamAccountingContext.roundUp(key.length + ENTRY_OVERHEAD));
+                groups.add(newGroup());
+            }
+        }
+
+        private void processLongKey(BytesRef key) {
+            Integer group = longKeys.get(key);
+            if (group == null) {
+                ramAccountingContext.addBytes(RamAccountingContext.roundUp(key.length + 32) + 24); // 24 bytes overhead per entry
+                longKeys.put(BytesRef.deepCopyOf(key), newGroup());
+            } else {
+                iterateGroup(group);
+            }
+        }
+
+        @Override
+        protected void emitGroups(RowN row) {
+            if (nullKeyGroup >= 0 && !emit(row, newCells(), nullKeyGroup)) {
+                return;
+            }
+            for (Map.Entry<BytesRef, Integer> entry : longKeys.entrySet()) {
+                Object[] cells = newCells();
+                cells[0] = entry.getKey();
+                if (!emit(row, cells, entry.getValue())) {
+                    return;
+                }
+            }
+            BytesRef spare = new BytesRef();
+            for (int ord = 0; ord < groups.size(); ord++) {
+                Object[] cells = newCells();
+                cells[0] = BytesRef.deepCopyOf(keys.get(ord, spare));
+                if (!emit(row, cells, groups.get(ord))) {
+                    break;
+                }
+            }
+        }
+    }
+
+    private class ManyKeyGrouper extends AbstractGrouper {
+
+        private final Map<List<Object>, Integer> result;
         private final List<Input<?>> keyInputs;
-        private ExecutionState executionState;
-        private final CollectExpression[] collectExpressions;
         private final List<SizeEstimator<Object>> sizeEstimators;
 
         public ManyKeyGrouper(List<Input<?>> keyInputs,
                               List<? extends DataType> keyTypes,
                               CollectExpression[] collectExpressions,
-                              Aggregator[] aggregators) {
-            this.collectExpressions = collectExpressions;
+                              GroupStates groupStates) {
+            super(keyInputs.size(), collectExpressions, groupStates);
             this.result = new HashMap<>();
             this.keyInputs = keyInputs;
-            this.aggregators = aggregators;
             sizeEstimators = new ArrayList<>(keyTypes.size());
             for (DataType dataType : keyTypes) {
                 sizeEstimators.add(SizeEstimatorFactory.create(dataType));
@@ -313,11 +931,7 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
         }
 
         @Override
-        public boolean setNextRow(Row row) {
-            for (CollectExpression collectExpression : collectExpressions) {
-                collectExpression.setNextRow(row);
-            }
-
+        protected void processRow() {
             // key list ram accounting
             ramAccountingContext.addBytes(12);
             // TODO: use something with better equals() performance for the keys
@@ -331,64 +945,315 @@ public class GroupingProjector implements Projector, RowDownstreamHandle {
                         sizeEstimators.get(keyIdx).estimateSize(keyInput.value()) + 4) + 4);
                 keyIdx++;
             }
+            processKey(key);
+        }
 
+        protected void processKey(List<Object> key) {
             // HashMap.get requires some objects (iterators) and at least 2 integers
             ramAccountingContext.addBytes(32);
-            Object[] states = result.get(key);
+            Integer group = result.get(key);
             ramAccountingContext.addBytes(-32);
-            if (states == null) {
-                states = new Object[aggregators.length];
-                for (int i = 0; i < aggregators.length; i++) {
-                    Object state = aggregators[i].prepareState();
-                    state = aggregators[i].processRow(state);
-                    states[i] = state;
-                }
+            if (group == null) {
                 ramAccountingContext.addBytes(24); // 24 bytes overhead per map entry
-                result.put(key, states);
+                result.put(key, newGroup());
             } else {
-                for (int i = 0; i < aggregators.length; i++) {
-                    states[i] = aggregators[i].processRow(states[i]);
+                iterateGroup(group);
+            }
+        }
+
+        @Override
+        protected void emitGroups(RowN row) {
+            for (Map.Entry<List<Object>, Integer> entry : result.entrySet()) {
+                Object[] cells = newCells();
+                int c = 0;
+                for (Object o : entry.getKey()) {
+                    cells[c] = o;
+                    c++;
+                }
+                if (!emit(row, cells, entry.getValue())) {
+                    break;
                 }
             }
+        }
+    }
+    /**
+     * Grouper for multiple boolean, byte, short or integer keys whose values fit together into one long.
+     * Groups which contain a null key are rare and handled by a regular {@link ManyKeyGrouper}.
+     */
+    private class PackedKeysGrouper extends ManyKeyGrouper {
 
-            return true;
+        // 8 bytes key, 4 bytes value and 1 byte allocated flag per slot with load factor 0.75
+        private static final int ENTRY_SIZE = 20;
+
+        private final LongIntOpenHashMap packedResult;
+        private final List<Input<?>> keyInputs;
+        private final DataType[] keyTypes;
+        private final int[] bits;
+        private final Object[] keyValues;
+
+        public PackedKeysGrouper(List<Input<?>> keyInputs,
+                                 List<? extends DataType> keyTypes,
+                                 CollectExpression[] collectExpressions,
+                                 GroupStates groupStates) {
+            super(keyInputs, keyTypes, collectExpressions, groupStates);
+            this.packedResult = new LongIntOpenHashMap();
+            this.keyInputs = keyInputs;
+            this.keyTypes = keyTypes.toArray(new DataType[keyTypes.size()]);
+            this.bits = new int[keyTypes.size()];
+            for (int i = 0; i < bits.length; i++) {
+                bits[i] = packedBits(this.keyTypes[i]);
+            }
+            this.keyValues = new Object[keyInputs.size()];
         }
 
         @Override
-        public void finish() {
-            if (downstream == null){
-                return;
+        protected void processRow() {
+            long key = 0;
+            for (int i = 0; i < keyValues.length; i++) {
+                Object value = keyInputs.get(i).value();
+                if (value == null) {
+                    keyValues[i] = null;
+                    processNullKey(i + 1);
+                    return;
+                }
+                keyValues[i] = value;
+                key = (key << bits[i]) | encode(value, bits[i]);
             }
-            Throwable throwable = failure.get();
-            if (throwable != null) {
-                downstream.fail(throwable);
+            if (packedResult.containsKey(key)) {
+                iterateGroup(packedResult.lget());
+            } else {
+                ramAccountingContext.addBytes(ENTRY_SIZE);
+                packedResult.put(key, newGroup());
             }
-            // account the multi-dimension `rows` array
-            // 1st level
-            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + result.size() * 4));
-            // 2nd level
-            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 +
-                    (keyInputs.size() + aggregators.length) * 4));
-            RowN row = new RowN(keyInputs.size() + aggregators.length);
-            for (Map.Entry<List<Object>, Object[]> entry : result.entrySet()) {
-                if (executionState.isKilled()) {
-                    downstream.fail(new CancellationException());
+        }
+
+        private void processNullKey(int numConsumed) {
+            List<Object> key = new ArrayList<>(keyValues.length);
+            for (int i = 0; i < numConsumed; i++) {
+                key.add(keyValues[i]);
+            }
+            for (int i = numConsumed; i < keyValues.length; i++) {
+                key.add(keyInputs.get(i).value());
+            }
+            // key list + 8 bytes per boxed entry
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + keyValues.length * 20));
+            processKey(key);
+        }
+
+        private long encode(Object value, int bits) {
+            if (bits == 1) {
+                return ((Boolean) value) ? 1L : 0L;
+            }
+            return ((Number) value).longValue() & ((1L << bits) - 1);
+        }
+
+        private Object decode(long key, int idx) {
+            long encoded = key & ((1L << bits[idx]) - 1);
+            if (bits[idx] == 1) {
+                return encoded == 1L;
+            }
+            // sign-extend
+            int shift = 64 - bits[idx];
+            return keyTypes[idx].value((encoded << shift) >> shift);
+        }
+
+        @Override
+        protected void emitGroups(RowN row) {
+            for (LongIntCursor cursor : packedResult) {
+                Object[] cells = newCells();
+                long key = cursor.key;
+                for (int i = keyValues.length - 1; i >= 0; i--) {
+                    cells[i] = decode(key, i);
+                    key = key >>> bits[i];
+                }
+                if (!emit(row, cells, cursor.value)) {
                     return;
                 }
+            }
+            super.emitGroups(row);
+        }
+    }
 
-                Object[] cells = new Object[row.size()];
-                transformToRow(entry, cells, aggregators);
-                row.cells(cells);
-                if (!downstream.setNextRow(row)){
-                    break;
+    /**
+     * Grouper for multiple keys of numeric, boolean, string or ip type.
+     * The values of all keys of a row are encoded into one byte sequence which is copied into a
+     * {@link BytesRefHash}, so neither a key list nor boxed key values are kept per group.
+     * Each value is prefixed with a null flag, numbers are written with the width of their type,
+     * floating point values using their bit representation, and strings are prefixed with their length.
+     * Keys whose encoding is too long for the BytesRefHash are handled by a regular {@link ManyKeyGrouper}.
+     */
+    private class EncodedKeysGrouper extends ManyKeyGrouper {
+
+        // 2 bytes length prefix in the byte pool, id and bytesStart int entries in the hash,
+        // group ordinal
+        private static final int ENTRY_OVERHEAD = 2 + 8 + 4 + 4;
+
+        private final BytesRefHash keys;
+        // maps the ordinals of the BytesRefHash to the group ordinals
+        private final IntArrayList groups;
+        private final List<Input<?>> keyInputs;
+        private final DataType[] keyTypes;
+        private final int[] widths;
+        private final Object[] keyValues;
+        private final BytesRef spare = new BytesRef(64);
+
+        public EncodedKeysGrouper(List<Input<?>> keyInputs,
+                                  List<? extends DataType> keyTypes,
+                                  CollectExpression[] collectExpressions,
+                                  GroupStates groupStates) {
+            super(keyInputs, keyTypes, collectExpressions, groupStates);
+            this.keys = new BytesRefHash();
+            this.groups = new IntArrayList();
+            this.keyInputs = keyInputs;
+            this.keyTypes = keyTypes.toArray(new DataType[keyTypes.size()]);
+            this.widths = new int[keyTypes.size()];
+            for (int i = 0; i < widths.length; i++) {
+                widths[i] = encodedWidth(this.keyTypes[i]);
+            }
+            this.keyValues = new Object[keyInputs.size()];
+        }
+
+        @Override
+        protected void processRow() {
+            spare.length = 0;
+            for (int i = 0; i < keyValues.length; i++) {
+                Object value = keyInputs.get(i).value();
+                if (value != null && widths[i] < 0 && !(value instanceof BytesRef)) {
+                    value = keyTypes[i].value(value);
                 }
+                keyValues[i] = value;
             }
-            downstream.finish();
+            if (!encode()) {
+                processLongKey();
+                return;
+            }
+            int ord = keys.add(spare);
+            if (ord < 0) {
+                iterateGroup(groups.get(-ord - 1));
+            } else {
+                ramAccountingContext.addBytes(RamAccountingContext.roundUp(spare.length + ENTRY_OVERHEAD));
+                groups.add(newGroup());
+            }
+        }
+
+        /**
+         * encode the current key values into the spare
+         *
+         * @return false if the encoded keys are too long for the BytesRefHash
+         */
+        private boolean encode() {
+            for (int i = 0; i < keyValues.length; i++) {
+                Object value = keyValues[i];
+                if (value == null) {
+                    writeByte(0);
+                    continue;
+                }
+                writeByte(1);
+                switch (widths[i]) {
+                    case -1:
+                        BytesRef bytes = (BytesRef) value;
+                        if (bytes.length > BytesRefKeyGrouper.MAX_HASHED_KEY_LENGTH) {
+                            return false;
+                        }
+                        writeNumber(bytes.length, 2);
+                        ensureCapacity(bytes.length);
+                        System.arraycopy(bytes.bytes, bytes.offset, spare.bytes, spare.length, bytes.length);
+                        spare.length += bytes.length;
+                        break;
+                    case 1:
+                        if (keyTypes[i].id() == BooleanType.ID) {
+                            writeByte(((Boolean) value) ? 1 : 0);
+                        } else {
+                            writeByte(((Number) value).byteValue());
+                        }
+                        break;
+                    default:
+                        if (keyTypes[i].id() == DoubleType.ID || keyTypes[i].id() == FloatType.ID) {
+                            writeNumber(Double.doubleToLongBits(((Number) value).doubleValue()), 8);
+                        } else {
+                            writeNumber(((Number) value).longValue(), widths[i]);
+                        }
+                }
+            }
+            return spare.length <= BytesRefKeyGrouper.MAX_HASHED_KEY_LENGTH;
+        }
+
+        private void writeByte(int b) {
+            ensureCapacity(1);
+            spare.bytes[spare.length++] = (byte) b;
+        }
+
+        private void writeNumber(long value, int width) {
+            ensureCapacity(width);
+            for (int shift = (width - 1) * 8; shift >= 0; shift -= 8) {
+                spare.bytes[spare.length++] = (byte) (value >>> shift);
+            }
+        }
+
+        private void ensureCapacity(int numBytes) {
+            spare.bytes = ArrayUtil.grow(spare.bytes, spare.length + numBytes);
+        }
+
+        private void processLongKey() {
+            List<Object> key = new ArrayList<>(keyValues.length);
+            for (Object keyValue : keyValues) {
+                key.add(keyValue instanceof BytesRef ? BytesRef.deepCopyOf((BytesRef) keyValue) : keyValue);
+            }
+            // key list + 8 bytes per boxed entry
+            ramAccountingContext.addBytes(RamAccountingContext.roundUp(12 + keyValues.length * 20));
+            processKey(key);
+        }
+
+        private void decode(BytesRef encoded, Object[] cells) {
+            int pos = encoded.offset;
+            byte[] bytes = encoded.bytes;
+            for (int i = 0; i < keyValues.length; i++) {
+                if (bytes[pos++] == 0) {
+                    cells[i] = null;
+                    continue;
+                }
+                if (widths[i] < 0) {
+                    int length = (int) readNumber(bytes, pos, 2) & 0xFFFF;
+                    pos += 2;
+                    cells[i] = new BytesRef(Arrays.copyOfRange(bytes, pos, pos + length));
+                    pos += length;
+                } else if (keyTypes[i].id() == BooleanType.ID) {
+                    cells[i] = bytes[pos++] == 1;
+                } else {
+                    long value = readNumber(bytes, pos, widths[i]);
+                    pos += widths[i];
+                    if (keyTypes[i].id() == DoubleType.ID || keyTypes[i].id() == FloatType.ID) {
+                        cells[i] = keyTypes[i].value(Double.longBitsToDouble(value));
+                    } else {
+                        cells[i] = keyTypes[i].value(value);
+                    }
+                }
+            }
+        }
+
+        /**
+         * read a big endian number and sign-extend it
+         */
+        private long readNumber(byte[] bytes, int pos, int width) {
+            long value = 0;
+            for (int i = 0; i < width; i++) {
+                value = (value << 8) | (bytes[pos + i] & 0xFFL);
+            }
+            int shift = 64 - width * 8;
+            return (value << shift) >> shift;
         }
 
         @Override
-        public void prepare(ExecutionState executionState) {
-            this.executionState = executionState;
+        protected void emitGroups(RowN row) {
+            BytesRef encoded = new BytesRef();
+            for (int ord = 0; ord < groups.size(); ord++) {
+                Object[] cells = newCells();
+                decode(keys.get(ord, encoded), cells);
+                if (!emit(row, cells, groups.get(ord))) {
+                    return;
+                }
+            }
+            super.emitGroups(row);
         }
     }
 }
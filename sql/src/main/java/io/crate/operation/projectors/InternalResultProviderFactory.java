@@ -23,18 +23,23 @@ package io.crate.operation.projectors;
 
 import com.google.common.collect.Lists;
 import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.executor.transport.distributed.DistributingDownstream;
 import io.crate.executor.transport.distributed.SingleBucketBuilder;
 import io.crate.executor.transport.distributed.TransportDistributedResultAction;
 import io.crate.planner.node.ExecutionNode;
 import io.crate.planner.node.ExecutionNodes;
 import io.crate.planner.node.StreamerVisitor;
+import io.crate.planner.node.dql.DQLPlanNode;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
 import org.elasticsearch.cluster.ClusterService;
 import org.elasticsearch.common.inject.Inject;
 import org.elasticsearch.common.inject.Singleton;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import java.util.UUID;
 
 @Singleton
@@ -53,7 +58,7 @@ public class InternalResultProviderFactory implements ResultProviderFactory {
         this.streamerVisitor = streamerVisitor;
     }
 
-    public ResultProvider createDownstream(ExecutionNode node, UUID jobId) {
+    public ResultProvider createDownstream(ExecutionNode node, UUID jobId, RamAccountingContext ramAccountingContext) {
         Streamer<?>[] streamers = getStreamers(node);
 
         if (ExecutionNodes.hasDirectResponseDownstream(node.downstreamNodes())) {
@@ -72,11 +77,29 @@ public class InternalResultProviderFactory implements ResultProviderFactory {
                     bucketIdx,
                     node.downstreamNodes(),
                     transportDistributedResultAction,
-                    streamers
+                    streamers,
+                    numKeyColumns(node),
+                    ramAccountingContext
             );
         }
     }
 
+    /**
+     * the rows of a group projection are distributed by all of their keys, other rows by their first column
+     */
+    private static int numKeyColumns(ExecutionNode node) {
+        if (node instanceof DQLPlanNode) {
+            List<Projection> projections = ((DQLPlanNode) node).projections();
+            if (!projections.isEmpty()) {
+                Projection last = projections.get(projections.size() - 1);
+                if (last instanceof GroupProjection) {
+                    return Math.max(1, ((GroupProjection) last).keys().size());
+                }
+            }
+        }
+        return 1;
+    }
+
     protected Streamer<?>[] getStreamers(ExecutionNode node) {
         return streamerVisitor.processExecutionNode(node).outputStreamers();
     }
@@ -21,6 +21,7 @@
 
 package io.crate.operation.projectors;
 
+import com.google.common.collect.ImmutableList;
 import io.crate.analyze.EvaluatingNormalizer;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.executor.transport.TransportActionProvider;
@@ -32,6 +33,7 @@ import io.crate.operation.collect.CollectExpression;
 import io.crate.planner.consumer.OrderByPositionVisitor;
 import io.crate.planner.projection.*;
 import io.crate.planner.symbol.*;
+import io.crate.types.DataType;
 import io.crate.types.StringType;
 import org.elasticsearch.action.bulk.BulkRetryCoordinatorPool;
 import org.elasticsearch.cluster.ClusterService;
@@ -40,6 +42,7 @@ import org.elasticsearch.index.shard.ShardId;
 import org.elasticsearch.threadpool.ThreadPool;
 
 import javax.annotation.Nullable;
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.ThreadPoolExecutor;
 
@@ -56,7 +59,13 @@ public class ProjectionToProjectorVisitor
 
     @Nullable
     private final ShardId shardId;
+    @Nullable
+    private final File spillDirectory;
 
+    /**
+     * @param spillDirectory directory of this node used by sorting and grouping projectors
+     *                       to write rows which don't fit into memory, null disables spilling
+     */
     public ProjectionToProjectorVisitor(ClusterService clusterService,
                                         ThreadPool threadPool,
                                         Settings settings,
@@ -64,7 +73,8 @@ public class ProjectionToProjectorVisitor
                                         BulkRetryCoordinatorPool bulkRetryCoordinatorPool,
                                         ImplementationSymbolVisitor symbolVisitor,
                                         EvaluatingNormalizer normalizer,
-                                        @Nullable ShardId shardId) {
+                                        @Nullable ShardId shardId,
+                                        @Nullable File spillDirectory) {
         this.clusterService = clusterService;
         this.threadPool = threadPool;
         this.settings = settings;
@@ -73,6 +83,19 @@ public class ProjectionToProjectorVisitor
         this.symbolVisitor = symbolVisitor;
         this.normalizer = normalizer;
         this.shardId = shardId;
+        this.spillDirectory = spillDirectory;
+    }
+
+    public ProjectionToProjectorVisitor(ClusterService clusterService,
+                                        ThreadPool threadPool,
+                                        Settings settings,
+                                        TransportActionProvider transportActionProvider,
+                                        BulkRetryCoordinatorPool bulkRetryCoordinatorPool,
+                                        ImplementationSymbolVisitor symbolVisitor,
+                                        EvaluatingNormalizer normalizer,
+                                        @Nullable ShardId shardId) {
+        this(clusterService, threadPool, settings, transportActionProvider, bulkRetryCoordinatorPool, symbolVisitor,
+                normalizer, shardId, null);
     }
 
     public ProjectionToProjectorVisitor(ClusterService clusterService,
@@ -90,15 +113,28 @@ public class ProjectionToProjectorVisitor
                                         Settings settings,
                                         TransportActionProvider transportActionProvider,
                                         BulkRetryCoordinatorPool bulkRetryCoordinatorPool,
-                                        ImplementationSymbolVisitor symbolVisitor) {
+                                        ImplementationSymbolVisitor symbolVisitor,
+                                        @Nullable File spillDirectory) {
         this(clusterService, threadPool, settings, transportActionProvider, bulkRetryCoordinatorPool, symbolVisitor,
                 new EvaluatingNormalizer(
                         symbolVisitor.functions(),
                         symbolVisitor.rowGranularity(),
-                        symbolVisitor.referenceResolver())
+                        symbolVisitor.referenceResolver()),
+                null,
+                spillDirectory
         );
     }
 
+    public ProjectionToProjectorVisitor(ClusterService clusterService,
+                                        ThreadPool threadPool,
+                                        Settings settings,
+                                        TransportActionProvider transportActionProvider,
+                                        BulkRetryCoordinatorPool bulkRetryCoordinatorPool,
+                                        ImplementationSymbolVisitor symbolVisitor) {
+        this(clusterService, threadPool, settings, transportActionProvider, bulkRetryCoordinatorPool, symbolVisitor,
+                (File) null);
+    }
+
     @Override
     public Projector visitTopNProjection(TopNProjection projection, Context context) {
         Projector projector;
@@ -131,7 +167,15 @@ public class ProjectionToProjectorVisitor
                     projection.reverseFlags(),
                     projection.nullsFirst(),
                     projection.limit(),
-                    projection.offset());
+                    projection.offset(),
+                    context.ramAccountingContext,
+                    ImmutableList.<DataType>builder()
+                            .addAll(Symbols.extractTypes(projection.outputs()))
+                            .addAll(Symbols.extractTypes(projection.orderBy()))
+                            .build(),
+                    spillDirectory,
+                    settings.getAsBytesSize(SortingTopNProjector.SPILL_THRESHOLD_SETTING,
+                            SortingTopNProjector.DEFAULT_SPILL_THRESHOLD).bytes());
         } else {
             projector = new SimpleTopNProjector(
                     inputs,
@@ -165,7 +209,8 @@ public class ProjectionToProjectorVisitor
                 keyInputs,
                 symbolContext.collectExpressions().toArray(new CollectExpression[symbolContext.collectExpressions().size()]),
                 symbolContext.aggregations(),
-                context.ramAccountingContext
+                context.ramAccountingContext,
+                spillDirectory
         );
     }
 
@@ -21,6 +21,7 @@
 
 package io.crate.operation.projectors;
 
+import io.crate.breaker.RamAccountingContext;
 import io.crate.planner.node.ExecutionNode;
 import org.elasticsearch.common.inject.ImplementedBy;
 
@@ -29,5 +30,5 @@ import java.util.UUID;
 @ImplementedBy(InternalResultProviderFactory.class)
 public interface ResultProviderFactory {
 
-    ResultProvider createDownstream(ExecutionNode node, UUID jobId);
+    ResultProvider createDownstream(ExecutionNode node, UUID jobId, RamAccountingContext ramAccountingContext);
 }
@@ -32,7 +32,7 @@ import java.util.List;
 import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicReference;
 
-public class SimpleTopNProjector implements Projector, RowUpstream, RowDownstreamHandle {
+public class SimpleTopNProjector implements Projector, RowUpstream, RowBatchDownstreamHandle {
 
     private final CollectExpression<?>[] collectExpressions;
     private final InputRow inputRow;
@@ -70,6 +70,20 @@ public class SimpleTopNProjector implements Projector, RowUpstream, RowDownstrea
 
     @Override
     public synchronized boolean setNextRow(Row row) {
+        return collectRow(row);
+    }
+
+    @Override
+    public synchronized boolean setNextRows(Iterable<Row> rows) {
+        for (Row row : rows) {
+            if (!collectRow(row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private boolean collectRow(Row row) {
         if (toCollect<1){
             return false;
         }
@@ -22,25 +22,65 @@
 package io.crate.operation.projectors;
 
 import com.google.common.base.Preconditions;
+import com.google.common.collect.AbstractIterator;
+import com.google.common.collect.Iterators;
+import com.google.common.collect.Ordering;
 import io.crate.Constants;
+import io.crate.Streamer;
+import io.crate.breaker.ConstSizeEstimator;
+import io.crate.breaker.RamAccountingContext;
+import io.crate.breaker.SizeEstimator;
+import io.crate.breaker.SizeEstimatorFactory;
 import io.crate.core.collections.ArrayBucket;
 import io.crate.core.collections.Bucket;
+import io.crate.core.collections.Buckets;
 import io.crate.core.collections.Row;
+import io.crate.exceptions.UnhandledServerException;
 import io.crate.executor.transport.distributed.ResultProviderBase;
+import io.crate.jobs.ContextCallback;
 import io.crate.jobs.ExecutionState;
+import io.crate.jobs.ExecutionSubContext;
 import io.crate.operation.Input;
+import io.crate.operation.RowBatchDownstreamHandle;
 import io.crate.operation.RowDownstream;
 import io.crate.operation.RowDownstreamHandle;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.projectors.sorting.OrderingByPosition;
 import io.crate.operation.projectors.sorting.RowPriorityQueue;
+import io.crate.types.DataType;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
 
-import java.util.Comparator;
+import javax.annotation.Nullable;
+import java.io.File;
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.CancellationException;
 
-public class SortingTopNProjector extends ResultProviderBase {
+public class SortingTopNProjector extends ResultProviderBase implements RowBatchDownstreamHandle {
+
+    /**
+     * the number of bytes the buffered rows of a sort without limit or with a large limit may use
+     * before they are written to disk
+     */
+    public static final String SPILL_THRESHOLD_SETTING = "sort.spill_threshold";
+    public static final ByteSizeValue DEFAULT_SPILL_THRESHOLD = new ByteSizeValue(64, ByteSizeUnit.MB);
+
+    /**
+     * number of buffered rows after which the used memory of the breaker is checked again
+     */
+    static final int SPILL_CHECK_INTERVAL = 1024;
+
+    /**
+     * estimated size of values without a {@link io.crate.breaker.SizeEstimator}, like objects and arrays
+     */
+    private static final long UNKNOWN_VALUE_SIZE = 64;
+
+    private static final int PAGE_SIZE = 1000;
 
     private final int offset;
     private final int maxSize;
+    private final boolean unbounded;
     private final int numOutputs;
 
     private RowDownstreamHandle downstream;
@@ -51,6 +91,19 @@ public class SortingTopNProjector extends ResultProviderBase {
     private final CollectExpression<?>[] collectExpressions;
     private Object[] spare;
 
+    private final RamAccountingContext ramAccountingContext;
+    private final List<? extends DataType> inputTypes;
+    private final SizeEstimator<Object>[] sizeEstimators;
+    @Nullable
+    private final File spillDirectory;
+    private final long spillThreshold;
+    private List<Object[]> buffer;
+    private SpilledRuns spilledRuns;
+    private volatile boolean released = false;
+    private long queuedBytes = 0;
+    private long numRows = 0;
+    private int nextSpillCheck = SPILL_CHECK_INTERVAL;
+
     /**
      * @param inputs             contains output {@link io.crate.operation.Input}s and orderBy {@link io.crate.operation.Input}s
      * @param collectExpressions gathered from outputs and orderBy inputs
@@ -68,6 +121,35 @@ public class SortingTopNProjector extends ResultProviderBase {
                                 Boolean[] nullsFirst,
                                 int limit,
                                 int offset) {
+        this(inputs, collectExpressions, numOutputs, orderBy, reverseFlags, nullsFirst, limit, offset,
+                null, null, null, 0L);
+    }
+
+    /**
+     * If a spillDirectory is given a sort without limit doesn't keep the rows in a bounded queue.
+     * The rows are buffered instead and sorted when the projection finishes. Once the buffered rows use more than
+     * spillThreshold bytes, or the breaker is close to its limit, they are sorted and written to a temporary file.
+     * These sorted runs are merged when the projection finishes and streamed to the downstream, or to the consumer
+     * of the result if there is no downstream.
+     * A sort with limit uses the bounded queue, unless the rows in the queue would use more than spillThreshold
+     * bytes. Then the rows of the queue are moved to the buffer and the sort continues like a sort without limit.
+     *
+     * @param inputTypes     the types of the inputs, required to write rows to disk
+     * @param spillDirectory directory for temporary files, if null all rows are kept in memory
+     * @param spillThreshold number of bytes the buffered rows may use before they are written to disk
+     */
+    public SortingTopNProjector(Input<?>[] inputs,
+                                CollectExpression<?>[] collectExpressions,
+                                int numOutputs,
+                                int[] orderBy,
+                                boolean[] reverseFlags,
+                                Boolean[] nullsFirst,
+                                int limit,
+                                int offset,
+                                @Nullable RamAccountingContext ramAccountingContext,
+                                @Nullable List<? extends DataType> inputTypes,
+                                @Nullable File spillDirectory,
+                                long spillThreshold) {
         Preconditions.checkArgument(limit >= TopN.NO_LIMIT, "invalid limit");
         Preconditions.checkArgument(offset >= 0, "invalid offset");
         assert nullsFirst.length == reverseFlags.length;
@@ -77,36 +159,187 @@ public class SortingTopNProjector extends ResultProviderBase {
         this.collectExpressions = collectExpressions;
         this.offset = offset;
 
+        boolean external = spillDirectory != null && ramAccountingContext != null && inputTypes != null;
+        this.unbounded = external && limit == TopN.NO_LIMIT;
         if (limit == TopN.NO_LIMIT) {
-            limit = Constants.DEFAULT_SELECT_LIMIT;
+            // only an external sort can return all rows, the queue of an in-memory sort has to be bounded
+            this.maxSize = unbounded ? Integer.MAX_VALUE : this.offset + Constants.DEFAULT_SELECT_LIMIT;
+        } else {
+            this.maxSize = this.offset + limit;
         }
-        this.maxSize = this.offset + limit;
         comparators = new Comparator[orderBy.length];
         for (int i = 0; i < orderBy.length; i++) {
             int col = orderBy[i];
             boolean reverse = reverseFlags[i];
             comparators[i] = OrderingByPosition.arrayOrdering(col, reverse, nullsFirst[i]);
         }
+
+        if (external) {
+            assert inputTypes.size() == inputs.length : "number of input types must match with number of inputs";
+            // the memory used by the buffer has to be known to release it after the rows were spilled
+            this.ramAccountingContext = ramAccountingContext.newChildContext();
+            this.inputTypes = inputTypes;
+            this.spillDirectory = spillDirectory;
+            this.spillThreshold = spillThreshold;
+            //noinspection unchecked
+            sizeEstimators = new SizeEstimator[inputTypes.size()];
+            for (int i = 0; i < sizeEstimators.length; i++) {
+                sizeEstimators[i] = sizeEstimator(inputTypes.get(i));
+            }
+        } else {
+            this.ramAccountingContext = null;
+            this.inputTypes = null;
+            this.spillDirectory = null;
+            this.spillThreshold = 0L;
+            sizeEstimators = null;
+        }
+    }
+
+    private static SizeEstimator<Object> sizeEstimator(DataType type) {
+        try {
+            return SizeEstimatorFactory.create(type);
+        } catch (UnsupportedOperationException e) {
+            return new ConstSizeEstimator(UNKNOWN_VALUE_SIZE);
+        }
+    }
+
+    private boolean isExternal() {
+        return buffer != null;
     }
 
     @Override
     public void startProjection(ExecutionState executionState) {
         super.startProjection(executionState);
         synchronized (this){
-            if (pq==null) {
+            if (unbounded) {
+                if (buffer == null) {
+                    buffer = new ArrayList<>();
+                }
+            } else if (pq==null) {
                 pq = new RowPriorityQueue<>(maxSize, comparators);
             }
         }
+        if (spillDirectory != null && executionState instanceof ExecutionSubContext) {
+            // the sorted rows may outlive the projection if they are never or only partially consumed
+            ((ExecutionSubContext) executionState).addCallback(new ContextCallback() {
+                @Override
+                public void onClose(@Nullable Throwable error, long bytesUsed) {
+                    releaseSortedRows();
+                }
+            });
+        }
     }
 
     @Override
     public synchronized boolean setNextRow(Row row) {
+        insertRow(row);
+        return true;
+    }
+
+    @Override
+    public synchronized boolean setNextRows(Iterable<Row> rows) {
+        for (Row row : rows) {
+            insertRow(row);
+        }
+        return true;
+    }
+
+    private void insertRow(Row row) {
+        if (isExternal()) {
+            spare = new Object[inputs.length];
+            evaluateRow(row);
+            bufferRow(spare);
+            return;
+        }
         if (spare == null) {
             spare = new Object[inputs.length];
         }
         evaluateRow(row);
+        if (spillDirectory != null && pq.size() < maxSize) {
+            // the queue grows until it is full, after that rows are only replaced
+            queuedBytes += rowBytes(spare);
+            if (queuedBytes >= spillThreshold) {
+                moveQueueToBuffer();
+                bufferRow(spare);
+                spare = null;
+                return;
+            }
+        }
         spare = pq.insertWithOverflow(spare);
-        return true;
+    }
+
+    /**
+     * continue like a sort without limit because the rows of the queue would use too much memory
+     */
+    private void moveQueueToBuffer() {
+        buffer = new ArrayList<>(pq.size());
+        for (int i = pq.size(); i > 0; i--) {
+            bufferRow(pq.pop());
+        }
+        pq = null;
+    }
+
+    /**
+     * @return the estimated size of the row array and its slot in the buffer
+     */
+    private long rowBytes(Object[] row) {
+        long bytes = RamAccountingContext.roundUp(12 + row.length * 4) + 8;
+        for (int i = 0; i < row.length; i++) {
+            bytes += sizeEstimators[i].estimateSize(row[i]);
+        }
+        return bytes;
+    }
+
+    private void bufferRow(Object[] row) {
+        buffer.add(row);
+        numRows++;
+
+        ramAccountingContext.addBytes(rowBytes(row));
+        if (ramAccountingContext.totalBytes() >= spillThreshold) {
+            spill();
+        } else if (buffer.size() >= nextSpillCheck) {
+            if (ramAccountingContext.shouldSpill()) {
+                spill();
+            } else {
+                nextSpillCheck = buffer.size() + SPILL_CHECK_INTERVAL;
+            }
+        }
+    }
+
+    /**
+     * sort the buffered rows, write them to disk and release the memory used by them
+     */
+    private void spill() {
+        if (spilledRuns == null) {
+            spilledRuns = new SpilledRuns(spillDirectory, streamers(), rowOrdering(), maxSize);
+        }
+        Collections.sort(buffer, rowOrdering());
+        long spilledBytes;
+        try {
+            spilledBytes = spilledRuns.add(buffer.iterator());
+        } catch (IOException e) {
+            throw new UnhandledServerException("Failed to write sorted rows to disk", e);
+        }
+        buffer.clear();
+        nextSpillCheck = SPILL_CHECK_INTERVAL;
+        ramAccountingContext.addSpilledBytes(spilledBytes);
+        ramAccountingContext.releaseBytes(ramAccountingContext.totalBytes());
+    }
+
+    private Streamer<?>[] streamers() {
+        Streamer<?>[] streamers = new Streamer[inputTypes.size()];
+        for (int i = 0; i < streamers.length; i++) {
+            streamers[i] = inputTypes.get(i).streamer();
+        }
+        return streamers;
+    }
+
+    /**
+     * the order in which the rows are emitted, the comparators are reversed because they are used by the queue
+     */
+    private Ordering<Object[]> rowOrdering() {
+        //noinspection unchecked
+        return Ordering.compound(Arrays.<Comparator<Object[]>>asList(comparators)).reverse();
     }
 
     private synchronized void evaluateRow(Row row) {
@@ -121,6 +354,9 @@ public class SortingTopNProjector extends ResultProviderBase {
 
     @Override
     public Bucket doFinish() {
+        if (isExternal()) {
+            return finishExternal();
+        }
         Bucket bucket;
         if (pq != null){
             final int resultSize = Math.max(pq.size() - offset, 0);
@@ -142,8 +378,164 @@ public class SortingTopNProjector extends ResultProviderBase {
         return bucket;
     }
 
+    /**
+     * sort the buffered rows and merge them with the spilled runs.
+     * If there is a downstream the rows are only streamed to it and the returned bucket is empty.
+     * Otherwise the returned bucket reads the sorted rows while it is iterated, see {@link SortedRowsBucket}.
+     */
+    private Bucket finishExternal() {
+        Collections.sort(buffer, rowOrdering());
+        if (downstream == null) {
+            return new SortedRowsBucket(buffer, spilledRuns, (int) Math.max(0L, Math.min(numRows, maxSize) - offset));
+        }
+        try {
+            Iterator<Object[]> rows = sortedRows(buffer, spilledRuns);
+            Object[][] page = new Object[PAGE_SIZE][];
+            while (rows.hasNext()) {
+                if (executionState != null && executionState.isKilled()) {
+                    throw new CancellationException();
+                }
+                int size = 0;
+                while (size < page.length && rows.hasNext()) {
+                    page[size++] = rows.next();
+                }
+                Bucket bucket = new ArrayBucket(size == page.length ? page : Arrays.copyOf(page, size), numOutputs);
+                for (Row row : bucket) {
+                    if (!downstream.setNextRow(row)) {
+                        downstream.finish();
+                        return Bucket.EMPTY;
+                    }
+                }
+            }
+            downstream.finish();
+            return Bucket.EMPTY;
+        } finally {
+            releaseSortedRows();
+        }
+    }
+
+    /**
+     * @return the rows after the offset in sorted order, merged from the buffer and the spilled runs
+     */
+    private Iterator<Object[]> sortedRows(List<Object[]> buffer, @Nullable SpilledRuns spilledRuns) {
+        Iterator<Object[]> rows;
+        if (spilledRuns == null) {
+            rows = Iterators.limit(buffer.iterator(), maxSize);
+        } else {
+            try {
+                rows = spilledRuns.merge(buffer.iterator());
+            } catch (IOException e) {
+                throw new UnhandledServerException("Failed to read sorted rows from disk", e);
+            }
+        }
+        Iterators.advance(rows, offset);
+        return rows;
+    }
+
+    /**
+     * release the memory of the buffered rows and delete the spilled runs once the sorted rows were consumed
+     * or the context of the projection is closed or killed
+     */
+    private synchronized void releaseSortedRows() {
+        released = true;
+        buffer = null;
+        ramAccountingContext.releaseBytes(ramAccountingContext.totalBytes());
+        if (spilledRuns != null) {
+            spilledRuns.close();
+            spilledRuns = null;
+        }
+    }
+
+    /**
+     * the result of an external sort without downstream. The rows are merged while the bucket is iterated,
+     * so they are never all kept in memory at once, which means the bucket can only be iterated once.
+     * The buffered rows stay accounted and the spilled runs are kept until the iteration is done,
+     * or until the context of the projection is closed if the rows are never or only partially consumed.
+     */
+    private class SortedRowsBucket implements Bucket {
+
+        private final List<Object[]> buffer;
+        @Nullable
+        private final SpilledRuns spilledRuns;
+        private final int size;
+        private boolean iterated = false;
+
+        private SortedRowsBucket(List<Object[]> buffer, @Nullable SpilledRuns spilledRuns, int size) {
+            this.buffer = buffer;
+            this.spilledRuns = spilledRuns;
+            this.size = size;
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+        @Override
+        public synchronized Iterator<Row> iterator() {
+            Preconditions.checkState(!iterated, "sorted rows can only be iterated once");
+            iterated = true;
+            final Iterator<Object[]> rows;
+            synchronized (SortingTopNProjector.this) {
+                Preconditions.checkState(!released, "sorted rows were already released");
+                try {
+                    rows = sortedRows(buffer, spilledRuns);
+                } catch (RuntimeException e) {
+                    releaseSortedRows();
+                    throw e;
+                }
+            }
+            return new AbstractIterator<Row>() {
+
+                private Object[] current;
+                private final Row row = new Row() {
+                    @Override
+                    public int size() {
+                        return numOutputs;
+                    }
+
+                    @Override
+                    public Object get(int index) {
+                        return current[index];
+                    }
+
+                    @Override
+                    public Object[] materialize() {
+                        return Buckets.materialize(this);
+                    }
+                };
+
+                @Override
+                protected Row computeNext() {
+                    try {
+                        if (executionState != null && executionState.isKilled()) {
+                            throw new CancellationException();
+                        }
+                        Preconditions.checkState(!released, "sorted rows were released before they were consumed");
+                        if (rows.hasNext()) {
+                            current = rows.next();
+                            return row;
+                        }
+                    } catch (RuntimeException e) {
+                        releaseSortedRows();
+                        throw e;
+                    }
+                    releaseSortedRows();
+                    return endOfData();
+                }
+            };
+        }
+    }
+
     @Override
     public Throwable doFail(Throwable t) {
+        synchronized (this) {
+            buffer = null;
+            if (spilledRuns != null) {
+                spilledRuns.close();
+                spilledRuns = null;
+            }
+        }
         if (downstream != null) {
             downstream.fail(t);
         }
@@ -0,0 +1,86 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors;
+
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.inject.Singleton;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.env.NodeEnvironment;
+
+import javax.annotation.Nullable;
+import java.io.File;
+
+/**
+ * directory below the data path of this node where projectors write temporary files.
+ *
+ * The directory belongs to this node only, other nodes started on the same data path
+ * use their own node directories. Files left behind by a previous run of the node are
+ * deleted when the directory is created, before any projector is able to write to it.
+ */
+@Singleton
+public class SpillDirectory {
+
+    private static final ESLogger LOGGER = Loggers.getLogger(SpillDirectory.class);
+    private static final String SPILL_FILE_SUFFIX = ".spill";
+
+    @Nullable
+    private final File directory;
+
+    @Inject
+    public SpillDirectory(NodeEnvironment nodeEnvironment) {
+        if (nodeEnvironment.hasNodeFile()) {
+            directory = new File(nodeEnvironment.nodeDataPaths()[0].toFile(), "spill");
+        } else {
+            // a node without local storage keeps everything in memory
+            directory = null;
+        }
+        deleteSpillFiles();
+    }
+
+    /**
+     * @return the directory or null if this node has no local storage
+     */
+    @Nullable
+    public File directory() {
+        return directory;
+    }
+
+    /**
+     * delete the spill files which were left behind because the node was stopped or killed while they were in use
+     */
+    private void deleteSpillFiles() {
+        if (directory == null) {
+            return;
+        }
+        File[] files = directory.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isFile() && file.getName().endsWith(SPILL_FILE_SUFFIX) && !file.delete()) {
+                LOGGER.warn("Failed to delete spill file {}", file);
+            }
+        }
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import com.carrotsearch.hppc.hash.MurmurHash3;
+import com.google.common.io.CountingOutputStream;
+import io.crate.Streamer;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import javax.annotation.Nullable;
+import java.io.*;
+import java.util.Locale;
+
+/**
+ * Groups which have been written to temporary files because the memory limit was about to be reached.
+ *
+ * A group is written as its key values followed by its aggregation states in their partial form.
+ * The groups are hash partitioned by their keys, so all states of one group end up in the same partition
+ * and the partitions can be merged one after the other.
+ */
+class SpilledGroups implements Closeable {
+
+    static final int NUM_PARTITIONS = 16;
+
+    private static final ESLogger LOGGER = Loggers.getLogger(SpilledGroups.class);
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final File directory;
+    private final int numKeys;
+    private final Streamer<?>[] streamers;
+    private final File[] files = new File[NUM_PARTITIONS];
+    private final CountingOutputStream[] counters = new CountingOutputStream[NUM_PARTITIONS];
+    private final StreamOutput[] outputs = new StreamOutput[NUM_PARTITIONS];
+    private final int[] numGroups = new int[NUM_PARTITIONS];
+    private long flushedBytes = 0;
+
+    /**
+     * @param streamers the streamers of the keys followed by the streamers of the partial states
+     */
+    SpilledGroups(File directory, int numKeys, Streamer<?>[] streamers) {
+        this.directory = directory;
+        this.numKeys = numKeys;
+        this.streamers = streamers;
+    }
+
+    /**
+     * @param cells the key values followed by the partial states of a group
+     */
+    void add(Object[] cells) throws IOException {
+        int partition = partition(cells);
+        StreamOutput out = output(partition);
+        for (int i = 0; i < streamers.length; i++) {
+            streamers[i].writeValueTo(out, cells[i]);
+        }
+        numGroups[partition]++;
+    }
+
+    private int partition(Object[] cells) {
+        int hash = 1;
+        for (int i = 0; i < numKeys; i++) {
+            hash = 31 * hash + (cells[i] == null ? 0 : cells[i].hashCode());
+        }
+        return (MurmurHash3.hash(hash) & Integer.MAX_VALUE) % NUM_PARTITIONS;
+    }
+
+    private StreamOutput output(int partition) throws IOException {
+        StreamOutput out = outputs[partition];
+        if (out == null) {
+            if (!directory.exists() && !directory.mkdirs()) {
+                throw new IOException(String.format(Locale.ENGLISH, "Failed to create directory '%s'", directory));
+            }
+            files[partition] = File.createTempFile("groups-", ".spill", directory);
+            counters[partition] = new CountingOutputStream(
+                    new BufferedOutputStream(new FileOutputStream(files[partition]), BUFFER_SIZE));
+            out = new OutputStreamStreamOutput(counters[partition]);
+            outputs[partition] = out;
+        }
+        return out;
+    }
+
+    /**
+     * flush the written groups to disk
+     *
+     * @return the number of bytes written since the last flush
+     */
+    long flush() throws IOException {
+        long written = 0;
+        for (int i = 0; i < NUM_PARTITIONS; i++) {
+            if (outputs[i] != null) {
+                outputs[i].flush();
+                written += counters[i].getCount();
+            }
+        }
+        long bytes = written - flushedBytes;
+        flushedBytes = written;
+        return bytes;
+    }
+
+    boolean isEmpty() {
+        for (int num : numGroups) {
+            if (num > 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int numGroups(int partition) {
+        return numGroups[partition];
+    }
+
+    /**
+     * open a partition for reading, no more groups must be added afterwards.
+     *
+     * @return the input to read {@link #numGroups(int)} groups from with {@link #readGroup(StreamInput)}
+     *         or null if the partition is empty
+     */
+    @Nullable
+    StreamInput openPartition(int partition) throws IOException {
+        if (outputs[partition] == null) {
+            return null;
+        }
+        outputs[partition].close();
+        outputs[partition] = null;
+        return new InputStreamStreamInput(
+                new BufferedInputStream(new FileInputStream(files[partition]), BUFFER_SIZE));
+    }
+
+    /**
+     * @return the key values followed by the partial states of a group
+     */
+    Object[] readGroup(StreamInput in) throws IOException {
+        Object[] cells = new Object[streamers.length];
+        for (int i = 0; i < streamers.length; i++) {
+            cells[i] = streamers[i].readValueFrom(in);
+        }
+        return cells;
+    }
+
+    /**
+     * close the outputs and delete the files
+     */
+    @Override
+    public void close() {
+        for (int i = 0; i < NUM_PARTITIONS; i++) {
+            if (outputs[i] != null) {
+                try {
+                    outputs[i].close();
+                } catch (IOException e) {
+                    LOGGER.warn("Failed to close spill file {}", e, files[i]);
+                }
+                outputs[i] = null;
+            }
+            if (files[i] != null && !files[i].delete()) {
+                LOGGER.warn("Failed to delete spill file {}", files[i]);
+            }
+            files[i] = null;
+        }
+    }
+}
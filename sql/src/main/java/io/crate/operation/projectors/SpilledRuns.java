@@ -0,0 +1,333 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors;
+
+import com.google.common.collect.AbstractIterator;
+import com.google.common.io.CountingOutputStream;
+import io.crate.Streamer;
+import io.crate.exceptions.UnhandledServerException;
+import org.apache.lucene.util.PriorityQueue;
+import org.elasticsearch.common.io.stream.InputStreamStreamInput;
+import org.elasticsearch.common.io.stream.OutputStreamStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.elasticsearch.common.logging.ESLogger;
+import org.elasticsearch.common.logging.Loggers;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Sorted runs of rows which have been written to temporary files because the memory limit was about to be reached.
+ *
+ * The runs are merged into one sorted stream of rows with {@link #merge(Iterator)}.
+ * Runs are merged in levels: once {@link #MAX_MERGE_WIDTH} runs of the same level exist they are
+ * merged into one run of the next level, so every row is only rewritten once per level.
+ * Before the final merge the smallest runs are merged until at most {@link #MAX_MERGE_WIDTH} files
+ * have to be read concurrently.
+ */
+class SpilledRuns implements Closeable {
+
+    /**
+     * the maximum number of runs which are merged at once
+     */
+    static final int MAX_MERGE_WIDTH = 64;
+
+    private static final ESLogger LOGGER = Loggers.getLogger(SpilledRuns.class);
+    private static final int WRITE_BUFFER_SIZE = 64 * 1024;
+    private static final int READ_BUFFER_SIZE = 8 * 1024;
+
+    private final File directory;
+    private final Streamer<?>[] streamers;
+    private final Comparator<Object[]> ordering;
+    private final int maxRows;
+    private final List<Run> runs = new ArrayList<>();
+    private final List<FileCursor> openCursors = new ArrayList<>();
+
+    /**
+     * @param streamers a streamer for each column of the rows
+     * @param ordering  the order of the rows within the runs
+     * @param maxRows   the maximum number of rows which are read from all runs together,
+     *                  more rows are never written
+     */
+    SpilledRuns(File directory, Streamer<?>[] streamers, Comparator<Object[]> ordering, int maxRows) {
+        this.directory = directory;
+        this.streamers = streamers;
+        this.ordering = ordering;
+        this.maxRows = maxRows;
+    }
+
+    /**
+     * write a run to disk
+     *
+     * @param rows rows which are already sorted by the ordering of this instance
+     * @return the number of bytes written
+     */
+    long add(Iterator<Object[]> rows) throws IOException {
+        long bytes = writeRun(rows, 0);
+        for (int level = 0; ; level++) {
+            List<Run> sameLevel = new ArrayList<>();
+            for (Run run : runs) {
+                if (run.level == level) {
+                    sameLevel.add(run);
+                }
+            }
+            if (sameLevel.size() < MAX_MERGE_WIDTH) {
+                return bytes;
+            }
+            bytes += mergeRuns(sameLevel, level + 1);
+        }
+    }
+
+    /**
+     * replace the given runs with a single run containing all their rows
+     *
+     * @return the number of bytes written
+     */
+    private long mergeRuns(List<Run> toMerge, int level) throws IOException {
+        runs.removeAll(toMerge);
+        try {
+            return writeRun(merge(toMerge, null), level);
+        } finally {
+            for (Run run : toMerge) {
+                run.delete();
+            }
+        }
+    }
+
+    private long writeRun(Iterator<Object[]> rows, int level) throws IOException {
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException(String.format(Locale.ENGLISH, "Failed to create directory '%s'", directory));
+        }
+        Run run = new Run(File.createTempFile("sort-", ".spill", directory), level);
+        runs.add(run);
+        CountingOutputStream counter = new CountingOutputStream(
+                new BufferedOutputStream(new FileOutputStream(run.file), WRITE_BUFFER_SIZE));
+        try (StreamOutput out = new OutputStreamStreamOutput(counter)) {
+            while (run.numRows < maxRows && rows.hasNext()) {
+                Object[] row = rows.next();
+                for (int i = 0; i < streamers.length; i++) {
+                    streamers[i].writeValueTo(out, row[i]);
+                }
+                run.numRows++;
+            }
+        }
+        return counter.getCount();
+    }
+
+    boolean isEmpty() {
+        return runs.isEmpty();
+    }
+
+    /**
+     * merge all runs and the rows which are still in memory
+     *
+     * @param inMemoryRows rows which are sorted by the ordering of this instance
+     * @return all rows in order, at most maxRows rows.
+     *         An {@link UnhandledServerException} is thrown while iterating if reading fails
+     */
+    Iterator<Object[]> merge(Iterator<Object[]> inMemoryRows) throws IOException {
+        if (runs.size() >= MAX_MERGE_WIDTH) {
+            // leave room for the cursor on the rows in memory
+            List<Run> smallest = new ArrayList<>(runs);
+            Collections.sort(smallest, new Comparator<Run>() {
+                @Override
+                public int compare(Run o1, Run o2) {
+                    return Integer.compare(o1.numRows, o2.numRows);
+                }
+            });
+            mergeRuns(smallest.subList(0, runs.size() - MAX_MERGE_WIDTH + 2), Integer.MAX_VALUE);
+        }
+        return merge(runs, inMemoryRows);
+    }
+
+    private Iterator<Object[]> merge(List<Run> runs, Iterator<Object[]> inMemoryRows) throws IOException {
+        final PriorityQueue<RunCursor> queue = new PriorityQueue<RunCursor>(runs.size() + 1) {
+            @Override
+            protected boolean lessThan(RunCursor a, RunCursor b) {
+                return ordering.compare(a.current, b.current) < 0;
+            }
+        };
+        for (Run run : runs) {
+            RunCursor cursor = openCursor(run);
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+        if (inMemoryRows != null) {
+            RunCursor cursor = new IteratorCursor(inMemoryRows);
+            if (cursor.next()) {
+                queue.add(cursor);
+            }
+        }
+        return new AbstractIterator<Object[]>() {
+
+            private int emitted = 0;
+
+            @Override
+            protected Object[] computeNext() {
+                if (queue.size() == 0 || emitted >= maxRows) {
+                    closeCursors(queue);
+                    return endOfData();
+                }
+                RunCursor top = queue.top();
+                Object[] row = top.current;
+                try {
+                    if (top.next()) {
+                        queue.updateTop();
+                    } else {
+                        queue.pop();
+                    }
+                } catch (IOException e) {
+                    closeCursors(queue);
+                    throw new UnhandledServerException("Failed to read sorted rows from disk", e);
+                }
+                emitted++;
+                return row;
+            }
+        };
+    }
+
+    private synchronized FileCursor openCursor(Run run) throws IOException {
+        FileCursor cursor = new FileCursor(run);
+        openCursors.add(cursor);
+        return cursor;
+    }
+
+    private synchronized void cursorClosed(FileCursor cursor) {
+        openCursors.remove(cursor);
+    }
+
+    private static void closeCursors(PriorityQueue<RunCursor> queue) {
+        while (queue.size() > 0) {
+            queue.pop().close();
+        }
+    }
+
+    /**
+     * close the readers and delete the files, also if the merged rows are still being read
+     */
+    @Override
+    public synchronized void close() {
+        for (FileCursor cursor : new ArrayList<>(openCursors)) {
+            cursor.close();
+        }
+        for (Run run : runs) {
+            run.delete();
+        }
+        runs.clear();
+    }
+
+    private static class Run {
+
+        private final File file;
+        private final int level;
+        private int numRows = 0;
+
+        private Run(File file, int level) {
+            this.file = file;
+            this.level = level;
+        }
+
+        private void delete() {
+            if (!file.delete()) {
+                LOGGER.warn("Failed to delete spill file {}", file);
+            }
+        }
+    }
+
+    private abstract static class RunCursor implements Closeable {
+
+        Object[] current;
+
+        /**
+         * move to the next row
+         *
+         * @return false if there are no more rows
+         */
+        abstract boolean next() throws IOException;
+
+        @Override
+        public void close() {
+        }
+    }
+
+    private class FileCursor extends RunCursor {
+
+        private final StreamInput in;
+        private int remaining;
+
+        private FileCursor(Run run) throws IOException {
+            this.in = new InputStreamStreamInput(
+                    new BufferedInputStream(new FileInputStream(run.file), READ_BUFFER_SIZE));
+            this.remaining = run.numRows;
+        }
+
+        @Override
+        boolean next() throws IOException {
+            if (remaining == 0) {
+                close();
+                return false;
+            }
+            remaining--;
+            Object[] row = new Object[streamers.length];
+            for (int i = 0; i < streamers.length; i++) {
+                row[i] = streamers[i].readValueFrom(in);
+            }
+            current = row;
+            return true;
+        }
+
+        @Override
+        public void close() {
+            try {
+                in.close();
+            } catch (IOException e) {
+                LOGGER.warn("Failed to close spill file", e);
+            }
+            cursorClosed(this);
+        }
+    }
+
+    private static class IteratorCursor extends RunCursor {
+
+        private final Iterator<Object[]> rows;
+
+        private IteratorCursor(Iterator<Object[]> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        boolean next() {
+            if (rows.hasNext()) {
+                current = rows.next();
+                return true;
+            }
+            return false;
+        }
+    }
+}
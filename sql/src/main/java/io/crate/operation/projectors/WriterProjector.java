@@ -93,7 +93,7 @@ public class WriterProjector implements Projector, RowDownstreamHandle {
             throw new ValidationException(String.format("Invalid uri '%s'", uri), e);
         }
         if (this.uri.getScheme() == null || this.uri.getScheme().equals("file")) {
-            this.output = new OutputFile(this.uri, settings);
+            this.output = new OutputFile(executorService, this.uri, settings);
         } else if (this.uri.getScheme().equalsIgnoreCase("s3")) {
             this.output = new OutputS3(executorService, this.uri, settings);
         } else {
@@ -184,6 +184,12 @@ public class WriterProjector implements Projector, RowDownstreamHandle {
             return false;
         }
         rowWriter.write(row);
+        try {
+            output.rowWritten();
+        } catch (IOException e) {
+            failure.set(new UnhandledServerException("Failed to write row to output", e));
+            return false;
+        }
         counter.incrementAndGet();
         return true;
     }
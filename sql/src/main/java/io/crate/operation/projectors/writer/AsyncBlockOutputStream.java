@@ -0,0 +1,184 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import com.google.common.util.concurrent.*;
+
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * An output stream which collects the written bytes into blocks, encodes the blocks concurrently
+ * and writes the encoded blocks in order to the underlying stream, without blocking the writer.
+ *
+ * At most {@link #maxPendingBlocks} blocks are encoded or written at once,
+ * a writer which is faster than the underlying stream has to wait until the oldest block has been written.
+ *
+ * {@link #flush()} doesn't write the current block, it is only written once it is full or the stream is closed.
+ */
+public class AsyncBlockOutputStream extends OutputStream {
+
+    public static final int DEFAULT_BLOCK_SIZE = 128 * 1024;
+
+    public interface BlockEncoder {
+
+        byte[] encode(byte[] block, int length) throws IOException;
+    }
+
+    public static final BlockEncoder NONE = new BlockEncoder() {
+        @Override
+        public byte[] encode(byte[] block, int length) {
+            return length == block.length ? block : Arrays.copyOf(block, length);
+        }
+    };
+
+    /**
+     * encodes every block as a gzip member, a file of concatenated members is a valid gzip file
+     */
+    public static final BlockEncoder GZIP = new BlockEncoder() {
+        @Override
+        public byte[] encode(byte[] block, int length) throws IOException {
+            ByteArrayOutputStream out = new ByteArrayOutputStream(length / 4);
+            try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+                gzip.write(block, 0, length);
+            }
+            return out.toByteArray();
+        }
+    };
+
+    private final OutputStream out;
+    private final ListeningExecutorService executor;
+    private final BlockEncoder encoder;
+    private final int blockSize;
+    private final int maxPendingBlocks;
+    private final ArrayDeque<ListenableFuture<Void>> pendingBlocks = new ArrayDeque<>();
+
+    private byte[] block;
+    private int blockLength = 0;
+    private ListenableFuture<Void> lastWrite = Futures.immediateFuture(null);
+    private boolean hasBlocks = false;
+    private boolean closed = false;
+
+    public AsyncBlockOutputStream(OutputStream out, ExecutorService executor, BlockEncoder encoder) {
+        this(out, executor, encoder, DEFAULT_BLOCK_SIZE, Math.max(2, Math.min(8, Runtime.getRuntime().availableProcessors())));
+    }
+
+    public AsyncBlockOutputStream(OutputStream out,
+                                  ExecutorService executor,
+                                  BlockEncoder encoder,
+                                  int blockSize,
+                                  int maxPendingBlocks) {
+        this.out = out;
+        this.executor = MoreExecutors.listeningDecorator(executor);
+        this.encoder = encoder;
+        this.blockSize = blockSize;
+        this.maxPendingBlocks = maxPendingBlocks;
+        this.block = new byte[blockSize];
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        if (blockLength == blockSize) {
+            writeBlock();
+        }
+        block[blockLength++] = (byte) b;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        while (len > 0) {
+            if (blockLength == blockSize) {
+                writeBlock();
+            }
+            int length = Math.min(len, blockSize - blockLength);
+            System.arraycopy(b, off, block, blockLength, length);
+            blockLength += length;
+            off += length;
+            len -= length;
+        }
+    }
+
+    private void writeBlock() throws IOException {
+        if (pendingBlocks.size() >= maxPendingBlocks) {
+            waitFor(pendingBlocks.poll());
+        }
+        final byte[] currentBlock = block;
+        final int currentLength = blockLength;
+        final ListenableFuture<byte[]> encoded = executor.submit(new Callable<byte[]>() {
+            @Override
+            public byte[] call() throws Exception {
+                return encoder.encode(currentBlock, currentLength);
+            }
+        });
+        // the blocks are written one after another in the order they have been created
+        lastWrite = Futures.transform(Futures.allAsList(encoded, lastWrite), new AsyncFunction<List<Object>, Void>() {
+            @Override
+            public ListenableFuture<Void> apply(@Nullable List<Object> input) throws Exception {
+                out.write(encoded.get());
+                return Futures.immediateFuture(null);
+            }
+        });
+        pendingBlocks.add(lastWrite);
+        hasBlocks = true;
+        block = new byte[blockSize];
+        blockLength = 0;
+    }
+
+    private static void waitFor(ListenableFuture<Void> future) throws IOException {
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while writing output", e);
+        } catch (ExecutionException e) {
+            // the failure is rethrown for every following write, so it's wrapped for each of them
+            throw new IOException(e.getCause().getMessage(), e.getCause());
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            if (blockLength > 0 || !hasBlocks) {
+                // an empty output is encoded as well, so that e.g. an empty gzip file is valid
+                writeBlock();
+            }
+            waitFor(lastWrite);
+        } finally {
+            pendingBlocks.clear();
+            out.close();
+        }
+    }
+}
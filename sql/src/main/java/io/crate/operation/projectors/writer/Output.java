@@ -25,6 +25,7 @@ import com.google.common.base.Preconditions;
 import org.elasticsearch.common.settings.Settings;
 
 import java.io.OutputStream;
+import java.util.concurrent.ExecutorService;
 
 public abstract class Output {
 
@@ -34,6 +35,12 @@ public abstract class Output {
 
     public abstract OutputStream getOutputStream();
 
+    /**
+     * called after a complete row has been written to the output stream
+     */
+    public void rowWritten() throws java.io.IOException {
+    }
+
     protected boolean parseCompression(Settings settings) {
         String compressionType = settings.get("compression");
         if (compressionType != null) {
@@ -44,4 +51,14 @@ public abstract class Output {
 
         return false;
     }
+
+    /**
+     * @return a stream which compresses and writes the data asynchronously to the given stream
+     */
+    protected static OutputStream asyncOutputStream(OutputStream outputStream,
+                                                    ExecutorService executorService,
+                                                    boolean compression) {
+        return new AsyncBlockOutputStream(outputStream, executorService,
+                compression ? AsyncBlockOutputStream.GZIP : AsyncBlockOutputStream.NONE);
+    }
 }
@@ -23,30 +23,53 @@ package io.crate.operation.projectors.writer;
 
 import org.elasticsearch.common.Preconditions;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.unit.ByteSizeValue;
 
 import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.OutputStream;
 import java.net.URI;
-import java.util.zip.GZIPOutputStream;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
 
+/**
+ * Writes to a file on the local file system.
+ *
+ * If the <code>max_file_size</code> setting is given, a new file is started once the current file has
+ * reached that size (before compression). The files after the first one get a number appended to their name,
+ * e.g. <code>out_1.json</code> for <code>out.json</code>.
+ */
 public class OutputFile extends Output {
 
+    public static final String MAX_FILE_SIZE = "max_file_size";
+
+    private final ExecutorService executorService;
     private final String path;
-    private OutputStream os;
     private final boolean overwrite;
     private final boolean compression;
+    private final long maxFileSize;
+    private final RolloverOutputStream outputStream = new RolloverOutputStream();
+    private int fileNumber = 0;
 
-    public OutputFile(URI uri, Settings settings) {
+    public OutputFile(ExecutorService executorService, URI uri, Settings settings) {
         Preconditions.checkArgument(uri.getHost() == null);
+        this.executorService = executorService;
         this.path = uri.getPath();
         compression = parseCompression(settings);
+        ByteSizeValue maxFileSize = settings.getAsBytesSize(MAX_FILE_SIZE, null);
+        this.maxFileSize = maxFileSize == null ? -1L : maxFileSize.bytes();
+        Preconditions.checkArgument(maxFileSize == null || this.maxFileSize > 0,
+                String.format(Locale.ENGLISH, "%s must be greater than 0", MAX_FILE_SIZE));
         this.overwrite = true;
     }
 
     @Override
     public void open() throws IOException {
+        outputStream.current = openFile(path);
+    }
+
+    private OutputStream openFile(String path) throws IOException {
         File outFile = new File(path);
         if (outFile.exists()){
             if (!overwrite){
@@ -56,22 +79,80 @@ public class OutputFile extends Output {
                 throw new IOException("Output path is a directory: " + path);
             }
         }
-        os = new FileOutputStream(outFile);
-        if (compression) {
-            os = new GZIPOutputStream(os);
+        return asyncOutputStream(new FileOutputStream(outFile), executorService, compression);
+    }
+
+    /**
+     * @return the path of the file with the given number, the number is inserted before the extension
+     */
+    static String rolloverPath(String path, int fileNumber) {
+        if (fileNumber == 0) {
+            return path;
+        }
+        int nameStart = path.lastIndexOf('/') + 1;
+        int extensionStart = path.indexOf('.', nameStart);
+        if (extensionStart == -1) {
+            extensionStart = path.length();
+        }
+        return String.format(Locale.ENGLISH, "%s_%d%s",
+                path.substring(0, extensionStart), fileNumber, path.substring(extensionStart));
+    }
+
+    @Override
+    public void rowWritten() throws IOException {
+        if (maxFileSize > 0 && outputStream.bytesWritten >= maxFileSize) {
+            outputStream.current.close();
+            outputStream.current = null;
+            outputStream.bytesWritten = 0;
+            fileNumber++;
+            outputStream.current = openFile(rolloverPath(path, fileNumber));
         }
     }
 
     @Override
     public void close() throws IOException {
-        if (os != null) { // if open failed os is null here
-            os.close();
-            os = null;
+        if (outputStream.current != null) { // if open failed the stream is null here
+            outputStream.current.close();
+            outputStream.current = null;
         }
     }
 
     @Override
     public OutputStream getOutputStream() {
-        return os;
+        return outputStream;
+    }
+
+    /**
+     * writes to the stream of the current file
+     */
+    private static class RolloverOutputStream extends OutputStream {
+
+        private OutputStream current;
+        private long bytesWritten = 0;
+
+        @Override
+        public void write(int b) throws IOException {
+            current.write(b);
+            bytesWritten++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            current.write(b, off, len);
+            bytesWritten += len;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            current.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            if (current != null) {
+                current.close();
+                current = null;
+            }
+        }
     }
 }
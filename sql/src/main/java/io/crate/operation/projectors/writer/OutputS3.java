@@ -40,7 +40,6 @@ import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
 import java.util.concurrent.*;
-import java.util.zip.GZIPOutputStream;
 
 import static org.elasticsearch.common.util.concurrent.EsExecutors.daemonThreadFactory;
 
@@ -60,10 +59,8 @@ public class OutputS3 extends Output {
 
     @Override
     public void open() throws IOException {
-        outputStream = new S3OutputStream(executorService, uri, new S3ClientHelper());
-        if (compression) {
-            outputStream = new GZIPOutputStream(outputStream);
-        }
+        outputStream = asyncOutputStream(
+                new S3OutputStream(executorService, uri, new S3ClientHelper()), executorService, compression);
     }
 
     @Override
@@ -29,7 +29,7 @@ public class BlobLastModifiedExpression extends BlobCollectorExpression<Long> {
 
     @Override
     public Long value() {
-        return blob.lastModified();
+        return lastModified;
     }
 
 }
@@ -23,16 +23,60 @@ package io.crate.operation.reference.file;
 
 import io.crate.metadata.ColumnIdent;
 import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.ElasticsearchParseException;
+import org.elasticsearch.common.xcontent.XContentFactory;
 import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentParser;
 
 import javax.annotation.Nullable;
-import java.util.LinkedList;
-import java.util.Map;
+import java.io.IOException;
+import java.util.*;
 
+/**
+ * The current line of a file which is collected.
+ *
+ * Columns which are registered with {@link #registerColumn(ColumnIdent)} are extracted with a single streaming
+ * scan of the line which skips all other values, so the line is only parsed into a map if the whole
+ * source is requested with {@link #sourceAsMap()} or if the source is needed as map anyway.
+ */
 public class LineContext {
 
+    private final Map<String, ColumnNode> registeredColumns = new HashMap<>();
+    private final Map<ColumnIdent, Object> extractedValues = new HashMap<>();
+    private int numRegisteredColumns = 0;
+    private boolean needsSourceAsMap = false;
+
     private byte[] rawSource;
     private Map<String, Object> parsedSource;
+    private boolean extracted = false;
+
+    /**
+     * register a column which is read with {@link #get(ColumnIdent)} for every line
+     */
+    public void registerColumn(ColumnIdent columnIdent) {
+        Map<String, ColumnNode> level = registeredColumns;
+        ColumnNode node = null;
+        for (String name : columnPath(columnIdent)) {
+            node = level.get(name);
+            if (node == null) {
+                node = new ColumnNode();
+                level.put(name, node);
+            }
+            level = node.children;
+        }
+        assert node != null;
+        if (node.columnIdent == null) {
+            node.columnIdent = columnIdent;
+            numRegisteredColumns++;
+        }
+    }
+
+    /**
+     * mark that the whole source is read as map for every line, the registered columns are then read from that map
+     */
+    public void needsSourceAsMap() {
+        needsSourceAsMap = true;
+    }
 
     @Nullable
     public BytesRef sourceAsBytesRef() {
@@ -54,20 +98,46 @@ public class LineContext {
     }
 
     public Object get(ColumnIdent columnIdent) {
-        // TODO: change interface in order to not compute the path for every row
-        if (parsedSource == null) {
-            // TODO: optimize if collectorContext has prefetchColumns
-
-            try {
-                parsedSource = XContentHelper.convertToMap(rawSource, false).v2();
-            } catch (NullPointerException e) {
+        if (parsedSource == null && !needsSourceAsMap && isRegistered(columnIdent)) {
+            if (rawSource == null) {
                 return null;
             }
+            if (!extracted) {
+                extractRegisteredColumns();
+            }
+            return extractedValues.get(columnIdent);
+        }
+        Map<String, Object> source = sourceAsMap();
+        if (source == null) {
+            return null;
+        }
+        return valueFromMap(source, columnIdent);
+    }
+
+    private boolean isRegistered(ColumnIdent columnIdent) {
+        Map<String, ColumnNode> level = registeredColumns;
+        ColumnNode node = null;
+        for (String name : columnPath(columnIdent)) {
+            node = level.get(name);
+            if (node == null) {
+                return false;
+            }
+            level = node.children;
         }
+        return node != null && columnIdent.equals(node.columnIdent);
+    }
 
+    private static List<String> columnPath(ColumnIdent columnIdent) {
+        List<String> path = new ArrayList<>(columnIdent.path().size() + 1);
+        path.add(columnIdent.name());
+        path.addAll(columnIdent.path());
+        return path;
+    }
+
+    private static Object valueFromMap(Map<String, Object> source, ColumnIdent columnIdent) {
         LinkedList<String> path = new LinkedList<>(columnIdent.path());
         path.add(0, columnIdent.name());
-        Map parentMap = parsedSource;
+        Map parentMap = source;
 
         while (path.size() > 1) {
             Object o = parentMap.get(path.pollFirst());
@@ -81,8 +151,125 @@ public class LineContext {
         return parentMap.get(path.peekFirst());
     }
 
+    private void extractRegisteredColumns() {
+        extracted = true;
+        try (XContentParser parser = XContentFactory.xContent(rawSource).createParser(rawSource)) {
+            if (parser.nextToken() == XContentParser.Token.START_OBJECT) {
+                extractColumns(parser, registeredColumns, numRegisteredColumns, true);
+            }
+        } catch (IOException e) {
+            throw new ElasticsearchParseException("Failed to parse content to map", e);
+        }
+    }
+
+    /**
+     * reads the values of the columns of the current object, values of other columns are skipped
+     *
+     * @param remaining the number of columns which are still missing
+     * @param stopEarly stop reading once all columns have been found instead of reading to the end of the object
+     * @return the number of columns which are still missing after the object has been read
+     */
+    private int extractColumns(XContentParser parser,
+                               Map<String, ColumnNode> columns,
+                               int remaining,
+                               boolean stopEarly) throws IOException {
+        XContentParser.Token token;
+        while ((!stopEarly || remaining > 0) && (token = parser.nextToken()) == XContentParser.Token.FIELD_NAME) {
+            ColumnNode node = columns.get(parser.currentName());
+            token = parser.nextToken();
+            if (node == null) {
+                parser.skipChildren();
+            } else if (node.columnIdent != null) {
+                Object value = readValue(parser, token);
+                extractedValues.put(node.columnIdent, value);
+                remaining--;
+                if (!node.children.isEmpty() && value instanceof Map) {
+                    remaining -= extractFromMap((Map) value, node.children);
+                }
+            } else if (token == XContentParser.Token.START_OBJECT) {
+                int missing = countColumns(node.children);
+                remaining -= missing - extractColumns(parser, node.children, missing, false);
+            } else {
+                parser.skipChildren();
+            }
+        }
+        return remaining;
+    }
+
+    private int extractFromMap(Map map, Map<String, ColumnNode> columns) {
+        int found = 0;
+        for (Map.Entry<String, ColumnNode> entry : columns.entrySet()) {
+            Object value = map.get(entry.getKey());
+            ColumnNode node = entry.getValue();
+            if (node.columnIdent != null) {
+                extractedValues.put(node.columnIdent, value);
+                found++;
+            }
+            if (value instanceof Map) {
+                found += extractFromMap((Map) value, node.children);
+            }
+        }
+        return found;
+    }
+
+    private static int countColumns(Map<String, ColumnNode> columns) {
+        int count = 0;
+        for (ColumnNode node : columns.values()) {
+            if (node.columnIdent != null) {
+                count++;
+            }
+            count += countColumns(node.children);
+        }
+        return count;
+    }
+
+    /**
+     * reads the current value like {@link XContentParser#map()} does
+     */
+    private static Object readValue(XContentParser parser, XContentParser.Token token) throws IOException {
+        switch (token) {
+            case VALUE_NULL:
+                return null;
+            case VALUE_STRING:
+                return parser.text();
+            case VALUE_NUMBER:
+                switch (parser.numberType()) {
+                    case INT:
+                        return parser.intValue();
+                    case LONG:
+                        return parser.longValue();
+                    case FLOAT:
+                        return parser.floatValue();
+                    default:
+                        return parser.doubleValue();
+                }
+            case VALUE_BOOLEAN:
+                return parser.booleanValue();
+            case VALUE_EMBEDDED_OBJECT:
+                return parser.binaryValue();
+            case START_OBJECT:
+                return parser.map();
+            case START_ARRAY:
+                List<Object> list = new ArrayList<>();
+                while ((token = parser.nextToken()) != XContentParser.Token.END_ARRAY) {
+                    list.add(readValue(parser, token));
+                }
+                return list;
+            default:
+                return null;
+        }
+    }
+
     public void rawSource(byte[] bytes) {
         this.rawSource = bytes;
         this.parsedSource = null;
+        this.extracted = false;
+        this.extractedValues.clear();
+    }
+
+    private static class ColumnNode {
+
+        private ColumnIdent columnIdent;
+        private final Map<String, ColumnNode> children = new HashMap<>();
     }
 }
@@ -40,5 +40,6 @@ public class SourceAsMapLineExpression extends LineCollectorExpression<Map<Strin
     @Override
     public void startCollect(CollectorContext context) {
         this.context = context.lineContext();
+        this.context.needsSourceAsMap();
     }
 }
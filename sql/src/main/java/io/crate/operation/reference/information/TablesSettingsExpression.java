@@ -41,6 +41,7 @@ public class TablesSettingsExpression extends AbstractTablesSettingsExpression {
         childImplementations.put(TablesSettingsRoutingExpression.NAME, new TablesSettingsRoutingExpression());
         childImplementations.put(TablesSettingsRecoveryExpression.NAME, new TablesSettingsRecoveryExpression());
         childImplementations.put(TablesSettingsWarmerExpression.NAME, new TablesSettingsWarmerExpression());
+        childImplementations.put(TablesSettingsResultCacheExpression.NAME, new TablesSettingsResultCacheExpression());
         childImplementations.put(TablesSettingsTranslogExpression.NAME, new TablesSettingsTranslogExpression());
         childImplementations.put(TablesSettingsGatewayExpression.NAME, new TablesSettingsGatewayExpression());
     }
@@ -182,6 +183,28 @@ public class TablesSettingsExpression extends AbstractTablesSettingsExpression {
         }
     }
 
+    static class TablesSettingsResultCacheExpression extends AbstractTablesSettingsExpression {
+
+        public static final String NAME = "result_cache";
+
+        public TablesSettingsResultCacheExpression() {
+            super(InformationTablesTableInfo.ReferenceInfos.TABLE_SETTINGS_RESULT_CACHE);
+            addChildImplementations();
+        }
+
+        public static final String ENABLED = "enabled";
+
+        private void addChildImplementations() {
+            childImplementations.put(ENABLED,
+                    new InformationTablesExpression<Boolean>(InformationTablesTableInfo.ReferenceInfos.TABLE_SETTINGS_RESULT_CACHE_ENABLED) {
+                        @Override
+                        public Boolean value() {
+                            return (Boolean) this.row.tableParameters().get(TableParameterInfo.RESULT_CACHE_ENABLED);
+                        }
+                    });
+        }
+    }
+
     static class TablesSettingsGatewayExpression extends AbstractTablesSettingsExpression {
 
         public static final String NAME = "gateway";
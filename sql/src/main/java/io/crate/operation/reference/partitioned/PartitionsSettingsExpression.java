@@ -41,6 +41,7 @@ public class PartitionsSettingsExpression extends AbstractPartitionsSettingsExpr
         childImplementations.put(PartitionsSettingsRoutingExpression.NAME, new PartitionsSettingsRoutingExpression());
         childImplementations.put(PartitionsSettingsRecoveryExpression.NAME, new PartitionsSettingsRecoveryExpression());
         childImplementations.put(PartitionsSettingsWarmerExpression.NAME, new PartitionsSettingsWarmerExpression());
+        childImplementations.put(PartitionsSettingsResultCacheExpression.NAME, new PartitionsSettingsResultCacheExpression());
         childImplementations.put(PartitionsSettingsTranslogExpression.NAME, new PartitionsSettingsTranslogExpression());
         childImplementations.put(PartitionsSettingsGatewayExpression.NAME, new PartitionsSettingsGatewayExpression());
     }
@@ -182,6 +183,28 @@ public class PartitionsSettingsExpression extends AbstractPartitionsSettingsExpr
         }
     }
 
+    static class PartitionsSettingsResultCacheExpression extends AbstractPartitionsSettingsExpression {
+
+        public static final String NAME = "result_cache";
+
+        public PartitionsSettingsResultCacheExpression() {
+            super(InformationPartitionsTableInfo.ReferenceInfos.TABLE_SETTINGS_RESULT_CACHE);
+            addChildImplementations();
+        }
+
+        public static final String ENABLED = "enabled";
+
+        private void addChildImplementations() {
+            childImplementations.put(ENABLED,
+                    new InformationTablePartitionsExpression<Boolean>(InformationPartitionsTableInfo.ReferenceInfos.TABLE_SETTINGS_RESULT_CACHE_ENABLED) {
+                        @Override
+                        public Boolean value() {
+                            return (Boolean) this.row.tableParameters().get(TableParameterInfo.RESULT_CACHE_ENABLED);
+                        }
+                    });
+        }
+    }
+
     static class PartitionsSettingsGatewayExpression extends AbstractPartitionsSettingsExpression {
 
         public static final String NAME = "gateway";
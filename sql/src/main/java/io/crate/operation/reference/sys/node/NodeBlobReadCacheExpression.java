@@ -0,0 +1,81 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.reference.sys.node;
+
+import io.crate.blob.BlobReadCache;
+import io.crate.operation.reference.sys.SysNodeObjectReference;
+
+public class NodeBlobReadCacheExpression extends SysNodeObjectReference {
+
+    public static final String NAME = "blob_read_cache";
+
+    public static final String OPEN_FILES = "open_files";
+    public static final String OPEN_FILE_HITS = "open_file_hits";
+    public static final String OPEN_FILE_MISSES = "open_file_misses";
+    public static final String SMALL_BLOBS_SIZE_IN_BYTES = "small_blobs_size_in_bytes";
+    public static final String SMALL_BLOB_HITS = "small_blob_hits";
+    public static final String SMALL_BLOB_MISSES = "small_blob_misses";
+
+    public NodeBlobReadCacheExpression(BlobReadCache readCache) {
+        addChildImplementations(readCache);
+    }
+
+    private void addChildImplementations(final BlobReadCache readCache) {
+        childImplementations.put(OPEN_FILES, new SysNodeExpression<Long>() {
+            @Override
+            public Long value() {
+                return readCache.openFiles();
+            }
+        });
+        childImplementations.put(OPEN_FILE_HITS, new SysNodeExpression<Long>() {
+            @Override
+            public Long value() {
+                return readCache.openFileHits();
+            }
+        });
+        childImplementations.put(OPEN_FILE_MISSES, new SysNodeExpression<Long>() {
+            @Override
+            public Long value() {
+                return readCache.openFileMisses();
+            }
+        });
+        childImplementations.put(SMALL_BLOBS_SIZE_IN_BYTES, new SysNodeExpression<Long>() {
+            @Override
+            public Long value() {
+                return readCache.smallBlobsSizeInBytes();
+            }
+        });
+        childImplementations.put(SMALL_BLOB_HITS, new SysNodeExpression<Long>() {
+            @Override
+            public Long value() {
+                return readCache.smallBlobHits();
+            }
+        });
+        childImplementations.put(SMALL_BLOB_MISSES, new SysNodeExpression<Long>() {
+            @Override
+            public Long value() {
+                return readCache.smallBlobMisses();
+            }
+        });
+    }
+}
@@ -21,7 +21,10 @@
 
 package io.crate.operation.reference.sys.node;
 
+import io.crate.action.sql.StatementCache;
+import io.crate.blob.BlobReadCache;
 import io.crate.metadata.*;
+import io.crate.operation.collect.ShardResultCache;
 import io.crate.operation.reference.NestedObjectExpression;
 import io.crate.operation.reference.sys.node.fs.NodeFsExpression;
 import org.elasticsearch.cluster.ClusterService;
@@ -61,7 +64,10 @@ public class NodeSysExpression extends NestedObjectExpression {
                              NetworkService networkService,
                              NodeEnvironment nodeEnvironment,
                              Discovery discovery,
-                             ThreadPool threadPool) {
+                             ThreadPool threadPool,
+                             StatementCache statementCache,
+                             ShardResultCache resultCache,
+                             BlobReadCache blobReadCache) {
         this.nodeService = nodeService;
         this.osService = osService;
         this.jvmService = jvmService;
@@ -82,6 +88,12 @@ public class NodeSysExpression extends NestedObjectExpression {
                 new NodeVersionExpression());
         childImplementations.put(NodeThreadPoolsExpression.NAME,
                 new NodeThreadPoolsExpression(threadPool));
+        childImplementations.put(NodeStatementCacheExpression.NAME,
+                new NodeStatementCacheExpression(statementCache));
+        childImplementations.put(NodeResultCacheExpression.NAME,
+                new NodeResultCacheExpression(resultCache));
+        childImplementations.put(NodeBlobReadCacheExpression.NAME,
+                new NodeBlobReadCacheExpression(blobReadCache));
     }
 
     @Override
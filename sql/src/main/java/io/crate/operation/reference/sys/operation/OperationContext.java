@@ -30,6 +30,8 @@ public class OperationContext {
     public String name;
     public long started;
     public long usedBytes;
+    public long spilledBytes;
+    public long receivedRows;
 
     public OperationContext(int id, UUID jobId, String name, long started) {
         this.id = id;
@@ -61,6 +61,14 @@ public class OperationContextLog {
         return  operationContext.usedBytes;
     }
 
+    public long spilledBytes() {
+        return operationContext.spilledBytes;
+    }
+
+    public long receivedRows() {
+        return operationContext.receivedRows;
+    }
+
     @Nullable
     public String errorMessage() {
         return errorMessage;
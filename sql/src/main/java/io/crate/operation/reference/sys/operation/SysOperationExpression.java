@@ -63,6 +63,24 @@ public abstract class SysOperationExpression<T> extends RowContextCollectorExpre
                     }
                     return row.usedBytes;
                 }
+            })
+            .add(new SysOperationExpression<Long>(SysOperationsTableInfo.ColumnNames.SPILLED_BYTES) {
+                @Override
+                public Long value() {
+                    if (row.spilledBytes == 0) {
+                        return null;
+                    }
+                    return row.spilledBytes;
+                }
+            })
+            .add(new SysOperationExpression<Long>(SysOperationsTableInfo.ColumnNames.RECEIVED_ROWS) {
+                @Override
+                public Long value() {
+                    if (row.receivedRows == 0) {
+                        return null;
+                    }
+                    return row.receivedRows;
+                }
             }).build();
 
     public SysOperationExpression(String name) {
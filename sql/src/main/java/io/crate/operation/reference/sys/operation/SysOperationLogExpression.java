@@ -70,6 +70,24 @@ public abstract class SysOperationLogExpression<T> extends RowContextCollectorEx
                     return row.usedBytes();
                 }
             })
+            .add(new SysOperationLogExpression<Long>(SysOperationsLogTableInfo.ColumnNames.SPILLED_BYTES) {
+                @Override
+                public Long value() {
+                    if (row.spilledBytes() == 0) {
+                        return null;
+                    }
+                    return row.spilledBytes();
+                }
+            })
+            .add(new SysOperationLogExpression<Long>(SysOperationsLogTableInfo.ColumnNames.RECEIVED_ROWS) {
+                @Override
+                public Long value() {
+                    if (row.receivedRows() == 0) {
+                        return null;
+                    }
+                    return row.receivedRows();
+                }
+            })
             .add(new SysOperationLogExpression<BytesRef>(SysOperationsLogTableInfo.ColumnNames.ERROR) {
                 @Override
                 public BytesRef value() {
@@ -37,6 +37,7 @@ import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.InputColumn;
 import io.crate.planner.symbol.Symbol;
 import io.crate.planner.symbol.SymbolType;
+import io.crate.planner.symbol.Symbols;
 import io.crate.types.DataType;
 import io.crate.types.DataTypes;
 import io.crate.types.UndefinedType;
@@ -92,6 +93,18 @@ public class StreamerVisitor {
         return context;
     }
 
+    /**
+     * @param inputTypes the types of the rows the projections are applied to
+     * @return the streamers of the rows produced by the given projections
+     */
+    public Streamer<?>[] projectionOutputStreamers(List<DataType> inputTypes, List<Projection> projections) {
+        assert !projections.isEmpty() : "no projections given";
+        Context context = new Context();
+        List<DataType> outputTypes = Symbols.extractTypes(projections.get(projections.size() - 1).outputs());
+        setOutputStreamers(outputTypes, inputTypes, projections, context);
+        return context.outputStreamers();
+    }
+
     private class PlanNodeStreamerVisitor extends PlanNodeVisitor<Context, Void> {
 
         @Override
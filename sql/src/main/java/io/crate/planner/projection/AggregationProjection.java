@@ -22,6 +22,7 @@
 package io.crate.planner.projection;
 
 import com.google.common.collect.ImmutableList;
+import io.crate.planner.RowGranularity;
 import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Symbol;
 import org.elasticsearch.common.io.stream.StreamInput;
@@ -38,6 +39,11 @@ public class AggregationProjection extends Projection {
 
     List<Aggregation> aggregations = ImmutableList.of();
 
+    /**
+     * not streamed, only changed on the node which executes the projection
+     */
+    private RowGranularity requiredGranularity = RowGranularity.CLUSTER;
+
     public static final ProjectionFactory<AggregationProjection> FACTORY = new ProjectionFactory<AggregationProjection>() {
         @Override
         public AggregationProjection newInstance() {
@@ -105,4 +111,12 @@ public class AggregationProjection extends Projection {
         return true;
     }
 
+    @Override
+    public RowGranularity requiredGranularity() {
+        return requiredGranularity;
+    }
+
+    public void setRequiredGranularity(RowGranularity requiredGranularity) {
+        this.requiredGranularity = requiredGranularity;
+    }
 }
@@ -93,6 +93,10 @@ public class Aggregation extends Symbol {
         return functionInfo.ident();
     }
 
+    public FunctionInfo functionInfo() {
+        return functionInfo;
+    }
+
     public List<Symbol> inputs() {
         return inputs;
     }
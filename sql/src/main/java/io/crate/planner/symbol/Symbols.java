@@ -38,7 +38,49 @@ public class Symbols {
                 }
             };
 
+    private static final NonDeterministicFunctionVisitor NON_DETERMINISTIC_FUNCTION_VISITOR =
+            new NonDeterministicFunctionVisitor();
+
     public static List<DataType> extractTypes(List<? extends Symbol> symbols) {
         return Lists.transform(symbols, TYPES_FUNCTION);
     }
+
+    /**
+     * @return true if the symbol contains a function whose result may differ between evaluations,
+     *         like <code>random()</code>
+     */
+    public static boolean containsNonDeterministicFunction(Symbol symbol) {
+        return NON_DETERMINISTIC_FUNCTION_VISITOR.process(symbol, null);
+    }
+
+    private static class NonDeterministicFunctionVisitor extends SymbolVisitor<Void, Boolean> {
+
+        @Override
+        public Boolean visitFunction(Function symbol, Void context) {
+            if (!symbol.info().isDeterministic()) {
+                return true;
+            }
+            for (Symbol argument : symbol.arguments()) {
+                if (process(argument, context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public Boolean visitAggregation(Aggregation symbol, Void context) {
+            for (Symbol input : symbol.inputs()) {
+                if (process(input, context)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        protected Boolean visitSymbol(Symbol symbol, Void context) {
+            return false;
+        }
+    }
 }
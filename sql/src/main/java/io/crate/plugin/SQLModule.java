@@ -22,6 +22,8 @@
 package io.crate.plugin;
 
 import io.crate.action.sql.DDLStatementDispatcher;
+import io.crate.action.sql.PreparedStatements;
+import io.crate.action.sql.StatementCache;
 import io.crate.metadata.FulltextAnalyzerResolver;
 import io.crate.service.SQLService;
 import org.elasticsearch.common.inject.AbstractModule;
@@ -33,6 +35,8 @@ public class SQLModule extends AbstractModule {
     protected void configure() {
         bind(SQLService.class).asEagerSingleton();
         bind(DDLStatementDispatcher.class).asEagerSingleton();
+        bind(StatementCache.class).asEagerSingleton();
+        bind(PreparedStatements.class).asEagerSingleton();
         bind(FulltextAnalyzerResolver.class).asEagerSingleton();
     }
 }
\ No newline at end of file
@@ -25,8 +25,10 @@ import com.google.common.collect.ImmutableList;
 import io.crate.Constants;
 import io.crate.action.sql.SQLAction;
 import io.crate.action.sql.SQLBulkAction;
+import io.crate.action.sql.SQLPrepareAction;
 import io.crate.action.sql.TransportSQLAction;
 import io.crate.action.sql.TransportSQLBulkAction;
+import io.crate.action.sql.TransportSQLPrepareAction;
 import io.crate.breaker.CircuitBreakerModule;
 import io.crate.breaker.CrateCircuitBreakerService;
 import io.crate.executor.transport.TransportExecutorModule;
@@ -43,6 +45,7 @@ import io.crate.operation.aggregation.impl.AggregationImplModule;
 import io.crate.jobs.JobContextService;
 import io.crate.operation.collect.CollectOperationModule;
 import io.crate.operation.collect.CollectShardModule;
+import io.crate.operation.collect.ShardResultCache;
 import io.crate.operation.merge.MergeOperationModule;
 import io.crate.operation.operator.OperatorModule;
 import io.crate.operation.predicate.PredicateModule;
@@ -55,6 +58,7 @@ import io.crate.operation.scalar.elasticsearch.script.NumericScalarSearchScript;
 import io.crate.operation.scalar.elasticsearch.script.NumericScalarSortScript;
 import io.crate.planner.PlanModule;
 import io.crate.rest.action.RestSQLAction;
+import io.crate.rest.action.RestSQLPrepareAction;
 import io.crate.service.SQLService;
 import org.elasticsearch.action.ActionModule;
 import org.elasticsearch.action.bulk.BulkModule;
@@ -65,6 +69,7 @@ import org.elasticsearch.common.component.LifecycleComponent;
 import org.elasticsearch.common.inject.Module;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.index.settings.IndexDynamicSettingsModule;
 import org.elasticsearch.plugins.AbstractPlugin;
 import org.elasticsearch.rest.RestModule;
 import org.elasticsearch.script.ScriptModule;
@@ -159,6 +164,7 @@ public class SQLPlugin extends AbstractPlugin {
 
     public void onModule(RestModule restModule) {
         restModule.addRestAction(RestSQLAction.class);
+        restModule.addRestAction(RestSQLPrepareAction.class);
     }
 
     public void onModule(ClusterDynamicSettingsModule clusterDynamicSettingsModule) {
@@ -169,6 +175,10 @@ public class SQLPlugin extends AbstractPlugin {
         registerSettings(clusterDynamicSettingsModule, CrateSettings.CRATE_SETTINGS);
     }
 
+    public void onModule(IndexDynamicSettingsModule indexDynamicSettingsModule) {
+        indexDynamicSettingsModule.addDynamicSetting(ShardResultCache.INDEX_RESULT_CACHE_ENABLED, Validator.BOOLEAN);
+    }
+
     private void registerSettings(ClusterDynamicSettingsModule clusterDynamicSettingsModule, List<Setting> settings) {
         for (Setting setting : settings) {
             /**
@@ -190,5 +200,6 @@ public class SQLPlugin extends AbstractPlugin {
     public void onModule(ActionModule actionModule) {
         actionModule.registerAction(SQLAction.INSTANCE, TransportSQLAction.class);
         actionModule.registerAction(SQLBulkAction.INSTANCE, TransportSQLBulkAction.class);
+        actionModule.registerAction(SQLPrepareAction.INSTANCE, TransportSQLPrepareAction.class);
     }
 }
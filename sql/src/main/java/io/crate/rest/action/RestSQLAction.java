@@ -84,6 +84,9 @@ public class RestSQLAction extends BaseRestHandler {
     private void executeSimpleRequest(SQLXContentSourceContext context, final RestRequest request, final RestChannel channel, Client client) {
         final SQLRequestBuilder requestBuilder = new SQLRequestBuilder(client);
         requestBuilder.stmt(context.stmt());
+        if (context.handle() != null) {
+            requestBuilder.preparedStatement(context.handle());
+        }
         requestBuilder.args(context.args());
         requestBuilder.includeTypesOnResponse(request.paramAsBoolean("types", false));
         requestBuilder.execute(RestSQLAction.<SQLResponse>newListener(request, channel));
@@ -92,6 +95,9 @@ public class RestSQLAction extends BaseRestHandler {
     private void executeBulkRequest(SQLXContentSourceContext context, RestRequest request, RestChannel channel, Client client) {
         final SQLBulkRequestBuilder requestBuilder = new SQLBulkRequestBuilder(client);
         requestBuilder.stmt(context.stmt());
+        if (context.handle() != null) {
+            requestBuilder.preparedStatement(context.handle());
+        }
         requestBuilder.bulkArgs(context.bulkArgs());
         requestBuilder.includeTypesOnResponse(request.paramAsBoolean("types", false));
         requestBuilder.execute(RestSQLAction.<SQLBulkResponse>newListener(request, channel));
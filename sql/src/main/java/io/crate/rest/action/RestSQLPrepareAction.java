@@ -0,0 +1,105 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.rest.action;
+
+import io.crate.action.sql.SQLActionException;
+import io.crate.action.sql.SQLPrepareRequestBuilder;
+import io.crate.action.sql.SQLPrepareResponse;
+import io.crate.action.sql.parser.SQLXContentSourceContext;
+import io.crate.action.sql.parser.SQLXContentSourceParser;
+import io.crate.exceptions.SQLParseException;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.client.Client;
+import org.elasticsearch.common.inject.Inject;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.common.xcontent.XContentBuilder;
+import org.elasticsearch.rest.*;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+
+/**
+ * Prepares a statement, the response contains the handle which is used to execute it:
+ * <pre>
+ * POST /_sql/_prepare {"stmt": "select * from t where id = ?"}
+ * POST /_sql {"handle": "...", "args": [1]}
+ * </pre>
+ */
+public class RestSQLPrepareAction extends BaseRestHandler {
+
+    @Inject
+    public RestSQLPrepareAction(Settings settings, Client client, RestController controller) {
+        super(settings, controller, client);
+
+        controller.registerHandler(RestRequest.Method.POST, "/_sql/_prepare", this);
+    }
+
+    @Override
+    public void handleRequest(final RestRequest request, final RestChannel channel, Client client) throws Exception {
+        if (!request.hasContent()) {
+            channel.sendResponse(new CrateThrowableRestResponse(channel,
+                    new SQLActionException("missing request body", 4000, RestStatus.BAD_REQUEST, null)));
+            return;
+        }
+
+        SQLXContentSourceContext context = new SQLXContentSourceContext();
+        SQLXContentSourceParser parser = new SQLXContentSourceParser(context);
+        try {
+            parser.parseSource(request.content());
+        } catch (SQLParseException e) {
+            StringWriter stackTrace = new StringWriter();
+            e.printStackTrace(new PrintWriter(stackTrace));
+            channel.sendResponse(new CrateThrowableRestResponse(channel,
+                    new SQLActionException(e.getMessage(), 4000, RestStatus.BAD_REQUEST, stackTrace.toString())));
+            return;
+        }
+        if (context.stmt() == null) {
+            channel.sendResponse(new CrateThrowableRestResponse(channel,
+                    new SQLActionException("request body doesn't contain a stmt", 4000, RestStatus.BAD_REQUEST, null)));
+            return;
+        }
+
+        SQLPrepareRequestBuilder requestBuilder = new SQLPrepareRequestBuilder(client);
+        requestBuilder.stmt(context.stmt());
+        requestBuilder.execute(new ActionListener<SQLPrepareResponse>() {
+            @Override
+            public void onResponse(SQLPrepareResponse response) {
+                try {
+                    XContentBuilder builder = channel.newBuilder();
+                    response.toXContent(builder, request);
+                    channel.sendResponse(new BytesRestResponse(RestStatus.OK, builder));
+                } catch (Throwable e) {
+                    onFailure(e);
+                }
+            }
+
+            @Override
+            public void onFailure(Throwable e) {
+                try {
+                    channel.sendResponse(new CrateThrowableRestResponse(channel, e));
+                } catch (Throwable e1) {
+                    logger.error("failed to send failure response", e1);
+                }
+            }
+        });
+    }
+}
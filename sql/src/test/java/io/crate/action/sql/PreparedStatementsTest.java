@@ -0,0 +1,86 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import io.crate.exceptions.PreparedStatementUnknownException;
+import io.crate.sql.parser.ParsingException;
+import io.crate.sql.parser.SqlParser;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class PreparedStatementsTest extends CrateUnitTest {
+
+    private static final String STMT = "select name from sys.nodes where id = ?";
+
+    @Test
+    public void testPrepare() throws Exception {
+        PreparedStatements preparedStatements = new PreparedStatements(ImmutableSettings.EMPTY);
+        String handle = preparedStatements.prepare(STMT);
+
+        assertThat(handle, is(PreparedStatements.handle(STMT)));
+        assertThat(preparedStatements.prepare(STMT), is(handle));
+        assertThat(preparedStatements.size(), is(1L));
+
+        PreparedStatements.PreparedStatement preparedStatement = preparedStatements.get(handle);
+        assertThat(preparedStatement.stmt(), is(STMT));
+        assertThat(preparedStatement.statement(), is(SqlParser.createStatement(STMT)));
+    }
+
+    @Test
+    public void testDifferentStatementsHaveDifferentHandles() throws Exception {
+        assertThat(PreparedStatements.handle(STMT), not(PreparedStatements.handle(STMT + " ")));
+    }
+
+    @Test
+    public void testUnknownHandle() throws Exception {
+        PreparedStatements preparedStatements = new PreparedStatements(ImmutableSettings.EMPTY);
+        expectedException.expect(PreparedStatementUnknownException.class);
+        expectedException.expectMessage("Prepared statement 'abcd' unknown");
+        preparedStatements.get("abcd");
+    }
+
+    @Test
+    public void testEvictedStatementIsUnknown() throws Exception {
+        PreparedStatements preparedStatements = new PreparedStatements(ImmutableSettings.builder()
+                .put(PreparedStatements.SIZE_SETTING, 1).build());
+        String handle = preparedStatements.prepare(STMT);
+        preparedStatements.prepare("select * from sys.cluster");
+
+        expectedException.expect(PreparedStatementUnknownException.class);
+        preparedStatements.get(handle);
+    }
+
+    @Test
+    public void testInvalidStatementIsNotPrepared() throws Exception {
+        PreparedStatements preparedStatements = new PreparedStatements(ImmutableSettings.EMPTY);
+        try {
+            preparedStatements.prepare("select from");
+            fail("expected a ParsingException");
+        } catch (ParsingException e) {
+            assertThat(preparedStatements.size(), is(0L));
+        }
+    }
+}
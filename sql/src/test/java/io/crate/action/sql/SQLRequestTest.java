@@ -26,6 +26,7 @@ import org.elasticsearch.common.io.stream.BytesStreamInput;
 import org.elasticsearch.common.io.stream.BytesStreamOutput;
 import org.junit.Test;
 
+import static org.hamcrest.Matchers.nullValue;
 import static org.hamcrest.core.Is.is;
 
 public class SQLRequestTest extends CrateUnitTest {
@@ -80,4 +81,41 @@ public class SQLRequestTest extends CrateUnitTest {
         assertThat(inRequest.stmt(), is("select * from users"));
         assertThat(inRequest.getDefaultSchema(), is("foo"));
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testSerializationOfPreparedStatement() throws Exception {
+        SQLRequest request = new SQLRequest(null, new Object[] { 1 });
+        request.preparedStatement("abcd");
+        assertThat(request.validate(), nullValue());
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+
+        BytesStreamInput in = new BytesStreamInput(out.bytes());
+        SQLRequest inRequest = new SQLRequest();
+        inRequest.readFrom(in);
+
+        assertThat(inRequest.stmt(), is(""));
+        assertThat(inRequest.preparedStatement(), is("abcd"));
+        assertThat(inRequest.args(), is(new Object[] { 1 }));
+    }
+
+    @Test
+    public void testCopyKeepsHeadersAndLeavesOriginalUntouched() throws Exception {
+        SQLRequest request = new SQLRequest(null, new Object[] { 1 });
+        request.preparedStatement("abcd");
+        request.setDefaultSchema("foo");
+        request.includeTypesOnResponse(true);
+
+        SQLRequest copy = new SQLRequest(request);
+        copy.stmt("select * from users");
+
+        assertThat(request.stmt(), nullValue());
+        assertThat(copy.stmt(), is("select * from users"));
+        assertThat(copy.preparedStatement(), is("abcd"));
+        assertThat(copy.getDefaultSchema(), is("foo"));
+        assertThat(copy.includeTypesOnResponse(), is(true));
+        assertThat(copy.args(), is(new Object[] { 1 }));
+        assertThat(copy.creationTime(), is(request.creationTime()));
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.action.sql;
+
+import com.google.common.cache.CacheStats;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import io.crate.sql.parser.ParsingException;
+import io.crate.sql.tree.Statement;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.sameInstance;
+
+public class StatementCacheTest extends CrateUnitTest {
+
+    @Test
+    public void testStatementIsParsedOnce() throws Exception {
+        StatementCache statementCache = new StatementCache(ImmutableSettings.EMPTY);
+        Statement statement = statementCache.get("select name from sys.nodes where id = ?");
+        assertThat(statementCache.get("select name from sys.nodes where id = ?"), sameInstance(statement));
+
+        CacheStats stats = statementCache.stats();
+        assertThat(stats.hitCount(), is(1L));
+        assertThat(stats.missCount(), is(1L));
+        assertThat(statementCache.size(), is(1L));
+    }
+
+    @Test
+    public void testSizeIsLimited() throws Exception {
+        StatementCache statementCache = new StatementCache(ImmutableSettings.builder()
+                .put(StatementCache.SIZE_SETTING, 2).build());
+        for (int i = 0; i < 5; i++) {
+            statementCache.get("select " + i + " from sys.cluster");
+        }
+        assertThat(statementCache.size(), is(2L));
+        assertThat(statementCache.stats().evictionCount(), is(3L));
+    }
+
+    @Test
+    public void testInvalidStatementIsNotCached() throws Exception {
+        StatementCache statementCache = new StatementCache(ImmutableSettings.EMPTY);
+        try {
+            statementCache.get("select from");
+            fail("expected a ParsingException");
+        } catch (UncheckedExecutionException e) {
+            assertThat(e.getCause(), instanceOf(ParsingException.class));
+        }
+        assertThat(statementCache.size(), is(0L));
+    }
+}
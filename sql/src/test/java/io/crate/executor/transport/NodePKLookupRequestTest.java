@@ -0,0 +1,77 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.metadata.ReferenceIdent;
+import io.crate.metadata.ReferenceInfo;
+import io.crate.metadata.TableIdent;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.symbol.Reference;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.index.shard.ShardId;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class NodePKLookupRequestTest extends CrateUnitTest {
+
+    TableIdent charactersIdent = new TableIdent(null, "characters");
+
+    Reference nameRef = new Reference(new ReferenceInfo(
+            new ReferenceIdent(charactersIdent, "name"), RowGranularity.DOC, DataTypes.STRING));
+    Reference versionRef = new Reference(new ReferenceInfo(
+            new ReferenceIdent(charactersIdent, "_version"), RowGranularity.DOC, DataTypes.LONG));
+
+    @Test
+    public void testStreaming() throws Exception {
+        ShardId shard0 = new ShardId("characters", 0);
+        ShardId shard1 = new ShardId("characters", 1);
+        NodePKLookupRequest request = new NodePKLookupRequest(ImmutableList.of(nameRef, versionRef));
+        request.add(shard0, "1");
+        request.add(shard1, "2");
+        request.add(shard0, "3");
+
+        BytesStreamOutput out = new BytesStreamOutput();
+        request.writeTo(out);
+
+        BytesStreamInput in = new BytesStreamInput(out.bytes());
+        NodePKLookupRequest request2 = new NodePKLookupRequest();
+        request2.readFrom(in);
+
+        assertThat(request2.references(), contains(nameRef, versionRef));
+        assertThat(request2.ids().size(), is(2));
+        assertThat(request2.ids().get(shard0), contains("1", "3"));
+        assertThat(request2.ids().get(shard1), contains("2"));
+    }
+
+    @Test
+    public void testOutputStreamersStartWithId() throws Exception {
+        assertThat(TransportNodePKLookupAction.outputStreamers(ImmutableList.of(versionRef)).length, is(2));
+        assertThat(TransportNodePKLookupAction.fetchSourceContext(ImmutableList.of(nameRef, versionRef)).includes(),
+                is(new String[]{"name"}));
+    }
+}
@@ -0,0 +1,95 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableMap;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.bytes.BytesArray;
+import org.elasticsearch.common.bytes.BytesReference;
+import org.elasticsearch.common.xcontent.XContentFactory;
+import org.elasticsearch.common.xcontent.XContentHelper;
+import org.elasticsearch.common.xcontent.XContentType;
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.is;
+
+public class SourceSplicerTest extends CrateUnitTest {
+
+    private static final BytesReference SOURCE = new BytesArray(
+            "{\"id\":1,\"name\":\"Arthur\",\"tags\":[\"a\",\"b\"]," +
+            "\"details\":{\"age\":42,\"address\":{\"city\":\"Cottington\"}},\"empty\":null}");
+
+    private static String splice(BytesReference source, Map<String, Object> changes) throws Exception {
+        return SourceSplicer.splice(source, changes).toUtf8();
+    }
+
+    @Test
+    public void testUnchangedFieldsAreCopied() throws Exception {
+        assertThat(splice(SOURCE, ImmutableMap.<String, Object>of("name", "Ford")),
+                is("{\"id\":1,\"name\":\"Ford\",\"tags\":[\"a\",\"b\"]," +
+                   "\"details\":{\"age\":42,\"address\":{\"city\":\"Cottington\"}},\"empty\":null}"));
+    }
+
+    @Test
+    public void testNestedPaths() throws Exception {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("details.address.city", "London");
+        changes.put("details.height", 1.8);
+        changes.put("empty.value", 1);
+        changes.put("location.x", 2);
+        assertThat(splice(SOURCE, changes),
+                is("{\"id\":1,\"name\":\"Arthur\",\"tags\":[\"a\",\"b\"]," +
+                   "\"details\":{\"age\":42,\"address\":{\"city\":\"London\"},\"height\":1.8}," +
+                   "\"empty\":{\"value\":1},\"location\":{\"x\":2}}"));
+    }
+
+    @Test
+    public void testObjectValuesAreOverwritten() throws Exception {
+        Map<String, Object> changes = new HashMap<>();
+        changes.put("details", ImmutableMap.of("age", 43));
+        changes.put("tags", new String[]{"c"});
+        assertThat(splice(SOURCE, changes),
+                is("{\"id\":1,\"name\":\"Arthur\",\"tags\":[\"c\"],\"details\":{\"age\":43},\"empty\":null}"));
+    }
+
+    @Test
+    public void testPathIntoNonObject() throws Exception {
+        expectedException.expect(IllegalArgumentException.class);
+        expectedException.expectMessage("Object expected for field [name]");
+        splice(SOURCE, ImmutableMap.<String, Object>of("name.first", "Arthur"));
+    }
+
+    @Test
+    public void testContentTypeIsKept() throws Exception {
+        BytesReference smile = XContentFactory.smileBuilder()
+                .startObject().field("id", 1).field("name", "Arthur").endObject().bytes();
+        BytesReference spliced = SourceSplicer.splice(smile, ImmutableMap.<String, Object>of("name", "Ford"));
+
+        assertThat(XContentFactory.xContentType(spliced), is(XContentType.SMILE));
+        Map<String, Object> map = XContentHelper.convertToMap(spliced, false).v2();
+        assertThat(map.get("name"), is((Object) "Ford"));
+        assertThat(map.get("id"), is((Object) 1));
+    }
+}
@@ -0,0 +1,113 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport;
+
+import io.crate.Streamer;
+import io.crate.core.collections.ArrayBucket;
+import io.crate.core.collections.Row;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.io.stream.BytesStreamInput;
+import org.elasticsearch.common.io.stream.BytesStreamOutput;
+import org.elasticsearch.common.io.stream.StreamInput;
+import org.elasticsearch.common.io.stream.StreamOutput;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Iterator;
+
+import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.is;
+
+public class StreamBucketTest extends CrateUnitTest {
+
+    private static class CountingStreamer implements Streamer<Object> {
+
+        private final Streamer<?> streamer;
+        private int decoded = 0;
+
+        private CountingStreamer(Streamer<?> streamer) {
+            this.streamer = streamer;
+        }
+
+        @Override
+        public Object readValueFrom(StreamInput in) throws IOException {
+            decoded++;
+            return streamer.readValueFrom(in);
+        }
+
+        @Override
+        public void writeValueTo(StreamOutput out, Object v) throws IOException {
+            streamer.writeValueTo(out, v);
+        }
+    }
+
+    private static StreamBucket streamed(Streamer<?>[] streamers, Object[][] rows) throws IOException {
+        BytesStreamOutput out = new BytesStreamOutput();
+        StreamBucket.writeBucket(out, streamers, new ArrayBucket(rows));
+        StreamBucket bucket = new StreamBucket(streamers);
+        bucket.readFrom(new BytesStreamInput(out.bytes()));
+        return bucket;
+    }
+
+    @Test
+    public void testStreaming() throws Exception {
+        Streamer<?>[] streamers = new Streamer[]{DataTypes.STRING.streamer(), DataTypes.INTEGER.streamer()};
+        StreamBucket bucket = streamed(streamers, new Object[][]{
+                {new BytesRef("ab"), 1}, {null, null}, {new BytesRef("cd"), 3}
+        });
+
+        assertThat(bucket.size(), is(3));
+        assertThat(bucket, contains(isRow("ab", 1), isRow(null, null), isRow("cd", 3)));
+
+        // a streamed bucket can be written again
+        BytesStreamOutput out = new BytesStreamOutput();
+        bucket.writeTo(out);
+        StreamBucket copy = new StreamBucket(streamers);
+        copy.readFrom(new BytesStreamInput(out.bytes()));
+        assertThat(copy, contains(isRow("ab", 1), isRow(null, null), isRow("cd", 3)));
+    }
+
+    @Test
+    public void testOnlyColumnsWhichAreReadAreDecoded() throws Exception {
+        CountingStreamer first = new CountingStreamer(DataTypes.STRING.streamer());
+        CountingStreamer second = new CountingStreamer(DataTypes.INTEGER.streamer());
+        StreamBucket bucket = streamed(new Streamer[]{first, second}, new Object[][]{
+                {new BytesRef("a"), 1}, {new BytesRef("b"), 2}, {new BytesRef("c"), 3}
+        });
+
+        Iterator<Row> it = bucket.iterator();
+        it.next();
+        it.next();
+        Row row = it.next();
+        assertThat(first.decoded, is(0));
+
+        // values of previous rows are skipped
+        assertThat((Integer) row.get(1), is(3));
+        assertThat((Integer) row.get(1), is(3));
+        assertThat(second.decoded, is(3));
+        assertThat(first.decoded, is(0));
+        assertThat(it.hasNext(), is(false));
+    }
+}
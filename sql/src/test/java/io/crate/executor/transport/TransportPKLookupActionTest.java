@@ -0,0 +1,130 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.executor.transport;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.Constants;
+import io.crate.core.collections.Bucket;
+import io.crate.planner.symbol.Reference;
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.action.support.ActionFilters;
+import org.elasticsearch.action.support.PlainActionFuture;
+import org.elasticsearch.cluster.ClusterService;
+import org.elasticsearch.cluster.ClusterState;
+import org.elasticsearch.cluster.routing.ImmutableShardRouting;
+import org.elasticsearch.cluster.routing.PlainShardIterator;
+import org.elasticsearch.cluster.routing.ShardRouting;
+import org.elasticsearch.cluster.routing.ShardRoutingState;
+import org.elasticsearch.cluster.routing.operation.OperationRouting;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.threadpool.ThreadPool;
+import org.junit.Test;
+import org.mockito.invocation.InvocationOnMock;
+import org.mockito.stubbing.Answer;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.is;
+import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyString;
+import static org.mockito.Matchers.eq;
+import static org.mockito.Mockito.doAnswer;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class TransportPKLookupActionTest extends CrateUnitTest {
+
+    private final List<String> requestedNodes = new ArrayList<>();
+
+    private TransportPKLookupAction pkLookupAction(final String failingNode) {
+        ShardId shardId = new ShardId("characters", 0);
+        List<ShardRouting> copies = ImmutableList.<ShardRouting>of(
+                new ImmutableShardRouting("characters", 0, "n1", true, ShardRoutingState.STARTED, 1),
+                new ImmutableShardRouting("characters", 0, "n2", false, ShardRoutingState.INITIALIZING, 1),
+                new ImmutableShardRouting("characters", 0, "n3", false, ShardRoutingState.STARTED, 1));
+        OperationRouting operationRouting = mock(OperationRouting.class);
+        when(operationRouting.getShards(any(ClusterState.class), eq("characters"),
+                eq(Constants.DEFAULT_MAPPING_TYPE), anyString(), anyString(), anyString()))
+                .thenReturn(new PlainShardIterator(shardId, copies));
+        ClusterService clusterService = mock(ClusterService.class);
+        when(clusterService.operationRouting()).thenReturn(operationRouting);
+
+        TransportNodePKLookupAction nodePKLookupAction = mock(TransportNodePKLookupAction.class);
+        doAnswer(new Answer() {
+            @Override
+            public Object answer(InvocationOnMock invocation) throws Throwable {
+                String node = (String) invocation.getArguments()[0];
+                requestedNodes.add(node);
+                @SuppressWarnings("unchecked")
+                ActionListener<NodePKLookupResponse> listener =
+                        (ActionListener<NodePKLookupResponse>) invocation.getArguments()[2];
+                if (node.equals(failingNode) || failingNode == null) {
+                    listener.onFailure(new IllegalStateException("node left"));
+                } else {
+                    NodePKLookupResponse response = new NodePKLookupResponse(
+                            TransportNodePKLookupAction.outputStreamers(ImmutableList.<Reference>of()));
+                    response.rows(Bucket.EMPTY);
+                    listener.onResponse(response);
+                }
+                return null;
+            }
+        }).when(nodePKLookupAction).execute(anyString(), any(NodePKLookupRequest.class), any(ActionListener.class));
+
+        return new TransportPKLookupAction(ImmutableSettings.EMPTY, mock(ThreadPool.class),
+                mock(ActionFilters.class), clusterService, nodePKLookupAction);
+    }
+
+    private static PKLookupRequest request() {
+        PKLookupRequest request = new PKLookupRequest(ImmutableList.<Reference>of());
+        request.add("characters", "1", "1");
+        request.add("characters", "2", "2");
+        return request;
+    }
+
+    @Test
+    public void testLookupIsRetriedOnNextActiveCopy() throws Exception {
+        PlainActionFuture<PKLookupResponse> future = PlainActionFuture.newFuture();
+        pkLookupAction("n1").doExecute(request(), future);
+
+        assertThat(future.get().buckets().size(), is(1));
+        assertThat(requestedNodes, contains("n1", "n3"));
+    }
+
+    @Test
+    public void testLookupFailsIfAllCopiesFailed() throws Exception {
+        PlainActionFuture<PKLookupResponse> future = PlainActionFuture.newFuture();
+        pkLookupAction(null).doExecute(request(), future);
+
+        expectedException.expectCause(instanceOf(IllegalStateException.class));
+        try {
+            future.get();
+        } finally {
+            assertThat(requestedNodes, contains("n1", "n3"));
+        }
+    }
+}
@@ -23,12 +23,15 @@ package io.crate.executor.transport.distributed;
 
 import io.crate.Constants;
 import io.crate.Streamer;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Row1;
 import io.crate.test.integration.CrateUnitTest;
 import io.crate.testing.TestingHelpers;
 import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.action.ActionListener;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.junit.After;
 import org.junit.Before;
 import org.junit.Test;
@@ -41,8 +44,10 @@ import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.CancellationException;
 
+import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.any;
+import static org.mockito.Matchers.anyLong;
 import static org.mockito.Matchers.eq;
 import static org.mockito.Mockito.*;
 
@@ -50,6 +55,7 @@ public class DistributingDownstreamTest extends CrateUnitTest {
 
     private TransportDistributedResultAction distributedResultAction;
     private DistributingDownstream downstream;
+    private RamAccountingContext ramAccountingContext;
 
     @Captor
     public ArgumentCaptor<ActionListener<DistributedResultResponse>> listenerArgumentCaptor;
@@ -63,13 +69,15 @@ public class DistributingDownstreamTest extends CrateUnitTest {
         List<String> downstreamNodes = Arrays.asList("n1", "n2");
         distributedResultAction = mock(TransportDistributedResultAction.class);
         Streamer<?>[] streamers = {DataTypes.STRING.streamer()};
+        ramAccountingContext = spy(new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA)));
         downstream = new DistributingDownstream(
                 UUID.randomUUID(),
                 1,
                 0,
                 downstreamNodes,
                 distributedResultAction,
-                streamers
+                streamers,
+                ramAccountingContext
         );
         downstream.registerUpstream(null);
     }
@@ -90,13 +98,13 @@ public class DistributingDownstreamTest extends CrateUnitTest {
 
         downstream.setNextRow(new Row1(new BytesRef("Trillian")));
         downstream.setNextRow(new Row1(new BytesRef("Marvin")));
+        downstream.setNextRow(new Row1(new BytesRef("Ford")));
         downstream.setNextRow(new Row1(new BytesRef("Arthur")));
-        downstream.setNextRow(new Row1(new BytesRef("Slartibartfast")));
 
         downstream.finish();
 
-        assertRows(r2Captor, "Trillian\nMarvin\n");
-        assertRows(r1Captor, "Arthur\nSlartibartfast\n");
+        assertRows(r1Captor, "Trillian\nFord\n");
+        assertRows(r2Captor, "Marvin\nArthur\n");
     }
 
     @Test
@@ -123,6 +131,100 @@ public class DistributingDownstreamTest extends CrateUnitTest {
         assertThat(iterations, is(expected));
     }
 
+    @Test
+    public void testFailedRequestIsForwardedToAllDownstreams() throws Exception {
+        ArgumentCaptor<DistributedResultRequest> captor = ArgumentCaptor.forClass(DistributedResultRequest.class);
+        doNothing().when(distributedResultAction).pushResult(any(String.class), captor.capture(), listenerArgumentCaptor.capture());
+
+        downstream.finish();
+        assertThat(captor.getAllValues().size(), is(2));
+
+        // n1 answers its last page, the last page of n2 fails
+        listenerArgumentCaptor.getAllValues().get(0).onResponse(new DistributedResultResponse(false));
+        listenerArgumentCaptor.getAllValues().get(1).onFailure(new IllegalStateException("epic fail"));
+        // nothing else is sent because both downstreams received their last page
+        assertThat(captor.getAllValues().size(), is(2));
+    }
+
+    @Test
+    public void testFailedRequestFailsDownstreamsWaitingForPages() throws Exception {
+        Constants.PAGE_SIZE = 1;
+        ArgumentCaptor<DistributedResultRequest> captor = ArgumentCaptor.forClass(DistributedResultRequest.class);
+        doNothing().when(distributedResultAction).pushResult(any(String.class), captor.capture(), listenerArgumentCaptor.capture());
+
+        downstream.setNextRow(new Row1(new BytesRef("Trillian")));
+        downstream.setNextRow(new Row1(new BytesRef("Marvin")));
+        assertThat(captor.getAllValues().size(), is(2));
+
+        listenerArgumentCaptor.getAllValues().get(0).onFailure(new IllegalStateException("epic fail"));
+
+        // both downstreams are told about the failure, otherwise they would wait for further pages forever
+        assertThat(captor.getAllValues().size(), is(4));
+        for (DistributedResultRequest request : captor.getAllValues().subList(2, 4)) {
+            assertThat(request.throwable(), instanceOf(IllegalStateException.class));
+            assertThat(request.pageIdx(), is(1));
+        }
+        assertThat(downstream.setNextRow(new Row1(new BytesRef("Ford"))), is(false));
+    }
+
+    @Test
+    public void testRequestsArePipelinedUpToTheGrantedCredits() throws Exception {
+        Constants.PAGE_SIZE = 1;
+
+        ArgumentCaptor<DistributedResultRequest> captor = ArgumentCaptor.forClass(DistributedResultRequest.class);
+        doNothing().when(distributedResultAction).pushResult(eq("n1"), captor.capture(), listenerArgumentCaptor.capture());
+
+        for (int i = 0; i < 5; i++) {
+            downstream.setNextRow(new Row1(new BytesRef("Trillian")));
+        }
+        // only one request may be in flight until the downstream granted credits
+        assertThat(captor.getAllValues().size(), is(1));
+
+        listenerArgumentCaptor.getAllValues().get(0).onResponse(new DistributedResultResponse(true, 3));
+        assertThat(captor.getAllValues().size(), is(4));
+        for (int i = 0; i < 4; i++) {
+            DistributedResultRequest request = captor.getAllValues().get(i);
+            assertThat(request.pageIdx(), is(i));
+            assertThat(request.rows().size(), is(1));
+            assertThat(request.isLast(), is(false));
+        }
+
+        downstream.finish();
+        listenerArgumentCaptor.getAllValues().get(1).onResponse(new DistributedResultResponse(true, 3));
+        assertThat(captor.getAllValues().size(), is(5));
+        DistributedResultRequest last = captor.getAllValues().get(4);
+        assertThat(last.pageIdx(), is(4));
+        assertThat(last.isLast(), is(true));
+    }
+
+    @Test
+    public void testQueuedPagesAreAccountedUntilTheyAreSent() throws Exception {
+        Constants.PAGE_SIZE = 1;
+        doNothing().when(distributedResultAction).pushResult(eq("n1"), any(DistributedResultRequest.class), listenerArgumentCaptor.capture());
+
+        for (int i = 0; i < 3; i++) {
+            downstream.setNextRow(new Row1(new BytesRef("Trillian")));
+        }
+        // the first page is sent right away, the others wait for credits
+        verify(ramAccountingContext, times(3)).addBytes(anyLong());
+        verify(ramAccountingContext, times(1)).releaseBytes(anyLong());
+
+        listenerArgumentCaptor.getAllValues().get(0).onResponse(new DistributedResultResponse(true, 3));
+        verify(ramAccountingContext, times(3)).releaseBytes(anyLong());
+    }
+
+    @Test
+    public void testQueuedPagesAreReleasedIfTheDownstreamWantsNoMoreRows() throws Exception {
+        Constants.PAGE_SIZE = 1;
+        doNothing().when(distributedResultAction).pushResult(eq("n1"), any(DistributedResultRequest.class), listenerArgumentCaptor.capture());
+
+        for (int i = 0; i < 3; i++) {
+            downstream.setNextRow(new Row1(new BytesRef("Trillian")));
+        }
+        listenerArgumentCaptor.getAllValues().get(0).onResponse(new DistributedResultResponse(false));
+        verify(ramAccountingContext, times(3)).releaseBytes(anyLong());
+    }
+
     @Test
     public void testRequestsAreSentWithoutRows() throws Exception {
         ArgumentCaptor<DistributedResultRequest> captor = ArgumentCaptor.forClass(DistributedResultRequest.class);
@@ -0,0 +1,84 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.executor.transport.distributed;
+
+import io.crate.Streamer;
+import io.crate.core.collections.RowN;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+
+public class MultiBucketBuilderTest extends CrateUnitTest {
+
+    private static final Streamer<?>[] STREAMERS = new Streamer[]{
+            DataTypes.STRING.streamer(), DataTypes.INTEGER.streamer(), DataTypes.LONG.streamer()};
+
+    @Test
+    public void testAllKeyColumnsAreHashed() throws Exception {
+        MultiBucketBuilder builder = new MultiBucketBuilder(STREAMERS, 4, 2);
+        for (int i = 0; i < 1000; i++) {
+            RowN row = new RowN(new Object[]{new BytesRef("same"), i, 1L});
+            builder.setNextRow(builder.getBucket(row), row);
+        }
+        for (int i = 0; i < 4; i++) {
+            assertThat(builder.rowCount(i), allOf(greaterThan(200L), lessThan(300L)));
+        }
+    }
+
+    @Test
+    public void testOnlyKeyColumnsAreHashed() throws Exception {
+        MultiBucketBuilder builder = new MultiBucketBuilder(STREAMERS, 4, 2);
+        int bucket = builder.getBucket(new RowN(new Object[]{new BytesRef("a"), 1, 1L}));
+        for (long i = 0; i < 100; i++) {
+            assertThat(builder.getBucket(new RowN(new Object[]{new BytesRef("a"), 1, i})), is(bucket));
+        }
+    }
+
+    @Test
+    public void testSequentialNumbersAreSpread() throws Exception {
+        MultiBucketBuilder builder = new MultiBucketBuilder(STREAMERS, 4);
+        int[] counts = new int[4];
+        for (long i = 0; i < 1000; i++) {
+            // every fourth value would end up in the same bucket with Long.hashCode()
+            counts[builder.getBucket(new RowN(new Object[]{i * 4}))]++;
+        }
+        for (int count : counts) {
+            assertThat(count, allOf(greaterThan(200), lessThan(300)));
+        }
+    }
+
+    @Test
+    public void testRowCountIsKeptAcrossBuilds() throws Exception {
+        MultiBucketBuilder builder = new MultiBucketBuilder(STREAMERS, 2);
+        RowN row = new RowN(new Object[]{new BytesRef("a"), 1, 1L});
+        builder.setNextRow(0, row);
+        builder.build(0);
+        builder.setNextRow(0, row);
+
+        assertThat(builder.size(0), is(1));
+        assertThat(builder.rowCount(0), is(2L));
+        assertThat(builder.rowCount(1), is(0L));
+    }
+}
@@ -50,6 +50,7 @@ public class DistributedResultRequestTest extends CrateUnitTest {
 
         DistributedResultRequest r1 = new DistributedResultRequest(uuid, 1, 1, streamers);
         r1.rows(new ArrayBucket(rows));
+        r1.pageIdx(2);
 
         BytesStreamOutput out = new BytesStreamOutput();
         r1.writeTo(out);
@@ -60,6 +61,7 @@ public class DistributedResultRequestTest extends CrateUnitTest {
         assertTrue(r2.rowsCanBeRead());
 
         assertEquals(r1.rows().size(), r2.rows().size());
+        assertEquals(2, r2.pageIdx());
 
         assertThat(r2.rows(), contains(isRow("ab"), isNullRow(), isRow("cd")));
     }
@@ -23,6 +23,7 @@ package io.crate.executor.transport.task.elasticsearch;
 
 import com.google.common.collect.ImmutableList;
 import io.crate.executor.transport.BaseTransportExecutorTest;
+import io.crate.executor.transport.TransportPKLookupAction;
 import io.crate.jobs.ESJobContext;
 import io.crate.jobs.ExecutionSubContext;
 import io.crate.jobs.JobContextService;
@@ -38,7 +39,6 @@ import io.crate.planner.symbol.Symbol;
 import io.crate.test.integration.CrateUnitTest;
 import io.crate.testing.TestingHelpers;
 import org.elasticsearch.action.get.TransportGetAction;
-import org.elasticsearch.action.get.TransportMultiGetAction;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.threadpool.ThreadPool;
 import org.junit.After;
@@ -82,7 +82,7 @@ public class ESGetTaskTest extends CrateUnitTest {
                 jobId,
                 mock(Functions.class),
                 mock(ProjectionToProjectorVisitor.class),
-                mock(TransportMultiGetAction.class),
+                mock(TransportPKLookupAction.class),
                 mock(TransportGetAction.class),
                 node,
                 jobContextService);
@@ -100,7 +100,7 @@ public class ESGetTaskTest extends CrateUnitTest {
                 jobId,
                 mock(Functions.class),
                 mock(ProjectionToProjectorVisitor.class),
-                mock(TransportMultiGetAction.class),
+                mock(TransportPKLookupAction.class),
                 mock(TransportGetAction.class),
                 node,
                 jobContextService);
@@ -21,10 +21,14 @@
 
 package io.crate.jobs;
 
+import com.google.common.collect.Iterables;
 import io.crate.Streamer;
 import io.crate.breaker.RamAccountingContext;
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.BucketPage;
 import io.crate.core.collections.Row1;
 import io.crate.core.collections.SingleRowBucket;
+import io.crate.operation.PageConsumeListener;
 import io.crate.operation.PageDownstream;
 import io.crate.operation.PageResultListener;
 import io.crate.test.integration.CrateUnitTest;
@@ -72,6 +76,84 @@ public class PageDownstreamContextTest extends CrateUnitTest {
         assertThat(t.getMessage(), is("May not set the same bucket of a page more than once"));
     }
 
+    @Test
+    public void testPagesSentInAdvanceAreSetInOrder() throws Exception {
+        PageDownstream pageDownstream = mock(PageDownstream.class);
+        PageDownstreamContext ctx = new PageDownstreamContext("dummy", pageDownstream, new Streamer[0], RAM_ACCOUNTING_CONTEXT, 2);
+        assertThat(ctx.credits(), is(PageDownstreamContext.MAX_CREDITS));
+
+        PageResultListener page0Bucket0 = mock(PageResultListener.class);
+        when(page0Bucket0.buckedIdx()).thenReturn(0);
+        PageResultListener page1Bucket0 = mock(PageResultListener.class);
+        when(page1Bucket0.buckedIdx()).thenReturn(0);
+        PageResultListener page0Bucket1 = mock(PageResultListener.class);
+        when(page0Bucket1.buckedIdx()).thenReturn(1);
+
+        ctx.setBucket(0, 1, new SingleRowBucket(new Row1("b")), false, page1Bucket0);
+        verify(pageDownstream, never()).nextPage(any(BucketPage.class), any(PageConsumeListener.class));
+
+        ctx.setBucket(0, 0, new SingleRowBucket(new Row1("a")), false, page0Bucket0);
+        ctx.setBucket(1, 0, new SingleRowBucket(new Row1("x")), true, page0Bucket1);
+
+        // the next page is only started once the full page has been consumed
+        ArgumentCaptor<BucketPage> page0 = ArgumentCaptor.forClass(BucketPage.class);
+        ArgumentCaptor<PageConsumeListener> listener0 = ArgumentCaptor.forClass(PageConsumeListener.class);
+        verify(pageDownstream, times(1)).nextPage(page0.capture(), listener0.capture());
+        assertThat(firstRowOfBucket(page0.getValue(), 0), is((Object) "a"));
+
+        listener0.getValue().needMore();
+        verify(page0Bucket0, times(1)).needMore(true);
+        verify(page0Bucket1, times(1)).needMore(false);
+        verify(page1Bucket0, never()).needMore(anyBoolean());
+
+        ArgumentCaptor<BucketPage> pages = ArgumentCaptor.forClass(BucketPage.class);
+        ArgumentCaptor<PageConsumeListener> listeners = ArgumentCaptor.forClass(PageConsumeListener.class);
+        verify(pageDownstream, times(2)).nextPage(pages.capture(), listeners.capture());
+        assertThat(firstRowOfBucket(pages.getAllValues().get(1), 0), is((Object) "b"));
+
+        listeners.getAllValues().get(1).needMore();
+        verify(page1Bucket0, times(1)).needMore(true);
+        verify(pageDownstream, never()).finish();
+    }
+
+    @Test
+    public void testIsNotFinishedBeforeLastPageSentInAdvanceIsConsumed() throws Exception {
+        PageDownstream pageDownstream = mock(PageDownstream.class);
+        PageDownstreamContext ctx = new PageDownstreamContext("dummy", pageDownstream, new Streamer[0], RAM_ACCOUNTING_CONTEXT, 1);
+
+        ctx.setBucket(0, 0, new SingleRowBucket(new Row1("a")), false, mock(PageResultListener.class));
+        ctx.setBucket(0, 1, new SingleRowBucket(new Row1("b")), true, mock(PageResultListener.class));
+
+        ArgumentCaptor<PageConsumeListener> listener0 = ArgumentCaptor.forClass(PageConsumeListener.class);
+        verify(pageDownstream, times(1)).nextPage(any(BucketPage.class), listener0.capture());
+
+        listener0.getValue().needMore();
+        verify(pageDownstream, never()).finish();
+        ArgumentCaptor<PageConsumeListener> listeners = ArgumentCaptor.forClass(PageConsumeListener.class);
+        verify(pageDownstream, times(2)).nextPage(any(BucketPage.class), listeners.capture());
+        listeners.getAllValues().get(1).needMore();
+        verify(pageDownstream, times(1)).finish();
+    }
+
+    @Test
+    public void testPagesSentInAdvanceAreReleasedOnFinish() throws Exception {
+        PageDownstream pageDownstream = mock(PageDownstream.class);
+        PageDownstreamContext ctx = new PageDownstreamContext("dummy", pageDownstream, new Streamer[0], RAM_ACCOUNTING_CONTEXT, 2);
+
+        PageResultListener page0 = mock(PageResultListener.class);
+        PageResultListener page1 = mock(PageResultListener.class);
+        ctx.setBucket(0, 0, new SingleRowBucket(new Row1("a")), false, page0);
+        ctx.setBucket(0, 1, new SingleRowBucket(new Row1("b")), false, page1);
+        ctx.finish();
+
+        verify(page1, times(1)).needMore(false);
+    }
+
+    private static Object firstRowOfBucket(BucketPage page, int bucketIdx) throws Exception {
+        Bucket bucket = Iterables.get(page.buckets(), bucketIdx).get();
+        return bucket.iterator().next().get(0);
+    }
+
     @Test
     public void testKill() throws Exception {
         PageDownstream downstream = mock(PageDownstream.class);
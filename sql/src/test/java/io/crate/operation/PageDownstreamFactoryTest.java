@@ -35,6 +35,7 @@ import io.crate.metadata.*;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
 import io.crate.operation.aggregation.impl.MinimumAggregation;
 import io.crate.operation.projectors.FlatProjectorChain;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.testing.CollectingProjector;
 import io.crate.operation.projectors.TopN;
 import io.crate.planner.node.dql.MergeNode;
@@ -145,7 +146,8 @@ public class PageDownstreamFactoryTest extends CrateUnitTest {
                 mock(TransportActionProvider.class, Answers.RETURNS_DEEP_STUBS.get()),
                 mock(BulkRetryCoordinatorPool.class),
                 referenceResolver,
-                functions
+                functions,
+                mock(SpillDirectory.class)
         );
         CollectingProjector collectingProjector = new CollectingProjector();
         final PageDownstream pageDownstream = getPageDownstream(mergeNode, pageDownstreamFactory, collectingProjector);
@@ -192,7 +194,8 @@ public class PageDownstreamFactoryTest extends CrateUnitTest {
                 mock(TransportActionProvider.class, Answers.RETURNS_DEEP_STUBS.get()),
                 mock(BulkRetryCoordinatorPool.class),
                 referenceResolver,
-                functions
+                functions,
+                mock(SpillDirectory.class)
         );
         CollectingProjector collectingProjector = new CollectingProjector();
         final PageDownstream pageDownstream = getPageDownstream(mergeNode, pageDownstreamFactory, collectingProjector);
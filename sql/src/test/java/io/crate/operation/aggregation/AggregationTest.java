@@ -38,6 +38,8 @@ import org.elasticsearch.common.inject.Injector;
 import org.elasticsearch.common.inject.ModulesBuilder;
 import org.junit.Before;
 
+import static org.hamcrest.Matchers.is;
+
 public abstract class AggregationTest extends CrateUnitTest {
 
     protected static final RamAccountingContext ramAccountingContext =
@@ -87,7 +89,32 @@ public abstract class AggregationTest extends CrateUnitTest {
 
         }
         state = impl.terminatePartial(ramAccountingContext, state);
+        assertColumnarStatesEqual(impl, inputs, bucket, state);
         return new Object[][]{{state}};
     }
 
+    /**
+     * if the aggregation supports columnar states, aggregate the data into group 0,
+     * reduce its partial value into group 1 and check that both result in the same value as the state objects
+     */
+    private void assertColumnarStatesEqual(AggregationFunction impl,
+                                           InputCollectExpression[] inputs,
+                                           ArrayBucket bucket,
+                                           Object expected) {
+        ColumnarStates states = impl.newColumnarStates(ramAccountingContext);
+        if (states == null) {
+            return;
+        }
+        states.ensureCapacity(2);
+        for (Row row : bucket) {
+            for (InputCollectExpression i : inputs) {
+                i.setNextRow(row);
+            }
+            states.iterate(0, inputs);
+        }
+        states.reduce(1, states.partialValue(0));
+        assertThat(states.finalValue(0), is(expected));
+        assertThat(states.finalValue(1), is(expected));
+    }
+
 }
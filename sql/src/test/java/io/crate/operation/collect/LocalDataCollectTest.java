@@ -48,6 +48,7 @@ import io.crate.operation.reference.sys.node.SysNodeExpressionModule;
 import io.crate.testing.CollectingProjector;
 import io.crate.operation.projectors.ResultProvider;
 import io.crate.operation.projectors.ResultProviderFactory;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.operation.reference.sys.shard.SysShardExpression;
 import io.crate.planner.RowGranularity;
 import io.crate.planner.node.ExecutionNode;
@@ -211,6 +212,7 @@ public class LocalDataCollectTest extends CrateUnitTest {
 
             bind(TransportBulkCreateIndicesAction.class).toInstance(mock(TransportBulkCreateIndicesAction.class));
             bind(CircuitBreakerService.class).toInstance(new NoneCircuitBreakerService());
+            bind(IndicesLifecycle.class).toInstance(mock(IndicesLifecycle.class));
             bind(ActionFilters.class).toInstance(mock(ActionFilters.class));
             bind(ScriptService.class).toInstance(mock(ScriptService.class));
             bind(SearchService.class).toInstance(mock(InternalSearchService.class));
@@ -369,12 +371,13 @@ public class LocalDataCollectTest extends CrateUnitTest {
                 ),
                 new ResultProviderFactory() {
                     @Override
-                    public ResultProvider createDownstream(ExecutionNode node, UUID jobId) {
+                    public ResultProvider createDownstream(ExecutionNode node, UUID jobId, RamAccountingContext ramAccountingContext) {
                         return new CollectingProjector();
                     }
                 },
                 mock(InformationSchemaCollectService.class),
-                mock(UnassignedShardsCollectService.class)
+                mock(UnassignedShardsCollectService.class),
+                mock(SpillDirectory.class)
         );
     }
 
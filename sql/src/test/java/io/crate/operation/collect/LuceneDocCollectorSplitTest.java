@@ -0,0 +1,141 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import io.crate.test.integration.CrateUnitTest;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.AtomicReaderContext;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.NoMergePolicy;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.lucene.Lucene;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.lessThan;
+
+public class LuceneDocCollectorSplitTest extends CrateUnitTest {
+
+    private static final int[] SEGMENT_SIZES = new int[]{50, 10, 10, 30, 5, 25, 20};
+
+    private IndexWriter writer;
+    private DirectoryReader reader;
+
+    @Before
+    public void prepare() throws Exception {
+        IndexWriterConfig config = new IndexWriterConfig(Lucene.VERSION, new StandardAnalyzer());
+        config.setMergePolicy(NoMergePolicy.INSTANCE);
+        writer = new IndexWriter(new RAMDirectory(), config);
+        for (int segmentSize : SEGMENT_SIZES) {
+            for (int i = 0; i < segmentSize; i++) {
+                Document document = new Document();
+                document.add(new StringField("name", "doc" + i, Field.Store.NO));
+                writer.addDocument(document);
+            }
+            writer.commit();
+        }
+        reader = DirectoryReader.open(writer, true);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        reader.close();
+        writer.close();
+        writer.getDirectory().close();
+    }
+
+    @Test
+    public void testSplitContainsEveryLeafOnce() throws Exception {
+        assertThat(reader.leaves().size(), is(SEGMENT_SIZES.length));
+        List<List<AtomicReaderContext>> splits = LuceneDocCollector.splitLeaves(reader.leaves(), 3);
+        assertThat(splits.size(), is(3));
+
+        Set<Integer> ords = new HashSet<>();
+        int numLeaves = 0;
+        for (List<AtomicReaderContext> split : splits) {
+            int previousOrd = -1;
+            for (AtomicReaderContext leaf : split) {
+                // leaves of a split are collected in index order
+                assertThat(previousOrd, lessThan(leaf.ord));
+                previousOrd = leaf.ord;
+                ords.add(leaf.ord);
+                numLeaves++;
+            }
+        }
+        assertThat(numLeaves, is(SEGMENT_SIZES.length));
+        assertThat(ords.size(), is(SEGMENT_SIZES.length));
+    }
+
+    @Test
+    public void testSplitsAreBalancedByDocs() throws Exception {
+        List<List<AtomicReaderContext>> splits = LuceneDocCollector.splitLeaves(reader.leaves(), 3);
+        for (List<AtomicReaderContext> split : splits) {
+            int docs = 0;
+            for (AtomicReaderContext leaf : split) {
+                docs += leaf.reader().maxDoc();
+            }
+            // 150 docs in total
+            assertThat(docs, is(50));
+        }
+    }
+
+    @Test
+    public void testSplitIntoMoreSplitsThanLeaves() throws Exception {
+        List<List<AtomicReaderContext>> splits = LuceneDocCollector.splitLeaves(reader.leaves(), 20);
+        assertThat(splits.size(), is(SEGMENT_SIZES.length));
+        for (List<AtomicReaderContext> split : splits) {
+            assertThat(split.size(), is(1));
+        }
+    }
+
+    @Test
+    public void testNoSplit() throws Exception {
+        List<List<AtomicReaderContext>> splits = LuceneDocCollector.splitLeaves(reader.leaves(), 1);
+        assertThat(splits.size(), is(1));
+        assertThat(splits.get(0), is(reader.leaves()));
+    }
+
+    @Test
+    public void testNumSplits() throws Exception {
+        int manyDocs = LuceneDocCollector.MIN_DOCS_PER_SPLIT * 10;
+        assertThat(LuceneDocCollector.numSplits(4, 10, 10, manyDocs), is(4));
+        // the current thread collects a split itself
+        assertThat(LuceneDocCollector.numSplits(4, 1, 10, manyDocs), is(2));
+        assertThat(LuceneDocCollector.numSplits(4, 0, 10, manyDocs), is(1));
+        assertThat(LuceneDocCollector.numSplits(4, -2, 10, manyDocs), is(1));
+        assertThat(LuceneDocCollector.numSplits(4, 10, 3, manyDocs), is(3));
+        // small shards aren't split
+        assertThat(LuceneDocCollector.numSplits(4, 10, 10, LuceneDocCollector.MIN_DOCS_PER_SPLIT * 2), is(2));
+        assertThat(LuceneDocCollector.numSplits(4, 10, 10, 100), is(1));
+    }
+}
@@ -26,10 +26,12 @@ import io.crate.action.sql.SQLBulkRequest;
 import io.crate.analyze.OrderBy;
 import io.crate.analyze.WhereClause;
 import io.crate.breaker.RamAccountingContext;
+import io.crate.core.collections.Row;
 import io.crate.integrationtests.SQLTransportIntegrationTest;
 import io.crate.jobs.JobContextService;
 import io.crate.jobs.JobExecutionContext;
 import io.crate.metadata.*;
+import io.crate.operation.RowBatchDownstreamHandle;
 import io.crate.operation.operator.EqOperator;
 import io.crate.testing.CollectingProjector;
 import io.crate.operation.projectors.ProjectionToProjectorVisitor;
@@ -171,6 +173,16 @@ public class LuceneDocCollectorTest extends SQLTransportIntegrationTest {
         assertThat(collectingProjector.rows.size(), is(15));
     }
 
+    @Test
+    public void testLimitWithoutOrderPassesRowsInBatches() throws Exception{
+        BatchCollectingProjector batchCollectingProjector = new BatchCollectingProjector();
+        collectingProjector = batchCollectingProjector;
+        LuceneDocCollector docCollector = createDocCollector(null, 15, orderBy.orderBySymbols());
+        docCollector.doCollect(jobCollectContext);
+        assertThat(collectingProjector.rows.size(), is(15));
+        assertThat(batchCollectingProjector.rowsInBatches, is(15));
+    }
+
     @Test
     public void testOrderedWithLimit() throws Exception{
         collectingProjector.rows.clear();
@@ -420,4 +432,18 @@ public class LuceneDocCollectorTest extends SQLTransportIntegrationTest {
         docCollector.doCollect(jobCollectContext);
         assertThat(collectingProjector.rows.size(), is(NUMBER_OF_DOCS));
     }
+
+    private static class BatchCollectingProjector extends CollectingProjector implements RowBatchDownstreamHandle {
+
+        private int rowsInBatches = 0;
+
+        @Override
+        public synchronized boolean setNextRows(Iterable<Row> rows) {
+            for (Row row : rows) {
+                rowsInBatches++;
+                setNextRow(row);
+            }
+            return true;
+        }
+    }
 }
@@ -22,6 +22,7 @@
 package io.crate.operation.collect;
 
 import com.google.common.collect.ImmutableMap;
+import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.TreeMapBuilder;
 import io.crate.executor.transport.TransportActionProvider;
 import io.crate.jobs.ExecutionState;
@@ -30,6 +31,7 @@ import io.crate.operation.reference.sys.node.NodeSysExpression;
 import io.crate.testing.CollectingProjector;
 import io.crate.operation.projectors.ResultProvider;
 import io.crate.operation.projectors.ResultProviderFactory;
+import io.crate.operation.projectors.SpillDirectory;
 import io.crate.planner.PlanNodeBuilder;
 import io.crate.planner.node.ExecutionNode;
 import io.crate.planner.node.dql.FileUriCollectNode;
@@ -113,12 +115,13 @@ public class MapSideDataCollectOperationTest {
                 ),
                 new ResultProviderFactory() {
                     @Override
-                    public ResultProvider createDownstream(ExecutionNode node, UUID jobId) {
+                    public ResultProvider createDownstream(ExecutionNode node, UUID jobId, RamAccountingContext ramAccountingContext) {
                         return new CollectingProjector();
                     }
                 },
                 mock(InformationSchemaCollectService.class),
-                mock(UnassignedShardsCollectService.class)
+                mock(UnassignedShardsCollectService.class),
+                mock(SpillDirectory.class)
         );
 
         File tmpFile = temporaryFolder.newFile("fileUriCollectOperation.json");
@@ -0,0 +1,157 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import io.crate.breaker.RamAccountingContext;
+import io.crate.test.integration.CrateUnitTest;
+import org.apache.lucene.analysis.standard.StandardAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.NumericDocValuesField;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.DirectoryReader;
+import org.apache.lucene.index.IndexWriter;
+import org.apache.lucene.index.IndexWriterConfig;
+import org.apache.lucene.index.Term;
+import org.apache.lucene.search.*;
+import org.apache.lucene.store.RAMDirectory;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.lucene.Lucene;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+
+public class MatchingDocsCollectorTest extends CrateUnitTest {
+
+    private static final RamAccountingContext RAM_ACCOUNTING_CONTEXT =
+            new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+
+    private IndexWriter writer;
+    private DirectoryReader reader;
+    private IndexSearcher searcher;
+
+    @Before
+    public void prepare() throws Exception {
+        writer = new IndexWriter(new RAMDirectory(), new IndexWriterConfig(Lucene.VERSION, new StandardAnalyzer()));
+        for (int i = 0; i < 100; i++) {
+            Document document = new Document();
+            document.add(new StringField("type", i % 3 == 0 ? "skip" : "match", Field.Store.NO));
+            // many equal values to check that ties are neither lost nor duplicated across pages
+            document.add(new NumericDocValuesField("value", (i * 7) % 10));
+            writer.addDocument(document);
+            if (i % 30 == 0) {
+                // create multiple segments
+                writer.commit();
+            }
+        }
+        reader = DirectoryReader.open(writer, true);
+        searcher = new IndexSearcher(reader);
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        reader.close();
+        writer.close();
+        writer.getDirectory().close();
+    }
+
+    private List<Integer> collectPages(Query query, Sort sort, int pageSize) throws Exception {
+        MatchingDocsCollector collector = new MatchingDocsCollector(
+                reader.leaves(), sort.needsScores(), null, RAM_ACCOUNTING_CONTEXT);
+        searcher.search(query, collector);
+        List<Integer> docs = new ArrayList<>();
+        TopFieldDocs page;
+        do {
+            page = collector.nextPage(sort, pageSize, Integer.MAX_VALUE);
+            for (ScoreDoc scoreDoc : page.scoreDocs) {
+                docs.add(scoreDoc.doc);
+            }
+        } while (page.scoreDocs.length == pageSize);
+        return docs;
+    }
+
+    private List<Integer> sortAll(Query query, Sort sort) throws Exception {
+        List<Integer> docs = new ArrayList<>();
+        for (ScoreDoc scoreDoc : searcher.search(query, reader.maxDoc(), sort).scoreDocs) {
+            docs.add(scoreDoc.doc);
+        }
+        return docs;
+    }
+
+    @Test
+    public void testPagesAreInSortOrder() throws Exception {
+        Query query = new TermQuery(new Term("type", "match"));
+        Sort sort = new Sort(new SortField("value", SortField.Type.LONG));
+        List<Integer> docs = collectPages(query, sort, 7);
+        assertThat(docs.size(), is(66));
+        assertThat(docs, is(sortAll(query, sort)));
+    }
+
+    @Test
+    public void testPagesAreInReverseSortOrder() throws Exception {
+        Query query = new MatchAllDocsQuery();
+        Sort sort = new Sort(new SortField("value", SortField.Type.LONG, true));
+        List<Integer> docs = collectPages(query, sort, 10);
+        assertThat(docs.size(), is(100));
+        assertThat(docs, is(sortAll(query, sort)));
+    }
+
+    @Test
+    public void testPagesAreReadFromGrowingWindows() throws Exception {
+        // a page size of 1 requires several windows, each one twice as large as the previous one
+        Query query = new MatchAllDocsQuery();
+        Sort sort = new Sort(new SortField("value", SortField.Type.LONG));
+        List<Integer> docs = collectPages(query, sort, 1);
+        assertThat(docs.size(), is(100));
+        assertThat(docs, is(sortAll(query, sort)));
+    }
+
+    @Test
+    public void testPageIsNotShorterThanRequestedAtTheEndOfAWindow() throws Exception {
+        MatchingDocsCollector collector = new MatchingDocsCollector(
+                reader.leaves(), false, null, RAM_ACCOUNTING_CONTEXT);
+        searcher.search(new MatchAllDocsQuery(), collector);
+        Sort sort = new Sort(new SortField("value", SortField.Type.LONG));
+        assertThat(collector.nextPage(sort, 3, Integer.MAX_VALUE).scoreDocs.length, is(3));
+        // the second window contains 6 documents
+        assertThat(collector.nextPage(sort, 2, Integer.MAX_VALUE).scoreDocs.length, is(2));
+        // the 4 remaining documents of the second window are not enough, the page continues with the third window
+        assertThat(collector.nextPage(sort, 5, Integer.MAX_VALUE).scoreDocs.length, is(5));
+    }
+
+    @Test
+    public void testSortByScore() throws Exception {
+        BooleanQuery query = new BooleanQuery();
+        query.add(new TermQuery(new Term("type", "match")), BooleanClause.Occur.SHOULD);
+        query.add(new MatchAllDocsQuery(), BooleanClause.Occur.SHOULD);
+        Sort sort = new Sort(SortField.FIELD_SCORE, new SortField("value", SortField.Type.LONG));
+        List<Integer> docs = collectPages(query, sort, 9);
+        assertThat(docs.size(), is(100));
+        assertThat(docs, is(sortAll(query, sort)));
+    }
+}
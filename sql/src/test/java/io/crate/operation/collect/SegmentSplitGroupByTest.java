@@ -0,0 +1,94 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.collect;
+
+import io.crate.integrationtests.SQLTransportIntegrationTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.test.ElasticsearchIntegrationTest;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+
+@ElasticsearchIntegrationTest.ClusterScope(numDataNodes = 1)
+public class SegmentSplitGroupByTest extends SQLTransportIntegrationTest {
+
+    private static final int NUM_SEGMENTS = 4;
+    private static final int NUM_KEYS = 10;
+
+    private int minDocsPerSplit;
+
+    @Override
+    protected Settings nodeSettings(int nodeOrdinal) {
+        return ImmutableSettings.builder()
+                .put(super.nodeSettings(nodeOrdinal))
+                .put(ShardCollectService.SEGMENT_PARALLELISM_SETTING, NUM_SEGMENTS)
+                .build();
+    }
+
+    @Before
+    public void setUpSegments() throws Exception {
+        minDocsPerSplit = LuceneDocCollector.MIN_DOCS_PER_SPLIT;
+        LuceneDocCollector.MIN_DOCS_PER_SPLIT = 1;
+
+        execute("create table t (k string, v int) clustered by (k) into 1 shards with (number_of_replicas = 0)");
+        ensureYellow();
+        // every refresh creates a new segment which contains every key once
+        for (int segment = 0; segment < NUM_SEGMENTS; segment++) {
+            Object[][] bulkArgs = new Object[NUM_KEYS][];
+            for (int key = 0; key < NUM_KEYS; key++) {
+                bulkArgs[key] = new Object[]{"key" + key, segment};
+            }
+            execute("insert into t (k, v) values (?, ?)", bulkArgs);
+            execute("refresh table t");
+        }
+    }
+
+    @After
+    public void resetMinDocsPerSplit() throws Exception {
+        LuceneDocCollector.MIN_DOCS_PER_SPLIT = minDocsPerSplit;
+    }
+
+    @Test
+    public void testGroupByRoutingColumnWithHavingAndLimitOnSplitSegments() throws Exception {
+        // grouped by the routing column, so the groups are final and filtered on the shard
+        execute("select k, count(*), sum(v) from t group by k having count(*) > 1 limit 5");
+        assertThat(response.rowCount(), is(5L));
+        for (Object[] row : response.rows()) {
+            assertThat((Long) row[1], is((long) NUM_SEGMENTS));
+            assertThat(((Number) row[2]).longValue(), is(6L));
+        }
+
+        execute("select k, count(*) from t group by k having count(*) > 1");
+        assertThat(response.rowCount(), is((long) NUM_KEYS));
+    }
+
+    @Test
+    public void testGlobalAggregationOnSplitSegments() throws Exception {
+        execute("select count(*), sum(v) from t");
+        assertThat((Long) response.rows()[0][0], is((long) NUM_SEGMENTS * NUM_KEYS));
+        assertThat(((Number) response.rows()[0][1]).longValue(), is(6L * NUM_KEYS));
+    }
+}
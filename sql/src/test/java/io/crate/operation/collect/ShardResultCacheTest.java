@@ -0,0 +1,230 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.collect;
+
+import com.google.common.collect.ImmutableList;
+import io.crate.Streamer;
+import io.crate.breaker.CrateCircuitBreakerService;
+import io.crate.core.collections.Row;
+import io.crate.core.collections.RowN;
+import io.crate.executor.transport.StreamBucket;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionInfo;
+import io.crate.operation.aggregation.impl.CountAggregation;
+import io.crate.planner.RowGranularity;
+import io.crate.planner.node.StreamerVisitor;
+import io.crate.planner.node.dql.CollectNode;
+import io.crate.planner.projection.AggregationProjection;
+import io.crate.planner.projection.GroupProjection;
+import io.crate.planner.projection.Projection;
+import io.crate.planner.projection.TopNProjection;
+import io.crate.planner.symbol.*;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesLifecycle;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static io.crate.testing.TestingHelpers.createReference;
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+public class ShardResultCacheTest extends CrateUnitTest {
+
+    private static final ShardId SHARD_ID = new ShardId("t", 0);
+    private static final BytesRef PLAN_KEY = new BytesRef("plan");
+
+    private MemoryCircuitBreaker breaker;
+    private ShardResultCache cache;
+
+    @Before
+    public void prepare() throws Exception {
+        breaker = new MemoryCircuitBreaker(new ByteSizeValue(1024 * 1024), 1.0, Loggers.getLogger(getClass()));
+        CrateCircuitBreakerService breakerService = mock(CrateCircuitBreakerService.class);
+        when(breakerService.getBreaker(CrateCircuitBreakerService.QUERY_BREAKER)).thenReturn(breaker);
+        cache = new ShardResultCache(
+                ImmutableSettings.builder().put(ShardResultCache.SIZE_SETTING, "64kb").build(),
+                breakerService,
+                mock(IndicesLifecycle.class),
+                mock(StreamerVisitor.class));
+    }
+
+    private static StreamBucket bucket(Long... values) throws Exception {
+        StreamBucket.Builder builder = new StreamBucket.Builder(new Streamer[]{DataTypes.LONG.streamer()});
+        for (Long value : values) {
+            builder.add(new RowN(new Object[]{value}));
+        }
+        return builder.build();
+    }
+
+    private static Aggregation countAggregation(Aggregation.Step toStep) {
+        return new Aggregation(CountAggregation.COUNT_STAR_FUNCTION, ImmutableList.<Symbol>of(),
+                Aggregation.Step.ITER, toStep);
+    }
+
+    @Test
+    public void testGetCachedRows() throws Exception {
+        cache.put(SHARD_ID, 1L, PLAN_KEY, bucket(1L, 2L), 16);
+
+        StreamBucket rows = cache.get(SHARD_ID, 1L, PLAN_KEY);
+        assertThat(rows, notNullValue());
+        assertThat(rows.size(), is(2));
+        Row first = rows.iterator().next();
+        assertThat((Long) first.get(0), is(1L));
+
+        assertThat(cache.get(SHARD_ID, 1L, new BytesRef("other plan")), nullValue());
+        assertThat(cache.get(new ShardId("t", 1), 1L, PLAN_KEY), nullValue());
+        assertThat(cache.stats().hitCount(), is(1L));
+        assertThat(cache.stats().missCount(), is(2L));
+        assertThat(cache.sizeInBytes(), is(16L));
+        assertThat(breaker.getUsed(), is(16L));
+    }
+
+    @Test
+    public void testNewerReaderRemovesOlderEntries() throws Exception {
+        cache.put(SHARD_ID, 1L, PLAN_KEY, bucket(1L), 8);
+        assertThat(cache.get(SHARD_ID, 2L, PLAN_KEY), nullValue());
+        assertThat(cache.size(), is(0L));
+        assertThat(breaker.getUsed(), is(0L));
+
+        // results of an outdated reader are not cached anymore
+        cache.put(SHARD_ID, 1L, PLAN_KEY, bucket(1L), 8);
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.get(SHARD_ID, 1L, PLAN_KEY), nullValue());
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        cache.put(SHARD_ID, 1L, PLAN_KEY, bucket(1L), 8);
+        cache.invalidate(SHARD_ID);
+        assertThat(cache.size(), is(0L));
+        assertThat(cache.sizeInBytes(), is(0L));
+        assertThat(breaker.getUsed(), is(0L));
+    }
+
+    @Test
+    public void testTooLargeEntryIsNotCached() throws Exception {
+        cache.put(SHARD_ID, 1L, PLAN_KEY, bucket(1L), cache.maxEntryBytes() + 1);
+        assertThat(cache.size(), is(0L));
+        assertThat(breaker.getUsed(), is(0L));
+    }
+
+    @Test
+    public void testPlanKey() throws Exception {
+        List<Symbol> toCollect = ImmutableList.<Symbol>of(createReference("x", DataTypes.LONG));
+        CollectNode collectNode = new CollectNode(1, "collect", null, toCollect, ImmutableList.<Projection>of());
+        List<Projection> shardProjections = ImmutableList.<Projection>of(
+                new AggregationProjection(Arrays.asList(countAggregation(Aggregation.Step.PARTIAL))));
+
+        BytesRef planKey = cache.planKey(collectNode, shardProjections);
+        assertThat(planKey, notNullValue());
+        assertThat(cache.planKey(collectNode, shardProjections), is(planKey));
+        assertThat(cache.planKey(collectNode, ImmutableList.<Projection>of()), nullValue());
+
+        collectNode.keepContextForFetcher(true);
+        assertThat(cache.planKey(collectNode, shardProjections), nullValue());
+    }
+
+    @Test
+    public void testNoPlanKeyForNonDeterministicFunctions() throws Exception {
+        Function random = new Function(new FunctionInfo(
+                new FunctionIdent("random", ImmutableList.<DataType>of()), DataTypes.DOUBLE,
+                FunctionInfo.Type.SCALAR, false), ImmutableList.<Symbol>of());
+        CollectNode collectNode = new CollectNode(1, "collect", null,
+                ImmutableList.<Symbol>of(random), ImmutableList.<Projection>of());
+        List<Projection> shardProjections = ImmutableList.<Projection>of(
+                new AggregationProjection(Arrays.asList(countAggregation(Aggregation.Step.PARTIAL))));
+
+        assertThat(cache.planKey(collectNode, shardProjections), nullValue());
+    }
+
+    @Test
+    public void testSplitAggregationProjection() throws Exception {
+        List<Projection> projections = ImmutableList.<Projection>of(
+                new AggregationProjection(Arrays.asList(countAggregation(Aggregation.Step.FINAL))),
+                new TopNProjection(10, 0));
+
+        List<Projection> split = ShardResultCache.splitShardAggregation(projections);
+        assertThat(split, notNullValue());
+        assertThat(split.size(), is(3));
+
+        AggregationProjection shardProjection = (AggregationProjection) split.get(0);
+        assertThat(shardProjection.requiredGranularity(), is(RowGranularity.SHARD));
+        assertThat(shardProjection.aggregations().get(0).fromStep(), is(Aggregation.Step.ITER));
+        assertThat(shardProjection.aggregations().get(0).toStep(), is(Aggregation.Step.PARTIAL));
+
+        AggregationProjection nodeProjection = (AggregationProjection) split.get(1);
+        assertThat(nodeProjection.requiredGranularity(), is(RowGranularity.CLUSTER));
+        Aggregation merge = nodeProjection.aggregations().get(0);
+        assertThat(merge.fromStep(), is(Aggregation.Step.PARTIAL));
+        assertThat(merge.toStep(), is(Aggregation.Step.FINAL));
+        assertThat(((InputColumn) merge.inputs().get(0)).index(), is(0));
+
+        assertThat(split.get(2), sameInstance(projections.get(1)));
+    }
+
+    @Test
+    public void testSplitGroupProjection() throws Exception {
+        GroupProjection groupProjection = new GroupProjection(
+                ImmutableList.<Symbol>of(new InputColumn(0, DataTypes.STRING)),
+                Arrays.asList(countAggregation(Aggregation.Step.PARTIAL)));
+
+        List<Projection> split = ShardResultCache.splitShardAggregation(ImmutableList.<Projection>of(groupProjection));
+        assertThat(split, notNullValue());
+        assertThat(split.size(), is(2));
+
+        GroupProjection shardProjection = (GroupProjection) split.get(0);
+        assertThat(shardProjection.requiredGranularity(), is(RowGranularity.SHARD));
+        assertThat(shardProjection.keys(), is(groupProjection.keys()));
+
+        GroupProjection nodeProjection = (GroupProjection) split.get(1);
+        assertThat(((InputColumn) nodeProjection.keys().get(0)).index(), is(0));
+        assertThat(nodeProjection.keys().get(0).valueType(), is((DataType) DataTypes.STRING));
+        Aggregation merge = nodeProjection.values().get(0);
+        assertThat(merge.fromStep(), is(Aggregation.Step.PARTIAL));
+        assertThat(merge.toStep(), is(Aggregation.Step.PARTIAL));
+        assertThat(((InputColumn) merge.inputs().get(0)).index(), is(1));
+    }
+
+    @Test
+    public void testDontSplitIfThereAreShardProjections() throws Exception {
+        GroupProjection groupProjection = new GroupProjection(
+                ImmutableList.<Symbol>of(new InputColumn(0, DataTypes.STRING)),
+                Arrays.asList(countAggregation(Aggregation.Step.FINAL)));
+        groupProjection.setRequiredGranularity(RowGranularity.SHARD);
+
+        assertThat(ShardResultCache.splitShardAggregation(ImmutableList.<Projection>of(groupProjection)), nullValue());
+        assertThat(ShardResultCache.splitShardAggregation(
+                ImmutableList.<Projection>of(new TopNProjection(10, 0))), nullValue());
+    }
+}
@@ -28,6 +28,7 @@ import com.amazonaws.services.s3.model.S3Object;
 import com.amazonaws.services.s3.model.S3ObjectInputStream;
 import com.amazonaws.services.s3.model.S3ObjectSummary;
 import com.google.common.base.Joiner;
+import com.google.common.base.Strings;
 import com.google.common.collect.ImmutableMap;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Row;
@@ -43,6 +44,7 @@ import io.crate.operation.reference.file.FileLineReferenceResolver;
 import io.crate.test.integration.CrateUnitTest;
 import io.crate.testing.TestingHelpers;
 import io.crate.types.DataTypes;
+import org.apache.lucene.util.BytesRef;
 import org.junit.*;
 import org.mockito.invocation.InvocationOnMock;
 import org.mockito.stubbing.Answer;
@@ -52,12 +54,12 @@ import java.net.SocketTimeoutException;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
-import java.util.Arrays;
-import java.util.Iterator;
+import java.util.*;
 import java.util.zip.GZIPOutputStream;
 
 import static io.crate.testing.TestingHelpers.createReference;
 import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.containsInAnyOrder;
 import static org.hamcrest.Matchers.is;
 import static org.mockito.Matchers.*;
 import static org.mockito.Mockito.mock;
@@ -69,6 +71,8 @@ public class FileReadingCollectorTest extends CrateUnitTest {
     private static File tmpFile;
     private static File tmpFileGz;
     private static File tmpFileEmptyLine;
+    private static File tmpFileManyLines;
+    private static List<String> manyLines = new ArrayList<>();
     private FileCollectInputSymbolVisitor inputSymbolVisitor;
 
     @BeforeClass
@@ -76,9 +80,22 @@ public class FileReadingCollectorTest extends CrateUnitTest {
         Path copy_from = Files.createTempDirectory("copy_from");
         Path copy_from_gz = Files.createTempDirectory("copy_from_gz");
         Path copy_from_empty = Files.createTempDirectory("copy_from_empty");
+        Path copy_from_many = Files.createTempDirectory("copy_from_many");
         tmpFileGz = File.createTempFile("fileReadingCollector", ".json.gz", copy_from_gz.toFile());
         tmpFile = File.createTempFile("fileReadingCollector", ".json", copy_from.toFile());
         tmpFileEmptyLine = File.createTempFile("emptyLine", ".json", copy_from_empty.toFile());
+        tmpFileManyLines = File.createTempFile("manyLines", ".json", copy_from_many.toFile());
+        try (FileWriter writer = new FileWriter(tmpFileManyLines)) {
+            for (int i = 0; i < 200; i++) {
+                String line = String.format(Locale.ENGLISH, "{\"id\": %d, \"name\": \"%s\"}", i, Strings.repeat("x", i % 17));
+                manyLines.add(line);
+                writer.write(line);
+                writer.write(i % 3 == 0 ? "\r\n" : "\n");
+                if (i % 50 == 0) {
+                    writer.write("\n");
+                }
+            }
+        }
         try (BufferedWriter writer =
                      new BufferedWriter(new OutputStreamWriter(new GZIPOutputStream(new FileOutputStream(tmpFileGz))))) {
             writer.write("{\"name\": \"Arthur\", \"id\": 4, \"details\": {\"age\": 38}}\n");
@@ -110,6 +127,7 @@ public class FileReadingCollectorTest extends CrateUnitTest {
         tmpFile.delete();
         tmpFileGz.delete();
         tmpFileEmptyLine.delete();
+        tmpFileManyLines.delete();
     }
 
     @Test
@@ -170,6 +188,56 @@ public class FileReadingCollectorTest extends CrateUnitTest {
         assertCorrectResult(projector.result().get());
     }
 
+    @Test
+    public void testCollectSplitsWithSeveralReadersPerNode() throws Throwable {
+        String fileUri = Paths.get(tmpFileManyLines.toURI()).toUri().toString();
+        List<String> lines = new ArrayList<>();
+        for (int reader = 0; reader < 3; reader++) {
+            lines.addAll(collectLines(getSplitObjects(fileUri, false, 1, 0, 3, reader)));
+        }
+        assertThat(lines, containsInAnyOrder(manyLines.toArray()));
+    }
+
+    @Test
+    public void testCollectSplitsFromSharedStorage() throws Throwable {
+        String fileUri = Paths.get(tmpFileManyLines.toURI()).toUri().toString();
+        List<String> lines = new ArrayList<>();
+        for (int node = 0; node < 2; node++) {
+            for (int reader = 0; reader < 2; reader++) {
+                lines.addAll(collectLines(getSplitObjects(fileUri, true, 2, node, 2, reader)));
+            }
+        }
+        assertThat(lines, containsInAnyOrder(manyLines.toArray()));
+    }
+
+    @Test
+    public void testCollectSplitsFromSharedStorageWithDifferentReadersPerNode() throws Throwable {
+        String fileUri = Paths.get(tmpFileManyLines.toURI()).toUri().toString();
+        List<String> lines = new ArrayList<>();
+        for (int reader = 0; reader < 1; reader++) {
+            lines.addAll(collectLines(getSplitObjects(fileUri, true, 2, 0, 1, reader)));
+        }
+        for (int reader = 0; reader < 3; reader++) {
+            lines.addAll(collectLines(getSplitObjects(fileUri, true, 2, 1, 3, reader)));
+        }
+        assertThat(lines, containsInAnyOrder(manyLines.toArray()));
+    }
+
+    @Test
+    public void testStopReadingAllSplitsIfDownstreamWantsNoMoreRows() throws Throwable {
+        String fileUri = Paths.get(tmpFileManyLines.toURI()).toUri().toString();
+        CollectingProjector projector = new CollectingProjector() {
+            @Override
+            public boolean setNextRow(Row row) {
+                super.setNextRow(row);
+                return false;
+            }
+        };
+        // a single reader is assigned all splits of the file
+        List<String> lines = collectLines(getSplitObjects(projector, fileUri, false, 1, 0, 1, 0));
+        assertThat(lines.size(), is(1));
+    }
+
     @Test
     public void testCollectWithOneSocketTimeout() throws Throwable {
         S3ObjectInputStream inputStream = mock(S3ObjectInputStream.class);
@@ -201,6 +269,53 @@ public class FileReadingCollectorTest extends CrateUnitTest {
         assertThat(it.next(), isRow("{\"id\": 5, \"name\": \"Trillian\", \"details\": {\"age\": 33}}"));
     }
 
+    private static List<String> collectLines(CollectingProjector projector) throws Throwable {
+        List<String> lines = new ArrayList<>();
+        for (Row row : projector.result().get()) {
+            lines.add(((BytesRef) row.get(0)).utf8ToString());
+        }
+        return lines;
+    }
+
+    private CollectingProjector getSplitObjects(String fileUri,
+                                                boolean shared,
+                                                int numReaders,
+                                                int readerNumber,
+                                                int readersPerNode,
+                                                int localReaderNumber) throws Throwable {
+        return getSplitObjects(new CollectingProjector(), fileUri, shared, numReaders, readerNumber,
+                readersPerNode, localReaderNumber);
+    }
+
+    private CollectingProjector getSplitObjects(CollectingProjector projector,
+                                                String fileUri,
+                                                boolean shared,
+                                                int numReaders,
+                                                int readerNumber,
+                                                int readersPerNode,
+                                                int localReaderNumber) throws Throwable {
+        FileCollectInputSymbolVisitor.Context context =
+                inputSymbolVisitor.extractImplementations(createReference("_raw", DataTypes.STRING));
+        FileReadingCollector collector = new FileReadingCollector(
+                fileUri,
+                context.topLevelInputs(),
+                context.expressions(),
+                projector,
+                FileReadingCollector.FileFormat.JSON,
+                null,
+                ImmutableMap.<String, FileInputFactory>of(),
+                shared,
+                numReaders,
+                readerNumber,
+                readersPerNode,
+                localReaderNumber,
+                100
+        );
+        projector.startProjection(mock(ExecutionState.class));
+        collector.doCollect(mock(JobCollectContext.class));
+        return projector;
+    }
+
     private CollectingProjector getObjects(String fileUri) throws Throwable {
         return getObjects(fileUri, null);
     }
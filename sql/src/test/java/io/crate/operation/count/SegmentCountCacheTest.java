@@ -0,0 +1,153 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.count;
+
+import io.crate.analyze.WhereClause;
+import io.crate.metadata.FunctionIdent;
+import io.crate.metadata.FunctionInfo;
+import io.crate.planner.symbol.Function;
+import io.crate.planner.symbol.Literal;
+import io.crate.planner.symbol.Symbol;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.apache.lucene.analysis.core.KeywordAnalyzer;
+import org.apache.lucene.document.Document;
+import org.apache.lucene.document.Field;
+import org.apache.lucene.document.StringField;
+import org.apache.lucene.index.*;
+import org.apache.lucene.store.Directory;
+import org.apache.lucene.store.RAMDirectory;
+import org.apache.lucene.util.BytesRef;
+import org.elasticsearch.common.lucene.Lucene;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.index.shard.ShardId;
+import org.elasticsearch.indices.IndicesLifecycle;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.mockito.Mockito.mock;
+
+public class SegmentCountCacheTest extends CrateUnitTest {
+
+    private static final ShardId SHARD_ID = new ShardId("t", 0);
+    private static final BytesRef WHERE_CLAUSE_KEY = new BytesRef("where");
+
+    private Directory directory;
+    private IndexWriter writer;
+    private SegmentCountCache cache;
+
+    @Before
+    public void prepare() throws Exception {
+        directory = new RAMDirectory();
+        writer = new IndexWriter(directory, new IndexWriterConfig(Lucene.VERSION, new KeywordAnalyzer()));
+        cache = new SegmentCountCache(ImmutableSettings.EMPTY, mock(IndicesLifecycle.class));
+    }
+
+    @After
+    public void cleanUp() throws Exception {
+        writer.close();
+        directory.close();
+    }
+
+    private void addDocument(String id) throws Exception {
+        Document document = new Document();
+        document.add(new StringField("id", id, Field.Store.NO));
+        writer.addDocument(document);
+    }
+
+    @Test
+    public void testUnchangedSegmentIsCached() throws Exception {
+        addDocument("1");
+        addDocument("2");
+        writer.commit();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            AtomicReaderContext leaf = reader.leaves().get(0);
+            assertThat(cache.get(SHARD_ID, leaf, WHERE_CLAUSE_KEY), nullValue());
+            cache.put(SHARD_ID, leaf, WHERE_CLAUSE_KEY, 2L);
+            assertThat(cache.get(SHARD_ID, leaf, WHERE_CLAUSE_KEY), is(2L));
+            assertThat(cache.get(SHARD_ID, leaf, new BytesRef("other")), nullValue());
+            assertThat(cache.get(new ShardId("t", 1), leaf, WHERE_CLAUSE_KEY), nullValue());
+        }
+
+        addDocument("3");
+        writer.commit();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertThat(reader.leaves().size(), is(2));
+            // the old segment is still cached, only the new one has to be counted
+            assertThat(cache.get(SHARD_ID, reader.leaves().get(0), WHERE_CLAUSE_KEY), is(2L));
+            assertThat(cache.get(SHARD_ID, reader.leaves().get(1), WHERE_CLAUSE_KEY), nullValue());
+        }
+    }
+
+    @Test
+    public void testSegmentWithNewDeletionsIsNotCached() throws Exception {
+        addDocument("1");
+        addDocument("2");
+        writer.commit();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            cache.put(SHARD_ID, reader.leaves().get(0), WHERE_CLAUSE_KEY, 2L);
+        }
+
+        writer.deleteDocuments(new Term("id", "1"));
+        writer.commit();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            assertThat(reader.leaves().get(0).reader().numDeletedDocs(), is(1));
+            assertThat(cache.get(SHARD_ID, reader.leaves().get(0), WHERE_CLAUSE_KEY), nullValue());
+        }
+    }
+
+    @Test
+    public void testInvalidate() throws Exception {
+        addDocument("1");
+        writer.commit();
+        try (DirectoryReader reader = DirectoryReader.open(directory)) {
+            AtomicReaderContext leaf = reader.leaves().get(0);
+            cache.put(SHARD_ID, leaf, WHERE_CLAUSE_KEY, 1L);
+            cache.put(new ShardId("t", 1), leaf, WHERE_CLAUSE_KEY, 1L);
+            cache.invalidate(SHARD_ID);
+            assertThat(cache.get(SHARD_ID, leaf, WHERE_CLAUSE_KEY), nullValue());
+            assertThat(cache.size(), is(1L));
+        }
+    }
+
+    @Test
+    public void testWhereClauseKey() throws Exception {
+        assertThat(SegmentCountCache.whereClauseKey(WhereClause.MATCH_ALL),
+                is(SegmentCountCache.whereClauseKey(WhereClause.MATCH_ALL)));
+
+        FunctionInfo randomInfo = new FunctionInfo(
+                new FunctionIdent("random", Arrays.<DataType>asList()), DataTypes.DOUBLE,
+                FunctionInfo.Type.SCALAR, false);
+        FunctionInfo gtInfo = new FunctionInfo(
+                new FunctionIdent("op_>", Arrays.<DataType>asList(DataTypes.DOUBLE, DataTypes.DOUBLE)),
+                DataTypes.BOOLEAN);
+        Function query = new Function(gtInfo, Arrays.<Symbol>asList(
+                new Function(randomInfo, Arrays.<Symbol>asList()), Literal.newLiteral(0.5d)));
+        assertThat(SegmentCountCache.whereClauseKey(new WhereClause(query)), nullValue());
+    }
+}
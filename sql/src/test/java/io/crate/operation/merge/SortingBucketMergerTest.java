@@ -29,6 +29,7 @@ import com.google.common.util.concurrent.SettableFuture;
 import io.crate.core.collections.ArrayBucket;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.BucketPage;
+import io.crate.core.collections.Row;
 import io.crate.jobs.ExecutionState;
 import io.crate.operation.Input;
 import io.crate.operation.PageConsumeListener;
@@ -41,8 +42,11 @@ import io.crate.testing.TestingHelpers;
 import org.junit.Test;
 
 import javax.annotation.Nullable;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.Executor;
 
@@ -506,4 +510,37 @@ public class SortingBucketMergerTest extends CrateUnitTest {
         assertRows(mergeWith(3, false, page1), "A", "A", "A", "B", "B", "B", "NULL", "NULL", "NULL");
 
     }
-}
\ No newline at end of file
+
+    @Test
+    public void testMergeManyBucketsOverMultiplePages() throws Exception {
+        int numBuckets = 100;
+        int numPages = 3;
+        List<Integer> expected = new ArrayList<>();
+        BucketPage[] pages = new BucketPage[numPages];
+        for (int p = 0; p < numPages; p++) {
+            List<Object[]>[] buckets = new List[numBuckets];
+            for (int b = 0; b < numBuckets; b++) {
+                int[] values = new int[randomInt(20)];
+                for (int v = 0; v < values.length; v++) {
+                    // rows of later pages are never less than the rows of previous pages
+                    values[v] = p * 1000 + randomInt(999);
+                }
+                Arrays.sort(values);
+                buckets[b] = new ArrayList<>(values.length);
+                for (int value : values) {
+                    buckets[b].add(new Object[] { value });
+                    expected.add(value);
+                }
+            }
+            pages[p] = createPage(buckets);
+        }
+        Collections.sort(expected);
+
+        Bucket bucket = mergeWith(numBuckets, null, pages);
+        List<Object> actual = new ArrayList<>(bucket.size());
+        for (Row row : bucket) {
+            actual.add(row.get(0));
+        }
+        assertThat(actual, is((Object) expected));
+    }
+}
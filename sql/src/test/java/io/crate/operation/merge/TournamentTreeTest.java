@@ -0,0 +1,76 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.merge;
+
+import com.google.common.collect.Ordering;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.is;
+
+public class TournamentTreeTest extends CrateUnitTest {
+
+    /**
+     * the least value, the lowest index wins if values are equal, null values lose
+     */
+    private static int leastSource(Integer[] values) {
+        int least = 0;
+        for (int i = 1; i < values.length; i++) {
+            if (values[i] != null && (values[least] == null || values[i] < values[least])) {
+                least = i;
+            }
+        }
+        return least;
+    }
+
+    @Test
+    public void testWinnerAfterUpdates() throws Exception {
+        for (int numSources = 1; numSources <= 70; numSources++) {
+            Integer[] values = new Integer[numSources];
+            for (int i = 0; i < numSources; i++) {
+                values[i] = randomBoolean() ? null : randomInt(20);
+            }
+            TournamentTree<Integer> tree = new TournamentTree<>(Ordering.<Integer>natural(), values);
+            assertThat(tree.winner(), is(leastSource(values)));
+
+            for (int i = 0; i < 200; i++) {
+                int source = randomBoolean() ? tree.winner() : randomInt(numSources - 1);
+                values[source] = randomInt(10) == 0 ? null : randomInt(20);
+                tree.update(source);
+                assertThat(tree.winner(), is(leastSource(values)));
+            }
+        }
+    }
+
+    @Test
+    public void testAllSourcesExhausted() throws Exception {
+        Integer[] values = new Integer[] { 3, null, 1 };
+        TournamentTree<Integer> tree = new TournamentTree<>(Ordering.<Integer>natural(), values);
+        assertThat(tree.winner(), is(2));
+        values[2] = null;
+        tree.update(2);
+        assertThat(tree.winner(), is(0));
+        values[0] = null;
+        tree.update(0);
+        assertThat(values[tree.winner()] == null, is(true));
+    }
+}
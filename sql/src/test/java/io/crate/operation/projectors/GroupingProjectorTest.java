@@ -13,6 +13,7 @@ import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.collect.InputCollectExpression;
 import io.crate.operation.collect.JobCollectContext;
 import io.crate.planner.symbol.Aggregation;
 import io.crate.planner.symbol.Symbol;
@@ -23,12 +24,25 @@ import io.crate.types.DataTypes;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.breaker.CircuitBreaker;
 import org.elasticsearch.common.breaker.NoopCircuitBreaker;
+import org.elasticsearch.common.breaker.MemoryCircuitBreaker;
 import org.elasticsearch.common.inject.ModulesBuilder;
+import org.elasticsearch.common.logging.Loggers;
+import org.elasticsearch.common.unit.ByteSizeUnit;
+import org.elasticsearch.common.unit.ByteSizeValue;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.annotation.Nullable;
+import java.io.File;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
 import java.util.concurrent.ExecutionException;
 
+import static io.crate.testing.TestingHelpers.isRow;
+import static org.hamcrest.Matchers.containsInAnyOrder;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.Matchers.instanceOf;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Mockito.mock;
@@ -38,6 +52,9 @@ public class GroupingProjectorTest extends CrateUnitTest {
     protected static final RamAccountingContext RAM_ACCOUNTING_CONTEXT =
             new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     /**
      * NOTE:
      *
@@ -86,6 +103,286 @@ public class GroupingProjectorTest extends CrateUnitTest {
         assertThat(rows.iterator().next().get(1), instanceOf(Long.class));
     }
 
+    private Bucket countGroupedBy(List<DataType> keyTypes, Object[]... rows) throws Exception {
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+        return groupBy(keyTypes, new AggregationContext[] { aggregationContext },
+                new CollectExpression[0], rows);
+    }
+
+    /**
+     * group the rows by the leading keyTypes.size() columns and aggregate the column after the keys
+     */
+    private Bucket aggregateGroupedBy(List<DataType> keyTypes,
+                                      DataType valueType,
+                                      List<String> functionNames,
+                                      Object[]... rows) throws Exception {
+        return aggregateGroupedBy(keyTypes, valueType, functionNames, RAM_ACCOUNTING_CONTEXT, null, rows);
+    }
+
+    private Bucket aggregateGroupedBy(List<DataType> keyTypes,
+                                      DataType valueType,
+                                      List<String> functionNames,
+                                      RamAccountingContext ramAccountingContext,
+                                      @Nullable File spillDirectory,
+                                      Object[]... rows) throws Exception {
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        InputCollectExpression valueInput = new InputCollectExpression(keyTypes.size());
+        AggregationContext[] aggregations = new AggregationContext[functionNames.size()];
+        for (int i = 0; i < aggregations.length; i++) {
+            FunctionIdent ident = new FunctionIdent(functionNames.get(i), ImmutableList.of(valueType));
+            AggregationFunction function = (AggregationFunction) functions.get(ident);
+            Aggregation aggregation = new Aggregation(function.info(), ImmutableList.<Symbol>of(),
+                    Aggregation.Step.ITER, Aggregation.Step.FINAL);
+            aggregations[i] = new AggregationContext(function, aggregation);
+            aggregations[i].addInput(valueInput);
+        }
+        return groupBy(keyTypes, aggregations, new CollectExpression[] { valueInput },
+                ramAccountingContext, spillDirectory, rows);
+    }
+
+    private Bucket groupBy(List<DataType> keyTypes,
+                           AggregationContext[] aggregations,
+                           CollectExpression[] valueExpressions,
+                           Object[]... rows) throws Exception {
+        return groupBy(keyTypes, aggregations, valueExpressions, RAM_ACCOUNTING_CONTEXT, null, rows);
+    }
+
+    private Bucket groupBy(List<DataType> keyTypes,
+                           AggregationContext[] aggregations,
+                           CollectExpression[] valueExpressions,
+                           RamAccountingContext ramAccountingContext,
+                           @Nullable File spillDirectory,
+                           Object[]... rows) throws Exception {
+        List<Input<?>> keys = new ArrayList<>(keyTypes.size());
+        CollectExpression[] collectExpressions = new CollectExpression[keyTypes.size() + valueExpressions.length];
+        for (int i = 0; i < keyTypes.size(); i++) {
+            InputCollectExpression keyInput = new InputCollectExpression(i);
+            keys.add(keyInput);
+            collectExpressions[i] = keyInput;
+        }
+        System.arraycopy(valueExpressions, 0, collectExpressions, keyTypes.size(), valueExpressions.length);
+        GroupingProjector projector = new GroupingProjector(
+                keyTypes,
+                keys,
+                collectExpressions,
+                aggregations,
+                ramAccountingContext,
+                spillDirectory
+        );
+        CollectingProjector collectingProjector = new CollectingProjector();
+        projector.registerUpstream(null);
+        projector.downstream(collectingProjector);
+        projector.startProjection(mock(JobCollectContext.class));
+        for (Object[] row : rows) {
+            projector.setNextRow(new RowN(row));
+        }
+        projector.finish();
+        return collectingProjector.result().get();
+    }
+
+    @Test
+    public void testGroupByLongKey() throws Exception {
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.LONG),
+                new Object[] { 1L }, new Object[] { -1L }, new Object[] { null },
+                new Object[] { Long.MAX_VALUE }, new Object[] { 1L }, new Object[] { null });
+        assertThat(rows, containsInAnyOrder(
+                isRow(1L, 2L), isRow(-1L, 1L), isRow(null, 2L), isRow(Long.MAX_VALUE, 1L)));
+    }
+
+    @Test
+    public void testGroupByIntegerKeyReturnsIntegers() throws Exception {
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.INTEGER),
+                new Object[] { 10 }, new Object[] { 20 }, new Object[] { 10 });
+        assertThat(rows, containsInAnyOrder(isRow(10, 2L), isRow(20, 1L)));
+        assertThat(rows.iterator().next().get(0), instanceOf(Integer.class));
+    }
+
+    @Test
+    public void testGroupByDoubleKey() throws Exception {
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.DOUBLE),
+                new Object[] { 0.5d }, new Object[] { -0.0d }, new Object[] { 0.0d },
+                new Object[] { Double.NaN }, new Object[] { 0.5d }, new Object[] { Double.NaN });
+        assertThat(rows, containsInAnyOrder(
+                isRow(0.5d, 2L), isRow(-0.0d, 1L), isRow(0.0d, 1L), isRow(Double.NaN, 2L)));
+    }
+
+    @Test
+    public void testGroupByStringKey() throws Exception {
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.STRING),
+                new Object[] { new BytesRef("foo") }, new Object[] { new BytesRef("") },
+                new Object[] { null }, new Object[] { new BytesRef("foo") }, new Object[] { "bar" });
+        assertThat(rows, containsInAnyOrder(
+                isRow("foo", 2L), isRow("", 1L), isRow(null, 1L), isRow("bar", 1L)));
+    }
+
+    @Test
+    public void testGroupByStringKeyLongerThanBytesRefHashLimit() throws Exception {
+        char[] chars = new char[40000];
+        Arrays.fill(chars, 'a');
+        String longKey = new String(chars);
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.STRING),
+                new Object[] { new BytesRef(longKey) }, new Object[] { new BytesRef("foo") },
+                new Object[] { new BytesRef(longKey) });
+        assertThat(rows, containsInAnyOrder(isRow(longKey, 2L), isRow("foo", 1L)));
+    }
+
+    @Test
+    public void testGroupByPackedKeys() throws Exception {
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.INTEGER),
+                new Object[] { 1, -1 }, new Object[] { -1, 1 }, new Object[] { 1, -1 },
+                new Object[] { Integer.MIN_VALUE, Integer.MAX_VALUE }, new Object[] { null, 1 },
+                new Object[] { 1, null }, new Object[] { null, 1 });
+        assertThat(rows, containsInAnyOrder(
+                isRow(1, -1, 2L),
+                isRow(-1, 1, 1L),
+                isRow(Integer.MIN_VALUE, Integer.MAX_VALUE, 1L),
+                isRow(null, 1, 2L),
+                isRow(1, null, 1L)));
+    }
+
+    @Test
+    public void testGroupByPackedBooleanShortByteKeys() throws Exception {
+        Bucket rows = countGroupedBy(
+                Arrays.<DataType>asList(DataTypes.BOOLEAN, DataTypes.SHORT, DataTypes.BYTE),
+                new Object[] { true, (short) -3, (byte) 7 }, new Object[] { false, (short) -3, (byte) 7 },
+                new Object[] { true, (short) -3, (byte) 7 }, new Object[] { true, (short) 3, (byte) -7 });
+        assertThat(rows, containsInAnyOrder(
+                isRow(true, (short) -3, (byte) 7, 2L),
+                isRow(false, (short) -3, (byte) 7, 1L),
+                isRow(true, (short) 3, (byte) -7, 1L)));
+    }
+
+    @Test
+    public void testGroupByEncodedKeys() throws Exception {
+        Bucket rows = countGroupedBy(
+                Arrays.<DataType>asList(DataTypes.LONG, DataTypes.STRING, DataTypes.DOUBLE, DataTypes.BOOLEAN),
+                new Object[] { 1L, new BytesRef("foo"), 0.5d, true },
+                new Object[] { -1L, new BytesRef("foo"), 0.5d, true },
+                new Object[] { 1L, "foo", 0.5d, true },
+                new Object[] { 1L, null, -0.5d, false },
+                new Object[] { Long.MIN_VALUE, new BytesRef(""), null, null },
+                new Object[] { 1L, null, -0.5d, false });
+        assertThat(rows, containsInAnyOrder(
+                isRow(1L, "foo", 0.5d, true, 2L),
+                isRow(-1L, "foo", 0.5d, true, 1L),
+                isRow(1L, null, -0.5d, false, 2L),
+                isRow(Long.MIN_VALUE, "", null, null, 1L)));
+    }
+
+    @Test
+    public void testGroupByEncodedKeysLongerThanBytesRefHashLimit() throws Exception {
+        char[] chars = new char[20000];
+        Arrays.fill(chars, 'a');
+        String longKey = new String(chars);
+        Bucket rows = countGroupedBy(Arrays.<DataType>asList(DataTypes.STRING, DataTypes.STRING),
+                new Object[] { new BytesRef(longKey), new BytesRef(longKey) },
+                new Object[] { new BytesRef(longKey), new BytesRef("foo") },
+                new Object[] { new BytesRef(longKey), new BytesRef(longKey) });
+        assertThat(rows, containsInAnyOrder(isRow(longKey, longKey, 2L), isRow(longKey, "foo", 1L)));
+    }
+
+    @Test
+    public void testGroupByWithColumnarStates() throws Exception {
+        // all of these aggregations keep their states in primitive arrays
+        Bucket rows = aggregateGroupedBy(Arrays.<DataType>asList(DataTypes.LONG), DataTypes.INTEGER,
+                Arrays.asList("sum", "avg", "min", "max"),
+                new Object[] { 1L, 2 }, new Object[] { 2L, 5 }, new Object[] { 1L, 4 },
+                new Object[] { null, 3 }, new Object[] { 2L, null }, new Object[] { 3L, null });
+        assertThat(rows, containsInAnyOrder(
+                isRow(1L, 6.0d, 3.0d, 2, 4),
+                isRow(2L, 5.0d, 5.0d, 5, 5),
+                isRow(null, 3.0d, 3.0d, 3, 3),
+                isRow(3L, null, null, null, null)));
+    }
+
+    @Test
+    public void testGroupByWithColumnarAndObjectStates() throws Exception {
+        // arbitrary doesn't support columnar states, so all aggregations use state objects
+        Bucket rows = aggregateGroupedBy(Arrays.<DataType>asList(DataTypes.STRING), DataTypes.LONG,
+                Arrays.asList("sum", "arbitrary"),
+                new Object[] { "foo", 2L }, new Object[] { "bar", 5L }, new Object[] { "foo", 2L });
+        assertThat(rows, containsInAnyOrder(isRow("foo", 4.0d, 2L), isRow("bar", 5.0d, 5L)));
+    }
+
+    @Test
+    public void testSpillGroupsWithStringKey() throws Exception {
+        assertSpilledGroupsAreMerged(DataTypes.STRING);
+    }
+
+    @Test
+    public void testSpillGroupsWithLongKey() throws Exception {
+        assertSpilledGroupsAreMerged(DataTypes.LONG);
+    }
+
+    private void assertSpilledGroupsAreMerged(DataType keyType) throws Exception {
+        int numGroups = 5000;
+        Object[][] rows = new Object[numGroups * 3][];
+        for (int i = 0; i < rows.length; i++) {
+            long key = i % numGroups;
+            rows[i] = new Object[] { keyType.value(key), (long) i };
+        }
+        RamAccountingContext ramAccountingContext = new RamAccountingContext("spill",
+                new MemoryCircuitBreaker(new ByteSizeValue(64, ByteSizeUnit.KB), 1.0, Loggers.getLogger(getClass())));
+        File spillDirectory = tempFolder.newFolder();
+
+        Bucket result = aggregateGroupedBy(Arrays.<DataType>asList(keyType), DataTypes.LONG,
+                Arrays.asList("count", "sum"), ramAccountingContext, spillDirectory, rows);
+
+        assertThat(ramAccountingContext.spilledBytes(), greaterThan(0L));
+        assertThat(result.size(), is(numGroups));
+        for (Row row : result) {
+            long key = DataTypes.LONG.value(DataTypes.STRING.value(row.get(0)));
+            assertThat(row.get(1), is((Object) 3L));
+            assertThat(row.get(2), is((Object) (double) (3 * key + 3 * numGroups)));
+        }
+        // the spill files are deleted after the groups were emitted
+        assertThat(spillDirectory.list().length, is(0));
+    }
+
+    @Test
+    public void testRowBatchThroughFilter() throws Exception {
+        FunctionInfo countInfo = new FunctionInfo(new FunctionIdent("count", ImmutableList.<DataType>of()), DataTypes.LONG);
+        Aggregation countAggregation =
+                new Aggregation(countInfo, ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        Functions functions = new ModulesBuilder()
+                .add(new AggregationImplModule()).createInjector().getInstance(Functions.class);
+        AggregationContext aggregationContext = new AggregationContext(
+                (AggregationFunction)functions.get(countInfo.ident()),
+                countAggregation);
+        InputCollectExpression<Object> keyInput = new InputCollectExpression<>(0);
+        GroupingProjector groupingProjector = new GroupingProjector(
+                Arrays.<DataType>asList(DataTypes.LONG),
+                ImmutableList.<Input<?>>of(keyInput),
+                new CollectExpression[] { keyInput },
+                new AggregationContext[] { aggregationContext },
+                RAM_ACCOUNTING_CONTEXT
+        );
+        InputCollectExpression<Boolean> condition = new InputCollectExpression<>(1);
+        FilterProjector filterProjector = new FilterProjector(new CollectExpression[] { condition }, condition);
+        filterProjector.downstream(groupingProjector);
+        CollectingProjector collectingProjector = new CollectingProjector();
+        groupingProjector.downstream(collectingProjector);
+        filterProjector.registerUpstream(null);
+        groupingProjector.startProjection(mock(JobCollectContext.class));
+        filterProjector.startProjection(mock(JobCollectContext.class));
+
+        List<Row> batch = Arrays.<Row>asList(
+                new RowN(new Object[] { 1L, true }), new RowN(new Object[] { 2L, false }),
+                new RowN(new Object[] { 1L, true }), new RowN(new Object[] { 3L, null }),
+                new RowN(new Object[] { 2L, true }));
+        assertThat(filterProjector.setNextRows(batch), is(true));
+        filterProjector.finish();
+        assertThat(collectingProjector.result().get(), containsInAnyOrder(isRow(1L, 2L), isRow(2L, 1L)));
+    }
+
     class DummyInput implements Input<BytesRef> {
 
         private final BytesRef[] values;
@@ -43,6 +43,7 @@ import io.crate.types.DataTypes;
 import org.junit.Test;
 
 import java.util.Arrays;
+import java.util.Collections;
 
 import static io.crate.testing.TestingHelpers.isRow;
 import static org.hamcrest.Matchers.emptyIterable;
@@ -112,6 +113,20 @@ public class SimpleTopNProjectorTest extends CrateUnitTest {
 
     }
 
+    @Test
+    public void testProjectLimitOnlyBatch() throws Throwable {
+        CollectingProjector collectingProjector = new CollectingProjector();
+        SimpleTopNProjector projector = new SimpleTopNProjector(ImmutableList.<Input<?>>of(input),
+                new CollectExpression[]{(CollectExpression)input}, 10, 2);
+        projector.downstream(collectingProjector);
+        projector.registerUpstream(null);
+        projector.startProjection(mock(ExecutionState.class));
+        assertThat(projector.setNextRows(Collections.nCopies(5, row)), is(true));
+        assertThat(projector.setNextRows(Collections.nCopies(10, row)), is(false));
+        projector.finish();
+        assertThat(collectingProjector.result().get().size(), is(10));
+    }
+
     @Test
     public void testProjectLimitOnlyLessThanLimit() throws Throwable {
         CollectingProjector collectingProjector = new CollectingProjector();
@@ -21,24 +21,41 @@
 
 package io.crate.operation.projectors;
 
+import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Bucket;
+import io.crate.core.collections.Buckets;
 import io.crate.core.collections.Row;
 import io.crate.core.collections.RowN;
+import io.crate.jobs.ContextCallback;
 import io.crate.jobs.ExecutionState;
+import io.crate.jobs.ExecutionSubContext;
 import io.crate.operation.Input;
 import io.crate.operation.collect.CollectExpression;
 import io.crate.operation.collect.InputCollectExpression;
 import io.crate.planner.symbol.Literal;
 import io.crate.test.integration.CrateUnitTest;
 import io.crate.testing.CollectingProjector;
+import io.crate.types.DataType;
+import io.crate.types.DataTypes;
+import org.elasticsearch.common.breaker.CircuitBreaker;
+import org.elasticsearch.common.breaker.NoopCircuitBreaker;
 import org.hamcrest.Matcher;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.mockito.ArgumentCaptor;
+
+import java.io.File;
+import java.util.Arrays;
 
 import static io.crate.testing.TestingHelpers.isNullRow;
 import static io.crate.testing.TestingHelpers.isRow;
 import static org.hamcrest.Matchers.contains;
+import static org.hamcrest.Matchers.greaterThan;
 import static org.hamcrest.core.Is.is;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.withSettings;
 
 public class SortingTopNProjectorTest extends CrateUnitTest {
 
@@ -47,6 +64,9 @@ public class SortingTopNProjectorTest extends CrateUnitTest {
 
     private final RowN spare = new RowN(new Object[]{});
 
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
     private Row spare(Object... cells) {
         if (cells == null) {
             cells = new Object[]{null};
@@ -379,4 +399,191 @@ public class SortingTopNProjectorTest extends CrateUnitTest {
                 isRow(3, 3)
         ));
     }
+
+    @Test
+    public void testExternalSortEqualsInMemorySort() throws Exception {
+        Integer[] values = new Integer[50_000];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = i % 10 == 0 ? null : randomInt(10_000);
+        }
+        SortingTopNProjector inMemory = new SortingTopNProjector(
+                new Input<?>[]{INPUT, INPUT},
+                new CollectExpression[]{(CollectExpression<?>) INPUT},
+                1,
+                new int[]{1},
+                new boolean[]{true},
+                new Boolean[]{true},
+                20_000,
+                5);
+        RamAccountingContext ramAccountingContext =
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+        File spillDirectory = tempFolder.newFolder();
+        SortingTopNProjector external = new SortingTopNProjector(
+                new Input<?>[]{INPUT, INPUT},
+                new CollectExpression[]{(CollectExpression<?>) INPUT},
+                1,
+                new int[]{1},
+                new boolean[]{true},
+                new Boolean[]{true},
+                20_000,
+                5,
+                ramAccountingContext,
+                Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.INTEGER),
+                spillDirectory,
+                16 * 1024);
+        CollectingProjector collector = new CollectingProjector();
+        external.downstream(collector);
+        for (SortingTopNProjector projector : new SortingTopNProjector[] { inMemory, external }) {
+            projector.registerUpstream(null);
+            projector.startProjection(mock(ExecutionState.class));
+            for (Integer value : values) {
+                projector.setNextRow(spare(value));
+            }
+            projector.finish();
+        }
+
+        // more than SpilledRuns.MAX_MERGE_WIDTH runs are written, so they are also merged before finishing
+        assertThat(ramAccountingContext.spilledBytes(), greaterThan(0L));
+        assertThat(spillDirectory.list().length, is(0));
+
+        Object[][] expected = Buckets.materialize(inMemory.result().get());
+        Object[][] actual = Buckets.materialize(collector.result().get());
+        assertThat(actual.length, is(20_000));
+        assertThat(actual, is(expected));
+    }
+
+    @Test
+    public void testExternalSortWithoutSpilling() throws Exception {
+        SortingTopNProjector projector = new SortingTopNProjector(
+                new Input<?>[]{INPUT},
+                new CollectExpression[]{(CollectExpression<?>) INPUT},
+                1,
+                new int[]{0},
+                new boolean[]{false},
+                new Boolean[]{null},
+                20_000,
+                2,
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA)),
+                Arrays.<DataType>asList(DataTypes.INTEGER),
+                tempFolder.newFolder(),
+                SortingTopNProjector.DEFAULT_SPILL_THRESHOLD.bytes());
+        projector.registerUpstream(null);
+        projector.startProjection(mock(ExecutionState.class));
+        for (int i = 5; i > 0; i--) {
+            projector.setNextRow(spare(i));
+        }
+        projector.finish();
+        assertThat(projector.result().get(), contains(isRow(3), isRow(4), isRow(5)));
+    }
+
+    @Test
+    public void testLargeLimitUsesQueueIfItFitsIntoSpillThreshold() throws Exception {
+        File spillDirectory = tempFolder.newFolder();
+        RamAccountingContext ramAccountingContext =
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+        SortingTopNProjector projector = new SortingTopNProjector(
+                new Input<?>[]{INPUT},
+                new CollectExpression[]{(CollectExpression<?>) INPUT},
+                1,
+                new int[]{0},
+                new boolean[]{false},
+                new Boolean[]{null},
+                20_000,
+                0,
+                ramAccountingContext,
+                Arrays.<DataType>asList(DataTypes.INTEGER),
+                spillDirectory,
+                SortingTopNProjector.DEFAULT_SPILL_THRESHOLD.bytes());
+        projector.registerUpstream(null);
+        projector.startProjection(mock(ExecutionState.class));
+        for (int i = 30_000; i > 0; i--) {
+            projector.setNextRow(spare(i));
+        }
+        projector.finish();
+
+        Bucket rows = projector.result().get();
+        assertThat(ramAccountingContext.totalBytes(), is(0L));
+        assertThat(ramAccountingContext.spilledBytes(), is(0L));
+        assertThat(rows.size(), is(20_000));
+        int expected = 1;
+        for (Row row : rows) {
+            assertThat(row, isRow(expected++));
+        }
+    }
+
+    @Test
+    public void testExternalSortWithoutLimitStreamsResult() throws Exception {
+        File spillDirectory = tempFolder.newFolder();
+        SortingTopNProjector projector = new SortingTopNProjector(
+                new Input<?>[]{INPUT},
+                new CollectExpression[]{(CollectExpression<?>) INPUT},
+                1,
+                new int[]{0},
+                new boolean[]{false},
+                new Boolean[]{null},
+                TopN.NO_LIMIT,
+                1,
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA)),
+                Arrays.<DataType>asList(DataTypes.INTEGER),
+                spillDirectory,
+                16 * 1024);
+        projector.registerUpstream(null);
+        projector.startProjection(mock(ExecutionState.class));
+        for (int i = 20_000; i > 0; i--) {
+            projector.setNextRow(spare(i));
+        }
+        projector.finish();
+
+        // the rows are more than the default limit and only read from the spilled runs while iterating
+        Bucket rows = projector.result().get();
+        assertThat(rows.size(), is(19_999));
+        assertThat(spillDirectory.list().length, greaterThan(0));
+        int expected = 2;
+        for (Row row : rows) {
+            assertThat(row, isRow(expected++));
+        }
+        assertThat(expected, is(20_001));
+        assertThat(spillDirectory.list().length, is(0));
+    }
+
+    @Test
+    public void testSortedRowsAreReleasedWhenContextIsClosed() throws Exception {
+        File spillDirectory = tempFolder.newFolder();
+        RamAccountingContext ramAccountingContext =
+                new RamAccountingContext("dummy", new NoopCircuitBreaker(CircuitBreaker.Name.FIELDDATA));
+        SortingTopNProjector projector = new SortingTopNProjector(
+                new Input<?>[]{INPUT},
+                new CollectExpression[]{(CollectExpression<?>) INPUT},
+                1,
+                new int[]{0},
+                new boolean[]{false},
+                new Boolean[]{null},
+                TopN.NO_LIMIT,
+                0,
+                ramAccountingContext,
+                Arrays.<DataType>asList(DataTypes.INTEGER),
+                spillDirectory,
+                16 * 1024);
+        ExecutionSubContext context = mock(ExecutionSubContext.class, withSettings().extraInterfaces(ExecutionState.class));
+        projector.registerUpstream(null);
+        projector.startProjection((ExecutionState) context);
+        ArgumentCaptor<ContextCallback> callback = ArgumentCaptor.forClass(ContextCallback.class);
+        verify(context).addCallback(callback.capture());
+
+        for (int i = 20_000; i > 0; i--) {
+            projector.setNextRow(spare(i));
+        }
+        projector.finish();
+        Bucket rows = projector.result().get();
+        assertThat(spillDirectory.list().length, greaterThan(0));
+        assertThat(ramAccountingContext.totalBytes(), greaterThan(0L));
+
+        // the rows are never consumed
+        callback.getValue().onClose(null, 0L);
+        assertThat(spillDirectory.list().length, is(0));
+        assertThat(ramAccountingContext.totalBytes(), is(0L));
+
+        expectedException.expect(IllegalStateException.class);
+        rows.iterator();
+    }
 }
@@ -0,0 +1,87 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors;
+
+import io.crate.test.integration.CrateUnitTest;
+import org.elasticsearch.common.settings.ImmutableSettings;
+import org.elasticsearch.common.settings.Settings;
+import org.elasticsearch.env.Environment;
+import org.elasticsearch.env.NodeEnvironment;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+
+import static org.hamcrest.Matchers.is;
+import static org.hamcrest.Matchers.not;
+
+public class SpillDirectoryTest extends CrateUnitTest {
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private NodeEnvironment nodeEnvironment1;
+    private NodeEnvironment nodeEnvironment2;
+
+    @Before
+    public void setUpNodeEnvironments() throws Exception {
+        // two nodes started on the same data path
+        Settings settings = ImmutableSettings.builder()
+                .put("path.data", tempFolder.newFolder().getAbsolutePath())
+                .build();
+        Environment environment = new Environment(settings);
+        nodeEnvironment1 = new NodeEnvironment(settings, environment);
+        nodeEnvironment2 = new NodeEnvironment(settings, environment);
+    }
+
+    @After
+    public void closeNodeEnvironments() throws Exception {
+        nodeEnvironment1.close();
+        nodeEnvironment2.close();
+    }
+
+    @Test
+    public void testEachNodeHasItsOwnDirectory() throws Exception {
+        File directory1 = new SpillDirectory(nodeEnvironment1).directory();
+        File directory2 = new SpillDirectory(nodeEnvironment2).directory();
+        assertThat(directory1, not(directory2));
+    }
+
+    @Test
+    public void testOnlyOwnSpillFilesAreDeletedOnCreation() throws Exception {
+        File directory1 = new SpillDirectory(nodeEnvironment1).directory();
+        File directory2 = new SpillDirectory(nodeEnvironment2).directory();
+        assertThat(directory1.mkdirs(), is(true));
+        assertThat(directory2.mkdirs(), is(true));
+        assertThat(new File(directory1, "groups-1.spill").createNewFile(), is(true));
+        assertThat(new File(directory2, "sort-1.spill").createNewFile(), is(true));
+
+        new SpillDirectory(nodeEnvironment1);
+
+        assertThat(directory1.list().length, is(0));
+        assertThat(directory2.list().length, is(1));
+    }
+}
@@ -0,0 +1,109 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+
+package io.crate.operation.projectors;
+
+import com.google.common.collect.Ordering;
+import io.crate.Streamer;
+import io.crate.test.integration.CrateUnitTest;
+import io.crate.types.DataTypes;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+
+import static org.hamcrest.Matchers.is;
+
+public class SpilledRunsTest extends CrateUnitTest {
+
+    private static final Comparator<Object[]> ORDERING = new Comparator<Object[]>() {
+        @Override
+        public int compare(Object[] o1, Object[] o2) {
+            return Integer.compare((Integer) o1[0], (Integer) o2[0]);
+        }
+    };
+
+    @Rule
+    public TemporaryFolder tempFolder = new TemporaryFolder();
+
+    private static Iterator<Object[]> rows(int... values) {
+        List<Object[]> rows = new ArrayList<>(values.length);
+        for (int value : values) {
+            rows.add(new Object[]{value});
+        }
+        return rows.iterator();
+    }
+
+    private static List<Integer> values(Iterator<Object[]> rows) {
+        List<Integer> values = new ArrayList<>();
+        while (rows.hasNext()) {
+            values.add((Integer) rows.next()[0]);
+        }
+        return values;
+    }
+
+    @Test
+    public void testRunsAreMergedInLevels() throws Exception {
+        File directory = tempFolder.newFolder();
+        int numRuns = SpilledRuns.MAX_MERGE_WIDTH * 2 + 3;
+        try (SpilledRuns spilledRuns = new SpilledRuns(
+                directory, new Streamer<?>[]{DataTypes.INTEGER.streamer()}, ORDERING, Integer.MAX_VALUE)) {
+            for (int i = numRuns; i > 0; i--) {
+                spilledRuns.add(rows(i));
+            }
+            // two runs of merged level 0 runs and 3 runs which are not merged yet
+            assertThat(directory.list().length, is(5));
+
+            List<Integer> values = values(spilledRuns.merge(rows(0, numRuns + 1)));
+            assertThat(values.size(), is(numRuns + 2));
+            assertThat(Ordering.natural().isStrictlyOrdered(values), is(true));
+        }
+        assertThat(directory.list().length, is(0));
+    }
+
+    @Test
+    public void testSmallestRunsAreMergedBeforeFinalMerge() throws Exception {
+        File directory = tempFolder.newFolder();
+        int numRuns = SpilledRuns.MAX_MERGE_WIDTH * 2 - 1;
+        try (SpilledRuns spilledRuns = new SpilledRuns(
+                directory, new Streamer<?>[]{DataTypes.INTEGER.streamer()}, ORDERING, Integer.MAX_VALUE)) {
+            for (int i = 0; i < numRuns; i++) {
+                spilledRuns.add(rows(i));
+            }
+            assertThat(directory.list().length, is(SpilledRuns.MAX_MERGE_WIDTH));
+
+            Iterator<Object[]> merged = spilledRuns.merge(Collections.<Object[]>emptyIterator());
+            // one file is left for the rows in memory
+            assertThat(directory.list().length, is(SpilledRuns.MAX_MERGE_WIDTH - 1));
+
+            List<Integer> values = values(merged);
+            assertThat(values.size(), is(numRuns));
+            assertThat(Ordering.natural().isStrictlyOrdered(values), is(true));
+        }
+    }
+}
@@ -22,22 +22,28 @@
 package io.crate.operation.projectors;
 
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.ByteStreams;
 import io.crate.core.collections.Bucket;
 import io.crate.core.collections.Row1;
 import io.crate.exceptions.UnhandledServerException;
 import io.crate.jobs.ExecutionState;
 import io.crate.metadata.ColumnIdent;
 import io.crate.operation.collect.CollectExpression;
+import io.crate.operation.projectors.writer.OutputFile;
 import io.crate.test.integration.CrateUnitTest;
 import io.crate.testing.CollectingProjector;
 import io.crate.testing.TestingHelpers;
 import org.apache.lucene.util.BytesRef;
 import org.elasticsearch.common.settings.ImmutableSettings;
 import org.elasticsearch.common.settings.Settings;
+import org.junit.After;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.rules.TemporaryFolder;
 
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Paths;
 import java.util.Arrays;
 import java.util.HashMap;
@@ -46,6 +52,7 @@ import java.util.Map;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
 
 import static io.crate.testing.TestingHelpers.isRow;
 import static org.hamcrest.Matchers.contains;
@@ -59,6 +66,11 @@ public class WriterProjectorTest extends CrateUnitTest {
     @Rule
     public TemporaryFolder folder = new TemporaryFolder();
 
+    @After
+    public void shutdownExecutor() throws Exception {
+        executorService.shutdown();
+    }
+
     @Test
     public void testWriteRawToFile() throws Exception {
 
@@ -151,4 +163,41 @@ public class WriterProjectorTest extends CrateUnitTest {
         projector.finish();
         downstream.result().get();
     }
+
+    @Test
+    public void testWriteCompressedFilesWithRollover() throws Exception {
+        String fileAbsolutePath = folder.newFolder().getAbsolutePath() + "/out.json.gz";
+        String uri = Paths.get(fileAbsolutePath).toUri().toString();
+        Settings settings = ImmutableSettings.builder()
+                .put("compression", "gzip")
+                .put(OutputFile.MAX_FILE_SIZE, "30b")
+                .build();
+        WriterProjector projector = new WriterProjector(
+                executorService,
+                uri,
+                settings,
+                null,
+                ImmutableSet.<CollectExpression<?>>of(),
+                new HashMap<ColumnIdent, Object>()
+        );
+        CollectingProjector downstream = new CollectingProjector();
+        projector.downstream(downstream);
+        projector.startProjection(mock(ExecutionState.class));
+        projector.registerUpstream(null);
+        for (int i = 0; i < 5; i++) {
+            projector.setNextRow(new Row1(new BytesRef(String.format(Locale.ENGLISH, "input line %02d", i))));
+        }
+        projector.finish();
+        assertThat(downstream.result().get(), contains(isRow(5L)));
+
+        // every file is closed once it has reached 30 bytes, which are two lines
+        assertThat(readGzipFile(fileAbsolutePath), is("input line 00\ninput line 01\ninput line 02\n"));
+        assertThat(readGzipFile(fileAbsolutePath.replace("out.json", "out_1.json")), is("input line 03\ninput line 04\n"));
+    }
+
+    private static String readGzipFile(String path) throws Exception {
+        try (InputStream in = new GZIPInputStream(new FileInputStream(path))) {
+            return new String(ByteStreams.toByteArray(in), StandardCharsets.UTF_8);
+        }
+    }
 }
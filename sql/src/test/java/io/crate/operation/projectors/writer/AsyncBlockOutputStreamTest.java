@@ -0,0 +1,125 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *   http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.operation.projectors.writer;
+
+import com.google.common.io.ByteStreams;
+import io.crate.test.integration.CrateUnitTest;
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import static org.hamcrest.Matchers.is;
+
+public class AsyncBlockOutputStreamTest extends CrateUnitTest {
+
+    private final ExecutorService executorService = Executors.newFixedThreadPool(4);
+
+    @After
+    public void shutdownExecutor() throws Exception {
+        executorService.shutdown();
+    }
+
+    private static byte[] lines(int numLines) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < numLines; i++) {
+            sb.append(String.format(Locale.ENGLISH, "{\"id\": %d}\n", i));
+        }
+        return sb.toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    private static void write(OutputStream outputStream, byte[] data) throws IOException {
+        // mix single byte and array writes
+        int i = 0;
+        while (i < data.length) {
+            if (i % 7 == 0) {
+                outputStream.write(data[i]);
+                i++;
+            } else {
+                int length = Math.min(data.length - i, 13);
+                outputStream.write(data, i, length);
+                i += length;
+            }
+        }
+    }
+
+    @Test
+    public void testBlocksAreWrittenInOrder() throws Exception {
+        byte[] data = lines(1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new AsyncBlockOutputStream(
+                out, executorService, AsyncBlockOutputStream.NONE, 64, 3)) {
+            write(outputStream, data);
+        }
+        assertThat(out.toByteArray(), is(data));
+    }
+
+    @Test
+    public void testGzipBlocksAreReadableAsOneFile() throws Exception {
+        byte[] data = lines(1000);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (OutputStream outputStream = new AsyncBlockOutputStream(
+                out, executorService, AsyncBlockOutputStream.GZIP, 100, 4)) {
+            write(outputStream, data);
+        }
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(ByteStreams.toByteArray(in), is(data));
+    }
+
+    @Test
+    public void testEmptyGzipOutputIsValid() throws Exception {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new AsyncBlockOutputStream(out, executorService, AsyncBlockOutputStream.GZIP).close();
+        GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(out.toByteArray()));
+        assertThat(in.read(), is(-1));
+    }
+
+    @Test
+    public void testWriteFailureIsThrown() throws Exception {
+        expectedException.expect(IOException.class);
+        expectedException.expectMessage("disk full");
+
+        OutputStream failingStream = new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                throw new IOException("disk full");
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                throw new IOException("disk full");
+            }
+        };
+        try (OutputStream outputStream = new AsyncBlockOutputStream(
+                failingStream, executorService, AsyncBlockOutputStream.NONE, 16, 2)) {
+            write(outputStream, lines(100));
+        }
+    }
+}
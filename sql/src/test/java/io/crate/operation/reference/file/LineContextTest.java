@@ -21,10 +21,16 @@
 
 package io.crate.operation.reference.file;
 
+import com.google.common.collect.ImmutableMap;
 import io.crate.metadata.ColumnIdent;
 import io.crate.test.integration.CrateUnitTest;
 import org.junit.Test;
 
+import java.util.Arrays;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+
 public class LineContextTest extends CrateUnitTest {
     @Test
     public void testGet() throws Exception {
@@ -37,4 +43,54 @@ public class LineContextTest extends CrateUnitTest {
         assertNull(context.get(new ColumnIdent("details", "invalid")));
         assertEquals(43, context.get(new ColumnIdent("details", "age")));
     }
+
+    @Test
+    public void testGetRegisteredColumns() throws Exception {
+        LineContext context = new LineContext();
+        ColumnIdent id = new ColumnIdent("id");
+        ColumnIdent age = new ColumnIdent("details", "age");
+        ColumnIdent tags = new ColumnIdent("tags");
+        ColumnIdent missing = new ColumnIdent("details", "missing");
+        for (ColumnIdent columnIdent : Arrays.asList(id, age, tags, missing)) {
+            context.registerColumn(columnIdent);
+        }
+
+        context.rawSource(("{\"name\": \"foo\", \"details\": {\"size\": {\"x\": 1}, \"age\": 43}, " +
+                           "\"tags\": [\"a\", {\"b\": 2}], \"id\": 10000000000}").getBytes());
+        assertThat(context.get(id), is((Object) 10000000000L));
+        assertThat(context.get(age), is((Object) 43));
+        assertThat(context.get(tags), is((Object) Arrays.asList("a", (Object) ImmutableMap.of("b", 2))));
+        assertThat(context.get(missing), nullValue());
+        // columns which aren't registered are read from the parsed source
+        assertThat(context.get(new ColumnIdent("name")), is((Object) "foo"));
+
+        context.rawSource("{\"id\": 2}".getBytes());
+        assertThat(context.get(id), is((Object) 2));
+        assertThat(context.get(age), nullValue());
+    }
+
+    @Test
+    public void testGetRegisteredParentAndChildColumn() throws Exception {
+        LineContext context = new LineContext();
+        ColumnIdent details = new ColumnIdent("details");
+        ColumnIdent age = new ColumnIdent("details", "age");
+        context.registerColumn(age);
+        context.registerColumn(details);
+
+        context.rawSource("{\"details\": {\"age\": 43}}".getBytes());
+        assertThat(context.get(age), is((Object) 43));
+        assertThat(((Map) context.get(details)).get("age"), is((Object) 43));
+    }
+
+    @Test
+    public void testGetWithSourceAsMap() throws Exception {
+        LineContext context = new LineContext();
+        ColumnIdent id = new ColumnIdent("id");
+        context.registerColumn(id);
+        context.needsSourceAsMap();
+
+        context.rawSource("{\"id\": 1}".getBytes());
+        assertThat(context.get(id), is((Object) 1));
+        assertThat(context.sourceAsMap().get("id"), is((Object) 1));
+    }
 }
@@ -20,15 +20,19 @@
  */
 package io.crate.operation.reference.sys;
 
+import com.google.common.cache.CacheStats;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import io.crate.Build;
 import io.crate.Version;
+import io.crate.action.sql.StatementCache;
+import io.crate.blob.BlobReadCache;
 import io.crate.metadata.ReferenceIdent;
 import io.crate.metadata.ReferenceResolver;
 import io.crate.metadata.SimpleObjectExpression;
 import io.crate.metadata.sys.SysNodesTableInfo;
 import io.crate.operation.Input;
+import io.crate.operation.collect.ShardResultCache;
 import io.crate.operation.reference.NestedObjectExpression;
 import io.crate.operation.reference.sys.node.*;
 import io.crate.operation.reference.sys.node.fs.NodeFsDataExpression;
@@ -289,6 +293,23 @@ public class SysNodesExpressionsTest extends CrateUnitTest {
             ThreadPool threadPool = new ThreadPool(getClass().getName());
             bind(ThreadPool.class).toInstance(threadPool);
 
+            bind(StatementCache.class).toInstance(new StatementCache(ImmutableSettings.builder()
+                    .put(StatementCache.SIZE_SETTING, 1).build()));
+
+            ShardResultCache resultCache = mock(ShardResultCache.class);
+            when(resultCache.size()).thenReturn(2L);
+            when(resultCache.sizeInBytes()).thenReturn(1024L);
+            when(resultCache.stats()).thenReturn(new CacheStats(3L, 4L, 0L, 0L, 0L, 1L));
+            bind(ShardResultCache.class).toInstance(resultCache);
+
+            BlobReadCache blobReadCache = mock(BlobReadCache.class);
+            when(blobReadCache.openFiles()).thenReturn(5L);
+            when(blobReadCache.openFileHits()).thenReturn(6L);
+            when(blobReadCache.openFileMisses()).thenReturn(7L);
+            when(blobReadCache.smallBlobsSizeInBytes()).thenReturn(2048L);
+            when(blobReadCache.smallBlobHits()).thenReturn(8L);
+            when(blobReadCache.smallBlobMisses()).thenReturn(9L);
+            bind(BlobReadCache.class).toInstance(blobReadCache);
         }
     }
 
@@ -405,6 +426,50 @@ public class SysNodesExpressionsTest extends CrateUnitTest {
         assertEquals(0L, v.get("free"));
     }
 
+    @Test
+    public void testStatementCache() throws Exception {
+        StatementCache statementCache = injector.getInstance(StatementCache.class);
+        statementCache.get("select * from sys.nodes");
+        statementCache.get("select * from sys.nodes");
+        statementCache.get("select * from sys.shards");
+
+        ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, NodeStatementCacheExpression.NAME);
+        NestedObjectExpression cache = (NestedObjectExpression) resolver.getImplementation(ident);
+
+        Map<String, Object> v = cache.value();
+        assertEquals(1L, v.get("size"));
+        assertEquals(1L, v.get("hits"));
+        assertEquals(2L, v.get("misses"));
+        assertEquals(1L, v.get("evictions"));
+    }
+
+    @Test
+    public void testResultCache() throws Exception {
+        ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, NodeResultCacheExpression.NAME);
+        NestedObjectExpression cache = (NestedObjectExpression) resolver.getImplementation(ident);
+
+        Map<String, Object> v = cache.value();
+        assertEquals(2L, v.get("size"));
+        assertEquals(1024L, v.get("size_in_bytes"));
+        assertEquals(3L, v.get("hits"));
+        assertEquals(4L, v.get("misses"));
+        assertEquals(1L, v.get("evictions"));
+    }
+
+    @Test
+    public void testBlobReadCache() throws Exception {
+        ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, NodeBlobReadCacheExpression.NAME);
+        NestedObjectExpression cache = (NestedObjectExpression) resolver.getImplementation(ident);
+
+        Map<String, Object> v = cache.value();
+        assertEquals(5L, v.get("open_files"));
+        assertEquals(6L, v.get("open_file_hits"));
+        assertEquals(7L, v.get("open_file_misses"));
+        assertEquals(2048L, v.get("small_blobs_size_in_bytes"));
+        assertEquals(8L, v.get("small_blob_hits"));
+        assertEquals(9L, v.get("small_blob_misses"));
+    }
+
     @Test
     public void testFs() throws Exception {
         ReferenceIdent ident = new ReferenceIdent(SysNodesTableInfo.IDENT, NodeFsExpression.NAME);
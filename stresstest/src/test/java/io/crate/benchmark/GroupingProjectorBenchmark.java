@@ -22,8 +22,10 @@
 package io.crate.benchmark;
 
 import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.google.common.collect.ImmutableList;
 import io.crate.breaker.RamAccountingContext;
 import io.crate.core.collections.Row;
+import io.crate.core.collections.RowN;
 import io.crate.jobs.ExecutionState;
 import io.crate.metadata.FunctionIdent;
 import io.crate.metadata.FunctionInfo;
@@ -32,6 +34,7 @@ import io.crate.operation.AggregationContext;
 import io.crate.operation.Input;
 import io.crate.operation.aggregation.AggregationFunction;
 import io.crate.operation.aggregation.impl.AggregationImplModule;
+import io.crate.operation.aggregation.impl.CountAggregation;
 import io.crate.operation.aggregation.impl.MinimumAggregation;
 import io.crate.operation.aggregation.impl.SumAggregation;
 import io.crate.operation.collect.CollectExpression;
@@ -155,4 +158,88 @@ public class GroupingProjectorBenchmark {
 
         groupingProjector.finish();
     }
+
+    private GroupingProjector createCountProjector(List<DataType> keyTypes) {
+        Functions functions = new ModulesBuilder().add(new AggregationImplModule())
+                .createInjector().getInstance(Functions.class);
+
+        List<Input<?>> keyInputs = new ArrayList<>(keyTypes.size());
+        CollectExpression[] collectExpressions = new CollectExpression[keyTypes.size()];
+        for (int i = 0; i < keyTypes.size(); i++) {
+            InputCollectExpression keyInput = new InputCollectExpression(i);
+            keyInputs.add(keyInput);
+            collectExpressions[i] = keyInput;
+        }
+
+        FunctionIdent functionIdent = new FunctionIdent(CountAggregation.NAME, ImmutableList.<DataType>of());
+        FunctionInfo functionInfo = new FunctionInfo(functionIdent, DataTypes.LONG, FunctionInfo.Type.AGGREGATE);
+        AggregationFunction countAgg = (AggregationFunction) functions.get(functionIdent);
+        Aggregation aggregation = new Aggregation(functionInfo,
+                ImmutableList.<Symbol>of(), Aggregation.Step.ITER, Aggregation.Step.FINAL);
+        AggregationContext[] aggregations = new AggregationContext[] { new AggregationContext(countAgg, aggregation) };
+        GroupingProjector groupingProjector = new GroupingProjector(
+                keyTypes, keyInputs, collectExpressions, aggregations, RAM_ACCOUNTING_CONTEXT);
+
+        groupingProjector.registerUpstream(null);
+        groupingProjector.startProjection(mock(ExecutionState.class));
+        return groupingProjector;
+    }
+
+    @Test
+    public void testGroupByCountHighCardinalityLong() throws Exception {
+        GroupingProjector groupingProjector = createCountProjector(Arrays.<DataType>asList(DataTypes.LONG));
+        SpareRow row = new SpareRow();
+        for (long i = 0; i < 20_000_000; i++) {
+            row.value = i % 2_000_000;
+            groupingProjector.setNextRow(row);
+        }
+        groupingProjector.finish();
+    }
+
+    @Test
+    public void testGroupByCountHighCardinalityBytesRef() throws Exception {
+        GroupingProjector groupingProjector = createCountProjector(Arrays.<DataType>asList(DataTypes.STRING));
+        BytesRef[] keys = new BytesRef[200_000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new BytesRef("key_" + i);
+        }
+        SpareRow row = new SpareRow();
+        for (int i = 0; i < 20_000_000; i++) {
+            row.value = keys[i % keys.length];
+            groupingProjector.setNextRow(row);
+        }
+        groupingProjector.finish();
+    }
+
+    @Test
+    public void testGroupByCountTwoIntegerKeys() throws Exception {
+        GroupingProjector groupingProjector = createCountProjector(
+                Arrays.<DataType>asList(DataTypes.INTEGER, DataTypes.INTEGER));
+        Object[] cells = new Object[2];
+        Row row = new RowN(cells);
+        for (int i = 0; i < 20_000_000; i++) {
+            cells[0] = i % 1000;
+            cells[1] = i % 1999;
+            groupingProjector.setNextRow(row);
+        }
+        groupingProjector.finish();
+    }
+
+    @Test
+    public void testGroupByCountLongAndStringKeys() throws Exception {
+        GroupingProjector groupingProjector = createCountProjector(
+                Arrays.<DataType>asList(DataTypes.LONG, DataTypes.STRING));
+        BytesRef[] keys = new BytesRef[1000];
+        for (int i = 0; i < keys.length; i++) {
+            keys[i] = new BytesRef("key_" + i);
+        }
+        Object[] cells = new Object[2];
+        Row row = new RowN(cells);
+        for (int i = 0; i < 20_000_000; i++) {
+            cells[0] = (long) (i % 1999);
+            cells[1] = keys[i % keys.length];
+            groupingProjector.setNextRow(row);
+        }
+        groupingProjector.finish();
+    }
 }
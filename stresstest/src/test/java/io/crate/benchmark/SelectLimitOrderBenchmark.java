@@ -28,6 +28,7 @@ import com.carrotsearch.junitbenchmarks.annotation.BenchmarkHistoryChart;
 import com.carrotsearch.junitbenchmarks.annotation.BenchmarkMethodChart;
 import com.carrotsearch.junitbenchmarks.annotation.LabelType;
 import com.carrotsearch.randomizedtesting.generators.RandomStrings;
+import io.crate.Constants;
 import io.crate.action.sql.SQLAction;
 import io.crate.action.sql.SQLRequest;
 import io.crate.action.sql.SQLResponse;
@@ -202,6 +203,23 @@ public class SelectLimitOrderBenchmark extends BenchmarkBase {
         runSQLBenchmark(limit, offset, orderBy, selectAllFields);
     }
 
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void benchLimit1000000OrderPaged_SQL() throws Exception {
+        Integer limit = 1_000_000;
+        Integer offset = 0;
+        boolean orderBy = true;
+        boolean selectAllFields = false;
+        // sort the documents of each shard in multiple pages
+        int pageSize = Constants.PAGE_SIZE;
+        Constants.PAGE_SIZE = 50_000;
+        try {
+            runSQLBenchmark(limit, offset, orderBy, selectAllFields);
+        } finally {
+            Constants.PAGE_SIZE = pageSize;
+        }
+    }
+
     @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
     @Test
     public void benchLimit1000000Order_Fetch_ES() throws Exception {
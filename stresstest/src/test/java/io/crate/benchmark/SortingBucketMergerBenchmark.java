@@ -0,0 +1,152 @@
+/*
+ * Licensed to CRATE Technology GmbH ("Crate") under one or more contributor
+ * license agreements.  See the NOTICE file distributed with this work for
+ * additional information regarding copyright ownership.  Crate licenses
+ * this file to you under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.  You may
+ * obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS, WITHOUT
+ * WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.  See the
+ * License for the specific language governing permissions and limitations
+ * under the License.
+ *
+ * However, if you have executed another commercial license agreement
+ * with Crate these terms will supersede the license and you may use the
+ * software solely pursuant to the terms of the relevant commercial agreement.
+ */
+
+package io.crate.benchmark;
+
+import com.carrotsearch.junitbenchmarks.BenchmarkOptions;
+import com.carrotsearch.junitbenchmarks.BenchmarkRule;
+import com.google.common.base.Optional;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import io.crate.core.collections.ArrayBucket;
+import io.crate.core.collections.Bucket;
+import io.crate.core.collections.BucketPage;
+import io.crate.core.collections.Row;
+import io.crate.operation.PageConsumeListener;
+import io.crate.operation.RowDownstream;
+import io.crate.operation.RowDownstreamHandle;
+import io.crate.operation.RowUpstream;
+import io.crate.operation.merge.SortingBucketMerger;
+import org.junit.Rule;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Executor;
+
+import static org.junit.Assert.assertEquals;
+
+@BenchmarkOptions(benchmarkRounds = 10, warmupRounds = 2)
+public class SortingBucketMergerBenchmark {
+
+    private static final int NUM_ROWS = 2_000_000;
+    private static final int NUM_PAGES = 4;
+
+    @Rule
+    public BenchmarkRule benchmarkRule = new BenchmarkRule();
+
+    /**
+     * pages of numBuckets buckets with sorted rows, NUM_ROWS rows in total
+     */
+    private static List<BucketPage> createPages(int numBuckets) {
+        Random random = new Random(42);
+        int rowsPerBucket = NUM_ROWS / NUM_PAGES / numBuckets;
+        List<BucketPage> pages = new ArrayList<>(NUM_PAGES);
+        for (int p = 0; p < NUM_PAGES; p++) {
+            List<ListenableFuture<Bucket>> buckets = new ArrayList<>(numBuckets);
+            for (int b = 0; b < numBuckets; b++) {
+                long[] values = new long[rowsPerBucket];
+                for (int i = 0; i < values.length; i++) {
+                    values[i] = p * 1_000_000L + random.nextInt(1_000_000);
+                }
+                Arrays.sort(values);
+                Object[][] rows = new Object[rowsPerBucket][];
+                for (int i = 0; i < rows.length; i++) {
+                    rows[i] = new Object[] { values[i] };
+                }
+                buckets.add(Futures.<Bucket>immediateFuture(new ArrayBucket(rows)));
+            }
+            pages.add(new BucketPage(buckets));
+        }
+        return pages;
+    }
+
+    private static class CountingDownstream implements RowDownstream, RowDownstreamHandle {
+
+        private long numRows = 0;
+
+        @Override
+        public RowDownstreamHandle registerUpstream(RowUpstream upstream) {
+            return this;
+        }
+
+        @Override
+        public boolean setNextRow(Row row) {
+            numRows++;
+            return true;
+        }
+
+        @Override
+        public void finish() {
+        }
+
+        @Override
+        public void fail(Throwable throwable) {
+        }
+    }
+
+    private static void merge(int numBuckets, List<BucketPage> pages) {
+        final SortingBucketMerger merger = new SortingBucketMerger(
+                numBuckets, new int[] { 0 }, new boolean[] { false }, new Boolean[] { null }, Optional.<Executor>absent());
+        CountingDownstream downstream = new CountingDownstream();
+        merger.downstream(downstream);
+        for (BucketPage page : pages) {
+            merger.nextPage(page, new PageConsumeListener() {
+                @Override
+                public void needMore() {
+                }
+
+                @Override
+                public void finish() {
+                }
+            });
+        }
+        merger.finish();
+        assertEquals(NUM_ROWS / NUM_PAGES / numBuckets * NUM_PAGES * numBuckets, downstream.numRows);
+    }
+
+    private static final List<BucketPage> PAGES_2 = createPages(2);
+    private static final List<BucketPage> PAGES_8 = createPages(8);
+    private static final List<BucketPage> PAGES_64 = createPages(64);
+    private static final List<BucketPage> PAGES_512 = createPages(512);
+
+    @Test
+    public void testMerge2Buckets() throws Exception {
+        merge(2, PAGES_2);
+    }
+
+    @Test
+    public void testMerge8Buckets() throws Exception {
+        merge(8, PAGES_8);
+    }
+
+    @Test
+    public void testMerge64Buckets() throws Exception {
+        merge(64, PAGES_64);
+    }
+
+    @Test
+    public void testMerge512Buckets() throws Exception {
+        merge(512, PAGES_512);
+    }
+}
@@ -43,6 +43,7 @@ import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
 
 import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -56,8 +57,11 @@ public class UpdateBenchmark extends BenchmarkBase {
     public static final int NUM_REQUESTS_PER_TEST = 100;
     public static final int BENCHMARK_ROUNDS = 100;
 
+    public static final int WIDE_DOCUMENT_SIZE = 64 * 1024;
+
     public String updateId = null;
     public String updateIdqueryPlannerEnabled = null;
+    public String wideDocumentId = null;
 
     static {
         ClassLoader.getSystemClassLoader().setDefaultAssertionStatus(true);
@@ -84,6 +88,17 @@ public class UpdateBenchmark extends BenchmarkBase {
             assert response.rows().length == 1;
             updateIdqueryPlannerEnabled = (String)response.rows()[0][0];
         }
+        if (wideDocumentId == null) {
+            // a document with a large column, only a small column of it is updated
+            char[] languages = new char[WIDE_DOCUMENT_SIZE];
+            Arrays.fill(languages, 'x');
+            execute("INSERT INTO countries (\"countryCode\", languages, population) VALUES (?, ?, ?)",
+                    new Object[]{"XW", new String(languages), 0});
+            execute("REFRESH TABLE countries");
+            SQLResponse response = execute("SELECT \"_id\" FROM countries WHERE \"countryCode\"=?", new Object[]{"XW"});
+            assert response.rows().length == 1;
+            wideDocumentId = (String)response.rows()[0][0];
+        }
     }
 
     public SQLRequest getSqlUpdateByIdRequest(boolean queryPlannerEnabled) {
@@ -96,6 +111,10 @@ public class UpdateBenchmark extends BenchmarkBase {
         return new UpdateRequest(INDEX_NAME, "default", queryPlannerEnabled ? updateIdqueryPlannerEnabled : updateId).doc(updateDoc);
     }
 
+    public SQLRequest getSqlUpdateWideDocumentByIdRequest() {
+        return new SQLRequest("UPDATE countries SET population=? WHERE \"_id\"=?", new Object[]{ Math.abs(getRandom().nextInt()), wideDocumentId });
+    }
+
     public SQLRequest getSqlUpdateRequest() {
         return new SQLRequest("UPDATE countries SET population=? WHERE \"countryCode\"=?", new Object[]{ Math.abs(getRandom().nextInt()), "US" });
     }
@@ -147,6 +166,18 @@ public class UpdateBenchmark extends BenchmarkBase {
         }
     }
 
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void testUpdateSqlWideDocumentById() {
+        for (int i=0; i<NUM_REQUESTS_PER_TEST; i++) {
+            SQLResponse response = getClient(false).execute(SQLAction.INSTANCE, getSqlUpdateWideDocumentByIdRequest()).actionGet();
+            assertEquals(
+                    1,
+                    response.rowCount()
+            );
+        }
+    }
+
     @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
     @Test
     public void testUpdateApiById() {
@@ -33,6 +33,8 @@ import org.junit.Test;
 import org.junit.rules.RuleChain;
 import org.junit.rules.TestRule;
 
+import java.util.Arrays;
+
 @AxisRange(min = 0)
 @BenchmarkHistoryChart(filePrefix="benchmark-upsert-history", labelWith = LabelType.CUSTOM_KEY)
 @BenchmarkMethodChart(filePrefix = "benchmark-upsert")
@@ -44,6 +46,8 @@ public class UpsertBenchmark extends BenchmarkBase {
     public static final String INDEX_NAME = "traffic_logs";
     public static final int BENCHMARK_ROUNDS = 120;
     public static final int BENCHMARK_ROUNDS_MANY_VALUES = 3;
+    public static final int WIDE_DOCUMENT_ID = -1;
+    public static final int WIDE_DOCUMENT_SIZE = 64 * 1024;
     private static final String SIMPLE_UPSERT = "insert into traffic_logs (id, url, count) VALUES (?, ?, ?)" +
                                                 " ON DUPLICATE KEY UPDATE " +
                                                 "   count = 5";
@@ -65,7 +69,8 @@ public class UpsertBenchmark extends BenchmarkBase {
         execute("create table traffic_logs (" +
                 "    id integer primary key," +
                 "    url string," +
-                "    count integer" +
+                "    count integer," +
+                "    payload string" +
                 ") clustered into 2 shards with (number_of_replicas=0)", new Object[0], false);
         client().admin().cluster().prepareHealth(INDEX_NAME).setWaitForGreenStatus().execute().actionGet();
 
@@ -87,6 +92,11 @@ public class UpsertBenchmark extends BenchmarkBase {
             execute("insert into traffic_logs (id, url, count) VALUES (?, ?, ?)",
                     new Object[]{i+1, "http://crate.io", 1}, true);
         }
+        // a document with a large column, the upserts only change a small column of it
+        char[] payload = new char[WIDE_DOCUMENT_SIZE];
+        Arrays.fill(payload, 'x');
+        execute("insert into traffic_logs (id, url, count, payload) VALUES (?, ?, ?, ?)",
+                new Object[]{WIDE_DOCUMENT_ID, "http://crate.io", 1, new String(payload)}, true);
     }
 
     @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
@@ -95,6 +105,18 @@ public class UpsertBenchmark extends BenchmarkBase {
         execute(SIMPLE_UPSERT, new Object[]{0, "http://crate.io", 1}, true);
     }
 
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void testUpsertExistingWideDocument() {
+        execute(SIMPLE_UPSERT, new Object[]{WIDE_DOCUMENT_ID, "http://crate.io", 1}, true);
+    }
+
+    @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
+    @Test
+    public void testUpsertWideDocumentWithReference() {
+        execute(UPSERT_WITH_REF, new Object[]{WIDE_DOCUMENT_ID, "http://crate.io", 1}, true);
+    }
+
     @BenchmarkOptions(benchmarkRounds = BENCHMARK_ROUNDS, warmupRounds = 1)
     @Test
     public void testUpsertNewDocument() {